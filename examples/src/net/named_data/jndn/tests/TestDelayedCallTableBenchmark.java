@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests;
+
+import java.util.ArrayList;
+import java.util.Random;
+import net.named_data.jndn.impl.DelayedCallTable;
+import net.named_data.jndn.util.Common;
+
+/**
+ * Compare the heap-based DelayedCallTable with the previous implementation
+ * which does a sorted insert into an ArrayList. Each iteration simulates
+ * expressInterest which adds an Interest timeout, and satisfies most of the
+ * Interests before they time out.
+ */
+public class TestDelayedCallTableBenchmark {
+  private static double
+  getNowSeconds()
+  {
+    return System.currentTimeMillis() / 1000.0;
+  }
+
+  /**
+   * SortedListDelayedCallTable is the previous DelayedCallTable which keeps
+   * the entries in an ArrayList sorted on the call time. It can't cancel an
+   * entry, so the callback must check if it is still needed.
+   */
+  private static class SortedListDelayedCallTable {
+    public void
+    callLater(double delayMilliseconds, Runnable callback)
+    {
+      Entry entry = new Entry(delayMilliseconds, callback);
+      int i = table_.size() - 1;
+      while (i >= 0) {
+        if ((table_.get(i)).callTime_ <= entry.callTime_)
+          break;
+        --i;
+      }
+      table_.add(i + 1, entry);
+    }
+
+    public void
+    callTimedOut(double now)
+    {
+      while (!table_.isEmpty()) {
+        Entry entry = table_.get(0);
+        if (entry.callTime_ > now)
+          break;
+        table_.remove(0);
+        entry.callback_.run();
+      }
+    }
+
+    private static class Entry {
+      public Entry(double delayMilliseconds, Runnable callback)
+      {
+        callback_ = callback;
+        callTime_ = Common.getNowMilliseconds() + delayMilliseconds;
+      }
+
+      public final Runnable callback_;
+      public final double callTime_;
+    }
+
+    private final ArrayList<Entry> table_ = new ArrayList<Entry>();
+  }
+
+  private static final Runnable noOp_ = new Runnable() {
+    public void run() {}
+  };
+
+  /**
+   * Keep nOutstanding timeouts with a random lifetime. For each iteration,
+   * satisfy one and add a new one.
+   * @return The duration in seconds.
+   */
+  private static double
+  benchmarkSortedListSeconds(int nIterations, int nOutstanding)
+  {
+    Random random = new Random(1);
+    SortedListDelayedCallTable table = new SortedListDelayedCallTable();
+    for (int i = 0; i < nOutstanding; ++i)
+      table.callLater(1000 + random.nextInt(3000), noOp_);
+
+    double start = getNowSeconds();
+    for (int i = 0; i < nIterations; ++i) {
+      // A satisfied Interest can't remove its timeout, so only add.
+      table.callLater(1000 + random.nextInt(3000), noOp_);
+      table.callTimedOut(Common.getNowMilliseconds());
+    }
+    double finish = getNowSeconds();
+
+    return finish - start;
+  }
+
+  /**
+   * Keep nOutstanding timeouts with a random lifetime. For each iteration,
+   * satisfy one by cancelling its timeout and add a new one.
+   * @return The duration in seconds.
+   */
+  private static double
+  benchmarkHeapSeconds(int nIterations, int nOutstanding)
+  {
+    Random random = new Random(1);
+    DelayedCallTable table = new DelayedCallTable();
+    ArrayList<DelayedCallTable.Entry> outstanding =
+      new ArrayList<DelayedCallTable.Entry>();
+    for (int i = 0; i < nOutstanding; ++i)
+      outstanding.add(table.callLater(1000 + random.nextInt(3000), noOp_));
+
+    double start = getNowSeconds();
+    for (int i = 0; i < nIterations; ++i) {
+      // Satisfy a random outstanding Interest by cancelling its timeout.
+      int index = random.nextInt(outstanding.size());
+      outstanding.get(index).cancel();
+      outstanding.set
+        (index, table.callLater(1000 + random.nextInt(3000), noOp_));
+      table.callTimedOut();
+    }
+    double finish = getNowSeconds();
+
+    return finish - start;
+  }
+
+  public static void
+  main(String[] args)
+  {
+    int nIterations = 100000;
+    int[] outstandingCounts = { 1000, 10000, 100000 };
+    for (int i = 0; i < outstandingCounts.length; ++i) {
+      int nOutstanding = outstandingCounts[i];
+
+      double duration = benchmarkSortedListSeconds(nIterations, nOutstanding);
+      System.out.println("Sorted list, " + nOutstanding +
+        " outstanding: Duration sec, Hz: " + duration + ", " +
+        (nIterations / duration));
+
+      duration = benchmarkHeapSeconds(nIterations, nOutstanding);
+      System.out.println("Heap,        " + nOutstanding +
+        " outstanding: Duration sec, Hz: " + duration + ", " +
+        (nIterations / duration));
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests;
+
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.impl.InterestFilterTable;
+import net.named_data.jndn.impl.PendingInterestTable;
+
+/**
+ * Measure the throughput of the PendingInterestTable and InterestFilterTable
+ * used by Node to dispatch packets, when called from multiple threads. Each
+ * operation adds a pending interest, dispatches an Interest to the filters and
+ * satisfies the pending interest with a Data packet.
+ */
+public class TestDispatchTableBenchmark {
+  private static double
+  getNowSeconds()
+  {
+    return System.currentTimeMillis() / 1000.0;
+  }
+
+  /**
+   * Run nThreads threads which each do nIterations operations.
+   * @return The duration in seconds.
+   */
+  private static double
+  benchmarkDispatchSeconds
+    (final int nThreads, final int nIterations, final Name[] names)
+    throws InterruptedException
+  {
+    final PendingInterestTable pit = new PendingInterestTable();
+    final InterestFilterTable filterTable = new InterestFilterTable();
+    for (int i = 0; i < 1000; ++i)
+      filterTable.setInterestFilter
+        (i, new InterestFilter(new Name("/producer").appendSegment(i)), null,
+         null);
+
+    Thread[] threads = new Thread[nThreads];
+    for (int t = 0; t < nThreads; ++t) {
+      final int threadNo = t;
+      threads[t] = new Thread(new Runnable() {
+        public void run() {
+          ArrayList<PendingInterestTable.Entry> entries =
+            new ArrayList<PendingInterestTable.Entry>();
+          ArrayList matchedFilters = new ArrayList();
+          for (int i = 0; i < nIterations; ++i) {
+            Name name = names[(threadNo * nIterations + i) % names.length];
+            Interest interest = new Interest(name);
+            pit.add
+              ((long)threadNo * nIterations + i + 1, interest, null, null, null);
+
+            matchedFilters.clear();
+            filterTable.getMatchedFilters(interest, matchedFilters);
+
+            entries.clear();
+            pit.extractEntriesForExpressedInterest(new Data(name), entries);
+          }
+        }
+      });
+    }
+
+    double start = getNowSeconds();
+    for (int t = 0; t < nThreads; ++t)
+      threads[t].start();
+    for (int t = 0; t < nThreads; ++t)
+      threads[t].join();
+    double finish = getNowSeconds();
+
+    return finish - start;
+  }
+
+  public static void
+  main(String[] args) throws InterruptedException
+  {
+    Logger.getLogger("").setLevel(Level.OFF);
+
+    // Make the names ahead of time so that the benchmark doesn't measure it.
+    Name[] names = new Name[100000];
+    for (int i = 0; i < names.length; ++i)
+      names[i] = new Name("/producer").appendSegment(i % 1000)
+        .append("object").appendSegment(i);
+
+    int nIterations = 200000;
+    int[] threadCounts = { 1, 2, 4, 8 };
+    for (int i = 0; i < threadCounts.length; ++i) {
+      int nThreads = threadCounts[i];
+      double duration = benchmarkDispatchSeconds(nThreads, nIterations, names);
+      System.out.println("Dispatch with " + nThreads +
+        " threads: Duration sec, Hz: " + duration + ", " +
+        (nThreads * nIterations / duration));
+    }
+  }
+}
@@ -0,0 +1,367 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.encoding.WireFormat;
+import net.named_data.jndn.transport.Transport;
+
+/**
+ * BlockingFace extends Face to provide fetch, which sends an Interest and
+ * blocks the calling thread until the Data arrives. It is made for many
+ * threads to call fetch concurrently, including Java 21 virtual threads: fetch
+ * adds the request to a lock-free queue and parks the thread with LockSupport,
+ * and does not enter a synchronized monitor (which pins a virtual thread to its
+ * carrier thread). The Face itself is owned by one event loop thread which this
+ * starts. It takes the queued requests in batches, sends them with one
+ * pending interest table update and timer per batch (see Face.expressAll),
+ * and unparks each waiting thread when its Data, timeout or network Nack is
+ * processed.
+ *
+ * The transport should have a selectable channel such as TcpTransport or
+ * UnixTransport, so that the event loop wakes up when data arrives. Since the
+ * Face is owned by the event loop thread, call the other Face methods such as
+ * registerPrefix in a Runnable given to post.
+ */
+public class BlockingFace extends Face {
+  /**
+   * A FetchException is thrown by fetch if the Interest times out or receives
+   * a network Nack. It extends IOException so that the caller of fetch can
+   * handle all failures in one place.
+   */
+  public static class FetchException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public FetchException(String message, NetworkNack networkNack)
+    {
+      super(message);
+      networkNack_ = networkNack;
+    }
+
+    /**
+     * Get the network Nack.
+     * @return The NetworkNack, or null if the Interest timed out.
+     */
+    public final NetworkNack
+    getNetworkNack() { return networkNack_; }
+
+    /**
+     * Check if the Interest timed out.
+     * @return True if timed out, false if this has a network Nack.
+     */
+    public final boolean
+    isTimedOut() { return networkNack_ == null; }
+
+    private final NetworkNack networkNack_;
+  }
+
+  /**
+   * Create a new BlockingFace for communication with an NDN hub with the given
+   * Transport object and connectionInfo, and start the event loop thread.
+   * @param transport A Transport object used for communication, which should
+   * have a selectable channel (see Transport.getSelectableChannel).
+   * @param connectionInfo A Transport.ConnectionInfo to be used to connect to
+   * the transport.
+   * @throws IOException For error opening the event loop's Selector.
+   */
+  public BlockingFace
+    (Transport transport, Transport.ConnectionInfo connectionInfo)
+    throws IOException
+  {
+    super(transport, connectionInfo);
+    eventLoop_ = new FaceEventLoop();
+    start();
+  }
+
+  /**
+   * Create a new BlockingFace for communication with an NDN hub at host:port
+   * using the default TcpTransport, and start the event loop thread.
+   * @param host The host of the NDN hub.
+   * @param port The port of the NDN hub.
+   * @throws IOException For error opening the event loop's Selector.
+   */
+  public BlockingFace(String host, int port) throws IOException
+  {
+    super(host, port);
+    eventLoop_ = new FaceEventLoop();
+    start();
+  }
+
+  /**
+   * Create a new BlockingFace for communication with the local NDN forwarder
+   * as described in the Face() constructor, and start the event loop thread.
+   * @throws IOException For error opening the event loop's Selector.
+   */
+  public BlockingFace() throws IOException
+  {
+    super();
+    eventLoop_ = new FaceEventLoop();
+    start();
+  }
+
+  /**
+   * Send the Interest and block until the Data arrives. This can be called on
+   * any thread except the event loop thread (for example not in a Runnable
+   * given to post). This uses the default WireFormat.getDefaultWireFormat().
+   * @param interest The Interest to send. This copies the Interest.
+   * @return The received Data packet.
+   * @throws FetchException If the Interest times out or receives a network
+   * Nack.
+   * @throws IOException For I/O error in sending the Interest, or if this
+   * BlockingFace is shut down.
+   * @throws InterruptedException If the thread is interrupted while waiting,
+   * in which case this removes the pending Interest. If the request finishes
+   * at the same time as the interrupt, this returns the result (or throws its
+   * exception) and leaves the thread's interrupt status set.
+   */
+  public final Data
+  fetch(Interest interest) throws IOException, InterruptedException
+  {
+    if (isShutdown_)
+      throw new IOException("Cannot fetch because the BlockingFace is shut down");
+
+    // The event loop thread gets the pending interest ID, since
+    // getNextEntryId is synchronized.
+    final FetchRequest request = new FetchRequest
+      (new Interest(interest), Thread.currentThread());
+    requests_.offer(request);
+    if (isShutdown_ && requests_.remove(request))
+      // runEventLoop may have failed the queued requests before our offer. If
+      // remove returns false, the event loop took the request and completes it.
+      throw new IOException("Cannot fetch because the BlockingFace is shut down");
+    // Only wake the event loop if it is not already scheduled to take the
+    // requests, so that a burst of fetches makes one wakeup.
+    if (isDrainScheduled_.compareAndSet(false, true))
+      eventLoop_.post(drainRequests_);
+
+    while (!request.isDone_) {
+      LockSupport.park(this);
+      if (Thread.interrupted()) {
+        if (request.isDone_) {
+          // The request finished at the same time, so return its result but
+          // keep the interrupt for the caller.
+          Thread.currentThread().interrupt();
+          break;
+        }
+
+        eventLoop_.post(new Runnable() {
+          public void run() {
+            if (requests_.remove(request))
+              // drainRequests has not taken the request yet.
+              return;
+            removePendingInterest(request.pendingInterestId_);
+            inFlight_.remove(request);
+          }
+        });
+        throw new InterruptedException();
+      }
+    }
+
+    if (request.data_ != null)
+      return request.data_;
+    if (request.error_ != null)
+      throw request.error_;
+    if (request.networkNack_ != null)
+      throw new FetchException
+        ("Network Nack for interest " + interest.getName().toUri(),
+         request.networkNack_);
+    throw new FetchException
+      ("Timeout for interest " + interest.getName().toUri(), null);
+  }
+
+  /**
+   * Call runnable.run() on the event loop thread which owns this Face. Use
+   * this to call other Face methods such as registerPrefix.
+   * @param runnable The Runnable to call.
+   */
+  public final void
+  post(Runnable runnable) { eventLoop_.post(runnable); }
+
+  /**
+   * Stop the event loop thread, shut down the Face and unblock the threads
+   * which are waiting in fetch with an IOException.
+   */
+  public void
+  shutdown()
+  {
+    if (isShutdown_)
+      return;
+    isShutdown_ = true;
+    eventLoop_.shutdown();
+  }
+
+  /**
+   * A FetchRequest holds the Interest and waiting thread of a call to fetch,
+   * and is the callback for the result, which is called on the event loop
+   * thread.
+   */
+  private class FetchRequest
+    implements OnData, OnTimeout, OnNetworkNack {
+    public FetchRequest(Interest interestCopy, Thread thread)
+    {
+      interestCopy_ = interestCopy;
+      thread_ = thread;
+    }
+
+    public void
+    onData(Interest interest, Data data)
+    {
+      data_ = data;
+      done();
+    }
+
+    public void
+    onTimeout(Interest interest) { done(); }
+
+    public void
+    onNetworkNack(Interest interest, NetworkNack networkNack)
+    {
+      networkNack_ = networkNack;
+      done();
+    }
+
+    public void
+    onError(IOException error)
+    {
+      error_ = error;
+      done();
+    }
+
+    private void
+    done()
+    {
+      inFlight_.remove(this);
+      // Set isDone_ last so that fetch sees the result fields.
+      isDone_ = true;
+      LockSupport.unpark(thread_);
+    }
+
+    // pendingInterestId_ is set by drainRequests on the event loop thread.
+    public long pendingInterestId_;
+    public final Interest interestCopy_;
+    private final Thread thread_;
+    public Data data_ = null;
+    public NetworkNack networkNack_ = null;
+    public IOException error_ = null;
+    public volatile boolean isDone_ = false;
+  }
+
+  private void
+  start()
+  {
+    eventLoop_.addFace(this);
+    Thread thread = new Thread(new Runnable() {
+      public void run() { runEventLoop(); }
+    }, "BlockingFace event loop");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Run the event loop until shutdown, then shut down the Face and fail the
+   * requests which are still waiting.
+   */
+  private void
+  runEventLoop()
+  {
+    try {
+      eventLoop_.run();
+    } catch (Throwable ex) {
+      logger_.log(Level.SEVERE, "Error in the BlockingFace event loop", ex);
+    }
+
+    isShutdown_ = true;
+    super.shutdown();
+    try {
+      eventLoop_.close();
+    } catch (IOException ex) {
+    }
+
+    IOException error = new IOException("The BlockingFace is shut down");
+    for (FetchRequest request : new ArrayList<FetchRequest>(inFlight_))
+      request.onError(error);
+    // Check the queue again in case fetch added a request after isShutdown_.
+    FetchRequest request;
+    while ((request = requests_.poll()) != null)
+      request.onError(error);
+  }
+
+  /**
+   * Take all the queued requests and send them, on the event loop thread.
+   */
+  private void
+  drainRequests()
+  {
+    // Clear the flag first so that a request added after the poll loop
+    // schedules another drain.
+    isDrainScheduled_.set(false);
+
+    ArrayList<FetchRequest> requests = new ArrayList<FetchRequest>();
+    FetchRequest request;
+    while ((request = requests_.poll()) != null)
+      requests.add(request);
+    if (requests.isEmpty())
+      return;
+
+    int nRequests = requests.size();
+    long[] pendingInterestIds = new long[nRequests];
+    Interest[] interestCopies = new Interest[nRequests];
+    FetchRequest[] callbacks = new FetchRequest[nRequests];
+    for (int i = 0; i < nRequests; ++i) {
+      request = requests.get(i);
+      request.pendingInterestId_ = node_.getNextEntryId();
+      pendingInterestIds[i] = request.pendingInterestId_;
+      interestCopies[i] = request.interestCopy_;
+      callbacks[i] = request;
+      inFlight_.add(request);
+    }
+
+    try {
+      node_.expressInterests
+        (pendingInterestIds, interestCopies, callbacks, callbacks, callbacks,
+         WireFormat.getDefaultWireFormat(), this);
+    } catch (IOException ex) {
+      for (int i = 0; i < nRequests; ++i) {
+        removePendingInterest(pendingInterestIds[i]);
+        callbacks[i].onError(ex);
+      }
+    }
+  }
+
+  private final FaceEventLoop eventLoop_;
+  private final ConcurrentLinkedQueue<FetchRequest> requests_ =
+    new ConcurrentLinkedQueue<FetchRequest>();
+  // inFlight_ is only accessed on the event loop thread.
+  private final HashSet<FetchRequest> inFlight_ = new HashSet<FetchRequest>();
+  private final AtomicBoolean isDrainScheduled_ = new AtomicBoolean(false);
+  private final Runnable drainRequests_ = new Runnable() {
+    public void run() { drainRequests(); }
+  };
+  private volatile boolean isShutdown_ = false;
+  private static final Logger logger_ = Logger.getLogger
+    (BlockingFace.class.getName());
+}
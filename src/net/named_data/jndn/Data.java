@@ -20,6 +20,8 @@
 package net.named_data.jndn;
 
 import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import net.named_data.jndn.encoding.EncodingException;
 import net.named_data.jndn.encoding.WireFormat;
 import net.named_data.jndn.encoding.SignatureHolder;
@@ -126,6 +128,8 @@ public class Data implements ChangeCountable, SignatureHolder {
   public void
   wireDecode(Blob input, WireFormat wireFormat) throws EncodingException
   {
+    clearLazyFields();
+
     int[] signedPortionBeginOffset = new int[1];
     int[] signedPortionEndOffset = new int[1];
     wireFormat.decodeData
@@ -141,6 +145,54 @@ public class Data implements ChangeCountable, SignatureHolder {
       setDefaultWireEncoding(new SignedBlob(), null);
   }
 
+  /**
+   * Decode the input the same as wireDecode(Blob, WireFormat), except only
+   * decode the name and content now. The MetaInfo and Signature are decoded
+   * from the input when getMetaInfo() or getSignature() is first called, so
+   * that an application which only uses the name and content doesn't pay to
+   * decode them. This checks the TLV structure of the whole packet, but if the
+   * encoding inside the MetaInfo or SignatureInfo is invalid, then the getter
+   * logs an error and returns a default MetaInfo or Signature. This Data keeps
+   * a pointer to the input Blob.
+   * @param input The input Blob to decode.  This reads from buf().position() to
+   * buf().limit(), but does not change the position.
+   * @param wireFormat A WireFormat object used to decode the input.
+   * @throws EncodingException For invalid encoding.
+   */
+  public final void
+  wireDecodeLazy(Blob input, WireFormat wireFormat) throws EncodingException
+  {
+    clearLazyFields();
+
+    int[] signedPortionBeginOffset = new int[1];
+    int[] signedPortionEndOffset = new int[1];
+    int[] fieldOffsets = new int[6];
+    ByteBuffer buffer = input.buf();
+    wireFormat.decodeDataLazy
+      (this, buffer, signedPortionBeginOffset, signedPortionEndOffset,
+       fieldOffsets, false);
+
+    lazyWireFormat_ = wireFormat;
+    lazyMetaInfo_ = fieldOffsets[0] < 0 ?
+      null : getSlice(buffer, fieldOffsets[0], fieldOffsets[1]);
+    lazySignatureInfo_ = getSlice(buffer, fieldOffsets[2], fieldOffsets[3]);
+    lazySignatureValue_ = getSlice(buffer, fieldOffsets[4], fieldOffsets[5]);
+    // Use set so that this does not change the change count. The getters will
+    // set the decoded objects.
+    metaInfo_.set(null);
+    signature_.set(null);
+    isMetaInfoLazy_ = true;
+    isSignatureLazy_ = true;
+
+    if (wireFormat == WireFormat.getDefaultWireFormat())
+      // This is the default wire encoding.
+      setDefaultWireEncoding
+        (new SignedBlob(input, signedPortionBeginOffset[0],
+         signedPortionEndOffset[0]), WireFormat.getDefaultWireFormat());
+    else
+      setDefaultWireEncoding(new SignedBlob(), null);
+  }
+
   /**
    * Decode the input using the default wire format
    * WireFormat.getDefaultWireFormat() and update this Data. Also set the
@@ -186,13 +238,23 @@ public class Data implements ChangeCountable, SignatureHolder {
   }
 
   public final Signature
-  getSignature() { return (Signature)signature_.get(); }
+  getSignature()
+  {
+    if (isSignatureLazy_)
+      decodeLazySignature();
+    return (Signature)signature_.get();
+  }
 
   public final Name
   getName() { return (Name)name_.get(); }
 
   public final MetaInfo
-  getMetaInfo() { return (MetaInfo)metaInfo_.get(); }
+  getMetaInfo()
+  {
+    if (isMetaInfoLazy_)
+      decodeLazyMetaInfo();
+    return (MetaInfo)metaInfo_.get();
+  }
 
   public final Blob
   getContent() { return content_; }
@@ -303,9 +365,10 @@ public class Data implements ChangeCountable, SignatureHolder {
   public final Data
   setSignature(Signature signature)
   {
+    Signature signatureCopy;
     try {
-      signature_.set(signature == null ?
-        new Sha256WithRsaSignature() : (Signature)signature.clone());
+      signatureCopy = signature == null ?
+        new Sha256WithRsaSignature() : (Signature)signature.clone();
     }
     catch (CloneNotSupportedException e) {
       // We don't expect this to happen, so just treat it as if we got a null
@@ -313,6 +376,12 @@ public class Data implements ChangeCountable, SignatureHolder {
       throw new NullPointerException
         ("Data.setSignature: unexpected exception in clone(): " + e.getMessage());
     }
+    synchronized (this) {
+      signature_.set(signatureCopy);
+      isSignatureLazy_ = false;
+      lazySignatureInfo_ = null;
+      lazySignatureValue_ = null;
+    }
 
     ++changeCount_;
     return this;
@@ -340,7 +409,13 @@ public class Data implements ChangeCountable, SignatureHolder {
   public final Data
   setMetaInfo(MetaInfo metaInfo)
   {
-    metaInfo_.set(metaInfo == null ? new MetaInfo() : new MetaInfo(metaInfo));
+    MetaInfo metaInfoCopy =
+      metaInfo == null ? new MetaInfo() : new MetaInfo(metaInfo);
+    synchronized (this) {
+      metaInfo_.set(metaInfoCopy);
+      isMetaInfoLazy_ = false;
+      lazyMetaInfo_ = null;
+    }
     ++changeCount_;
     return this;
   }
@@ -398,6 +473,90 @@ public class Data implements ChangeCountable, SignatureHolder {
     getDefaultWireEncodingChangeCount_ = getChangeCount();
   }
 
+  /**
+   * Decode the MetaInfo saved by wireDecodeLazy and set metaInfo_. This does
+   * not change the change count since the encoding is the same. This is
+   * synchronized because Node can pass the same Data to callbacks on several
+   * threads. The lazy Blob is cleared only after metaInfo_ is set.
+   */
+  private synchronized void
+  decodeLazyMetaInfo()
+  {
+    if (!isMetaInfoLazy_)
+      // Another thread already decoded it.
+      return;
+
+    MetaInfo metaInfo = new MetaInfo();
+    if (lazyMetaInfo_ != null) {
+      try {
+        lazyWireFormat_.decodeMetaInfo(metaInfo, lazyMetaInfo_.buf(), false);
+      } catch (EncodingException ex) {
+        logger_.log(Level.SEVERE, "Error decoding the Data MetaInfo", ex);
+        metaInfo = new MetaInfo();
+      }
+    }
+
+    metaInfo_.set(metaInfo);
+    isMetaInfoLazy_ = false;
+    lazyMetaInfo_ = null;
+  }
+
+  /**
+   * Decode the SignatureInfo and SignatureValue saved by wireDecodeLazy and set
+   * signature_. This does not change the change count since the encoding is
+   * the same. This is synchronized for the same reason as decodeLazyMetaInfo.
+   */
+  private synchronized void
+  decodeLazySignature()
+  {
+    if (!isSignatureLazy_)
+      // Another thread already decoded it.
+      return;
+
+    Signature signature;
+    try {
+      signature = lazyWireFormat_.decodeSignatureInfoAndValue
+        (lazySignatureInfo_.buf(), lazySignatureValue_.buf(), false);
+    } catch (EncodingException ex) {
+      logger_.log(Level.SEVERE, "Error decoding the Data SignatureInfo", ex);
+      signature = new Sha256WithRsaSignature();
+    }
+
+    signature_.set(signature);
+    isSignatureLazy_ = false;
+    lazySignatureInfo_ = null;
+    lazySignatureValue_ = null;
+  }
+
+  /**
+   * If wireDecodeLazy left fields which are not decoded, set them to default
+   * objects so that a full decode can update them.
+   */
+  private synchronized void
+  clearLazyFields()
+  {
+    if (isMetaInfoLazy_) {
+      metaInfo_.set(new MetaInfo());
+      isMetaInfoLazy_ = false;
+      lazyMetaInfo_ = null;
+    }
+    if (isSignatureLazy_) {
+      signature_.set(new Sha256WithRsaSignature());
+      isSignatureLazy_ = false;
+      lazySignatureInfo_ = null;
+      lazySignatureValue_ = null;
+    }
+  }
+
+  private static Blob
+  getSlice(ByteBuffer buffer, int beginOffset, int endOffset)
+  {
+    ByteBuffer slice = buffer.duplicate();
+    slice.limit(endOffset);
+    slice.position(beginOffset);
+    return new Blob(slice, false);
+  }
+
   private final ChangeCounter signature_ =
     new ChangeCounter(new Sha256WithRsaSignature());
   private final ChangeCounter name_ = new ChangeCounter(new Name());
@@ -410,4 +569,14 @@ public class Data implements ChangeCountable, SignatureHolder {
   private WireFormat defaultWireEncodingFormat_;
   private long getDefaultWireEncodingChangeCount_ = 0;
   private long changeCount_ = 0;
+  // The fields saved by wireDecodeLazy.
+  private WireFormat lazyWireFormat_ = null;
+  // The flags are volatile so that a getter which sees false also sees the
+  // decoded object set by another thread before the flag was cleared.
+  private volatile boolean isMetaInfoLazy_ = false;
+  private Blob lazyMetaInfo_ = null;
+  private volatile boolean isSignatureLazy_ = false;
+  private Blob lazySignatureInfo_ = null;
+  private Blob lazySignatureValue_ = null;
+  private static final Logger logger_ = Logger.getLogger(Data.class.getName());
 }
@@ -19,16 +19,21 @@
 
 package net.named_data.jndn;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import net.named_data.jndn.encoding.EncodingException;
 import net.named_data.jndn.encoding.WireFormat;
 import net.named_data.jndn.security.KeyChain;
 import net.named_data.jndn.security.SecurityException;
 import net.named_data.jndn.transport.TcpTransport;
 import net.named_data.jndn.transport.Transport;
+import net.named_data.jndn.transport.UnixTransport;
 import net.named_data.jndn.util.Blob;
 import net.named_data.jndn.util.Common;
+import net.named_data.jndn.util.ConfigFile;
 
 /**
  * The Face class provides the main methods for NDN communication.
@@ -70,13 +75,59 @@ public class Face {
   }
 
   /**
-   * Create a new Face for communication with an NDN hub at "localhost" using the
-   * default port 6363 and the default TcpTransport.
+   * Create a new Face for communication with the local NDN forwarder. If the
+   * Java runtime supports Unix-domain sockets (see UnixTransport.isSupported)
+   * and the forwarder's Unix socket is found (see
+   * getUnixSocketFilePathForLocalhost), then use a UnixTransport. Otherwise use
+   * the default TcpTransport to "localhost" with the default port 6363.
    */
   public Face()
   {
-    node_ = new Node
-      (new TcpTransport(), new TcpTransport.ConnectionInfo("localhost", 6363));
+    String filePath = "";
+    if (UnixTransport.isSupported())
+      filePath = getUnixSocketFilePathForLocalhost();
+
+    if (!filePath.equals(""))
+      node_ = new Node
+        (new UnixTransport(), new UnixTransport.ConnectionInfo(filePath));
+    else
+      node_ = new Node
+        (new TcpTransport(), new TcpTransport.ConnectionInfo("localhost", 6363));
+  }
+
+  /**
+   * If the library configuration file (see ConfigFile) has
+   * "transport=unix://<path>", return the path. If it has a different
+   * transport, return "". Otherwise, return the first file which exists of
+   * /run/nfd.sock, /var/run/nfd.sock and /tmp/.ndnd.sock.
+   * @return The file path of the Unix socket, or "" if not found.
+   */
+  public static String
+  getUnixSocketFilePathForLocalhost()
+  {
+    String transportUri = "";
+    try {
+      transportUri = new ConfigFile().get("transport", "");
+    } catch (IOException ex) {
+      // Ignore a config file which can't be read.
+    }
+
+    if (!transportUri.equals("")) {
+      String prefix = "unix://";
+      if (transportUri.startsWith(prefix))
+        return transportUri.substring(prefix.length());
+      else
+        return "";
+    }
+
+    String[] filePaths = { "/run/nfd.sock", "/var/run/nfd.sock",
+                           "/tmp/.ndnd.sock" };
+    for (String filePath : filePaths) {
+      if (new File(filePath).exists())
+        return filePath;
+    }
+
+    return "";
   }
 
   /**
@@ -96,6 +147,66 @@ public class Face {
     node_.setInterestLoopbackEnabled(interestLoopbackEnabled);
   }
 
+  /**
+   * Enable or disable batched processing of received packets. If enabled, then
+   * when the transport receives several packets together, decode all of them,
+   * then match all of them against the pending Interests and Interest filters,
+   * then call the callbacks. This works best with a transport that has a large
+   * receive buffer, such as new TcpTransport(receiveBufferSize). Receive
+   * batching is disabled by default.
+   * @param receiveBatchEnabled If True, enable receive batching, otherwise
+   * disable it.
+   */
+  public final void
+  setReceiveBatchEnabled(boolean receiveBatchEnabled)
+  {
+    node_.setReceiveBatchEnabled(receiveBatchEnabled);
+  }
+
+  /**
+   * Enable or disable metrics. If enabled, the Face counts the sent and
+   * received packets and bytes, decoding errors, Interest timeouts and network
+   * Nacks, and records the latency from expressing an Interest to receiving its
+   * Data. Use getMetrics() to read them or to register them as a JMX MBean.
+   * Metrics are disabled by default, in which case the Face only checks if
+   * they are enabled. Disabling and enabling again starts a new FaceMetrics.
+   * @param metricsEnabled If true, enable metrics, otherwise disable them.
+   */
+  public final void
+  setMetricsEnabled(boolean metricsEnabled)
+  {
+    node_.setMetricsEnabled(metricsEnabled);
+  }
+
+  /**
+   * Get the FaceMetrics created by setMetricsEnabled(true).
+   * @return The FaceMetrics, or null if metrics are not enabled.
+   */
+  public final FaceMetrics
+  getMetrics() { return node_.getMetrics(); }
+
+  /**
+   * Enable or disable Interest aggregation. If enabled, then when
+   * expressInterest is called with an Interest which has the same name and
+   * selectors as a pending Interest which was already sent and whose Interest
+   * lifetime does not end before the new Interest's lifetime, don't send it
+   * again but give the Data or network Nack for the sent Interest to the
+   * callbacks of both. Each Interest still has its own timeout according to
+   * its Interest lifetime. If the sent Interest times out or is removed first,
+   * one of the Interests aggregated with it is sent. This avoids
+   * sending duplicate Interests when several parts of an application fetch
+   * the same content at the same time. An Interest with ApplicationParameters
+   * or a forwarding hint is always sent. Interest aggregation is disabled by
+   * default.
+   * @param interestAggregationEnabled If true, enable Interest aggregation,
+   * otherwise disable it.
+   */
+  public final void
+  setInterestAggregationEnabled(boolean interestAggregationEnabled)
+  {
+    node_.setInterestAggregationEnabled(interestAggregationEnabled);
+  }
+
   /**
    * Send the Interest through the transport, read the entire response and call
    * onData, onTimeout or onNetworkNack as described below.
@@ -138,9 +249,9 @@ public class Face {
     long pendingInterestId = node_.getNextEntryId();
 
     // This copies the interest as required by Node.expressInterest.
-    node_.expressInterest
+    nodeExpressInterest
       (pendingInterestId, interest, onData, onTimeout, onNetworkNack,
-       wireFormat, this);
+       wireFormat);
 
     return pendingInterestId;
   }
@@ -349,9 +460,9 @@ public class Face {
     long pendingInterestId = node_.getNextEntryId();
 
     // This copies the name object as required by Node.expressInterest.
-    node_.expressInterest
+    nodeExpressInterest
       (pendingInterestId, getInterestCopy(name, interestTemplate), onData,
-       onTimeout, onNetworkNack, wireFormat, this);
+       onTimeout, onNetworkNack, wireFormat);
 
     return pendingInterestId;
   }
@@ -746,6 +857,95 @@ public class Face {
       (name, null, onData, null, WireFormat.getDefaultWireFormat());
   }
 
+  /**
+   * Send the Interest through the transport and return an InterestFuture which
+   * is completed with the Data, a timeout or a network Nack. The future is the
+   * callback for the pending interest, so it is completed directly on the
+   * thread which receives the Data (for example, the thread which calls
+   * processEvents) without submitting another task. This uses the default
+   * WireFormat.getDefaultWireFormat().
+   * @param interest The Interest to send. This copies the Interest.
+   * @return The InterestFuture. To cancel, call its cancel method.
+   * @throws IOException For I/O error in sending the interest.
+   * @throws Error If the encoded interest size exceeds getMaxNdnPacketSize().
+   */
+  public final InterestFuture
+  express(Interest interest) throws IOException
+  {
+    InterestFuture future = new InterestFuture
+      (this, node_.getNextEntryId(), interest);
+    nodeExpressInterest
+      (future.getPendingInterestId(), new Interest(interest), future, future,
+       future, WireFormat.getDefaultWireFormat());
+
+    return future;
+  }
+
+  /**
+   * Send all the Interests like express. Once connected, this adds all the
+   * pending interest table entries and sets up their timeouts in one step
+   * before sending, using one timer for the Interests with the same lifetime.
+   * This uses the default WireFormat.getDefaultWireFormat().
+   * @param interests The Interests to send. This copies each Interest.
+   * @return A list of the InterestFuture for each Interest, in the same order.
+   * @throws IOException For I/O error in sending the interests.
+   * @throws Error If an encoded interest size exceeds getMaxNdnPacketSize().
+   */
+  public final List<InterestFuture>
+  expressAll(List<Interest> interests) throws IOException
+  {
+    int nInterests = interests.size();
+    ArrayList<InterestFuture> futures = new ArrayList<InterestFuture>(nInterests);
+    long[] pendingInterestIds = new long[nInterests];
+    Interest[] interestCopies = new Interest[nInterests];
+    InterestFuture[] callbacks = new InterestFuture[nInterests];
+    for (int i = 0; i < nInterests; ++i) {
+      Interest interest = interests.get(i);
+      InterestFuture future = new InterestFuture
+        (this, node_.getNextEntryId(), interest);
+      futures.add(future);
+      pendingInterestIds[i] = future.getPendingInterestId();
+      interestCopies[i] = new Interest(interest);
+      callbacks[i] = future;
+    }
+
+    nodeExpressInterests
+      (pendingInterestIds, interestCopies, callbacks, callbacks, callbacks,
+       WireFormat.getDefaultWireFormat());
+
+    return futures;
+  }
+
+  /**
+   * Call node_.expressInterest. The expressInterest methods call this so that
+   * a subclass such as StripedFace can choose another Node.
+   */
+  void
+  nodeExpressInterest
+    (long pendingInterestId, Interest interestCopy, OnData onData,
+     OnTimeout onTimeout, OnNetworkNack onNetworkNack, WireFormat wireFormat)
+    throws IOException
+  {
+    node_.expressInterest
+      (pendingInterestId, interestCopy, onData, onTimeout, onNetworkNack,
+       wireFormat, this);
+  }
+
+  /**
+   * Call node_.expressInterests. expressAll calls this so that a subclass
+   * such as StripedFace can choose other Nodes.
+   */
+  void
+  nodeExpressInterests
+    (long[] pendingInterestIds, Interest[] interestCopies, OnData[] onData,
+     OnTimeout[] onTimeout, OnNetworkNack[] onNetworkNack,
+     WireFormat wireFormat) throws IOException
+  {
+    node_.expressInterests
+      (pendingInterestIds, interestCopies, onData, onTimeout, onNetworkNack,
+       wireFormat, this);
+  }
+
   /**
    * Remove the pending interest entry with the pendingInterestId from the
    * pending interest table. This does not affect another pending interest with
@@ -1392,6 +1592,23 @@ public class Face {
     node_.processEvents();
   }
 
+  /**
+   * Get the Transport given to the constructor (or the default TcpTransport).
+   * @return The Transport.
+   */
+  public final Transport
+  getTransport() { return node_.getTransport(); }
+
+  /**
+   * Get the time when processEvents should next be called to make a delayed
+   * call for callLater or an interest timeout. An event loop such as
+   * FaceEventLoop uses this to wait without polling.
+   * @return The call time in milliseconds, similar to
+   * Common.getNowMilliseconds(), or -1 if there are no delayed calls.
+   */
+  public double
+  getNextDelayedCallTime() { return node_.getNextDelayedCallTime(); }
+
   /**
    * Check if the face is local based on the current connection through the
    * Transport; some Transport may cause network IO (e.g. an IP host name lookup).
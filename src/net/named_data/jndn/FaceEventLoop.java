@@ -0,0 +1,306 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.transport.Transport;
+import net.named_data.jndn.util.Common;
+
+/**
+ * A FaceEventLoop calls processEvents for many Face objects on one thread. It
+ * registers the channel of each Face's transport (see
+ * Transport.getSelectableChannel) with one Selector and blocks until there is
+ * data to receive or it is time for the next call to callLater or interest
+ * timeout, so that there is no need for an event loop which calls
+ * processEvents and sleeps. (A Face whose transport does not have a
+ * selectable channel, such as AsyncTcpTransport, is only processed for its
+ * delayed calls.)
+ *
+ * As with Face.processEvents, the Face methods such as expressInterest should
+ * be called on the event loop thread, for example in a callback such as onData
+ * or in a Runnable given to post. If you call them on another thread, call
+ * wakeup so that the event loop sees the new interest timeout and the
+ * channel of a new connection.
+ */
+public class FaceEventLoop {
+  /**
+   * Create a FaceEventLoop with a new Selector.
+   * @throws IOException For error opening the Selector.
+   */
+  public FaceEventLoop() throws IOException
+  {
+    selector_ = Selector.open();
+  }
+
+  /**
+   * Add the face to the faces which this processes. This can be called on any
+   * thread. The face is added when the event loop next runs.
+   * @param face The Face to add. The Face may not be connected yet.
+   */
+  public final void
+  addFace(final Face face)
+  {
+    post(new Runnable() {
+      public void run() {
+        for (FaceEntry entry : faces_) {
+          if (entry.face_ == face)
+            return;
+        }
+        faces_.add(new FaceEntry(face));
+      }
+    });
+  }
+
+  /**
+   * Remove the face from the faces which this processes. This does not close
+   * the face. This can be called on any thread.
+   * @param face The Face to remove.
+   */
+  public final void
+  removeFace(final Face face)
+  {
+    post(new Runnable() {
+      public void run() {
+        for (int i = 0; i < faces_.size(); ++i) {
+          FaceEntry entry = faces_.get(i);
+          if (entry.face_ == face) {
+            if (entry.key_ != null)
+              entry.key_.cancel();
+            faces_.remove(i);
+            return;
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Call runnable.run() on the event loop thread at the start of the next
+   * iteration, and wake up the event loop if it is waiting. This can be
+   * called on any thread.
+   * @param runnable The Runnable to call.
+   */
+  public final void
+  post(Runnable runnable)
+  {
+    posted_.offer(runnable);
+    selector_.wakeup();
+  }
+
+  /**
+   * Wake up the event loop if it is waiting, so that it checks again for new
+   * connections and delayed calls. This can be called on any thread.
+   */
+  public final void
+  wakeup()
+  {
+    selector_.wakeup();
+  }
+
+  /**
+   * Run one iteration of the event loop: call the posted Runnables, wait until
+   * a face has data to receive, a delayed call is due or
+   * maxWaitMilliseconds, and then call processEvents of each face which has
+   * data to receive or a delayed call which is due. Before waiting, this
+   * flushes packets which a transport has queued for coalescing, since they
+   * would otherwise wait until the next call to processEvents. This catches
+   * and logs an exception from processEvents of a face so that it does not
+   * stop the processing of the other faces.
+   * @param maxWaitMilliseconds The maximum time to wait, or 0 to not wait.
+   * @throws IOException For error from the Selector.
+   */
+  public final void
+  runOnce(double maxWaitMilliseconds) throws IOException
+  {
+    callPosted();
+
+    double waitMilliseconds = maxWaitMilliseconds;
+    double now = Common.getNowMilliseconds();
+    for (FaceEntry entry : faces_) {
+      updateRegistration(entry);
+
+      Transport transport = entry.face_.getTransport();
+      if (transport.getSendQueueSize() > 0) {
+        try {
+          transport.flush();
+        } catch (IOException ex) {
+          logger_.log(Level.SEVERE, "Error flushing the transport", ex);
+        }
+      }
+
+      double nextCallTime = entry.face_.getNextDelayedCallTime();
+      if (nextCallTime >= 0)
+        waitMilliseconds = Math.min
+          (waitMilliseconds, Math.max(0, nextCallTime - now));
+    }
+
+    if (!posted_.isEmpty())
+      waitMilliseconds = 0;
+
+    // Selector.select(0) waits forever, so use selectNow for less than 1 ms.
+    long waitWholeMilliseconds = (long)Math.ceil(waitMilliseconds);
+    if (waitWholeMilliseconds <= 0)
+      selector_.selectNow();
+    else
+      selector_.select(waitWholeMilliseconds);
+
+    for (Iterator<SelectionKey> i = selector_.selectedKeys().iterator();
+         i.hasNext();) {
+      SelectionKey key = i.next();
+      i.remove();
+      ((FaceEntry)key.attachment()).isReady_ = true;
+    }
+
+    now = Common.getNowMilliseconds();
+    for (FaceEntry entry : faces_) {
+      double nextCallTime = entry.face_.getNextDelayedCallTime();
+      if (!entry.isReady_ && !(nextCallTime >= 0 && nextCallTime <= now))
+        continue;
+
+      entry.isReady_ = false;
+      try {
+        entry.face_.processEvents();
+      } catch (Throwable ex) {
+        logger_.log(Level.SEVERE, "Error in processEvents", ex);
+      }
+    }
+  }
+
+  /**
+   * Repeatedly call runOnce until shutdown is called. You can call this on a
+   * new thread, for example new Thread(runnable) where runnable.run() calls
+   * eventLoop.run().
+   * @throws IOException For error from the Selector.
+   */
+  public final void
+  run() throws IOException
+  {
+    while (!isShutdown_)
+      runOnce(MAX_WAIT_MILLISECONDS);
+  }
+
+  /**
+   * Make run return after the current iteration. This can be called on any
+   * thread.
+   */
+  public final void
+  shutdown()
+  {
+    isShutdown_ = true;
+    selector_.wakeup();
+  }
+
+  /**
+   * Close the Selector. This does not close the faces. You should call this
+   * after run returns.
+   * @throws IOException For error closing the Selector.
+   */
+  public final void
+  close() throws IOException
+  {
+    selector_.close();
+  }
+
+  /**
+   * Get the number of faces which this processes, not counting calls to
+   * addFace and removeFace which are not yet run.
+   * @return The number of faces.
+   */
+  public final int
+  size() { return faces_.size(); }
+
+  /**
+   * A FaceEntry holds a face and the key for its registered channel.
+   */
+  private static class FaceEntry {
+    public FaceEntry(Face face)
+    {
+      face_ = face;
+    }
+
+    public final Face face_;
+    public SelectionKey key_ = null;
+    public boolean isReady_ = false;
+  }
+
+  private void
+  callPosted()
+  {
+    Runnable runnable;
+    while ((runnable = posted_.poll()) != null) {
+      try {
+        runnable.run();
+      } catch (Throwable ex) {
+        logger_.log(Level.SEVERE, "Error in posted Runnable", ex);
+      }
+    }
+  }
+
+  /**
+   * Register the channel of the entry's transport if it is new, for example
+   * after the face connects or reconnects.
+   * @param entry The FaceEntry to update.
+   */
+  private void
+  updateRegistration(FaceEntry entry)
+  {
+    SelectableChannel channel =
+      entry.face_.getTransport().getSelectableChannel();
+    if (entry.key_ != null) {
+      if (entry.key_.isValid() && entry.key_.channel() == channel)
+        return;
+      entry.key_.cancel();
+      entry.key_ = null;
+    }
+
+    if (channel == null || !channel.isOpen())
+      return;
+
+    try {
+      entry.key_ = channel.register(selector_, SelectionKey.OP_READ, entry);
+    } catch (ClosedChannelException ex) {
+      // The transport closed the channel.
+    } catch (CancelledKeyException ex) {
+      // The Selector removes a cancelled key on the next select, so we will
+      // try again on the next iteration.
+    }
+  }
+
+  private final Selector selector_;
+  // faces_ is only accessed on the event loop thread.
+  private final ArrayList<FaceEntry> faces_ = new ArrayList<FaceEntry>();
+  // post does not lock, so that it doesn't block a virtual thread.
+  private final ConcurrentLinkedQueue<Runnable> posted_ =
+    new ConcurrentLinkedQueue<Runnable>();
+  private volatile boolean isShutdown_ = false;
+  private static final double MAX_WAIT_MILLISECONDS = 1000;
+  private static final Logger logger_ = Logger.getLogger
+    (FaceEventLoop.class.getName());
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import net.named_data.jndn.impl.DelayedCallTable;
+import net.named_data.jndn.impl.PendingInterestTable;
+import net.named_data.jndn.transport.Transport;
+import net.named_data.jndn.util.LatencyHistogram;
+
+/**
+ * FaceMetrics has the counters and the Interest satisfaction latency
+ * histogram of a Face, and the current size of its pending interest table,
+ * delayed calls and transport send queue. Use Face.setMetricsEnabled(true) to
+ * create it and Face.getMetrics() to get it. The getters read the current
+ * values, so you can poll them from any thread, or use registerMBean to make
+ * them available through JMX. While metrics are not enabled, the Face only
+ * checks for a null FaceMetrics.
+ */
+public class FaceMetrics implements FaceMetricsMBean {
+  /**
+   * Create a FaceMetrics for the tables. You should not call this directly
+   * but call Face.setMetricsEnabled(true).
+   */
+  FaceMetrics
+    (PendingInterestTable pendingInterestTable,
+     DelayedCallTable delayedCallTable, Transport transport)
+  {
+    pendingInterestTable_ = pendingInterestTable;
+    delayedCallTable_ = delayedCallTable;
+    transport_ = transport;
+  }
+
+  public final int
+  getPendingInterestCount() { return pendingInterestTable_.size(); }
+
+  /**
+   * Get the number of calls to callLater and interest timeouts which are
+   * waiting to be called by processEvents.
+   * @return The number of delayed calls.
+   */
+  public final int
+  getDelayedCallCount() { return delayedCallTable_.size(); }
+
+  /**
+   * Get the number of bytes which the transport has queued to send. See
+   * Transport.getSendQueueSize.
+   * @return The send queue size.
+   */
+  public final long
+  getSendQueueSize() { return transport_.getSendQueueSize(); }
+
+  public final long
+  getInterestsSent() { return interestsSent_.get(); }
+
+  public final long
+  getDataSent() { return dataSent_.get(); }
+
+  /**
+   * Get the number of bytes of all packets sent, including Nack packets.
+   * @return The number of bytes.
+   */
+  public final long
+  getBytesSent() { return bytesSent_.get(); }
+
+  public final long
+  getInterestsReceived() { return interestsReceived_.get(); }
+
+  public final long
+  getDataReceived() { return dataReceived_.get(); }
+
+  /**
+   * Get the number of received Data packets which did not match a pending
+   * Interest.
+   * @return The number of unsolicited Data packets.
+   */
+  public final long
+  getUnsolicitedDataReceived() { return unsolicitedDataReceived_.get(); }
+
+  public final long
+  getNetworkNacksReceived() { return networkNacksReceived_.get(); }
+
+  /**
+   * Get the number of bytes of all received elements, including elements
+   * which could not be decoded.
+   * @return The number of bytes.
+   */
+  public final long
+  getBytesReceived() { return bytesReceived_.get(); }
+
+  public final long
+  getDecodeErrors() { return decodeErrors_.get(); }
+
+  /**
+   * Get the number of pending Interests which were satisfied by a Data packet.
+   * (One Data packet can satisfy more than one pending Interest.)
+   * @return The number of satisfied Interests.
+   */
+  public final long
+  getSatisfiedInterests() { return satisfactionLatency_.getCount(); }
+
+  public final long
+  getTimedOutInterests() { return timedOutInterests_.get(); }
+
+  /**
+   * Get the histogram of the time in nanoseconds from sending a pending
+   * Interest to receiving the Data which satisfies it.
+   * @return The LatencyHistogram.
+   */
+  public final LatencyHistogram
+  getSatisfactionLatency() { return satisfactionLatency_; }
+
+  public final double
+  getSatisfactionLatencyMeanMilliseconds()
+  {
+    return satisfactionLatency_.getMean() / NANOSECONDS_PER_MILLISECOND;
+  }
+
+  public final double
+  getSatisfactionLatencyP50Milliseconds()
+  {
+    return satisfactionLatency_.getValueAtPercentile(50) /
+      NANOSECONDS_PER_MILLISECOND;
+  }
+
+  public final double
+  getSatisfactionLatencyP99Milliseconds()
+  {
+    return satisfactionLatency_.getValueAtPercentile(99) /
+      NANOSECONDS_PER_MILLISECOND;
+  }
+
+  public final double
+  getSatisfactionLatencyMaxMilliseconds()
+  {
+    return satisfactionLatency_.getMax() / NANOSECONDS_PER_MILLISECOND;
+  }
+
+  /**
+   * Set the counters and the latency histogram to zero. This does not change
+   * the table sizes.
+   */
+  public final void
+  reset()
+  {
+    interestsSent_.set(0);
+    dataSent_.set(0);
+    bytesSent_.set(0);
+    interestsReceived_.set(0);
+    dataReceived_.set(0);
+    unsolicitedDataReceived_.set(0);
+    networkNacksReceived_.set(0);
+    bytesReceived_.set(0);
+    decodeErrors_.set(0);
+    timedOutInterests_.set(0);
+    satisfactionLatency_.reset();
+  }
+
+  /**
+   * Register this with the platform MBeanServer so that JMX clients can read
+   * the metrics.
+   * @param objectName The JMX object name, for example
+   * "net.named_data.jndn:type=Face,name=consumer".
+   * @throws JMException For error creating the ObjectName or registering,
+   * for example if the name is already registered.
+   */
+  public final void
+  registerMBean(String objectName) throws JMException
+  {
+    ObjectName name = new ObjectName(objectName);
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    mBeanName_ = name;
+  }
+
+  /**
+   * Unregister this from the platform MBeanServer if registerMBean was called.
+   * @throws JMException For error unregistering.
+   */
+  public final void
+  unregisterMBean() throws JMException
+  {
+    ObjectName name = mBeanName_;
+    mBeanName_ = null;
+    if (name != null)
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+  }
+
+  final void
+  onSentInterest(int nBytes)
+  {
+    interestsSent_.incrementAndGet();
+    bytesSent_.addAndGet(nBytes);
+  }
+
+  final void
+  onSentData(int nBytes)
+  {
+    dataSent_.incrementAndGet();
+    bytesSent_.addAndGet(nBytes);
+  }
+
+  final void
+  onSent(int nBytes) { bytesSent_.addAndGet(nBytes); }
+
+  final void
+  onReceivedElement(int nBytes) { bytesReceived_.addAndGet(nBytes); }
+
+  final void
+  onDecodeError() { decodeErrors_.incrementAndGet(); }
+
+  final void
+  onReceivedInterest() { interestsReceived_.incrementAndGet(); }
+
+  final void
+  onReceivedNetworkNack() { networkNacksReceived_.incrementAndGet(); }
+
+  /**
+   * Count the received Data and record the latency of each satisfied pending
+   * Interest.
+   * @param pitEntries The pending interest table entries which the Data
+   * satisfied.
+   */
+  final void
+  onReceivedData(List<PendingInterestTable.Entry> pitEntries)
+  {
+    dataReceived_.incrementAndGet();
+    if (pitEntries.isEmpty()) {
+      unsolicitedDataReceived_.incrementAndGet();
+      return;
+    }
+
+    long now = System.nanoTime();
+    for (int i = 0; i < pitEntries.size(); ++i) {
+      long expressTime = pitEntries.get(i).getExpressTimeNanoseconds();
+      // An entry added before metrics were enabled has no express time.
+      if (expressTime != 0)
+        satisfactionLatency_.record(now - expressTime);
+    }
+  }
+
+  final void
+  onTimeout() { timedOutInterests_.incrementAndGet(); }
+
+  private static final double NANOSECONDS_PER_MILLISECOND = 1000000.0;
+
+  private final PendingInterestTable pendingInterestTable_;
+  private final DelayedCallTable delayedCallTable_;
+  private final Transport transport_;
+  private final AtomicLong interestsSent_ = new AtomicLong();
+  private final AtomicLong dataSent_ = new AtomicLong();
+  private final AtomicLong bytesSent_ = new AtomicLong();
+  private final AtomicLong interestsReceived_ = new AtomicLong();
+  private final AtomicLong dataReceived_ = new AtomicLong();
+  private final AtomicLong unsolicitedDataReceived_ = new AtomicLong();
+  private final AtomicLong networkNacksReceived_ = new AtomicLong();
+  private final AtomicLong bytesReceived_ = new AtomicLong();
+  private final AtomicLong decodeErrors_ = new AtomicLong();
+  private final AtomicLong timedOutInterests_ = new AtomicLong();
+  private final LatencyHistogram satisfactionLatency_ = new LatencyHistogram();
+  private volatile ObjectName mBeanName_ = null;
+}
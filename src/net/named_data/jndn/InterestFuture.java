@@ -0,0 +1,309 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An InterestFuture is the result of Face.express. It is a Future for the Data
+ * packet which is completed directly by the thread which receives the Data,
+ * network Nack or timeout, so that there is no thread hop to call a callback.
+ * This is also the OnData, OnTimeout and OnNetworkNack for the pending
+ * interest, so that there is only one callback object. To compose
+ * asynchronous operations, use addListener. (This library supports Java 7, so
+ * this does not use CompletableFuture.)
+ *
+ * Note that if the Face uses a transport such as TcpTransport which needs
+ * processEvents, then get() waits for another thread to call processEvents.
+ * On the thread which calls processEvents, use addListener or isDone instead.
+ */
+public class InterestFuture implements Future<Data>, OnData, OnTimeout,
+  OnNetworkNack {
+  /**
+   * An InterestFuture.Listener is called when the InterestFuture is done.
+   */
+  public interface Listener {
+    /**
+     * This is called when the future is done with Data, a timeout, a network
+     * Nack, or because it is cancelled. This is called on the thread which
+     * completes the future, or on the thread which calls addListener if the
+     * future is already done.
+     * @param future The InterestFuture which is done.
+     */
+    void
+    onComplete(InterestFuture future);
+  }
+
+  /**
+   * Create a pending InterestFuture. This is an internal constructor used by
+   * Face.
+   * @param face The Face, used by cancel to remove the pending interest.
+   * @param pendingInterestId The pending interest ID.
+   * @param interest The Interest which is expressed.
+   */
+  InterestFuture(Face face, long pendingInterestId, Interest interest)
+  {
+    face_ = face;
+    pendingInterestId_ = pendingInterestId;
+    interest_ = interest;
+  }
+
+  /**
+   * Get the Interest given to Face.express.
+   * @return The Interest.
+   */
+  public final Interest
+  getInterest() { return interest_; }
+
+  /**
+   * Get the pending interest ID which can be used with
+   * Face.removePendingInterest.
+   * @return The pending interest ID.
+   */
+  public final long
+  getPendingInterestId() { return pendingInterestId_; }
+
+  /**
+   * Get the received Data packet.
+   * @return The Data, or null if not done or done without Data.
+   */
+  public final synchronized Data
+  getData() { return data_; }
+
+  /**
+   * Get the received network Nack.
+   * @return The NetworkNack, or null if not done or done without a network
+   * Nack.
+   */
+  public final synchronized NetworkNack
+  getNetworkNack() { return networkNack_; }
+
+  /**
+   * Check if the Interest timed out.
+   * @return True if the Interest timed out.
+   */
+  public final synchronized boolean
+  isTimedOut() { return isTimedOut_; }
+
+  /**
+   * Call listener.onComplete(this) when this future is done. If it is already
+   * done, call it immediately.
+   * @param listener The Listener to call.
+   */
+  public final void
+  addListener(Listener listener)
+  {
+    synchronized (this) {
+      if (!isDone_) {
+        listeners_.add(listener);
+        return;
+      }
+    }
+
+    callListener(listener);
+  }
+
+  public final synchronized boolean
+  isDone() { return isDone_; }
+
+  public final synchronized boolean
+  isCancelled() { return isCancelled_; }
+
+  /**
+   * Cancel the future and remove the pending interest so that a Data packet
+   * for it is ignored.
+   * @param mayInterruptIfRunning This is ignored.
+   * @return False if the future is already done, otherwise true.
+   */
+  public final boolean
+  cancel(boolean mayInterruptIfRunning)
+  {
+    ArrayList<Listener> listeners;
+    synchronized (this) {
+      if (isDone_)
+        return false;
+      isCancelled_ = true;
+      listeners = markDone();
+    }
+
+    face_.removePendingInterest(pendingInterestId_);
+    callListeners(listeners);
+    return true;
+  }
+
+  /**
+   * Wait until the future is done and return the Data.
+   * @return The received Data.
+   * @throws ExecutionException If the Interest timed out or received a network
+   * Nack. Use isTimedOut or getNetworkNack to see which.
+   * @throws CancellationException If the future was cancelled.
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  public final synchronized Data
+  get() throws InterruptedException, ExecutionException
+  {
+    while (!isDone_)
+      wait();
+
+    return getResult();
+  }
+
+  /**
+   * Wait until the future is done and return the Data.
+   * @param timeout The maximum time to wait.
+   * @param unit The unit of timeout.
+   * @return The received Data.
+   * @throws ExecutionException If the Interest timed out or received a network
+   * Nack. Use isTimedOut or getNetworkNack to see which.
+   * @throws CancellationException If the future was cancelled.
+   * @throws InterruptedException If interrupted while waiting.
+   * @throws TimeoutException If the future is not done before the timeout.
+   */
+  public final synchronized Data
+  get(long timeout, TimeUnit unit)
+    throws InterruptedException, ExecutionException, TimeoutException
+  {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!isDone_) {
+      long waitNanoseconds = deadline - System.nanoTime();
+      if (waitNanoseconds <= 0)
+        throw new TimeoutException();
+      TimeUnit.NANOSECONDS.timedWait(this, waitNanoseconds);
+    }
+
+    return getResult();
+  }
+
+  public final void
+  onData(Interest interest, Data data)
+  {
+    ArrayList<Listener> listeners;
+    synchronized (this) {
+      if (isDone_)
+        return;
+      data_ = data;
+      listeners = markDone();
+    }
+
+    callListeners(listeners);
+  }
+
+  public final void
+  onTimeout(Interest interest)
+  {
+    ArrayList<Listener> listeners;
+    synchronized (this) {
+      if (isDone_)
+        return;
+      isTimedOut_ = true;
+      listeners = markDone();
+    }
+
+    callListeners(listeners);
+  }
+
+  public final void
+  onNetworkNack(Interest interest, NetworkNack networkNack)
+  {
+    ArrayList<Listener> listeners;
+    synchronized (this) {
+      if (isDone_)
+        return;
+      networkNack_ = networkNack;
+      listeners = markDone();
+    }
+
+    callListeners(listeners);
+  }
+
+  /**
+   * Return the Data or throw the exception for the result. This must be
+   * called while synchronized and done.
+   */
+  private Data
+  getResult() throws ExecutionException
+  {
+    if (isCancelled_)
+      throw new CancellationException();
+    if (isTimedOut_)
+      throw new ExecutionException
+        (new Exception("Interest timed out: " + interest_.getName().toUri()));
+    if (networkNack_ != null)
+      throw new ExecutionException
+        (new Exception("Received a network Nack with reason " +
+         networkNack_.getReason() + " for interest " +
+         interest_.getName().toUri()));
+
+    return data_;
+  }
+
+  /**
+   * Mark the future done and wake up threads in get. This must be called while
+   * synchronized.
+   * @return The listeners to call with callListeners after releasing the lock.
+   */
+  private ArrayList<Listener>
+  markDone()
+  {
+    isDone_ = true;
+    notifyAll();
+    ArrayList<Listener> listeners = listeners_;
+    listeners_ = null;
+    return listeners;
+  }
+
+  private void
+  callListeners(ArrayList<Listener> listeners)
+  {
+    for (Listener listener : listeners)
+      callListener(listener);
+  }
+
+  private void
+  callListener(Listener listener)
+  {
+    // Need to catch and log exceptions at this async entry point.
+    try {
+      listener.onComplete(this);
+    } catch (Throwable ex) {
+      logger_.log(Level.SEVERE, "Error in onComplete", ex);
+    }
+  }
+
+  private final Face face_;
+  private final long pendingInterestId_;
+  private final Interest interest_;
+  // The following are guarded by the lock on this object.
+  private ArrayList<Listener> listeners_ = new ArrayList<Listener>();
+  private boolean isDone_ = false;
+  private boolean isCancelled_ = false;
+  private boolean isTimedOut_ = false;
+  private Data data_ = null;
+  private NetworkNack networkNack_ = null;
+  private static final Logger logger_ = Logger.getLogger
+    (InterestFuture.class.getName());
+}
@@ -20,14 +20,18 @@
 package net.named_data.jndn;
 
 import java.io.IOException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.ElementBatchListener;
 import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.SharedElementListener;
 import net.named_data.jndn.encoding.TlvWireFormat;
 import net.named_data.jndn.encoding.WireFormat;
 import net.named_data.jndn.encoding.tlv.Tlv;
@@ -37,6 +41,7 @@ import net.named_data.jndn.impl.DelayedCallTable;
 import net.named_data.jndn.impl.InterestFilterTable;
 import net.named_data.jndn.impl.PendingInterestTable;
 import net.named_data.jndn.impl.RegisteredPrefixTable;
+import net.named_data.jndn.lp.FragmentInfo;
 import net.named_data.jndn.lp.LpPacket;
 import net.named_data.jndn.security.KeyChain;
 import net.named_data.jndn.security.SecurityException;
@@ -48,7 +53,7 @@ import net.named_data.jndn.util.Common;
 /**
  * The Node class implements internal functionality for the Face class.
  */
-public class Node implements ElementListener {
+public class Node implements ElementBatchListener, SharedElementListener {
   /**
    * Create a new Node for communication with an NDN hub with the given
    * Transport object and connectionInfo.
@@ -60,6 +65,35 @@ public class Node implements ElementListener {
   {
     transport_ = transport;
     connectionInfo_ = connectionInfo;
+    pendingInterestTable_ = new PendingInterestTable();
+    interestFilterTable_ = new InterestFilterTable();
+    registeredPrefixTable_ = new RegisteredPrefixTable(interestFilterTable_);
+    delayedCallTable_ = new DelayedCallTable();
+    tablesNode_ = this;
+  }
+
+  /**
+   * Create a new Node for another connection which shares the pending interest
+   * table, interest filter table, registered prefix table, delayed calls,
+   * entry IDs and settings such as setInterestLoopbackEnabled of tablesNode, so
+   * that a packet received on either connection is matched against the same
+   * tables. This is used by StripedFace.
+   * @param transport A Transport object used for communication.
+   * @param connectionInfo A Transport.ConnectionInfo to be used to connect to
+   * the transport.
+   * @param tablesNode The Node whose tables are shared.
+   */
+  Node
+    (Transport transport, Transport.ConnectionInfo connectionInfo,
+     Node tablesNode)
+  {
+    transport_ = transport;
+    connectionInfo_ = connectionInfo;
+    pendingInterestTable_ = tablesNode.pendingInterestTable_;
+    interestFilterTable_ = tablesNode.interestFilterTable_;
+    registeredPrefixTable_ = tablesNode.registeredPrefixTable_;
+    delayedCallTable_ = tablesNode.delayedCallTable_;
+    tablesNode_ = tablesNode.tablesNode_;
   }
 
   /**
@@ -70,7 +104,62 @@ public class Node implements ElementListener {
   public final void
   setInterestLoopbackEnabled(boolean interestLoopbackEnabled)
   {
-    interestLoopbackEnabled_ = interestLoopbackEnabled;
+    tablesNode_.interestLoopbackEnabled_ = interestLoopbackEnabled;
+  }
+
+  /**
+   * Enable or disable Interest aggregation. If enabled, then when
+   * expressInterest is called with an Interest which has the same name and
+   * selectors as a pending Interest which was already sent and whose Interest
+   * lifetime does not end before the new Interest's lifetime, add it to the
+   * pending interest table without sending it again. The Data or network Nack for the sent Interest is given to the
+   * callbacks of all the aggregated Interests, while each one still has its
+   * own timeout. This is disabled by default.
+   * @param interestAggregationEnabled If true, enable Interest aggregation,
+   * otherwise disable it.
+   */
+  public final void
+  setInterestAggregationEnabled(boolean interestAggregationEnabled)
+  {
+    tablesNode_.interestAggregationEnabled_ = interestAggregationEnabled;
+  }
+
+  /**
+   * Enable or disable metrics. If enabled, create a new FaceMetrics which is
+   * returned by getMetrics(), otherwise stop counting and set it to null.
+   * @param metricsEnabled If true, enable metrics, otherwise disable them.
+   */
+  public final void
+  setMetricsEnabled(boolean metricsEnabled)
+  {
+    if (!metricsEnabled)
+      tablesNode_.metrics_ = null;
+    else if (tablesNode_.metrics_ == null)
+      tablesNode_.metrics_ = new FaceMetrics
+        (pendingInterestTable_, delayedCallTable_, transport_);
+  }
+
+  /**
+   * Get the FaceMetrics created by setMetricsEnabled(true).
+   * @return The FaceMetrics, or null if metrics are not enabled.
+   */
+  public final FaceMetrics
+  getMetrics() { return tablesNode_.metrics_; }
+
+  /**
+   * Enable or disable batched processing of received packets. If enabled, then
+   * when the transport receives several packets together (for example in one
+   * read from the socket), decode all of them, then match all of them against
+   * the pending interest table and interest filter table, then call the
+   * callbacks. If disabled, process each packet in turn. This is disabled by
+   * default.
+   * @param receiveBatchEnabled If true, enable batched processing, otherwise
+   * disable it.
+   */
+  public final void
+  setReceiveBatchEnabled(boolean receiveBatchEnabled)
+  {
+    tablesNode_.receiveBatchEnabled_ = receiveBatchEnabled;
   }
 
   /**
@@ -197,17 +286,105 @@ public class Node implements ElementListener {
     }
   }
 
+  /**
+   * Send many Interests like expressInterest. Once connected, this adds all
+   * the pending interest table entries and sets up their timeouts before
+   * sending, and uses one delayed call for all the Interests with the same
+   * lifetime instead of one per Interest.
+   * @param pendingInterestIds The getNextEntryId() for each pending interest
+   * ID.
+   * @param interestCopies The Interests which are NOT copied for this internal
+   * Node method.
+   * @param onData The OnData for each Interest.
+   * @param onTimeout The OnTimeout for each Interest. An element may be null.
+   * @param onNetworkNack The OnNetworkNack for each Interest. An element may be
+   * null.
+   * @param wireFormat A WireFormat object used to encode the messages.
+   * @param face The face which has the callLater method, used for interest
+   * timeouts.
+   * @throws IOException For I/O error in sending an interest.
+   * @throws Error If an encoded interest size exceeds getMaxNdnPacketSize().
+   */
+  public final void
+  expressInterests
+    (long[] pendingInterestIds, Interest[] interestCopies, OnData[] onData,
+     OnTimeout[] onTimeout, OnNetworkNack[] onNetworkNack,
+     WireFormat wireFormat, Face face) throws IOException
+  {
+    int i = 0;
+    // Use expressInterest to connect, and for each Interest while the async
+    // connect is in progress.
+    for (; i < interestCopies.length &&
+           connectStatus_ != ConnectStatus.CONNECT_COMPLETE; ++i)
+      expressInterest
+        (pendingInterestIds[i], interestCopies[i], onData[i], onTimeout[i],
+         onNetworkNack[i], wireFormat, face);
+    if (i >= interestCopies.length)
+      return;
+
+    // Add all the entries and group them by their timeout delay.
+    ArrayList<PendingInterestTable.Entry> entries =
+      new ArrayList<PendingInterestTable.Entry>();
+    HashMap<Double, InterestTimeouts> timeouts =
+      new HashMap<Double, InterestTimeouts>();
+    for (; i < interestCopies.length; ++i) {
+      Interest interestCopy = interestCopies[i];
+      interestCopy.setNonce(nonceTemplate_);
+      interestCopy.refreshNonce();
+
+      PendingInterestTable.Entry pendingInterest = pendingInterestTable_.add
+        (pendingInterestIds[i], interestCopy, onData[i], onTimeout[i],
+         onNetworkNack[i]);
+      if (pendingInterest == null)
+        // removePendingInterest was already called with the pendingInterestId.
+        continue;
+      entries.add(pendingInterest);
+      if (tablesNode_.metrics_ != null)
+        pendingInterest.setExpressTimeNanoseconds(System.nanoTime());
+
+      double delayMilliseconds = interestCopy.getInterestLifetimeMilliseconds();
+      if (onTimeout[i] == null && delayMilliseconds < 0.0)
+        continue;
+      if (delayMilliseconds < 0.0)
+        // Use a default timeout delay.
+        delayMilliseconds = 4000.0;
+
+      InterestTimeouts interestTimeouts = timeouts.get(delayMilliseconds);
+      if (interestTimeouts == null) {
+        interestTimeouts = new InterestTimeouts();
+        timeouts.put(delayMilliseconds, interestTimeouts);
+      }
+      interestTimeouts.pendingInterests_.add(pendingInterest);
+    }
+
+    for (Map.Entry<Double, InterestTimeouts> entry : timeouts.entrySet())
+      face.callLater(entry.getKey(), entry.getValue());
+
+    for (PendingInterestTable.Entry pendingInterest : entries) {
+      if (tablesNode_.interestAggregationEnabled_ &&
+          pendingInterestTable_.aggregate(pendingInterest))
+        continue;
+      sendInterest(pendingInterest.getInterest(), wireFormat);
+    }
+  }
+
   /**
    * Remove the pending interest entry with the pendingInterestId from the
    * pending interest table. This does not affect another pending interest with
    * a different pendingInterestId, even if it has the same interest name.
-   * If there is no entry with the pendingInterestId, do nothing.
+   * If there is no entry with the pendingInterestId, do nothing. If other
+   * pending interests were aggregated with the removed one, send the Interest
+   * of one of them.
    * @param pendingInterestId The ID returned from expressInterest.
    */
   public final void
   removePendingInterest(long pendingInterestId)
   {
-    pendingInterestTable_.removePendingInterest(pendingInterestId);
+    ArrayList<PendingInterestTable.Entry> entriesToSend =
+      new ArrayList<PendingInterestTable.Entry>(0);
+    pendingInterestTable_.removePendingInterest
+      (pendingInterestId, entriesToSend);
+    sendPromotedInterests(entriesToSend);
   }
 
   /**
@@ -335,7 +512,7 @@ public class Node implements ElementListener {
   public final void
   putData(Data data, WireFormat wireFormat) throws IOException
   {
-    if (interestLoopbackEnabled_) {
+    if (tablesNode_.interestLoopbackEnabled_) {
       boolean hasApplicationMatch = satisfyPendingInterests(data);
       if (hasApplicationMatch)
         // satisfyPendingInterests called the OnData callback for one of
@@ -350,12 +527,36 @@ public class Node implements ElementListener {
         return;
     }
 
+    ByteBuffer sendBuffer = null;
+    if (data.getDefaultWireEncoding().isNull() ||
+        data.getDefaultWireEncodingFormat() != wireFormat)
+      // We need to encode, so try to encode directly into the send buffer.
+      sendBuffer = transport_.getSendBuffer(getMaxNdnPacketSize());
+
+    if (sendBuffer != null) {
+      try {
+        wireFormat.encodeDataInto(data, sendBuffer);
+      } catch (BufferOverflowException ex) {
+        throw new Error
+          ("The encoded Data packet size exceeds the maximum limit getMaxNdnPacketSize()");
+      }
+      sendBuffer.flip();
+      transport_.send(sendBuffer);
+      FaceMetrics metrics = tablesNode_.metrics_;
+      if (metrics != null)
+        metrics.onSentData(sendBuffer.remaining());
+      return;
+    }
+
     Blob encoding = data.wireEncode(wireFormat);
     if (encoding.size() > getMaxNdnPacketSize())
       throw new Error
         ("The encoded Data packet size exceeds the maximum limit getMaxNdnPacketSize()");
 
     transport_.send(encoding.buf());
+    FaceMetrics metrics = tablesNode_.metrics_;
+    if (metrics != null)
+      metrics.onSentData(encoding.size());
   }
 
   /**
@@ -372,6 +573,9 @@ public class Node implements ElementListener {
         ("The encoded packet size exceeds the maximum limit getMaxNdnPacketSize()");
 
     transport_.send(encoding);
+    FaceMetrics metrics = tablesNode_.metrics_;
+    if (metrics != null)
+      metrics.onSent(encoding.remaining());
   }
 
   /**
@@ -391,6 +595,9 @@ public class Node implements ElementListener {
         ("The encoded Nack packet size exceeds the maximum limit getMaxNdnPacketSize()");
 
     transport_.send(encoding.buf());
+    FaceMetrics metrics = tablesNode_.metrics_;
+    if (metrics != null)
+      metrics.onSent(encoding.size());
   }
 
   /**
@@ -416,78 +623,143 @@ public class Node implements ElementListener {
     delayedCallTable_.callTimedOut();
   }
 
+  /**
+   * Get the time of the next call which processEvents will make for a call to
+   * callLater.
+   * @return The call time in milliseconds, similar to
+   * Common.getNowMilliseconds(), or -1 if there are no delayed calls.
+   */
+  public final double
+  getNextDelayedCallTime() { return delayedCallTable_.getNextCallTime(); }
+
   public final Transport
   getTransport() { return transport_; }
 
+  /**
+   * Check if this Node connected the transport and the transport is no longer
+   * connected, for example because the forwarder closed the connection.
+   * @return True if disconnected, false if still connected, not connected yet,
+   * or if the transport does not implement getIsConnected.
+   */
+  public final boolean
+  isDisconnected()
+  {
+    if (connectStatus_ != ConnectStatus.CONNECT_COMPLETE)
+      return false;
+
+    try {
+      return !transport_.getIsConnected();
+    } catch (IOException ex) {
+      return true;
+    } catch (UnsupportedOperationException ex) {
+      return false;
+    }
+  }
+
   public final Transport.ConnectionInfo
   getConnectionInfo() { return connectionInfo_; }
 
   public final void onReceivedElement(ByteBuffer element) throws EncodingException
   {
-    LpPacket lpPacket = null;
-    if (element.get(0) == Tlv.LpPacket_LpPacket) {
-      // Decode the LpPacket and replace element with the fragment.
-      lpPacket = new LpPacket();
-      // Set copy false so that the fragment is a slice which will be copied below.
-      // The header fields are all integers and don't need to be copied.
-      TlvWireFormat.get().decodeLpPacket(lpPacket, element, false);
-      element = lpPacket.getFragmentWireEncoding().buf();
-    }
+    // The element buffer is reused by the transport, so copy it once. The
+    // decoded fields point into the copy.
+    processElement(new Blob(element, true));
+  }
 
-    // First, decode as Interest or Data.
-    Interest interest = null;
-    Data data = null;
-    if (element.get(0) == Tlv.Interest || element.get(0) == Tlv.Data) {
-      TlvDecoder decoder = new TlvDecoder(element);
-      if (decoder.peekType(Tlv.Interest, element.remaining())) {
-        interest = new Interest();
-        interest.wireDecode(element, TlvWireFormat.get());
+  /**
+   * Process the elements which the transport received together. If
+   * setReceiveBatchEnabled(true) was called, then decode all the elements,
+   * then match all the packets against the pending interest table and
+   * interest filter table, then call the callbacks. Otherwise, just call
+   * onReceivedElement for each element.
+   * @param elements The list of elements. The buffers are only used during this
+   * call.
+   * @throws EncodingException For invalid encoding of an element. In batch
+   * mode, this is thrown after processing the other elements.
+   */
+  public final void onReceivedElements(List<ByteBuffer> elements)
+    throws EncodingException
+  {
+    if (!tablesNode_.receiveBatchEnabled_ || elements.size() == 1) {
+      for (int i = 0; i < elements.size(); ++i)
+        onReceivedElement(elements.get(i));
+      return;
+    }
 
-        if (lpPacket != null)
-          interest.setLpPacket(lpPacket);
-      }
-      else if (decoder.peekType(Tlv.Data, element.remaining())) {
-        data = new Data();
-        data.wireDecode(element, TlvWireFormat.get());
+    ArrayList<Blob> copies = new ArrayList<Blob>(elements.size());
+    for (int i = 0; i < elements.size(); ++i)
+      copies.add(new Blob(elements.get(i), true));
+    processBatch(copies);
+  }
 
-        if (lpPacket != null)
-          data.setLpPacket(lpPacket);
-      }
+  /**
+   * Process the elements from a transport with zero-copy receive enabled, the
+   * same as onReceivedElements except that the decoded packets point into the
+   * element Blobs without copying.
+   * @param elements The list of elements.
+   * @throws EncodingException For invalid encoding of an element. In batch
+   * mode, this is thrown after processing the other elements.
+   */
+  public final void onReceivedSharedElements(List<Blob> elements)
+    throws EncodingException
+  {
+    if (!tablesNode_.receiveBatchEnabled_ || elements.size() == 1) {
+      for (int i = 0; i < elements.size(); ++i)
+        processElement(elements.get(i));
+      return;
     }
 
-    if (lpPacket != null) {
-      // We have decoded the fragment, so remove the wire encoding to save memory.
-      lpPacket.setFragmentWireEncoding(new Blob());
+    processBatch(elements);
+  }
 
-      NetworkNack networkNack = NetworkNack.getFirstHeader(lpPacket);
-      if (networkNack != null) {
-        if (interest == null)
-          // We got a Nack but not for an Interest, so drop the packet.
-          return;
+  /**
+   * Decode the element, match it against the tables and call the callbacks.
+   * @param element The element, which the decoded packet may point into.
+   */
+  private void
+  processElement(Blob element) throws EncodingException
+  {
+    ReceivedPacket packet = decodeReceivedElement(element);
+    if (packet == null)
+      return;
 
-        ArrayList<PendingInterestTable.Entry> pitEntries =
-          new ArrayList<PendingInterestTable.Entry>();
-        pendingInterestTable_.extractEntriesForNackInterest(interest, pitEntries);
-        for (int i = 0; i < pitEntries.size(); ++i) {
-          PendingInterestTable.Entry pendingInterest = pitEntries.get(i);
-          try {
-            pendingInterest.getOnNetworkNack().onNetworkNack
-              (pendingInterest.getInterest(), networkNack);
-          } catch (Throwable ex) {
-            logger_.log(Level.SEVERE, "Error in onNack", ex);
-          }
-        }
+    matchReceivedPacket(packet);
+    callReceivedPacketCallbacks(packet);
+  }
 
-        // We have processed the network Nack packet.
-        return;
+  /**
+   * Decode all the elements, then match all the packets against the tables,
+   * then call the callbacks.
+   * @param elements The list of elements, which the decoded packets may point
+   * into.
+   */
+  private void
+  processBatch(List<Blob> elements) throws EncodingException
+  {
+    // Decode all the elements. Continue after an error so that we don't drop
+    // the other packets in the batch.
+    ArrayList<ReceivedPacket> packets =
+      new ArrayList<ReceivedPacket>(elements.size());
+    EncodingException decodeError = null;
+    for (int i = 0; i < elements.size(); ++i) {
+      try {
+        ReceivedPacket packet = decodeReceivedElement(elements.get(i));
+        if (packet != null)
+          packets.add(packet);
+      } catch (EncodingException ex) {
+        if (decodeError == null)
+          decodeError = ex;
       }
     }
 
-    // Now process as Interest or Data.
-    if (interest != null)
-      dispatchInterest(interest);
-    else if (data != null)
-      satisfyPendingInterests(data);
+    for (int i = 0; i < packets.size(); ++i)
+      matchReceivedPacket(packets.get(i));
+    // The tables are not locked, so call the callbacks.
+    for (int i = 0; i < packets.size(); ++i)
+      callReceivedPacketCallbacks(packets.get(i));
+
+    if (decodeError != null)
+      throw decodeError;
   }
 
   /**
@@ -522,14 +794,20 @@ public class Node implements ElementListener {
 
   /**
    * Call callback.run() after the given delay. This adds to
-   * delayedCallTable_ which is used by processEvents().
+   * delayedCallTable_ which is used by processEvents(). If the callback is the
+   * timeout for a pending interest, then the pending interest table cancels
+   * the call when the pending interest is removed.
    * @param delayMilliseconds The delay in milliseconds.
    * @param callback This calls callback.run() after the delay.
    */
   public final void
   callLater(double delayMilliseconds, Runnable callback)
   {
-    delayedCallTable_.callLater(delayMilliseconds, callback);
+    DelayedCallTable.Entry delayedCall =
+      delayedCallTable_.callLater(delayMilliseconds, callback);
+    if (callback instanceof InterestTimeout)
+      pendingInterestTable_.setDelayedCall
+        (((InterestTimeout)callback).pendingInterest_, delayedCall);
   }
 
   /**
@@ -543,6 +821,9 @@ public class Node implements ElementListener {
   public long
   getNextEntryId()
   {
+    if (tablesNode_ != this)
+      return tablesNode_.getNextEntryId();
+
     synchronized(lastEntryIdLock_) {
       return ++lastEntryId_;
     }
@@ -551,14 +832,41 @@ public class Node implements ElementListener {
   /**
    * This is used in callLater for when the pending interest expires. If the
    * pendingInterest is still in the pendingInterestTable_, remove it and call
-   * its onTimeout callback.
+   * its onTimeout callback. If other pending interests were aggregated with
+   * it, send the Interest of one of them.
    * @param pendingInterest The pending interest to check.
    */
   private void
   processInterestTimeout(PendingInterestTable.Entry pendingInterest)
   {
-    if (pendingInterestTable_.removeEntry(pendingInterest))
+    ArrayList<PendingInterestTable.Entry> entriesToSend =
+      new ArrayList<PendingInterestTable.Entry>(0);
+    if (pendingInterestTable_.removeEntry(pendingInterest, entriesToSend)) {
+      FaceMetrics metrics = tablesNode_.metrics_;
+      if (metrics != null)
+        metrics.onTimeout();
+      sendPromotedInterests(entriesToSend);
       pendingInterest.callTimeout();
+    }
+  }
+
+  /**
+   * Send the Interest of each entry which the pending interest table promoted
+   * to be sent in place of a removed entry which it was aggregated with. This
+   * logs an I/O error since the caller can't report it.
+   * @param entriesToSend The promoted entries.
+   */
+  private void
+  sendPromotedInterests(ArrayList<PendingInterestTable.Entry> entriesToSend)
+  {
+    for (PendingInterestTable.Entry pendingInterest : entriesToSend) {
+      try {
+        sendInterest
+          (pendingInterest.getInterest(), WireFormat.getDefaultWireFormat());
+      } catch (IOException ex) {
+        logger_.log(Level.SEVERE, "Error sending an aggregated Interest", ex);
+      }
+    }
   }
 
   /**
@@ -593,6 +901,8 @@ public class Node implements ElementListener {
     if (pendingInterest == null)
       // removePendingInterest was already called with the pendingInterestId.
       return;
+    if (tablesNode_.metrics_ != null)
+      pendingInterest.setExpressTimeNanoseconds(System.nanoTime());
 
     if (onTimeout != null || interestCopy.getInterestLifetimeMilliseconds() >= 0.0) {
       // Set up the timeout.
@@ -601,22 +911,56 @@ public class Node implements ElementListener {
         // Use a default timeout delay.
         delayMilliseconds = 4000.0;
 
-      face.callLater
-        (delayMilliseconds,
-         new Runnable() {
-           public void run() { processInterestTimeout(pendingInterest); }
-         });
+      face.callLater(delayMilliseconds, new InterestTimeout(pendingInterest));
     }
 
+    if (tablesNode_.interestAggregationEnabled_ &&
+        pendingInterestTable_.aggregate(pendingInterest))
+      // A pending Interest with the same name and selectors was already sent.
+      return;
+    sendInterest(interestCopy, wireFormat);
+  }
+
+  /**
+   * Encode and send the interest, unless it is for the timeoutPrefix_. If
+   * Interest loopback is enabled, then also call dispatchInterest.
+   * @param interestCopy The Interest to send.
+   * @param wireFormat A WireFormat object used to encode the message.
+   * @throws IOException For I/O error in sending the interest.
+   * @throws Error If the encoded interest size exceeds getMaxNdnPacketSize().
+   */
+  private void
+  sendInterest(Interest interestCopy, WireFormat wireFormat) throws IOException
+  {
     // Special case: For timeoutPrefix_ we don't actually send the interest.
     if (!timeoutPrefix_.match(interestCopy.getName())) {
-      Blob encoding = interestCopy.wireEncode(wireFormat);
-      if (encoding.size() > getMaxNdnPacketSize())
-        throw new Error
-          ("The encoded interest size exceeds the maximum limit getMaxNdnPacketSize()");
-      transport_.send(encoding.buf());
+      ByteBuffer sendBuffer = transport_.getSendBuffer(getMaxNdnPacketSize());
+      if (sendBuffer != null) {
+        // Encode directly into the transport's send buffer.
+        try {
+          wireFormat.encodeInterestInto(interestCopy, sendBuffer);
+        } catch (BufferOverflowException ex) {
+          throw new Error
+            ("The encoded interest size exceeds the maximum limit getMaxNdnPacketSize()");
+        }
+        sendBuffer.flip();
+        transport_.send(sendBuffer);
+        FaceMetrics metrics = tablesNode_.metrics_;
+        if (metrics != null)
+          metrics.onSentInterest(sendBuffer.remaining());
+      }
+      else {
+        Blob encoding = interestCopy.wireEncode(wireFormat);
+        if (encoding.size() > getMaxNdnPacketSize())
+          throw new Error
+            ("The encoded interest size exceeds the maximum limit getMaxNdnPacketSize()");
+        transport_.send(encoding.buf());
+        FaceMetrics metrics = tablesNode_.metrics_;
+        if (metrics != null)
+          metrics.onSentInterest(encoding.size());
+      }
 
-      if (interestLoopbackEnabled_)
+      if (tablesNode_.interestLoopbackEnabled_)
         dispatchInterest(interestCopy);
     }
   }
@@ -629,14 +973,25 @@ public class Node implements ElementListener {
   private void
   dispatchInterest(Interest interest)
   {
-    // Quickly lock and get all interest filter callbacks which match.
-    ArrayList matchedFilters = new ArrayList();
+    // Quickly get all interest filter callbacks which match.
+    ArrayList<InterestFilterTable.Entry> matchedFilters =
+      new ArrayList<InterestFilterTable.Entry>();
     interestFilterTable_.getMatchedFilters(interest, matchedFilters);
 
-    // The lock on interestFilterTable_ is released, so call the callbacks.
+    callOnInterest(interest, matchedFilters);
+  }
+
+  /**
+   * Call the OnInterest callback for each of the matched filters.
+   * @param interest The Interest to pass to the callbacks.
+   * @param matchedFilters The list of InterestFilterTable.Entry.
+   */
+  private static void
+  callOnInterest
+    (Interest interest, ArrayList<InterestFilterTable.Entry> matchedFilters)
+  {
     for (int i = 0; i < matchedFilters.size(); ++i) {
-      InterestFilterTable.Entry entry =
-        (InterestFilterTable.Entry)matchedFilters.get(i);
+      InterestFilterTable.Entry entry = matchedFilters.get(i);
       try {
         entry.getOnInterest().onInterest
          (entry.getFilter().getPrefix(), interest, entry.getFace(),
@@ -656,26 +1011,223 @@ public class Node implements ElementListener {
   private boolean
   satisfyPendingInterests(Data data)
   {
-    boolean hasMatch = false;
-
     ArrayList<PendingInterestTable.Entry> pitEntries =
       new ArrayList<PendingInterestTable.Entry>();
     pendingInterestTable_.extractEntriesForExpressedInterest(data, pitEntries);
+    callOnData(data, pitEntries);
+
+    return pitEntries.size() > 0;
+  }
+
+  /**
+   * Call the OnData callback for each of the extracted pending interests.
+   * @param data The Data packet to pass to the callbacks.
+   * @param pitEntries The list of PendingInterestTable.Entry.
+   */
+  private static void
+  callOnData(Data data, ArrayList<PendingInterestTable.Entry> pitEntries)
+  {
     for (int i = 0; i < pitEntries.size(); ++i) {
       PendingInterestTable.Entry pendingInterest = pitEntries.get(i);
-      hasMatch = true;
       try {
         pendingInterest.getOnData().onData(pendingInterest.getInterest(), data);
       } catch (Throwable ex) {
         logger_.log(Level.SEVERE, "Error in onData", ex);
       }
     }
-
-    return hasMatch;
   }
 
   private enum ConnectStatus { UNCONNECTED, CONNECT_REQUESTED, CONNECT_COMPLETE }
 
+  /**
+   * A ReceivedPacket holds a decoded Interest, Data or network Nack and the
+   * matching table entries until the callbacks are called.
+   */
+  private static class ReceivedPacket {
+    public Interest interest_ = null;
+    public Data data_ = null;
+    public NetworkNack networkNack_ = null;
+    public final ArrayList<PendingInterestTable.Entry> pitEntries_ =
+      new ArrayList<PendingInterestTable.Entry>();
+    public final ArrayList<InterestFilterTable.Entry> matchedFilters_ =
+      new ArrayList<InterestFilterTable.Entry>();
+  }
+
+  /**
+   * Decode the element as an Interest or Data, which may be in an LpPacket with
+   * a network Nack.
+   * @param element The received element. The decoded packet points into it
+   * without copying.
+   * @return A new ReceivedPacket, or null if the packet should be dropped.
+   * @throws EncodingException For invalid encoding.
+   */
+  private static ReceivedPacket
+  decodeElement(Blob element) throws EncodingException
+  {
+    ByteBuffer input = element.buf();
+    LpPacket lpPacket = null;
+    if (input.get(0) == Tlv.LpPacket_LpPacket) {
+      // Decode the LpPacket and replace element with the fragment.
+      lpPacket = new LpPacket();
+      // Set copy false so that the fragment is a slice of the element.
+      // The header fields are all integers and don't need to be copied.
+      TlvWireFormat.get().decodeLpPacket(lpPacket, input, false);
+      FragmentInfo fragmentInfo = FragmentInfo.getFirstHeader(lpPacket);
+      if (fragmentInfo != null && fragmentInfo.getFragCount() > 1)
+        // This is one fragment of a packet, but the transport did not
+        // reassemble it, so drop it.
+        return null;
+      element = lpPacket.getFragmentWireEncoding();
+      if (element.size() == 0)
+        // An LpPacket with only header fields, such as an idle packet.
+        return null;
+      input = element.buf();
+    }
+
+    // First, decode as Interest or Data.
+    ReceivedPacket packet = new ReceivedPacket();
+    if (input.get(0) == Tlv.Interest || input.get(0) == Tlv.Data) {
+      TlvDecoder decoder = new TlvDecoder(input);
+      if (decoder.peekType(Tlv.Interest, input.remaining())) {
+        packet.interest_ = new Interest();
+        packet.interest_.wireDecode(element, TlvWireFormat.get());
+
+        if (lpPacket != null)
+          packet.interest_.setLpPacket(lpPacket);
+      }
+      else if (decoder.peekType(Tlv.Data, input.remaining())) {
+        packet.data_ = new Data();
+        // Most applications only use the name and content, so decode the other
+        // fields when needed.
+        packet.data_.wireDecodeLazy(element, TlvWireFormat.get());
+
+        if (lpPacket != null)
+          packet.data_.setLpPacket(lpPacket);
+      }
+    }
+
+    if (lpPacket != null) {
+      // We have decoded the fragment, so remove the wire encoding to save memory.
+      lpPacket.setFragmentWireEncoding(new Blob());
+
+      packet.networkNack_ = NetworkNack.getFirstHeader(lpPacket);
+      if (packet.networkNack_ != null && packet.interest_ == null)
+        // We got a Nack but not for an Interest, so drop the packet.
+        return null;
+    }
+
+    if (packet.interest_ == null && packet.data_ == null)
+      return null;
+    return packet;
+  }
+
+  /**
+   * Call decodeElement, and count the element and a decoding error if metrics
+   * are enabled.
+   */
+  private ReceivedPacket
+  decodeReceivedElement(Blob element) throws EncodingException
+  {
+    FaceMetrics metrics = tablesNode_.metrics_;
+    if (metrics == null)
+      return decodeElement(element);
+
+    metrics.onReceivedElement(element.size());
+    try {
+      return decodeElement(element);
+    } catch (EncodingException ex) {
+      metrics.onDecodeError();
+      throw ex;
+    }
+  }
+
+  /**
+   * Extract the pending interest table entries for the network Nack or Data in
+   * packet, or get the interest filter table entries for the Interest in
+   * packet.
+   * @param packet The ReceivedPacket from decodeElement.
+   */
+  private void
+  matchReceivedPacket(ReceivedPacket packet)
+  {
+    FaceMetrics metrics = tablesNode_.metrics_;
+    if (packet.networkNack_ != null) {
+      pendingInterestTable_.extractEntriesForNackInterest
+        (packet.interest_, packet.pitEntries_);
+      if (metrics != null)
+        metrics.onReceivedNetworkNack();
+    }
+    else if (packet.interest_ != null) {
+      interestFilterTable_.getMatchedFilters
+        (packet.interest_, packet.matchedFilters_);
+      if (metrics != null)
+        metrics.onReceivedInterest();
+    }
+    else {
+      pendingInterestTable_.extractEntriesForExpressedInterest
+        (packet.data_, packet.pitEntries_);
+      if (metrics != null)
+        metrics.onReceivedData(packet.pitEntries_);
+    }
+  }
+
+  /**
+   * Call the callbacks for the entries which matchReceivedPacket found.
+   * @param packet The ReceivedPacket from matchReceivedPacket.
+   */
+  private void
+  callReceivedPacketCallbacks(ReceivedPacket packet)
+  {
+    if (packet.networkNack_ != null) {
+      for (int i = 0; i < packet.pitEntries_.size(); ++i) {
+        PendingInterestTable.Entry pendingInterest = packet.pitEntries_.get(i);
+        try {
+          pendingInterest.getOnNetworkNack().onNetworkNack
+            (pendingInterest.getInterest(), packet.networkNack_);
+        } catch (Throwable ex) {
+          logger_.log(Level.SEVERE, "Error in onNack", ex);
+        }
+      }
+    }
+    else if (packet.interest_ != null)
+      callOnInterest(packet.interest_, packet.matchedFilters_);
+    else
+      callOnData(packet.data_, packet.pitEntries_);
+  }
+
+  /**
+   * An InterestTimeout is the callback given to Face.callLater for the timeout
+   * of a pending interest. Node.callLater recognizes it so that the delayed
+   * call can be cancelled when the pending interest is removed.
+   */
+  private class InterestTimeout implements Runnable {
+    public InterestTimeout(PendingInterestTable.Entry pendingInterest)
+    {
+      pendingInterest_ = pendingInterest;
+    }
+
+    public void
+    run() { processInterestTimeout(pendingInterest_); }
+
+    public final PendingInterestTable.Entry pendingInterest_;
+  }
+
+  /**
+   * An InterestTimeouts is one delayed call to check the timeout of many
+   * pending interests with the same lifetime, from expressInterests.
+   */
+  private class InterestTimeouts implements Runnable {
+    public void
+    run()
+    {
+      for (PendingInterestTable.Entry pendingInterest : pendingInterests_)
+        processInterestTimeout(pendingInterest);
+    }
+
+    public final ArrayList<PendingInterestTable.Entry> pendingInterests_ =
+      new ArrayList<PendingInterestTable.Entry>();
+  }
+
   private static class RegisterResponse implements OnData, OnTimeout {
     public RegisterResponse(Info info, Node parent)
     {
@@ -954,13 +1506,13 @@ public class Node implements ElementListener {
 
   private final Transport transport_;
   private final Transport.ConnectionInfo connectionInfo_;
-  private final PendingInterestTable pendingInterestTable_ =
-    new PendingInterestTable();
-  private final InterestFilterTable interestFilterTable_ =
-    new InterestFilterTable();
-  private final RegisteredPrefixTable registeredPrefixTable_ =
-    new RegisteredPrefixTable(interestFilterTable_);
-  private final DelayedCallTable delayedCallTable_ = new DelayedCallTable();
+  private final PendingInterestTable pendingInterestTable_;
+  private final InterestFilterTable interestFilterTable_;
+  private final RegisteredPrefixTable registeredPrefixTable_;
+  private final DelayedCallTable delayedCallTable_;
+  // The Node which has the entry IDs and settings such as
+  // interestLoopbackEnabled_, which is this unless the tables are shared.
+  private final Node tablesNode_;
   // Use ArrayList without generics so it works with older Java compilers.
   private final List onConnectedCallbacks_ =
     Collections.synchronizedList(new ArrayList()); // Runnable
@@ -971,6 +1523,10 @@ public class Node implements ElementListener {
   private final Object lastEntryIdLock_ = new Object();
   private ConnectStatus connectStatus_ = ConnectStatus.UNCONNECTED;
   boolean interestLoopbackEnabled_ = false;
+  // These are set through tablesNode_ by other threads.
+  private volatile boolean receiveBatchEnabled_ = false;
+  private volatile boolean interestAggregationEnabled_ = false;
+  private volatile FaceMetrics metrics_ = null;
   private static Blob nonceTemplate_ = new Blob(new byte[] { 0, 0, 0, 0 });
   private static final Logger logger_ = Logger.getLogger(Node.class.getName());
 }
@@ -0,0 +1,275 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.WireFormat;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.transport.Transport;
+
+/**
+ * StripedFace extends Face to use several connections ("stripes") to the same
+ * forwarder, or to several forwarders, for more bandwidth than one connection
+ * and one thread to parse its packets. expressInterest sends each Interest on
+ * the stripe chosen by the hash of its name, and all the stripes share one
+ * pending interest table, so a Data or network Nack received on any stripe
+ * satisfies the pending Interest. If a stripe fails (its transport is
+ * disconnected or sending an Interest on it throws an IOException), then
+ * Interests with the names which hash to it are sent on the next stripe which
+ * has not failed. A failed stripe is not reconnected. (Its pending Interests
+ * time out as usual.)
+ *
+ * Methods other than expressInterest, such as registerPrefix, callLater and
+ * putData, use the first stripe. processEvents processes all the stripes. To
+ * process the stripes on separate threads, use async transports such as
+ * AsyncTcpTransport.
+ */
+public class StripedFace extends Face {
+  /**
+   * Create a new StripedFace with one stripe for each of the transports.
+   * @param transports The Transport object for each stripe. This copies the
+   * array.
+   * @param connectionInfos The Transport.ConnectionInfo for each stripe, in
+   * the same order as transports.
+   * @throws IllegalArgumentException If transports is empty, or if the arrays
+   * have different lengths.
+   */
+  public StripedFace
+    (Transport[] transports, Transport.ConnectionInfo[] connectionInfos)
+  {
+    super(checkStripes(transports, connectionInfos)[0], connectionInfos[0]);
+
+    stripes_ = new Node[transports.length];
+    stripes_[0] = node_;
+    for (int i = 1; i < transports.length; ++i)
+      stripes_[i] = new Node(transports[i], connectionInfos[i], node_);
+    isFailed_ = new boolean[transports.length];
+  }
+
+  /**
+   * Create a new StripedFace with nStripes TcpTransport connections to the
+   * NDN hub at host:port.
+   * @param host The host of the NDN hub.
+   * @param port The port of the NDN hub.
+   * @param nStripes The number of connections.
+   * @throws IllegalArgumentException If nStripes is less than 1.
+   */
+  public StripedFace(String host, int port, int nStripes)
+  {
+    this(makeTcpTransports(nStripes), makeTcpConnectionInfos(host, port, nStripes));
+  }
+
+  /**
+   * Get the number of stripes.
+   * @return The number of stripes.
+   */
+  public final int
+  getStripeCount() { return stripes_.length; }
+
+  /**
+   * Get the Transport of the stripe.
+   * @param i The index of the stripe, from 0 to getStripeCount() - 1.
+   * @return The Transport.
+   */
+  public final Transport
+  getStripeTransport(int i) { return stripes_[i].getTransport(); }
+
+  /**
+   * Check if the stripe has failed.
+   * @param i The index of the stripe, from 0 to getStripeCount() - 1.
+   * @return True if the stripe has failed.
+   */
+  public final boolean
+  isStripeFailed(int i) { return isFailed_[i]; }
+
+  /**
+   * Call processEvents for each stripe which has not failed. If processEvents
+   * of a stripe throws an IOException, then mark the stripe as failed and log
+   * the exception so that the other stripes are still processed.
+   * @throws EncodingException For invalid encoding of a received packet.
+   */
+  public void
+  processEvents() throws IOException, EncodingException
+  {
+    for (int i = 0; i < stripes_.length; ++i) {
+      if (isFailed_[i])
+        continue;
+
+      try {
+        stripes_[i].processEvents();
+      } catch (IOException ex) {
+        logger_.log(Level.SEVERE, "StripedFace: Stripe " + i + " failed", ex);
+        isFailed_[i] = true;
+      }
+    }
+  }
+
+  /**
+   * Shut down and disconnect all the stripes.
+   */
+  public void
+  shutdown()
+  {
+    for (int i = 0; i < stripes_.length; ++i)
+      stripes_[i].shutdown();
+  }
+
+  /**
+   * Override to send the Interest on the stripe for its name.
+   */
+  void
+  nodeExpressInterest
+    (long pendingInterestId, Interest interestCopy, OnData onData,
+     OnTimeout onTimeout, OnNetworkNack onNetworkNack, WireFormat wireFormat)
+    throws IOException
+  {
+    int i = getStripeIndex(interestCopy.getName());
+    try {
+      stripes_[i].expressInterest
+        (pendingInterestId, interestCopy, onData, onTimeout, onNetworkNack,
+         wireFormat, this);
+    } catch (IOException ex) {
+      isFailed_[i] = true;
+      throw ex;
+    }
+  }
+
+  /**
+   * Override to group the Interests by the stripe for their name, and call
+   * expressInterests of each stripe.
+   */
+  void
+  nodeExpressInterests
+    (long[] pendingInterestIds, Interest[] interestCopies, OnData[] onData,
+     OnTimeout[] onTimeout, OnNetworkNack[] onNetworkNack,
+     WireFormat wireFormat) throws IOException
+  {
+    ArrayList<ArrayList<Integer>> stripeIndexes =
+      new ArrayList<ArrayList<Integer>>(stripes_.length);
+    for (int i = 0; i < stripes_.length; ++i)
+      stripeIndexes.add(new ArrayList<Integer>());
+    for (int i = 0; i < interestCopies.length; ++i)
+      stripeIndexes.get(getStripeIndex(interestCopies[i].getName())).add(i);
+
+    IOException error = null;
+    for (int iStripe = 0; iStripe < stripes_.length; ++iStripe) {
+      ArrayList<Integer> indexes = stripeIndexes.get(iStripe);
+      if (indexes.isEmpty())
+        continue;
+
+      int n = indexes.size();
+      long[] stripeIds = new long[n];
+      Interest[] stripeInterests = new Interest[n];
+      OnData[] stripeOnData = new OnData[n];
+      OnTimeout[] stripeOnTimeout = new OnTimeout[n];
+      OnNetworkNack[] stripeOnNetworkNack = new OnNetworkNack[n];
+      for (int j = 0; j < n; ++j) {
+        int i = indexes.get(j);
+        stripeIds[j] = pendingInterestIds[i];
+        stripeInterests[j] = interestCopies[i];
+        stripeOnData[j] = onData[i];
+        stripeOnTimeout[j] = onTimeout[i];
+        stripeOnNetworkNack[j] = onNetworkNack[i];
+      }
+
+      // Send on the other stripes even if one fails.
+      try {
+        stripes_[iStripe].expressInterests
+          (stripeIds, stripeInterests, stripeOnData, stripeOnTimeout,
+           stripeOnNetworkNack, wireFormat, this);
+      } catch (IOException ex) {
+        isFailed_[iStripe] = true;
+        if (error == null)
+          error = ex;
+      }
+    }
+
+    if (error != null)
+      throw error;
+  }
+
+  /**
+   * Get the index of the stripe for the name, which is the stripe chosen by
+   * the hash of the name, or the next stripe after it which has not failed.
+   * If all the stripes have failed, return the stripe chosen by the hash.
+   * @param name The Interest name.
+   * @return The stripe index.
+   */
+  private int
+  getStripeIndex(Name name)
+  {
+    int first = (name.hashCode() & 0x7fffffff) % stripes_.length;
+    for (int n = 0; n < stripes_.length; ++n) {
+      int i = (first + n) % stripes_.length;
+      if (!isFailed_[i] && stripes_[i].isDisconnected())
+        isFailed_[i] = true;
+      if (!isFailed_[i])
+        return i;
+    }
+
+    return first;
+  }
+
+  private static Transport[]
+  checkStripes
+    (Transport[] transports, Transport.ConnectionInfo[] connectionInfos)
+  {
+    if (transports.length == 0)
+      throw new IllegalArgumentException
+        ("StripedFace: There must be at least one transport");
+    if (connectionInfos.length != transports.length)
+      throw new IllegalArgumentException
+        ("StripedFace: There must be one connectionInfo for each transport");
+    return transports;
+  }
+
+  private static Transport[]
+  makeTcpTransports(int nStripes)
+  {
+    if (nStripes < 1)
+      throw new IllegalArgumentException
+        ("StripedFace: nStripes must be at least 1");
+    Transport[] result = new Transport[nStripes];
+    for (int i = 0; i < nStripes; ++i)
+      result[i] = new TcpTransport();
+    return result;
+  }
+
+  private static Transport.ConnectionInfo[]
+  makeTcpConnectionInfos(String host, int port, int nStripes)
+  {
+    Transport.ConnectionInfo[] result =
+      new Transport.ConnectionInfo[Math.max(nStripes, 0)];
+    for (int i = 0; i < result.length; ++i)
+      result[i] = new TcpTransport.ConnectionInfo(host, port);
+    return result;
+  }
+
+  private final Node[] stripes_;
+  // An element may be set to true by any thread, and is never set back to
+  // false, so that a stale read only sends one more Interest on the stripe.
+  private final boolean[] isFailed_;
+  private static final Logger logger_ = Logger.getLogger
+    (StripedFace.class.getName());
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.encoding;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A class implements ElementBatchListener if it can process all the elements
+ * which are received together, for example in one read from a transport. An
+ * ElementReader calls onReceivedElements instead of onReceivedElement for
+ * such a listener.
+ */
+public interface ElementBatchListener extends ElementListener
+{
+  /**
+   * This is called with all the entire elements which were completed by one
+   * call to ElementReader.onReceivedData.
+   * @param elements The list of elements in the order they were received. The
+   * list and its buffers are only valid during this call. If you need the data
+   * later, you must copy.
+   */
+  void onReceivedElements(List<ByteBuffer> elements) throws EncodingException;
+}
@@ -20,8 +20,10 @@
 package net.named_data.jndn.encoding;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import net.named_data.jndn.util.DynamicByteBuffer;
 import net.named_data.jndn.encoding.tlv.TlvStructureDecoder;
+import net.named_data.jndn.util.Blob;
 import net.named_data.jndn.util.Common;
 
 /**
@@ -29,6 +31,11 @@ import net.named_data.jndn.util.Common;
  * uses a TlvStructureDecoder to detect the end of an NDN-TLV element and calls
  * elementListener.onReceivedElement(element) with the element. This handles the
  * case where a single call to onReceivedData may contain multiple elements.
+ * If the elementListener is an ElementBatchListener, then this calls
+ * elementListener.onReceivedElements once with all the elements completed by
+ * a call to onReceivedData. If the elementListener is a SharedElementListener,
+ * then onReceivedData(Blob) gives it elements which point into the received
+ * data without copying.
  */
 public class ElementReader {
   /**
@@ -39,13 +46,23 @@ public class ElementReader {
   ElementReader(ElementListener elementListener)
   {
     elementListener_ = elementListener;
+    if (elementListener instanceof ElementBatchListener)
+      batchListener_ = (ElementBatchListener)elementListener;
+    else
+      batchListener_ = null;
+    if (elementListener instanceof SharedElementListener)
+      sharedListener_ = (SharedElementListener)elementListener;
+    else
+      sharedListener_ = null;
   }
 
   /**
    * Continue to read data until the end of an element, then call
    * elementListener.onReceivedElement(element ). The buffer passed to
    * onReceivedElement is only valid during this call.  If you need the data
-   * later, you must copy.
+   * later, you must copy. If the elementListener is an ElementBatchListener,
+   * then call elementListener.onReceivedElements(elements) once with all the
+   * elements which this call completes.
    * @param data The input data containing bytes of the element to read.
    * This reads from position() to limit(), but does not change the position.
    * @throws EncodingException For invalid encoding.
@@ -55,7 +72,57 @@ public class ElementReader {
   {
     // We may repeatedly set data to a slice as we read elements.
     data = data.slice();
+    if (batchListener_ != null)
+      batch_.clear();
 
+    try {
+      readElements(data);
+    }
+    finally {
+      // Clear the batch so that we don't keep a reference to the buffers.
+      if (batchListener_ != null)
+        batch_.clear();
+    }
+  }
+
+  /**
+   * Continue to read data until the end of an element, the same as
+   * onReceivedData(ByteBuffer), except that the caller gives ownership of the
+   * data and promises not to change it. If the elementListener is a
+   * SharedElementListener, then call
+   * elementListener.onReceivedSharedElements(elements) once with all the
+   * elements which this call completes, where each element points into data
+   * without copying (unless part of the element was received in a previous
+   * call). Otherwise, just call onReceivedData(data.buf()).
+   * @param data The input data containing bytes of the element to read.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  onReceivedData(Blob data) throws EncodingException
+  {
+    if (sharedListener_ == null) {
+      onReceivedData(data.buf());
+      return;
+    }
+
+    sharedBatch_.clear();
+    isDataShared_ = true;
+    try {
+      readElements(data.buf().slice());
+    }
+    finally {
+      isDataShared_ = false;
+      sharedBatch_.clear();
+    }
+  }
+
+  /**
+   * Do the work of onReceivedData to read the elements from the data slice.
+   * @param data The slice of the input data.
+   */
+  private void
+  readElements(ByteBuffer data) throws EncodingException
+  {
     // Process multiple objects in the data.
     while(true) {
       boolean gotElementEnd;
@@ -64,9 +131,11 @@ public class ElementReader {
       try {
         if (!usePartialData_) {
           // This is the beginning of an element.
-          if (data.remaining() <= 0)
+          if (data.remaining() <= 0) {
             // Wait for more data.
+            endBatch();
             return;
+          }
         }
 
         // Scan the input to check if a whole TLV object has been read.
@@ -77,6 +146,8 @@ public class ElementReader {
         // Reset to read a new element on the next call.
         usePartialData_ = false;
         tlvStructureDecoder_ = new TlvStructureDecoder();
+        // Report the elements which were completed before the error.
+        endBatch();
 
         throw ex;
       }
@@ -84,6 +155,7 @@ public class ElementReader {
       if (gotElementEnd) {
         // Got the remainder of an element.  Report to the caller.
         ByteBuffer element;
+        boolean isPartialData = usePartialData_;
         if (usePartialData_) {
           // We have partial data from a previous call, so append this data and point to partialData.
           partialData_.ensuredPut(data, 0, offset);
@@ -104,14 +176,26 @@ public class ElementReader {
         data = data.slice();
         tlvStructureDecoder_ = new TlvStructureDecoder();
 
-        elementListener_.onReceivedElement(element);
-        if (data.remaining() <= 0)
+        if (isDataShared_)
+          // partialData_ is reused, so we must copy an element from it.
+          sharedBatch_.add(new Blob(element, isPartialData));
+        else if (batchListener_ != null)
+          batch_.add(element);
+        else
+          elementListener_.onReceivedElement(element);
+        if (data.remaining() <= 0) {
           // No more data in the packet.
+          endBatch();
           return;
+        }
 
         // else loop back to decode.
       }
       else {
+        // The batch may have an element in partialData_, so finish it before
+        // saving the remaining data in partialData_.
+        endBatch();
+
         // Save remaining data for a later call.
         if (!usePartialData_) {
           usePartialData_ = true;
@@ -134,7 +218,27 @@ public class ElementReader {
     }
   }
 
+  /**
+   * If there is a batch of elements, call onReceivedSharedElements or
+   * onReceivedElements with the batch.
+   */
+  private void
+  endBatch() throws EncodingException
+  {
+    if (isDataShared_) {
+      if (sharedBatch_.size() > 0)
+        sharedListener_.onReceivedSharedElements(sharedBatch_);
+    }
+    else if (batchListener_ != null && batch_.size() > 0)
+      batchListener_.onReceivedElements(batch_);
+  }
+
   private final ElementListener elementListener_;
+  private final ElementBatchListener batchListener_;
+  private final ArrayList<ByteBuffer> batch_ = new ArrayList<ByteBuffer>();
+  private final SharedElementListener sharedListener_;
+  private final ArrayList<Blob> sharedBatch_ = new ArrayList<Blob>();
+  private boolean isDataShared_ = false;
   private TlvStructureDecoder tlvStructureDecoder_ = new TlvStructureDecoder();
   private boolean usePartialData_;
   private final DynamicByteBuffer partialData_ = new DynamicByteBuffer(1000);
@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.encoding;
+
+import java.util.List;
+import net.named_data.jndn.util.Blob;
+
+/**
+ * A class implements SharedElementListener if it can keep the received
+ * elements without copying them. When a transport gives ownership of the
+ * received data to ElementReader.onReceivedData(Blob), the ElementReader calls
+ * onReceivedSharedElements instead of onReceivedElement for such a listener.
+ */
+public interface SharedElementListener extends ElementListener
+{
+  /**
+   * This is called with all the entire elements which were completed by one
+   * call to ElementReader.onReceivedData(Blob).
+   * @param elements The list of elements in the order they were received. The
+   * list is only valid during this call, but each Blob is immutable and may be
+   * kept, for example as the value of a decoded name component.
+   */
+  void onReceivedSharedElements(List<Blob> elements) throws EncodingException;
+}
@@ -47,6 +47,7 @@ import net.named_data.jndn.encoding.tlv.TlvEncoder;
 import net.named_data.jndn.encrypt.EncryptedContent;
 import net.named_data.jndn.encrypt.algo.EncryptAlgorithmType;
 import net.named_data.jndn.lp.IncomingFaceId;
+import net.named_data.jndn.lp.FragmentInfo;
 import net.named_data.jndn.lp.LpPacket;
 import net.named_data.jndn.NetworkNack;
 import net.named_data.jndn.encrypt.Schedule;
@@ -104,6 +105,46 @@ public class Tlv0_2WireFormat extends WireFormat {
   public Blob
   encodeInterest
     (Interest interest, int[] signedPortionBeginOffset, int[] signedPortionEndOffset)
+  {
+    TlvEncoder encoder = TlvEncoder.acquire();
+    try {
+      encodeInterest
+        (interest, signedPortionBeginOffset, signedPortionEndOffset, encoder);
+      // The pooled encoder is reused, so copy the output.
+      return new Blob(encoder.getOutput(), true);
+    } finally {
+      encoder.release();
+    }
+  }
+
+  /**
+   * Encode interest using NDN-TLV and put the encoding into output, without
+   * allocating an intermediate buffer for the encoding.
+   * @param interest The Interest object to encode.
+   * @param output The buffer to put the encoding into, starting at its
+   * position(). This advances the position to the end of the encoding.
+   * @throws java.nio.BufferOverflowException If output does not have enough
+   * remaining space for the encoding.
+   */
+  public void
+  encodeInterestInto(Interest interest, ByteBuffer output)
+  {
+    TlvEncoder encoder = TlvEncoder.acquire();
+    try {
+      encodeInterest(interest, new int[1], new int[1], encoder);
+      encoder.encodeInto(output);
+    } finally {
+      encoder.release();
+    }
+  }
+
+  /**
+   * Encode interest using NDN-TLV into the encoder, which must be empty.
+   */
+  private void
+  encodeInterest
+    (Interest interest, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, TlvEncoder encoder)
   {
     if (!interest.getDidSetCanBePrefix_() && !didCanBePrefixWarning_) {
       System.out.println
@@ -111,14 +152,15 @@ public class Tlv0_2WireFormat extends WireFormat {
       didCanBePrefixWarning_ = true;
     }
 
-    if (interest.hasApplicationParameters())
+    if (interest.hasApplicationParameters()) {
       // The application has specified a format v0.3 field. As we transition to
       // format v0.3, encode as format v0.3 even though the application default
       // is Tlv0_2WireFormat.
-      return encodeInterestV03
-        (interest, signedPortionBeginOffset, signedPortionEndOffset);
+      encodeInterestV03
+        (interest, signedPortionBeginOffset, signedPortionEndOffset, encoder);
+      return;
+    }
 
-    TlvEncoder encoder = new TlvEncoder(256);
     int saveLength = encoder.getLength();
 
     // Encode backwards.
@@ -198,8 +240,6 @@ public class Tlv0_2WireFormat extends WireFormat {
       encoder.getLength() - signedPortionBeginOffsetFromBack;
     signedPortionEndOffset[0] =
       encoder.getLength() - signedPortionEndOffsetFromBack;
-
-    return new Blob(encoder.getOutput(), false);
   }
 
   /**
@@ -326,7 +366,45 @@ public class Tlv0_2WireFormat extends WireFormat {
   encodeData
     (Data data, int[] signedPortionBeginOffset, int[] signedPortionEndOffset)
   {
-    TlvEncoder encoder = new TlvEncoder(1500);
+    TlvEncoder encoder = TlvEncoder.acquire();
+    try {
+      encodeData(data, signedPortionBeginOffset, signedPortionEndOffset, encoder);
+      // The pooled encoder is reused, so copy the output.
+      return new Blob(encoder.getOutput(), true);
+    } finally {
+      encoder.release();
+    }
+  }
+
+  /**
+   * Encode data in NDN-TLV and put the encoding into output, without allocating
+   * an intermediate buffer for the encoding.
+   * @param data The Data object to encode.
+   * @param output The buffer to put the encoding into, starting at its
+   * position(). This advances the position to the end of the encoding.
+   * @throws java.nio.BufferOverflowException If output does not have enough
+   * remaining space for the encoding.
+   */
+  public void
+  encodeDataInto(Data data, ByteBuffer output)
+  {
+    TlvEncoder encoder = TlvEncoder.acquire();
+    try {
+      encodeData(data, new int[1], new int[1], encoder);
+      encoder.encodeInto(output);
+    } finally {
+      encoder.release();
+    }
+  }
+
+  /**
+   * Encode data in NDN-TLV into the encoder, which must be empty.
+   */
+  private static void
+  encodeData
+    (Data data, int[] signedPortionBeginOffset, int[] signedPortionEndOffset,
+     TlvEncoder encoder)
+  {
     int saveLength = encoder.getLength();
 
     // Encode backwards.
@@ -346,7 +424,6 @@ public class Tlv0_2WireFormat extends WireFormat {
       encoder.getLength() - signedPortionBeginOffsetFromBack;
     signedPortionEndOffset[0] =
       encoder.getLength() - signedPortionEndOffsetFromBack;
-    return new Blob(encoder.getOutput(), false);
   }
 
   /**
@@ -394,6 +471,82 @@ public class Tlv0_2WireFormat extends WireFormat {
     decoder.finishNestedTlvs(endOffset);
   }
 
+  /**
+   * Decode input as a data packet in NDN-TLV, but only decode the name and
+   * content into the data object. Instead of decoding the other fields, return
+   * their offsets so that they can be decoded later with decodeMetaInfo and
+   * decodeSignatureInfoAndValue.
+   * @param data The Data object whose name and content are updated.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position.
+   * @param signedPortionBeginOffset Return the offset in the input buffer of
+   * the beginning of the signed portion by setting signedPortionBeginOffset[0].
+   * @param signedPortionEndOffset Return the offset in the input buffer of the
+   * end of the signed portion by setting signedPortionEndOffset[0].
+   * @param fieldOffsets Return the offsets in the input buffer of the encoded
+   * fields by setting fieldOffsets[0] and [1] to the begin and end of the
+   * MetaInfo (or -1 if omitted), [2] and [3] to the begin and end of the
+   * SignatureInfo and [4] and [5] to the begin and end of the SignatureValue.
+   * @param copy If true, copy from the input when making new Blob values. If
+   * false, then Blob values share memory with the input, which must remain
+   * unchanged while the Blob values are used.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeDataLazy
+    (Data data, ByteBuffer input, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, int[] fieldOffsets, boolean copy)
+    throws EncodingException
+  {
+    TlvDecoder decoder = new TlvDecoder(input);
+
+    int endOffset = decoder.readNestedTlvsStart(Tlv.Data);
+    signedPortionBeginOffset[0] = decoder.getOffset();
+
+    decodeName(data.getName(), new int[1], new int[1], decoder, copy);
+    if (decoder.peekType(Tlv.MetaInfo, endOffset)) {
+      fieldOffsets[0] = decoder.getOffset();
+      decoder.skipTlv(Tlv.MetaInfo);
+      fieldOffsets[1] = decoder.getOffset();
+    }
+    else {
+      fieldOffsets[0] = -1;
+      fieldOffsets[1] = -1;
+    }
+    data.setContent
+      (new Blob(decoder.readOptionalBlobTlv(Tlv.Content, endOffset), copy));
+
+    fieldOffsets[2] = decoder.getOffset();
+    decoder.skipTlv(Tlv.SignatureInfo);
+    fieldOffsets[3] = decoder.getOffset();
+    signedPortionEndOffset[0] = decoder.getOffset();
+
+    fieldOffsets[4] = decoder.getOffset();
+    decoder.skipTlv(Tlv.SignatureValue);
+    fieldOffsets[5] = decoder.getOffset();
+
+    decoder.finishNestedTlvs(endOffset);
+  }
+
+  /**
+   * Decode input as a MetaInfo in NDN-TLV and set the fields of the metaInfo
+   * object.
+   * @param metaInfo The MetaInfo object whose fields are updated.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position.
+   * @param copy If true, copy from the input when making new Blob values. If
+   * false, then Blob values share memory with the input, which must remain
+   * unchanged while the Blob values are used.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeMetaInfo
+    (MetaInfo metaInfo, ByteBuffer input, boolean copy) throws EncodingException
+  {
+    TlvDecoder decoder = new TlvDecoder(input);
+    decodeMetaInfo(metaInfo, decoder, copy);
+  }
+
   /**
    * Encode controlParameters in NDN-TLV and return the encoding.
    * @param controlParameters The ControlParameters object to encode.
@@ -633,6 +786,24 @@ public class Tlv0_2WireFormat extends WireFormat {
 
         lpPacket.addHeaderField(networkNack);
       }
+      else if (fieldType == Tlv.LpPacket_Sequence ||
+               fieldType == Tlv.LpPacket_FragIndex ||
+               fieldType == Tlv.LpPacket_FragCount) {
+        // These fields go in one FragmentInfo header field.
+        FragmentInfo fragmentInfo = FragmentInfo.getFirstHeader(lpPacket);
+        if (fragmentInfo == null) {
+          fragmentInfo = new FragmentInfo();
+          lpPacket.addHeaderField(fragmentInfo);
+        }
+
+        long value = decoder.readNonNegativeInteger(fieldLength);
+        if (fieldType == Tlv.LpPacket_Sequence)
+          fragmentInfo.setSequence(value);
+        else if (fieldType == Tlv.LpPacket_FragIndex)
+          fragmentInfo.setFragIndex(value);
+        else
+          fragmentInfo.setFragCount(value);
+      }
       else if (fieldType == Tlv.LpPacket_IncomingFaceId) {
         IncomingFaceId incomingFaceId = new IncomingFaceId();
         incomingFaceId.setFaceId(decoder.readNonNegativeInteger(fieldLength));
@@ -1565,7 +1736,7 @@ public class Tlv0_2WireFormat extends WireFormat {
   }
 
   /**
-   * Encode interest in NDN-TLV format v0.3 and return the encoding.
+   * Encode interest in NDN-TLV format v0.3 into the encoder.
    * @param interest The Interest object to encode.
    * @param signedPortionBeginOffset Return the offset in the encoding of the
    * beginning of the signed portion. The signed portion starts from the first
@@ -1575,15 +1746,15 @@ public class Tlv0_2WireFormat extends WireFormat {
    * of the signed portion. The signed portion starts from the first
    * name component and ends just before the final name component (which is
    * assumed to be a signature for a signed interest).
-   * @return A Blob containing the encoding.
+   * @param encoder The TlvEncoder to receive the encoding, which must be empty.
    */
-  private static Blob
+  private static void
   encodeInterestV03
-    (Interest interest, int[] signedPortionBeginOffset, int[] signedPortionEndOffset)
+    (Interest interest, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, TlvEncoder encoder)
   {
     // TODO: Throw an exception if the interest speficies V02 fields.
 
-    TlvEncoder encoder = new TlvEncoder(256);
     int saveLength = encoder.getLength();
 
     // Encode backwards.
@@ -1659,8 +1830,6 @@ public class Tlv0_2WireFormat extends WireFormat {
       encoder.getLength() - signedPortionBeginOffsetFromBack;
     signedPortionEndOffset[0] =
       encoder.getLength() - signedPortionEndOffsetFromBack;
-
-    return new Blob(encoder.getOutput(), false);
   }
 
   /**
@@ -25,6 +25,7 @@ import net.named_data.jndn.ControlResponse;
 import net.named_data.jndn.Data;
 import net.named_data.jndn.DelegationSet;
 import net.named_data.jndn.Interest;
+import net.named_data.jndn.MetaInfo;
 import net.named_data.jndn.Name;
 import net.named_data.jndn.Signature;
 import net.named_data.jndn.encrypt.EncryptedContent;
@@ -119,6 +120,24 @@ public class WireFormat {
     return encodeInterest(interest, new int[1], new int[1]);
   }
 
+  /**
+   * Encode interest and put the encoding into output. This base class calls
+   * encodeInterest and copies the result. Your derived class can override to
+   * encode without the intermediate copy.
+   * @param interest The Interest object to encode.
+   * @param output The buffer to put the encoding into, starting at its
+   * position(). This advances the position to the end of the encoding.
+   * @throws java.nio.BufferOverflowException If output does not have enough
+   * remaining space for the encoding.
+   * @throws UnsupportedOperationException for unimplemented if the derived
+   * class does not override encodeInterest.
+   */
+  public void
+  encodeInterestInto(Interest interest, ByteBuffer output)
+  {
+    output.put(encodeInterest(interest).buf());
+  }
+
   /**
    * Decode input as an interest and set the fields of the interest object.
    * Your derived class should override.
@@ -261,6 +280,24 @@ public class WireFormat {
     return encodeData(data, new int[1], new int[1]);
   }
 
+  /**
+   * Encode data and put the encoding into output. This base class calls
+   * encodeData and copies the result. Your derived class can override to
+   * encode without the intermediate copy.
+   * @param data The Data object to encode.
+   * @param output The buffer to put the encoding into, starting at its
+   * position(). This advances the position to the end of the encoding.
+   * @throws java.nio.BufferOverflowException If output does not have enough
+   * remaining space for the encoding.
+   * @throws UnsupportedOperationException for unimplemented if the derived
+   * class does not override encodeData.
+   */
+  public void
+  encodeDataInto(Data data, ByteBuffer output)
+  {
+    output.put(encodeData(data).buf());
+  }
+
   /**
    * Decode input as a data packet and set the fields in the data object.  Your
    * derived class should override.
@@ -337,6 +374,59 @@ public class WireFormat {
     decodeData(data, input, new int[1], new int[1], copy);
   }
 
+  /**
+   * Decode input as a data packet, but only decode the name and content into
+   * the data object. Instead of decoding the other fields, return their offsets
+   * so that they can be decoded later with decodeMetaInfo and
+   * decodeSignatureInfoAndValue. This also checks the TLV structure of the
+   * whole packet. Your derived class should override.
+   * @param data The Data object whose name and content are updated.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position.
+   * @param signedPortionBeginOffset Return the offset in the input buffer of
+   * the beginning of the signed portion by setting signedPortionBeginOffset[0].
+   * @param signedPortionEndOffset Return the offset in the input buffer of the
+   * end of the signed portion by setting signedPortionEndOffset[0].
+   * @param fieldOffsets Return the offsets in the input buffer of the encoded
+   * fields by setting fieldOffsets[0] and [1] to the begin and end of the
+   * MetaInfo (or -1 if omitted), [2] and [3] to the begin and end of the
+   * SignatureInfo and [4] and [5] to the begin and end of the SignatureValue.
+   * @param copy If true, copy from the input when making new Blob values. If
+   * false, then Blob values share memory with the input, which must remain
+   * unchanged while the Blob values are used.
+   * @throws UnsupportedOperationException for unimplemented if the derived
+   * class does not override.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeDataLazy
+    (Data data, ByteBuffer input, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, int[] fieldOffsets, boolean copy)
+    throws EncodingException
+  {
+    throw new UnsupportedOperationException("decodeDataLazy is not implemented");
+  }
+
+  /**
+   * Decode input as a MetaInfo and set the fields of the metaInfo object. Your
+   * derived class should override.
+   * @param metaInfo The MetaInfo object whose fields are updated.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position.
+   * @param copy If true, copy from the input when making new Blob values. If
+   * false, then Blob values share memory with the input, which must remain
+   * unchanged while the Blob values are used.
+   * @throws UnsupportedOperationException for unimplemented if the derived
+   * class does not override.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeMetaInfo
+    (MetaInfo metaInfo, ByteBuffer input, boolean copy) throws EncodingException
+  {
+    throw new UnsupportedOperationException("decodeMetaInfo is not implemented");
+  }
+
   /**
    * Decode input as a data packet and set the fields in the data object. Copy
    * from the input when making new Blob values.  Your derived class should
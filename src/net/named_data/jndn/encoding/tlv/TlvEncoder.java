@@ -20,6 +20,7 @@
 package net.named_data.jndn.encoding.tlv;
 
 import java.nio.ByteBuffer;
+import net.named_data.jndn.util.Common;
 import net.named_data.jndn.util.DynamicByteBuffer;
 
 /**
@@ -37,6 +38,66 @@ public class TlvEncoder {
     output_ = new DynamicByteBuffer(initialCapacity);
     // We will start encoding from the back.
     output_.position(output_.limit());
+    isPooled_ = false;
+  }
+
+  /**
+   * Create a new TlvEncoder for the thread's pool.
+   * @param initialCapacity The initial capacity of the direct buffer.
+   * @param averageLength The initial running average of the encoding length.
+   */
+  private
+  TlvEncoder(int initialCapacity, double averageLength)
+  {
+    output_ = new DynamicByteBuffer(initialCapacity, true);
+    output_.position(output_.limit());
+    isPooled_ = true;
+    averageLength_ = averageLength;
+  }
+
+  /**
+   * Get this thread's pooled TlvEncoder, cleared for a new encoding. The pooled
+   * encoder keeps its direct buffer between encodings, so that most encodings
+   * don't allocate or grow a buffer. When finished with the output, you must
+   * call release(). If this thread's pooled encoder is already in use (by an
+   * outer encoding), this returns a new TlvEncoder which is not pooled.
+   * @return The TlvEncoder.
+   */
+  public static TlvEncoder
+  acquire()
+  {
+    TlvEncoder encoder = pooledEncoder_.get();
+    if (encoder.isInUse_)
+      return new TlvEncoder(256);
+
+    encoder.isInUse_ = true;
+    // We will start encoding from the back.
+    encoder.output_.position(encoder.output_.limit());
+    return encoder;
+  }
+
+  /**
+   * If this TlvEncoder is from acquire(), make it available for the next call
+   * to acquire() in this thread. After this, you must not use the buffer from
+   * getOutput(). If a large encoding grew the buffer to much more than the
+   * running average of the encoding length, then replace the pooled encoder so
+   * that the thread does not keep the large buffer. If this TlvEncoder is not
+   * pooled, this does nothing.
+   */
+  public final void
+  release()
+  {
+    if (!isPooled_)
+      return;
+
+    averageLength_ += (getLength() - averageLength_) / 16;
+    isInUse_ = false;
+
+    int capacity = output_.buffer().capacity();
+    if (capacity > Common.MAX_NDN_PACKET_SIZE && capacity > 4 * averageLength_)
+      pooledEncoder_.set(new TlvEncoder
+        (Math.max(Common.MAX_NDN_PACKET_SIZE, 2 * (int)averageLength_),
+         averageLength_));
   }
 
   /**
@@ -49,6 +110,7 @@ public class TlvEncoder {
     output_ = new DynamicByteBuffer(16);
     // We will start encoding from the back.
     output_.position(output_.limit());
+    isPooled_ = false;
   }
 
   /**
@@ -266,6 +328,20 @@ public class TlvEncoder {
       writeBlobTlv(type, value);
   }
 
+  /**
+   * Put the output encoding into the given buffer, for example a send buffer,
+   * without making an intermediate copy.
+   * @param output The buffer to put the encoding into, starting at its
+   * position(). This advances the position to the end of the encoding.
+   * @throws java.nio.BufferOverflowException If output does not have enough
+   * remaining space for the encoding.
+   */
+  public final void
+  encodeInto(ByteBuffer output)
+  {
+    output.put(getOutput());
+  }
+
   /**
    * Return a slice of the output buffer up to the current length of the output
    * encoding.
@@ -280,4 +356,13 @@ public class TlvEncoder {
   }
 
   private final DynamicByteBuffer output_;
+  private final boolean isPooled_;
+  private boolean isInUse_ = false;
+  private double averageLength_ = 0;
+  private static final ThreadLocal<TlvEncoder> pooledEncoder_ =
+    new ThreadLocal<TlvEncoder>() {
+      @Override protected TlvEncoder initialValue() {
+        return new TlvEncoder(Common.MAX_NDN_PACKET_SIZE, 0);
+      }
+    };
 }
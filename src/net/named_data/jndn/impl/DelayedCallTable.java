@@ -20,11 +20,16 @@
 package net.named_data.jndn.impl;
 
 import java.util.ArrayList;
+import java.util.PriorityQueue;
 import net.named_data.jndn.util.Common;
 
 /**
  * DelayedCallTable is an internal class used by the Node implementation of
- * callLater to store callbacks and call them when they time out.
+ * callLater to store callbacks and call them when they time out. The entries
+ * are kept in a binary heap ordered on the call time, so that callLater and
+ * removing the next timed-out entry take O(log n). A cancelled entry is left in
+ * the heap and skipped when it reaches the front, but the heap is purged when
+ * most of its entries are cancelled.
  */
 public class DelayedCallTable {
   /**
@@ -32,55 +37,89 @@ public class DelayedCallTable {
    * table which is used by callTimedOut().
    * @param delayMilliseconds The delay in milliseconds.
    * @param callback This calls callback.run() after the delay.
+   * @return The new DelayedCallTable.Entry which can be used to cancel the
+   * call.
    */
-  public synchronized final void
+  public synchronized final Entry
   callLater(double delayMilliseconds, Runnable callback)
   {
-    Entry entry = new Entry(delayMilliseconds, callback);
-    // Insert into table_, sorted on getCallTime().
-    // Search from the back since we expect it to go there.
-    int i = table_.size() - 1;
-    while (i >= 0) {
-      if ((table_.get(i)).getCallTime() <= entry.getCallTime())
-        break;
-      --i;
-    }
-    // Element i is the greatest less than or equal to
-    // entry.getCallTime(), so insert after it.
-    table_.add(i + 1, entry);
+    // The sequence number keeps the insertion order for equal call times.
+    Entry entry = new Entry(this, delayMilliseconds, callback, ++lastSequenceNo_);
+    heap_.add(entry);
+    return entry;
   }
 
   /**
-   * Call and remove timed-out callback entries. Since callLater does a sorted
-   * insert into the delayed call table, the check for timed-out entries is
-   * quick and does not require searching the entire table. This synchronizes on
-   * the delayed call table when checking it, but not when calling the callback.
+   * Call and remove timed-out callback entries. Since the delayed call table is
+   * a heap on the call time, the check for timed-out entries is quick and does
+   * not require searching the entire table. This synchronizes on the delayed
+   * call table when checking it, but not when calling the callback.
    */
   public final void
   callTimedOut()
   {
     // nowOffsetMilliseconds_ is only used for testing.
     double now = Common.getNowMilliseconds() + nowOffsetMilliseconds_;
-    // table_ is sorted on _callTime, so we only need to process the timed-out
+    // heap_ is ordered on callTime_, so we only need to process the timed-out
     // entries at the front, then quit.
     while (true) {
       Entry entry;
       // Lock while we check and maybe pop the element at the front.
       synchronized(this) {
-        if (table_.isEmpty())
+        entry = heap_.peek();
+        if (entry == null)
           break;
-        entry = table_.get(0);
+        if (entry.isCancelled_) {
+          // Lazily remove the cancelled entry.
+          heap_.poll();
+          --nCancelled_;
+          continue;
+        }
         if (entry.getCallTime() > now)
-          // It is not time to call the entry at the front of the list, so finish.
+          // It is not time to call the entry at the front of the heap, so finish.
           break;
-        table_.remove(0);
+        heap_.poll();
+        entry.isCalled_ = true;
       }
 
-      // The lock on table_ is removed, so call the callback.
+      // The lock on heap_ is removed, so call the callback.
       entry.callCallback();
     }
   }
 
+  /**
+   * Get the call time of the next entry which is not cancelled, so that an
+   * event loop can wait until then before calling callTimedOut().
+   * @return The call time in milliseconds, similar to
+   * Common.getNowMilliseconds(), or -1 if there are no entries.
+   */
+  public synchronized final double
+  getNextCallTime()
+  {
+    while (true) {
+      Entry entry = heap_.peek();
+      if (entry == null)
+        return -1;
+      if (entry.isCancelled_) {
+        // Lazily remove the cancelled entry.
+        heap_.poll();
+        --nCancelled_;
+        continue;
+      }
+
+      // callTimedOut adds nowOffsetMilliseconds_ to the current time.
+      return entry.getCallTime() - nowOffsetMilliseconds_;
+    }
+  }
+
+  /**
+   * Get the number of entries which are waiting to be called and are not
+   * cancelled.
+   * @return The number of entries.
+   */
+  public synchronized final int
+  size() { return heap_.size() - nCancelled_; }
+
   /**
    * Set the offset for when prepareCommandInterestName() gets the current time,
    * which should only be used for testing.
@@ -94,19 +133,26 @@ public class DelayedCallTable {
 
   /**
    * Entry holds the callback and other fields for an entry in the delayed call
-   * table.
+   * table. It is returned by callLater as the handle to cancel the call.
    */
-  private static class Entry {
+  public static class Entry implements Comparable<Entry> {
     /**
      * Create a new DelayedCallTable.Entry and set the call time based on the
      * current time and the delayMilliseconds.
+     * @param table The DelayedCallTable which has this entry.
      * @param delayMilliseconds The delay in milliseconds.
      * @param callback This calls callback.run() after the delay.
+     * @param sequenceNo The number used to order entries with the same call
+     * time.
      */
-    public Entry(double delayMilliseconds, Runnable callback)
+    private Entry
+      (DelayedCallTable table, double delayMilliseconds, Runnable callback,
+       long sequenceNo)
     {
+      table_ = table;
       callback_ = callback;
       callTime_ = Common.getNowMilliseconds() + delayMilliseconds;
+      sequenceNo_ = sequenceNo;
     }
 
     /**
@@ -117,19 +163,73 @@ public class DelayedCallTable {
     public final double
     getCallTime() { return callTime_; }
 
+    /**
+     * Cancel the call so that callTimedOut does not call the callback. If the
+     * callback has already been called or the entry is already cancelled, do
+     * nothing.
+     * @return True if the call was cancelled, false if it was already called
+     * or cancelled.
+     */
+    public final boolean
+    cancel() { return table_.cancel(this); }
+
     /**
      * Call the callback given to the constructor. This does not catch
      * exceptions.
      */
-    public final void
+    final void
     callCallback() { callback_.run(); }
 
+    public final int
+    compareTo(Entry other)
+    {
+      if (callTime_ != other.callTime_)
+        return callTime_ < other.callTime_ ? -1 : 1;
+      return sequenceNo_ < other.sequenceNo_ ? -1 :
+        (sequenceNo_ > other.sequenceNo_ ? 1 : 0);
+    }
+
+    private final DelayedCallTable table_;
     private final Runnable callback_;
     private final double callTime_;
+    private final long sequenceNo_;
+    // The following are guarded by the lock on table_.
+    private boolean isCancelled_ = false;
+    private boolean isCalled_ = false;
+  }
+
+  /**
+   * Do the work of Entry.cancel. Mark the entry as cancelled, and purge the
+   * cancelled entries from the heap if they are the majority.
+   */
+  private synchronized boolean
+  cancel(Entry entry)
+  {
+    if (entry.isCancelled_ || entry.isCalled_)
+      return false;
+
+    entry.isCancelled_ = true;
+    ++nCancelled_;
+    if (nCancelled_ >= MIN_PURGE_COUNT && nCancelled_ * 2 > heap_.size()) {
+      ArrayList<Entry> liveEntries = new ArrayList<Entry>(heap_.size() - nCancelled_);
+      for (Entry heapEntry : heap_) {
+        if (!heapEntry.isCancelled_)
+          liveEntries.add(heapEntry);
+      }
+
+      heap_.clear();
+      heap_.addAll(liveEntries);
+      nCancelled_ = 0;
+    }
+
+    return true;
   }
 
-  private final ArrayList<Entry> table_ = new ArrayList<Entry>();
+  private final PriorityQueue<Entry> heap_ = new PriorityQueue<Entry>();
+  private int nCancelled_ = 0;
+  private long lastSequenceNo_ = 0;
   private double nowOffsetMilliseconds_ = 0;
+  private static final int MIN_PURGE_COUNT = 1000;
   // This is to force an import of net.named_data.jndn.util.
   private static Common dummyCommon_ = new Common();
 }
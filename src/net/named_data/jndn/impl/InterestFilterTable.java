@@ -20,17 +20,33 @@
 package net.named_data.jndn.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.named_data.jndn.Face;
 import net.named_data.jndn.Interest;
 import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
 import net.named_data.jndn.OnInterestCallback;
 import net.named_data.jndn.util.Common;
 
 /**
  * An InterestFilterTable is an internal class to hold a list of entries with
- * an interest Filter and its OnInterestCallback.
+ * an interest Filter and its OnInterestCallback. The entries are indexed in a
+ * trie on the components of the filter prefix so that an incoming Interest
+ * only needs to be checked against the filters whose prefix is a prefix of the
+ * Interest name. (Only a filter with a regex filter needs a further check.)
+ * The trie is keyed on the whole Name.Component, so a filter prefix component
+ * only matches an Interest name component with the same type and value.
+ * <p>
+ * Interest dispatch with getMatchedFilters does not lock. The trie uses
+ * concurrent maps for the children and each node has an array of entries
+ * which is replaced (copy-on-write) by setInterestFilter and
+ * unsetInterestFilter. Since filters are changed much less often than
+ * Interests are dispatched, the changes are serialized on this object.
  */
 public class InterestFilterTable {
   /**
@@ -88,6 +104,9 @@ public class InterestFilterTable {
     private final InterestFilter filter_;
     private final OnInterestCallback onInterest_;
     private final Face face_;
+    // The following are only used by InterestFilterTable.
+    private long sequenceNo_;
+    private NameTrieNode node_;
   }
 
   /**
@@ -102,24 +121,69 @@ public class InterestFilterTable {
   setInterestFilter(long interestFilterId, InterestFilter filter,
        OnInterestCallback onInterest, Face face)
   {
-    table_.add(new Entry(interestFilterId, filter, onInterest, face));
+    Entry entry = new Entry(interestFilterId, filter, onInterest, face);
+    entry.sequenceNo_ = ++lastSequenceNo_;
+
+    // Find or create the trie node for the filter prefix.
+    Name prefix = filter.getPrefix();
+    NameTrieNode node = root_;
+    for (int i = 0; i < prefix.size(); ++i) {
+      Name.Component component = prefix.get(i);
+      NameTrieNode child = node.children_.get(component);
+      if (child == null) {
+        child = new NameTrieNode(node, component);
+        node.children_.put(component, child);
+      }
+      node = child;
+    }
+
+    Entry[] entries = new Entry[node.entries_.length + 1];
+    System.arraycopy(node.entries_, 0, entries, 0, node.entries_.length);
+    entries[entries.length - 1] = entry;
+    node.entries_ = entries;
+
+    entry.node_ = node;
+    entriesById_.put(interestFilterId, entry);
   }
 
   /**
    * Find all entries from the interest filter table where the interest conforms
-   * to the entry's filter, and add to the matchedFilters list.
+   * to the entry's filter, and add to the matchedFilters list in the order that
+   * the entries were added. This does not lock the table.
    * @param interest The interest which may match the filter in multiple entries.
    * @param matchedFilters Add each matching InterestFilterTable.Entry from the
    * interest filter table.  The caller should pass in an empty ArrayList.
    */
-  public synchronized final void
-  getMatchedFilters(Interest interest, ArrayList matchedFilters)
+  public final void
+  getMatchedFilters(Interest interest, ArrayList<Entry> matchedFilters)
   {
-    for (int i = 0; i < table_.size(); ++i) {
-      Entry entry = table_.get(i);
-      if (entry.getFilter().doesMatch(interest.getName()))
-        matchedFilters.add(entry);
+    ArrayList<Entry> matched = new ArrayList<Entry>();
+    Name name = interest.getName();
+
+    // Walk down the trie along the Interest name. Each filter on the path has
+    // a prefix which matches, so only check a filter which has a regex filter.
+    NameTrieNode node = root_;
+    int nComponents = 0;
+    while (node != null) {
+      // Get the array once since another thread may replace it.
+      Entry[] entries = node.entries_;
+      for (int i = 0; i < entries.length; ++i) {
+        Entry entry = entries[i];
+        if (!entry.getFilter().hasRegexFilter() ||
+            entry.getFilter().doesMatch(name))
+          matched.add(entry);
+      }
+
+      if (nComponents >= name.size())
+        break;
+      node = node.children_.get(name.get(nComponents));
+      ++nComponents;
     }
+
+    if (matched.size() > 1)
+      // Keep the order of the entries in the table.
+      Collections.sort(matched, addedFirst_);
+    matchedFilters.addAll(matched);
   }
 
   /**
@@ -132,23 +196,59 @@ public class InterestFilterTable {
   public synchronized final void
   unsetInterestFilter(long interestFilterId)
   {
-    int count = 0;
-    // Go backwards through the list so we can remove entries.
-    // Remove all entries even though interestFilterId should be unique.
-    for (int i = table_.size() - 1; i >= 0; --i) {
-      if ((table_.get(i)).getInterestFilterId() == interestFilterId) {
-        ++count;
-        table_.remove(i);
-      }
-    }
-
-    if (count == 0)
+    Entry entry = entriesById_.remove(interestFilterId);
+    if (entry == null) {
       logger_.log
         (Level.WARNING, "unsetInterestFilter: Didn't find interestFilterId {0}",
          interestFilterId);
+      return;
+    }
+
+    NameTrieNode node = entry.node_;
+    Entry[] entries = new Entry[node.entries_.length - 1];
+    int j = 0;
+    for (int i = 0; i < node.entries_.length; ++i) {
+      if (node.entries_[i] != entry)
+        entries[j++] = node.entries_[i];
+    }
+    node.entries_ = entries;
+
+    // Remove the node and each ancestor which is now empty.
+    while (node.parent_ != null && node.entries_.length == 0 &&
+           node.children_.isEmpty()) {
+      node.parent_.children_.remove(node.component_);
+      node = node.parent_;
+    }
   }
 
-  private final ArrayList<Entry> table_ = new ArrayList<Entry>();
+  /**
+   * A NameTrieNode holds the entries whose filter prefix has the components on
+   * the path from the root to this node.
+   */
+  private static class NameTrieNode {
+    public NameTrieNode(NameTrieNode parent, Name.Component component)
+    {
+      parent_ = parent;
+      component_ = component;
+    }
+
+    public final NameTrieNode parent_;
+    public final Name.Component component_;
+    public final ConcurrentHashMap<Name.Component, NameTrieNode> children_ =
+      new ConcurrentHashMap<Name.Component, NameTrieNode>(4);
+    // entries_ is never modified, only replaced.
+    public volatile Entry[] entries_ = new Entry[0];
+  }
+
+  private final NameTrieNode root_ = new NameTrieNode(null, null);
+  private final HashMap<Long, Entry> entriesById_ = new HashMap<Long, Entry>();
+  private long lastSequenceNo_ = 0;
+  private static final Comparator<Entry> addedFirst_ = new Comparator<Entry>() {
+    public int compare(Entry entry1, Entry entry2) {
+      return entry1.sequenceNo_ < entry2.sequenceNo_ ? -1 :
+        (entry1.sequenceNo_ > entry2.sequenceNo_ ? 1 : 0);
+    }
+  };
   private static final Logger logger_ = Logger.getLogger
     (InterestFilterTable.class.getName());
   // This is to force an import of net.named_data.jndn.util.
@@ -20,20 +20,39 @@
 package net.named_data.jndn.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.named_data.jndn.Interest;
 import net.named_data.jndn.Data;
+import net.named_data.jndn.Name;
 import net.named_data.jndn.OnData;
 import net.named_data.jndn.OnNetworkNack;
 import net.named_data.jndn.OnTimeout;
 import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.WireFormat;
+import net.named_data.jndn.util.Blob;
 import net.named_data.jndn.util.Common;
 import net.named_data.jndn.util.SignedBlob;
 
 /**
  * A PendingInterestTable is an internal class to hold a list of pending
- * interests with their callbacks.
+ * interests with their callbacks. The entries are indexed in a trie on the
+ * components of the Interest name so that an incoming Data packet only needs
+ * to be checked against the entries whose name is a prefix of the Data name.
+ * The entries are also indexed by pendingInterestId and by nonce so that
+ * removing an entry and matching a network Nack don't need to search the table.
+ * <p>
+ * The table is safe for concurrent use without a global lock. The trie is
+ * walked without locking, and each trie node has its own lock for its list of
+ * entries, so that threads adding and matching pending interests with
+ * different names don't contend. The nonce index is split into lock stripes.
  */
 public class PendingInterestTable {
   /**
@@ -85,6 +104,23 @@ public class PendingInterestTable {
     public final OnNetworkNack
     getOnNetworkNack() { return onNetworkNack_; }
 
+    /**
+     * Set the time when the Interest was expressed, which is used for metrics.
+     * @param expressTimeNanoseconds The time from System.nanoTime().
+     */
+    public final void
+    setExpressTimeNanoseconds(long expressTimeNanoseconds)
+    {
+      expressTimeNanoseconds_ = expressTimeNanoseconds;
+    }
+
+    /**
+     * Get the time given to setExpressTimeNanoseconds.
+     * @return The time from System.nanoTime(), or 0 if not set.
+     */
+    public final long
+    getExpressTimeNanoseconds() { return expressTimeNanoseconds_; }
+
     /**
      * Set the isRemoved flag which is returned by getIsRemoved().
      */
@@ -119,7 +155,22 @@ public class PendingInterestTable {
     private final OnData onData_;
     private final OnTimeout onTimeout_;
     private final OnNetworkNack onNetworkNack_;
-    private boolean isRemoved_ = false;
+    private volatile boolean isRemoved_ = false;
+    private long expressTimeNanoseconds_ = 0;
+    // The following are only used by PendingInterestTable.
+    private long sequenceNo_;
+    private volatile NameTrieNode node_;
+    private Blob nonce_;
+    // delayedCall_ and the aggregation fields are guarded by the lock on node_.
+    private DelayedCallTable.Entry delayedCall_;
+    // If isSent_, the Interest was sent and the forwarder keeps it until
+    // sentExpireTime_.
+    private boolean isSent_ = false;
+    private double sentExpireTime_;
+    // The time when the Interest lifetime of this entry ends, set by aggregate.
+    private double expireTime_;
+    // The sent entry which this entry is aggregated with, or null.
+    private Entry aggregatedWith_ = null;
   }
 
   /**
@@ -139,82 +190,237 @@ public class PendingInterestTable {
    * @return The new PendingInterestTable.Entry, or null if
    * removePendingInterest was already called with the pendingInterestId.
    */
-  public synchronized final Entry
+  public final Entry
   add(long pendingInterestId, Interest interestCopy, OnData onData,
        OnTimeout onTimeout, OnNetworkNack onNetworkNack)
   {
-    int removeRequestIndex = removeRequests_.indexOf(pendingInterestId);
-    if (removeRequestIndex >= 0) {
+    if (removeRequests_.remove(pendingInterestId))
       // removePendingInterest was called with the pendingInterestId returned by
       //   expressInterest before we got here, so don't add a PIT entry.
-      removeRequests_.remove(removeRequestIndex);
       return null;
-    }
 
     Entry entry = new Entry
       (pendingInterestId, interestCopy, onData, onTimeout, onNetworkNack);
-    table_.add(entry);
+    entry.sequenceNo_ = lastSequenceNo_.incrementAndGet();
+    entry.nonce_ = interestCopy.getNonce();
+    if (hasImplicitDigest(interestCopy))
+      nImplicitDigestEntries_.incrementAndGet();
+    size_.incrementAndGet();
+    // Add to the nonce index first so that it is there for a removal by another
+    // thread as soon as the entry is in the trie.
+    getNonceStripe(entry.nonce_).add(entry);
+
+    // Find or create the trie node for the Interest name. Retry if a node on
+    // the path is pruned by another thread while we add.
+    Name name = interestCopy.getName();
+    while (true) {
+      NameTrieNode node = root_;
+      for (int i = 0; i < name.size() && node != null; ++i)
+        node = getOrCreateChild(node, name.get(i).getValue());
+      if (node == null)
+        continue;
+
+      synchronized(node) {
+        if (node.isPruned_)
+          continue;
+        node.entries_.add(entry);
+        entry.node_ = node;
+      }
+      break;
+    }
+
+    entriesById_.put(pendingInterestId, entry);
+    if (entry.getIsRemoved())
+      // Another thread matched the entry before we could index it.
+      entriesById_.remove(pendingInterestId, entry);
+
+    if (removeRequests_.remove(pendingInterestId)) {
+      // removePendingInterest was called by another thread while we added.
+      removeEntry(entry);
+      return null;
+    }
+
     return entry;
   }
 
+  /**
+   * If another entry in the table has the same Interest name and selectors, was
+   * sent, and the forwarder keeps it at least until the end of the entry's own
+   * Interest lifetime, then aggregate the entry with it and return true so that
+   * the caller does not send the entry's Interest again. A Data packet which satisfies the sent Interest also
+   * satisfies the aggregated entry, and extractEntriesForNackInterest also
+   * extracts the aggregated entries for a network Nack of the sent Interest.
+   * Each entry still has its own timeout. If the sent entry is removed before
+   * it is satisfied, removeEntry(pendingInterest, entriesToSend) promotes one
+   * of the aggregated entries to be sent. Otherwise, mark the entry as sent
+   * and return false so that the caller sends the Interest and later entries
+   * can be aggregated with it. An Interest with ApplicationParameters or a
+   * forwarding hint is always sent.
+   * @param entry The Entry returned by add.
+   * @return True if the entry is aggregated and its Interest should not be
+   * sent, false if the caller should send the Interest.
+   */
+  public final boolean
+  aggregate(Entry entry)
+  {
+    NameTrieNode node = entry.node_;
+    if (node == null)
+      return false;
+
+    Interest interest = entry.getInterest();
+    double now = Common.getNowMilliseconds();
+    synchronized(node) {
+      if (entry.getIsRemoved())
+        return false;
+
+      entry.expireTime_ = now + getLifetime(interest);
+      if (canAggregate(interest)) {
+        for (int i = 0; i < node.entries_.size(); ++i) {
+          Entry other = node.entries_.get(i);
+          // Don't aggregate with a sent Interest which the forwarder drops
+          // before this entry's lifetime ends.
+          if (other != entry && other.isSent_ &&
+              other.sentExpireTime_ >= entry.expireTime_ &&
+              haveSameSelectors(other.getInterest(), interest)) {
+            entry.aggregatedWith_ = other;
+            return true;
+          }
+        }
+      }
+
+      entry.isSent_ = true;
+      entry.sentExpireTime_ = entry.expireTime_;
+    }
+
+    return false;
+  }
+
   /**
    * Find all entries from the pending interest table where data conforms to
    * the entry's interest selectors, remove the entries from the table, set each
-   * entry's isRemoved flag, and add to the entries list.
+   * entry's isRemoved flag, and add to the entries list. This only checks the
+   * selectors of entries whose Interest name is a prefix of the Data name (or
+   * is the Data full name with the implicit digest).
    * @param data The incoming Data packet to find the interest for.
    * @param entries Add matching PendingInterestTable.Entry from the pending
    * interest table.  The caller should pass in an empty ArrayList.
    */
-  public synchronized final void
+  public final void
   extractEntriesForExpressedInterest(Data data, ArrayList<Entry> entries)
   {
-    // Go backwards through the list so we can remove entries.
-    for (int i = table_.size() - 1; i >= 0; --i) {
-      Entry pendingInterest = table_.get(i);
+    int startSize = entries.size();
+    Name dataName = data.getName();
 
-      if (pendingInterest.getInterest().matchesData(data)) {
-        entries.add(table_.get(i));
-        // We let the callback from callLater call _processInterestTimeout, but
-        // for efficiency, mark this as removed so that it returns right away.
-        table_.remove(i);
-        pendingInterest.setIsRemoved();
+    // Walk down the trie along the Data name, checking the entries at each
+    // prefix.
+    NameTrieNode node = root_;
+    int nComponents = 0;
+    while (true) {
+      extractMatchingEntries(node, data, entries);
+      if (nComponents >= dataName.size())
+        break;
+
+      NameTrieNode child = node.children_.get
+        (dataName.get(nComponents).getValue());
+      if (child == null)
+        break;
+      node = child;
+      ++nComponents;
+    }
+
+    if (nComponents == dataName.size() && nImplicitDigestEntries_.get() > 0 &&
+        !node.children_.isEmpty()) {
+      // An Interest name may be the Data full name with the implicit digest.
+      // Only compute the digest if there are such entries.
+      Name fullName = data.getFullName(WireFormat.getDefaultWireFormat());
+      NameTrieNode child = node.children_.get(fullName.get(-1).getValue());
+      if (child != null) {
+        extractMatchingEntries(child, data, entries);
+        node = child;
       }
     }
+
+    // All visited nodes are on the path from the root to node.
+    prune(node);
+
+    if (entries.size() - startSize > 1)
+      // Imitate the order of the scan over a list of all entries, newest first.
+      Collections.sort
+        (entries.subList(startSize, entries.size()), newestFirst_);
   }
 
   /**
    * Find all entries from the pending interest table where the OnNetworkNack
    * callback is not null and the entry's interest is the same as the given
-   * interest, remove the entries from the table, set each entry's isRemoved
-   * flag, and add to the entries list. (We don't remove the entry if the
-   * OnNetworkNack callback is null so that OnTimeout will be called later.) The
-   * interests are the same if their default wire encoding is the same (which
-   * has everything including the name, nonce, link object and selectors).
+   * interest or the entry is aggregated with such an entry, remove the entries
+   * from the table, set each entry's isRemoved flag, and add to the entries
+   * list. (We don't remove the entry if the OnNetworkNack callback is null so
+   * that OnTimeout will be called later.) The interests are the same if their
+   * default wire encoding is the same (which has everything including the name,
+   * nonce, link object and selectors), so this only checks the entries with the
+   * same nonce.
    * @param interest The Interest to search for (typically from a Nack packet).
    * @param entries Add matching PendingInterestTable.Entry from the pending
    * interest table. The caller should pass in an empty ArrayList.
    */
-  public synchronized final void
+  public final void
   extractEntriesForNackInterest(Interest interest, ArrayList<Entry> entries)
   {
-    SignedBlob encoding = interest.wireEncode();
+    // Only entries with the same nonce can have the same encoding.
+    ArrayList<Entry> sameNonce = getNonceStripe(interest.getNonce()).get
+      (interest.getNonce());
+    if (sameNonce.isEmpty())
+      return;
 
-    // Go backwards through the list so we can remove entries.
-    for (int i = table_.size() - 1; i >= 0; --i) {
-      Entry pendingInterest = table_.get(i);
-      if (pendingInterest.getOnNetworkNack() == null)
-        continue;
+    SignedBlob encoding = interest.wireEncode();
 
+    // Go backwards through the list to imitate the previous order.
+    for (int i = sameNonce.size() - 1; i >= 0; --i) {
+      Entry pendingInterest = sameNonce.get(i);
       // wireEncode returns the encoding cached when the interest was sent (if
       // it was the default wire encoding).
-      if (pendingInterest.getInterest().wireEncode().equals(encoding)) {
-        entries.add(table_.get(i));
+      if (!pendingInterest.getInterest().wireEncode().equals(encoding))
+        continue;
+
+      if (pendingInterest.getOnNetworkNack() != null) {
         // We let the callback from callLater call _processInterestTimeout, but
         // for efficiency, mark this as removed so that it returns right away.
-        table_.remove(i);
-        pendingInterest.setIsRemoved();
+        if (!removeEntry(pendingInterest))
+          continue;
+        entries.add(pendingInterest);
+      }
+      else if (pendingInterest.getIsRemoved())
+        continue;
+
+      // The entries aggregated with it get the Nack even if it has no
+      // OnNetworkNack.
+      extractAggregatedEntries(pendingInterest, entries);
+    }
+  }
+
+  /**
+   * Move the entries which were aggregated with the sent entry and which have
+   * an OnNetworkNack callback to the entries list.
+   */
+  private void
+  extractAggregatedEntries(Entry sentEntry, ArrayList<Entry> entries)
+  {
+    NameTrieNode node = sentEntry.node_;
+    boolean isRemoved = false;
+    synchronized(node) {
+      for (int i = node.entries_.size() - 1; i >= 0; --i) {
+        Entry pendingInterest = node.entries_.get(i);
+        if (pendingInterest.aggregatedWith_ == sentEntry &&
+            pendingInterest.getOnNetworkNack() != null) {
+          entries.add(pendingInterest);
+          removeFromNode(node, i);
+          isRemoved = true;
+        }
       }
     }
+
+    if (isRemoved)
+      prune(node);
   }
 
   /**
@@ -222,49 +428,79 @@ public class PendingInterestTable {
    * pending interest table and set its isRemoved flag. This does not affect
    * another pending interest with a different pendingInterestId, even if it has
    * the same interest name. If there is no entry with the pendingInterestId, do
-   * nothing.
+   * nothing. This does not promote an aggregated entry to be sent. See
+   * removePendingInterest(pendingInterestId, entriesToSend).
    * @param pendingInterestId The ID returned from expressInterest.
    */
-  public synchronized final void
+  public final void
   removePendingInterest(long pendingInterestId)
   {
-    int count = 0;
-    // Go backwards through the list so we can remove entries.
-    // Remove all entries even though pendingInterestId should be unique.
-    for (int i = table_.size() - 1; i >= 0; --i) {
-      if ((table_.get(i)).getPendingInterestId() == pendingInterestId) {
-        ++count;
-        // For efficiency, mark this as removed so that
-        // processInterestTimeout doesn't look for it.
-        (table_.get(i)).setIsRemoved();
-        table_.remove(i);
-      }
-    }
+    removePendingInterest(pendingInterestId, null);
+  }
 
-    if (count == 0)
+  /**
+   * Remove the pending interest entry with the pendingInterestId as in
+   * removePendingInterest(pendingInterestId), and promote an aggregated entry
+   * as in removeEntry(pendingInterest, entriesToSend).
+   * @param pendingInterestId The ID returned from expressInterest.
+   * @param entriesToSend If not null, add the promoted entry whose Interest the
+   * caller should send.
+   */
+  public final void
+  removePendingInterest
+    (long pendingInterestId, ArrayList<Entry> entriesToSend)
+  {
+    Entry entry = entriesById_.get(pendingInterestId);
+    if (entry == null) {
       logger_.log
         (Level.WARNING, "removePendingInterest: Didn't find pendingInterestId {0}",
          pendingInterestId);
 
-    if (count == 0) {
       // The pendingInterestId was not found. Perhaps this has been called before
       //   the callback in expressInterest can add to the PIT. Add this
       //   removal request which will be checked before adding to the PIT.
-      if (removeRequests_.indexOf(pendingInterestId) < 0)
-        // Not already requested, so add the request.
-        removeRequests_.add(pendingInterestId);
+      removeRequests_.add(pendingInterestId);
+
+      // Check again in case add was called by another thread while we added
+      // the request. Only one of us can take the request.
+      entry = entriesById_.get(pendingInterestId);
+      if (entry == null || !removeRequests_.remove(pendingInterestId))
+        return;
     }
+
+    // For efficiency, mark this as removed so that processInterestTimeout
+    // doesn't look for it.
+    removeEntry(entry, entriesToSend);
   }
 
   /**
    * Remove the specific pendingInterest entry from the table and set its
    * isRemoved flag. However, if the pendingInterest isRemoved flag is already
    * true or the entry is not in the pending interest table then do nothing.
+   * This does not promote an aggregated entry to be sent. See
+   * removeEntry(pendingInterest, entriesToSend).
    * @param pendingInterest The Entry from the pending interest table.
    * @return True if the entry was removed, false if not.
    */
-  public synchronized final boolean
+  public final boolean
   removeEntry(Entry pendingInterest)
+  {
+    return removeEntry(pendingInterest, null);
+  }
+
+  /**
+   * Remove the specific pendingInterest entry as in removeEntry(pendingInterest).
+   * If its Interest was sent and other entries are aggregated with it (see
+   * aggregate), then no Interest for them is pending at the forwarder, so mark
+   * the aggregated entry with the latest end of its Interest lifetime as sent,
+   * aggregate the others with it, and add it to entriesToSend.
+   * @param pendingInterest The Entry from the pending interest table.
+   * @param entriesToSend If not null, add the promoted entry whose Interest the
+   * caller should send. If null, don't promote an entry.
+   * @return True if the entry was removed, false if not.
+   */
+  public final boolean
+  removeEntry(Entry pendingInterest, ArrayList<Entry> entriesToSend)
   {
     if (pendingInterest.getIsRemoved())
       // extractEntriesForExpressedInterest or removePendingInterest has
@@ -272,16 +508,321 @@ public class PendingInterestTable {
       // Do nothing.
       return false;
 
-    if (table_.remove(pendingInterest)) {
-      pendingInterest.setIsRemoved();
-      return true;
-    }
-    else
+    NameTrieNode node = pendingInterest.node_;
+    if (node == null)
+      // The entry was not added to this table.
       return false;
+
+    synchronized(node) {
+      // Check again while locked in case another thread removed it.
+      if (pendingInterest.getIsRemoved())
+        return false;
+      int i = node.entries_.indexOf(pendingInterest);
+      if (i < 0)
+        return false;
+
+      removeFromNode(node, i);
+      if (entriesToSend != null && pendingInterest.isSent_) {
+        Entry promoted = promoteAggregatedEntry(node, pendingInterest);
+        if (promoted != null)
+          entriesToSend.add(promoted);
+      }
+    }
+
+    prune(node);
+    return true;
   }
 
-  private final ArrayList<Entry> table_ = new ArrayList<Entry>();
-  private final ArrayList<Long> removeRequests_ = new ArrayList<Long>();
+  /**
+   * Find the entries aggregated with sentEntry, mark the one whose Interest
+   * lifetime ends last as sent and aggregate the others with it. The caller
+   * must hold the lock on node.
+   * @return The promoted entry, or null if no entry is aggregated with
+   * sentEntry.
+   */
+  private static Entry
+  promoteAggregatedEntry(NameTrieNode node, Entry sentEntry)
+  {
+    Entry promoted = null;
+    for (int i = 0; i < node.entries_.size(); ++i) {
+      Entry entry = node.entries_.get(i);
+      if (entry.aggregatedWith_ == sentEntry &&
+          (promoted == null || entry.expireTime_ > promoted.expireTime_))
+        promoted = entry;
+    }
+    if (promoted == null)
+      return null;
+
+    for (int i = 0; i < node.entries_.size(); ++i) {
+      Entry entry = node.entries_.get(i);
+      if (entry.aggregatedWith_ == sentEntry)
+        entry.aggregatedWith_ = promoted;
+    }
+    promoted.aggregatedWith_ = null;
+    promoted.isSent_ = true;
+    promoted.sentExpireTime_ =
+      Common.getNowMilliseconds() + getLifetime(promoted.getInterest());
+    return promoted;
+  }
+
+  /**
+   * Set the delayed call for the timeout of the pending interest so that it is
+   * cancelled when the entry is removed from the table. If the entry is
+   * already removed, cancel the delayed call now.
+   * @param pendingInterest The Entry from the pending interest table.
+   * @param delayedCall The DelayedCallTable.Entry returned by callLater.
+   */
+  public final void
+  setDelayedCall
+    (Entry pendingInterest, DelayedCallTable.Entry delayedCall)
+  {
+    NameTrieNode node = pendingInterest.node_;
+    if (node == null) {
+      delayedCall.cancel();
+      return;
+    }
+
+    synchronized(node) {
+      if (pendingInterest.getIsRemoved())
+        delayedCall.cancel();
+      else
+        pendingInterest.delayedCall_ = delayedCall;
+    }
+  }
+
+  /**
+   * Get the number of entries in the pending interest table.
+   * @return The number of entries.
+   */
+  public final int
+  size() { return size_.get(); }
+
+  /**
+   * A NameTrieNode holds the entries whose Interest name has the components
+   * on the path from the root to this node. The children_ map is concurrent so
+   * that the trie can be walked without locking. A child is only added and the
+   * entries_ and isPruned_ are only accessed while holding the lock on the
+   * node. Once a node is pruned, it is no longer in the trie and is not used.
+   */
+  private static class NameTrieNode {
+    public NameTrieNode(NameTrieNode parent, Blob component)
+    {
+      parent_ = parent;
+      component_ = component;
+    }
+
+    public final NameTrieNode parent_;
+    public final Blob component_;
+    public final ConcurrentHashMap<Blob, NameTrieNode> children_ =
+      new ConcurrentHashMap<Blob, NameTrieNode>(4);
+    public final ArrayList<Entry> entries_ = new ArrayList<Entry>(1);
+    public boolean isPruned_ = false;
+  }
+
+  /**
+   * A NonceStripe holds the part of the nonce index for the nonces which hash
+   * to it.
+   */
+  private static class NonceStripe {
+    public synchronized void
+    add(Entry entry)
+    {
+      ArrayList<Entry> sameNonce = entries_.get(entry.nonce_);
+      if (sameNonce == null) {
+        sameNonce = new ArrayList<Entry>(1);
+        entries_.put(entry.nonce_, sameNonce);
+      }
+      sameNonce.add(entry);
+    }
+
+    public synchronized void
+    remove(Entry entry)
+    {
+      ArrayList<Entry> sameNonce = entries_.get(entry.nonce_);
+      if (sameNonce == null)
+        // add has not been called yet for a concurrent removal.
+        return;
+      sameNonce.remove(entry);
+      if (sameNonce.isEmpty())
+        entries_.remove(entry.nonce_);
+    }
+
+    /**
+     * Get a copy of the list of entries with the nonce.
+     */
+    public synchronized ArrayList<Entry>
+    get(Blob nonce)
+    {
+      ArrayList<Entry> sameNonce = entries_.get(nonce);
+      return sameNonce == null ?
+        new ArrayList<Entry>() : new ArrayList<Entry>(sameNonce);
+    }
+
+    private final HashMap<Blob, ArrayList<Entry>> entries_ =
+      new HashMap<Blob, ArrayList<Entry>>();
+  }
+
+  /**
+   * Get the child of node for the component, creating it if needed.
+   * @return The child, or null if node has been pruned.
+   */
+  private static NameTrieNode
+  getOrCreateChild(NameTrieNode node, Blob component)
+  {
+    NameTrieNode child = node.children_.get(component);
+    if (child != null)
+      return child;
+
+    synchronized(node) {
+      if (node.isPruned_)
+        return null;
+      child = node.children_.get(component);
+      if (child == null) {
+        child = new NameTrieNode(node, component);
+        node.children_.put(component, child);
+      }
+      return child;
+    }
+  }
+
+  /**
+   * Go backwards through the entries of node and move each entry whose
+   * Interest matches data to the entries list.
+   */
+  private void
+  extractMatchingEntries(NameTrieNode node, Data data, ArrayList<Entry> entries)
+  {
+    synchronized(node) {
+      for (int i = node.entries_.size() - 1; i >= 0; --i) {
+        Entry pendingInterest = node.entries_.get(i);
+
+        if (pendingInterest.getInterest().matchesData(data)) {
+          entries.add(pendingInterest);
+          // We let the callback from callLater call _processInterestTimeout,
+          // but for efficiency, mark this as removed so that it returns right
+          // away.
+          removeFromNode(node, i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Remove the entry at index i of the node's entries and from the indexes,
+   * and set its isRemoved flag. This does not prune the node. The caller must
+   * hold the lock on node.
+   */
+  private void
+  removeFromNode(NameTrieNode node, int i)
+  {
+    Entry entry = node.entries_.remove(i);
+    entry.setIsRemoved();
+    if (entry.delayedCall_ != null) {
+      // Drop the timeout. This does nothing if the timeout is being processed.
+      entry.delayedCall_.cancel();
+      entry.delayedCall_ = null;
+    }
+
+    entriesById_.remove(entry.getPendingInterestId(), entry);
+    getNonceStripe(entry.nonce_).remove(entry);
+
+    size_.decrementAndGet();
+    if (hasImplicitDigest(entry.getInterest()))
+      nImplicitDigestEntries_.decrementAndGet();
+  }
+
+  /**
+   * Remove node and each of its ancestors which has no entries and no
+   * children, stopping at the root. This locks one node at a time.
+   */
+  private static void
+  prune(NameTrieNode node)
+  {
+    while (node.parent_ != null) {
+      synchronized(node) {
+        if (node.isPruned_ || !node.entries_.isEmpty() ||
+            !node.children_.isEmpty())
+          return;
+        node.isPruned_ = true;
+        node.parent_.children_.remove(node.component_, node);
+      }
+
+      node = node.parent_;
+    }
+  }
+
+  private NonceStripe
+  getNonceStripe(Blob nonce)
+  {
+    return nonceStripes_[(nonce.hashCode() & 0x7fffffff) % nonceStripes_.length];
+  }
+
+  private static NonceStripe[]
+  makeNonceStripes()
+  {
+    NonceStripe[] result = new NonceStripe[N_NONCE_STRIPES];
+    for (int i = 0; i < result.length; ++i)
+      result[i] = new NonceStripe();
+    return result;
+  }
+
+  /**
+   * Get the Interest lifetime, or the default lifetime of the forwarder if it
+   * is not specified.
+   */
+  private static double
+  getLifetime(Interest interest)
+  {
+    double lifetime = interest.getInterestLifetimeMilliseconds();
+    return lifetime < 0.0 ? 4000.0 : lifetime;
+  }
+
+  private static boolean
+  canAggregate(Interest interest)
+  {
+    return interest.getApplicationParameters().isNull() &&
+      interest.getForwardingHint().size() == 0;
+  }
+
+  /**
+   * Check if the Interests have the same selectors, not including the nonce
+   * and Interest lifetime. This assumes that they have the same name.
+   */
+  private static boolean
+  haveSameSelectors(Interest interest1, Interest interest2)
+  {
+    return canAggregate(interest1) &&
+      interest1.getMustBeFresh() == interest2.getMustBeFresh() &&
+      interest1.getMinSuffixComponents() == interest2.getMinSuffixComponents() &&
+      interest1.getMaxSuffixComponents() == interest2.getMaxSuffixComponents() &&
+      interest1.getChildSelector() == interest2.getChildSelector() &&
+      interest1.getKeyLocator().equals(interest2.getKeyLocator()) &&
+      interest1.getExclude().toUri().equals(interest2.getExclude().toUri());
+  }
+
+  private static boolean
+  hasImplicitDigest(Interest interest)
+  {
+    Name name = interest.getName();
+    return name.size() > 0 && name.get(-1).isImplicitSha256Digest();
+  }
+
+  private static final int N_NONCE_STRIPES = 16;
+  private final NameTrieNode root_ = new NameTrieNode(null, null);
+  private final AtomicInteger size_ = new AtomicInteger();
+  private final AtomicInteger nImplicitDigestEntries_ = new AtomicInteger();
+  private final AtomicLong lastSequenceNo_ = new AtomicLong();
+  private final ConcurrentHashMap<Long, Entry> entriesById_ =
+    new ConcurrentHashMap<Long, Entry>();
+  private final NonceStripe[] nonceStripes_ = makeNonceStripes();
+  private final Set<Long> removeRequests_ = Collections.newSetFromMap
+    (new ConcurrentHashMap<Long, Boolean>());
+  private static final Comparator<Entry> newestFirst_ = new Comparator<Entry>() {
+    public int compare(Entry entry1, Entry entry2) {
+      return entry1.sequenceNo_ > entry2.sequenceNo_ ? -1 :
+        (entry1.sequenceNo_ < entry2.sequenceNo_ ? 1 : 0);
+    }
+  };
   private static final Logger logger_ = Logger.getLogger
     (PendingInterestTable.class.getName());
   // This is to force an import of net.named_data.jndn.util.
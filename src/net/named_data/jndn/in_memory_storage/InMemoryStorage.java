@@ -0,0 +1,277 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.in_memory_storage;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.util.Common;
+
+/**
+ * InMemoryStorage is an abstract base class for an application cache with
+ * in-memory storage whose capacity is a number of bytes of encoded Data. When
+ * inserting a Data packet would exceed the capacity, this evicts the entries
+ * chosen by the eviction policy of the subclass, such as InMemoryStorageFifo,
+ * InMemoryStorageLru or InMemoryStorageLfu. The entries are indexed by full
+ * name in canonical order, so that find and remove by prefix only look at the
+ * entries under the prefix. This class is not thread-safe.
+ */
+public abstract class InMemoryStorage {
+  /**
+   * An Entry holds a stored Data packet and its size. A subclass uses the
+   * Entry object as the key in its eviction bookkeeping.
+   */
+  protected static class Entry {
+    Entry(Data data, Name fullName, int size, double staleTimeMilliseconds)
+    {
+      data_ = data;
+      fullName_ = fullName;
+      size_ = size;
+      staleTimeMilliseconds_ = staleTimeMilliseconds;
+    }
+
+    /**
+     * Get the stored Data packet.
+     * @return The Data packet. You should not modify it.
+     */
+    public final Data
+    getData() { return data_; }
+
+    /**
+     * Get the full name of the Data packet, including the implicit digest.
+     * @return The full name. You should not modify it.
+     */
+    public final Name
+    getFullName() { return fullName_; }
+
+    /**
+     * Get the size of the encoded Data packet.
+     * @return The size in bytes.
+     */
+    public final int
+    getSize() { return size_; }
+
+    private final Data data_;
+    private final Name fullName_;
+    private final int size_;
+    private final double staleTimeMilliseconds_;
+  }
+
+  /**
+   * Create an InMemoryStorage with the given capacity.
+   * @param capacityBytes The maximum total size in bytes of the encoded Data
+   * packets.
+   */
+  protected InMemoryStorage(long capacityBytes)
+  {
+    if (capacityBytes <= 0)
+      throw new IllegalArgumentException
+        ("InMemoryStorage: The capacity must be positive");
+    capacityBytes_ = capacityBytes;
+  }
+
+  /**
+   * Insert a Data packet, evicting other entries if needed to stay within the
+   * capacity. If a Data packet with the same name, including the implicit
+   * digest, already exists, replace it. If the encoded Data packet is larger
+   * than the capacity, don't insert it.
+   * @param data The packet to insert. This does not copy the Data object, so
+   * you should not modify it after calling this.
+   * @return True if inserted, false if the Data packet is larger than the
+   * capacity.
+   * @throws EncodingException for error encoding the Data packet to get the
+   * implicit digest.
+   */
+  public final boolean
+  insert(Data data) throws EncodingException
+  {
+    // wireEncode returns the cached encoding if available.
+    int size = data.wireEncode().size();
+    if (size > capacityBytes_)
+      return false;
+
+    Name fullName = data.getFullName();
+    Entry oldEntry = cache_.get(fullName);
+    if (oldEntry != null)
+      erase(oldEntry);
+
+    while (totalBytes_ + size > capacityBytes_ && cache_.size() > 0) {
+      erase(selectEntryToEvict());
+      ++evictionCount_;
+    }
+
+    double freshnessPeriod = data.getMetaInfo().getFreshnessPeriod();
+    Entry entry = new Entry
+      (data, fullName, size, freshnessPeriod >= 0 ?
+       Common.getNowMilliseconds() + freshnessPeriod : Double.MAX_VALUE);
+    cache_.put(fullName, entry);
+    totalBytes_ += size;
+    afterInsert(entry);
+    return true;
+  }
+
+  /**
+   * Find the best match Data for an Interest, which is the first match in
+   * canonical order. This checks the Interest's CanBePrefix, MustBeFresh and
+   * other selectors. A match counts as an access for the eviction policy.
+   * @param interest The Interest with the Name of the Data packet to find.
+   * @return The best match if any, otherwise null. You should not modify the
+   * returned object. If you need to modify it then you must make a copy.
+   */
+  public final Data
+  find(Interest interest)
+  {
+    double nowMilliseconds = Common.getNowMilliseconds();
+    for (Entry entry : getRange(interest.getName()).values()) {
+      if (interest.getMustBeFresh() &&
+          nowMilliseconds >= entry.staleTimeMilliseconds_)
+        continue;
+      if (interest.matchesData(entry.data_)) {
+        ++hitCount_;
+        afterAccess(entry);
+        return entry.data_;
+      }
+    }
+
+    ++missCount_;
+    return null;
+  }
+
+  /**
+   * Remove matching entries by prefix.
+   * @param prefix The prefix Name of the entries to remove.
+   */
+  public final void
+  remove(Name prefix)
+  {
+    // Copy the entries to not change the map while iterating.
+    ArrayList<Entry> entries = new ArrayList<Entry>
+      (getRange(prefix).values());
+    for (Entry entry : entries)
+      erase(entry);
+  }
+
+  /**
+   * Get the number of packets stored in the in-memory storage.
+   * @return The number of packets.
+   */
+  public final int
+  size() { return cache_.size(); }
+
+  /**
+   * Get the total size of the stored encoded Data packets.
+   * @return The total size in bytes.
+   */
+  public final long
+  getTotalBytes() { return totalBytes_; }
+
+  /**
+   * Get the capacity given to the constructor.
+   * @return The capacity in bytes.
+   */
+  public final long
+  getCapacityBytes() { return capacityBytes_; }
+
+  /**
+   * Get the number of calls to find which found a Data packet.
+   * @return The number of hits.
+   */
+  public final long
+  getHitCount() { return hitCount_; }
+
+  /**
+   * Get the number of calls to find which did not find a Data packet.
+   * @return The number of misses.
+   */
+  public final long
+  getMissCount() { return missCount_; }
+
+  /**
+   * Get the number of entries which were evicted to stay within the capacity,
+   * not counting entries removed by remove or replaced by insert.
+   * @return The number of evictions.
+   */
+  public final long
+  getEvictionCount() { return evictionCount_; }
+
+  /**
+   * This is called after the entry is added.
+   * @param entry The new entry.
+   */
+  protected abstract void
+  afterInsert(Entry entry);
+
+  /**
+   * This is called after find returns the entry's Data packet.
+   * @param entry The entry which was found.
+   */
+  protected abstract void
+  afterAccess(Entry entry);
+
+  /**
+   * This is called before the entry is removed, for eviction, remove or
+   * replacement by insert.
+   * @param entry The entry to be removed.
+   */
+  protected abstract void
+  beforeErase(Entry entry);
+
+  /**
+   * Choose the entry to evict. This is only called when the storage is not
+   * empty. Don't remove it from the bookkeeping here, since beforeErase is
+   * called next.
+   * @return The entry to evict.
+   */
+  protected abstract Entry
+  selectEntryToEvict();
+
+  /**
+   * Get the entries whose full name has the prefix, which are the range from
+   * the prefix up to its successor in canonical order.
+   */
+  private NavigableMap<Name, Entry>
+  getRange(Name prefix)
+  {
+    if (prefix.size() == 0)
+      return cache_;
+    else
+      return cache_.subMap(prefix, true, prefix.getSuccessor(), false);
+  }
+
+  private void
+  erase(Entry entry)
+  {
+    beforeErase(entry);
+    cache_.remove(entry.fullName_);
+    totalBytes_ -= entry.size_;
+  }
+
+  private final long capacityBytes_;
+  private final TreeMap<Name, Entry> cache_ = new TreeMap<Name, Entry>();
+  private long totalBytes_ = 0;
+  private long hitCount_ = 0;
+  private long missCount_ = 0;
+  private long evictionCount_ = 0;
+}
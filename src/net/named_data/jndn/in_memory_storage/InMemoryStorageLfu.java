@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.in_memory_storage;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * InMemoryStorageLfu extends InMemoryStorage to evict the entry which was
+ * found the least number of times. Among entries with the same count, this
+ * evicts the one which reached the count first.
+ */
+public class InMemoryStorageLfu extends InMemoryStorage {
+  /**
+   * Create an InMemoryStorageLfu with the given capacity.
+   * @param capacityBytes The maximum total size in bytes of the encoded Data
+   * packets.
+   */
+  public InMemoryStorageLfu(long capacityBytes)
+  {
+    super(capacityBytes);
+  }
+
+  protected void
+  afterInsert(Entry entry)
+  {
+    counts_.put(entry, 0L);
+    getBucket(0).add(entry);
+    minCount_ = 0;
+  }
+
+  protected void
+  afterAccess(Entry entry)
+  {
+    long count = counts_.get(entry);
+    LinkedHashSet<Entry> bucket = buckets_.get(count);
+    bucket.remove(entry);
+    if (bucket.isEmpty()) {
+      buckets_.remove(count);
+      if (minCount_ == count)
+        minCount_ = count + 1;
+    }
+
+    counts_.put(entry, count + 1);
+    getBucket(count + 1).add(entry);
+  }
+
+  protected void
+  beforeErase(Entry entry)
+  {
+    long count = counts_.remove(entry);
+    LinkedHashSet<Entry> bucket = buckets_.get(count);
+    bucket.remove(entry);
+    if (bucket.isEmpty()) {
+      buckets_.remove(count);
+      if (minCount_ == count)
+        // selectEntryToEvict finds the new minimum if needed.
+        minCount_ = -1;
+    }
+  }
+
+  protected Entry
+  selectEntryToEvict()
+  {
+    if (minCount_ < 0) {
+      // An erase emptied the bucket of the minimum count, so search the
+      // buckets. There are usually only a few distinct counts.
+      for (long count : buckets_.keySet()) {
+        if (minCount_ < 0 || count < minCount_)
+          minCount_ = count;
+      }
+    }
+    return buckets_.get(minCount_).iterator().next();
+  }
+
+  private LinkedHashSet<Entry>
+  getBucket(long count)
+  {
+    LinkedHashSet<Entry> bucket = buckets_.get(count);
+    if (bucket == null) {
+      bucket = new LinkedHashSet<Entry>();
+      buckets_.put(count, bucket);
+    }
+    return bucket;
+  }
+
+  // The key is the access count. The value is the entries with the count, in
+  // the order that they reached it.
+  private final HashMap<Long, LinkedHashSet<Entry>> buckets_ =
+    new HashMap<Long, LinkedHashSet<Entry>>();
+  private final HashMap<Entry, Long> counts_ = new HashMap<Entry, Long>();
+  private long minCount_ = 0;
+}
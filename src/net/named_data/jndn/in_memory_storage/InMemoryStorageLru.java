@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.in_memory_storage;
+
+import java.util.LinkedHashSet;
+
+/**
+ * InMemoryStorageLru extends InMemoryStorage to evict the entry which was
+ * least recently inserted or found.
+ */
+public class InMemoryStorageLru extends InMemoryStorage {
+  /**
+   * Create an InMemoryStorageLru with the given capacity.
+   * @param capacityBytes The maximum total size in bytes of the encoded Data
+   * packets.
+   */
+  public InMemoryStorageLru(long capacityBytes)
+  {
+    super(capacityBytes);
+  }
+
+  protected void
+  afterInsert(Entry entry) { queue_.add(entry); }
+
+  protected void
+  afterAccess(Entry entry)
+  {
+    // Move to the most recently used end.
+    queue_.remove(entry);
+    queue_.add(entry);
+  }
+
+  protected void
+  beforeErase(Entry entry) { queue_.remove(entry); }
+
+  protected Entry
+  selectEntryToEvict() { return queue_.iterator().next(); }
+
+  // The entries from least to most recently used. Moving an entry is O(1).
+  private final LinkedHashSet<Entry> queue_ = new LinkedHashSet<Entry>();
+}
@@ -0,0 +1,383 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.in_memory_storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.Common;
+
+/**
+ * OffHeapContentStore is an application cache which keeps the wire encoding
+ * of each Data packet in off-heap slabs (direct ByteBuffers), so that a cache
+ * of many gigabytes does not add to the garbage collector's work. The heap
+ * only has a name index in canonical order with the location of each
+ * encoding. find returns a read-only slice of the slab which can be given
+ * directly to Face.send without copying.
+ * <p>
+ * New encodings are appended to the current slab. When it is full, this
+ * reuses the slab with the least live bytes, first copying its live encodings
+ * to a spare slab to compact them. If no slab has room even after compaction,
+ * this evicts the oldest inserted entries. This class is not thread-safe.
+ */
+public class OffHeapContentStore {
+  /**
+   * Create an OffHeapContentStore with the given number of slabs. This
+   * allocates one more slab as the spare for compaction.
+   * @param slabSize The size in bytes of each slab. This is the maximum size
+   * of an encoded Data packet which can be inserted. It should be much larger
+   * than Common.MAX_NDN_PACKET_SIZE, for example 4 MB.
+   * @param slabCount The number of slabs, so that the capacity is
+   * slabSize * slabCount bytes.
+   */
+  public OffHeapContentStore(int slabSize, int slabCount)
+  {
+    if (slabSize <= 0 || slabCount <= 0)
+      throw new IllegalArgumentException
+        ("OffHeapContentStore: The slab size and count must be positive");
+
+    slabSize_ = slabSize;
+    slabs_ = new ByteBuffer[slabCount + 1];
+    usedBytes_ = new int[slabs_.length];
+    liveBytes_ = new int[slabs_.length];
+    slabEntries_ = new ArrayList<ArrayList<Entry>>(slabs_.length);
+    for (int i = 0; i < slabs_.length; ++i) {
+      slabs_[i] = ByteBuffer.allocateDirect(slabSize);
+      slabEntries_.add(new ArrayList<Entry>());
+    }
+    current_ = 0;
+    spare_ = slabs_.length - 1;
+  }
+
+  /**
+   * Copy the encoding of the Data packet into a slab, evicting other entries
+   * if needed. If a Data packet with the same name, including the implicit
+   * digest, already exists, replace it.
+   * @param data The Data packet to insert.
+   * @return True if inserted, false if the encoding is larger than the slab
+   * size.
+   * @throws EncodingException for error encoding the Data packet to get the
+   * implicit digest.
+   */
+  public final boolean
+  insert(Data data) throws EncodingException
+  {
+    // wireEncode returns the cached encoding if available.
+    Blob encoding = data.wireEncode();
+    int size = encoding.size();
+    if (size > slabSize_)
+      return false;
+
+    Name fullName = data.getFullName();
+    Entry oldEntry = index_.get(fullName);
+    if (oldEntry != null)
+      erase(oldEntry);
+
+    makeRoom(size);
+
+    ByteBuffer slab = slabs_[current_].duplicate();
+    slab.position(usedBytes_[current_]);
+    slab.put(encoding.buf());
+
+    double freshnessPeriod = data.getMetaInfo().getFreshnessPeriod();
+    Entry entry = new Entry
+      (fullName, current_, usedBytes_[current_], size, freshnessPeriod >= 0 ?
+       Common.getNowMilliseconds() + freshnessPeriod : Double.MAX_VALUE);
+    usedBytes_[current_] += size;
+    liveBytes_[current_] += size;
+    slabEntries_.get(current_).add(entry);
+    index_.put(fullName, entry);
+    insertionOrder_.add(entry);
+    totalBytes_ += size;
+    return true;
+  }
+
+  /**
+   * Find the encoding of the best match Data for an Interest, which is the
+   * first match in canonical order. This checks the Interest's CanBePrefix
+   * and MustBeFresh.
+   * @param interest The Interest with the Name of the Data packet to find.
+   * @return A read-only slice of the slab with the Data packet encoding, or
+   * null if not found. The slice is only valid until the next call to insert
+   * or remove, which may overwrite the slab.
+   */
+  public final ByteBuffer
+  find(Interest interest)
+  {
+    Name prefix = interest.getName();
+    NavigableMap<Name, Entry> range;
+    if (prefix.size() == 0)
+      range = index_;
+    else
+      range = index_.subMap(prefix, true, prefix.getSuccessor(), false);
+
+    double nowMilliseconds = Common.getNowMilliseconds();
+    for (Entry entry : range.values()) {
+      if (!interest.getCanBePrefix()) {
+        // The entries whose Data name equals the prefix come first, since the
+        // implicit digest component sorts before other components.
+        if (entry.fullName_.size() > prefix.size() + 1)
+          break;
+      }
+      if (interest.getMustBeFresh() &&
+          nowMilliseconds >= entry.staleTimeMilliseconds_)
+        continue;
+
+      ++hitCount_;
+      ByteBuffer result = slabs_[entry.slab_].asReadOnlyBuffer();
+      result.limit(entry.offset_ + entry.size_);
+      result.position(entry.offset_);
+      return result;
+    }
+
+    ++missCount_;
+    return null;
+  }
+
+  /**
+   * Find the best match Data for the Interest as in find, and send its
+   * encoding to the face without copying it to the heap.
+   * @param interest The Interest with the Name of the Data packet to find.
+   * @param face The Face to send to, for example from the OnInterest callback.
+   * @return True if found and sent, false if not found.
+   * @throws IOException For I/O error in sending.
+   */
+  public final boolean
+  replyFromStore(Interest interest, Face face) throws IOException
+  {
+    ByteBuffer encoding = find(interest);
+    if (encoding == null)
+      return false;
+
+    face.send(encoding);
+    return true;
+  }
+
+  /**
+   * Remove matching entries by prefix. This only updates the index and the
+   * slab accounting. The slab space is reclaimed by a later compaction.
+   * @param prefix The prefix Name of the entries to remove.
+   */
+  public final void
+  remove(Name prefix)
+  {
+    NavigableMap<Name, Entry> range;
+    if (prefix.size() == 0)
+      range = index_;
+    else
+      range = index_.subMap(prefix, true, prefix.getSuccessor(), false);
+
+    // Copy the entries to not change the map while iterating.
+    for (Entry entry : new ArrayList<Entry>(range.values()))
+      erase(entry);
+  }
+
+  /**
+   * Get the number of packets stored.
+   * @return The number of packets.
+   */
+  public final int
+  size() { return index_.size(); }
+
+  /**
+   * Get the total size of the stored encoded Data packets, not counting the
+   * slab space of removed packets which is not yet reclaimed.
+   * @return The total size in bytes.
+   */
+  public final long
+  getTotalBytes() { return totalBytes_; }
+
+  /**
+   * Get the capacity, which is slabSize * slabCount from the constructor.
+   * @return The capacity in bytes.
+   */
+  public final long
+  getCapacityBytes() { return (long)slabSize_ * (slabs_.length - 1); }
+
+  /**
+   * Get the number of calls to find which found a Data packet.
+   * @return The number of hits.
+   */
+  public final long
+  getHitCount() { return hitCount_; }
+
+  /**
+   * Get the number of calls to find which did not find a Data packet.
+   * @return The number of misses.
+   */
+  public final long
+  getMissCount() { return missCount_; }
+
+  /**
+   * Get the number of entries which were evicted to make room, not counting
+   * entries removed by remove or replaced by insert.
+   * @return The number of evictions.
+   */
+  public final long
+  getEvictionCount() { return evictionCount_; }
+
+  /**
+   * Get the number of times a slab was compacted by copying its live
+   * encodings to the spare slab.
+   * @return The number of compactions.
+   */
+  public final long
+  getCompactionCount() { return compactionCount_; }
+
+  /**
+   * An Entry has the location of an encoding in a slab.
+   */
+  private static class Entry {
+    public Entry
+      (Name fullName, int slab, int offset, int size,
+       double staleTimeMilliseconds)
+    {
+      fullName_ = fullName;
+      slab_ = slab;
+      offset_ = offset;
+      size_ = size;
+      staleTimeMilliseconds_ = staleTimeMilliseconds;
+    }
+
+    public final Name fullName_;
+    public int slab_;
+    public int offset_;
+    public final int size_;
+    public final double staleTimeMilliseconds_;
+    public boolean isErased_ = false;
+  }
+
+  /**
+   * Make current_ a slab with room for size bytes after usedBytes_[current_].
+   * @param size The number of bytes needed, which is not more than slabSize_.
+   */
+  private void
+  makeRoom(int size)
+  {
+    while (slabSize_ - usedBytes_[current_] < size) {
+      // Find the slab with the least live bytes which has room after
+      // compaction.
+      int best = -1;
+      for (int i = 0; i < slabs_.length; ++i) {
+        if (i == spare_ || slabSize_ - liveBytes_[i] < size)
+          continue;
+        if (best < 0 || liveBytes_[i] < liveBytes_[best])
+          best = i;
+      }
+
+      if (best < 0) {
+        evictOldest();
+        continue;
+      }
+
+      if (slabSize_ - usedBytes_[best] >= size)
+        // The slab already has room at the end.
+        current_ = best;
+      else if (liveBytes_[best] == 0) {
+        usedBytes_[best] = 0;
+        slabEntries_.get(best).clear();
+        current_ = best;
+      }
+      else
+        current_ = compact(best);
+    }
+  }
+
+  /**
+   * Copy the live encodings of the slab to the spare slab, and make the slab
+   * the new spare.
+   * @param slab The index of the slab to compact.
+   * @return The index of the compacted slab, which was the spare.
+   */
+  private int
+  compact(int slab)
+  {
+    int target = spare_;
+    ByteBuffer source = slabs_[slab].duplicate();
+    ByteBuffer destination = slabs_[target].duplicate();
+    destination.clear();
+    ArrayList<Entry> targetEntries = slabEntries_.get(target);
+    targetEntries.clear();
+
+    for (Entry entry : slabEntries_.get(slab)) {
+      if (entry.isErased_)
+        continue;
+
+      source.limit(entry.offset_ + entry.size_);
+      source.position(entry.offset_);
+      entry.slab_ = target;
+      entry.offset_ = destination.position();
+      destination.put(source);
+      targetEntries.add(entry);
+    }
+
+    usedBytes_[target] = destination.position();
+    liveBytes_[target] = destination.position();
+    usedBytes_[slab] = 0;
+    liveBytes_[slab] = 0;
+    slabEntries_.get(slab).clear();
+    spare_ = slab;
+    ++compactionCount_;
+    return target;
+  }
+
+  private void
+  evictOldest()
+  {
+    erase(insertionOrder_.iterator().next());
+    ++evictionCount_;
+  }
+
+  private void
+  erase(Entry entry)
+  {
+    entry.isErased_ = true;
+    index_.remove(entry.fullName_);
+    insertionOrder_.remove(entry);
+    liveBytes_[entry.slab_] -= entry.size_;
+    totalBytes_ -= entry.size_;
+  }
+
+  private final int slabSize_;
+  private final ByteBuffer[] slabs_;
+  private final int[] usedBytes_;
+  private final int[] liveBytes_;
+  // The entries in each slab in order of offset, including erased entries
+  // until the slab is compacted or reused.
+  private final ArrayList<ArrayList<Entry>> slabEntries_;
+  private int current_;
+  private int spare_;
+  private final TreeMap<Name, Entry> index_ = new TreeMap<Name, Entry>();
+  private final LinkedHashSet<Entry> insertionOrder_ = new LinkedHashSet<Entry>();
+  private long totalBytes_ = 0;
+  private long hitCount_ = 0;
+  private long missCount_ = 0;
+  private long evictionCount_ = 0;
+  private long compactionCount_ = 0;
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.lp;
+
+/**
+ * FragmentInfo represents the Sequence, FragIndex and FragCount header fields
+ * in an NDNLPv2 packet which is one fragment of a larger network-layer packet.
+ * See LpFragmenter and LpReassembler.
+ * http://redmine.named-data.net/projects/nfd/wiki/NDNLPv2
+ */
+public class FragmentInfo {
+  /**
+   * Get the sequence number.
+   * @return The sequence number, or -1 if not specified.
+   */
+  public long
+  getSequence() { return sequence_; }
+
+  /**
+   * Get the index of this fragment.
+   * @return The fragment index, starting from 0.
+   */
+  public long
+  getFragIndex() { return fragIndex_; }
+
+  /**
+   * Get the number of fragments of the network-layer packet.
+   * @return The fragment count, which is 1 if the packet is not fragmented.
+   */
+  public long
+  getFragCount() { return fragCount_; }
+
+  /**
+   * Set the sequence number.
+   * @param sequence The sequence number, or -1 if not specified.
+   */
+  public void
+  setSequence(long sequence) { sequence_ = sequence; }
+
+  /**
+   * Set the index of this fragment.
+   * @param fragIndex The fragment index, starting from 0.
+   */
+  public void
+  setFragIndex(long fragIndex) { fragIndex_ = fragIndex; }
+
+  /**
+   * Set the number of fragments of the network-layer packet.
+   * @param fragCount The fragment count.
+   */
+  public void
+  setFragCount(long fragCount) { fragCount_ = fragCount; }
+
+  /**
+   * Get the first header field in lpPacket which is a FragmentInfo. This is
+   * an internal method which the application normally would not use.
+   * @param lpPacket The LpPacket with the header fields to search.
+   * @return The first FragmentInfo header field, or null if not found.
+   */
+  static public FragmentInfo
+  getFirstHeader(LpPacket lpPacket)
+  {
+    for (int i = 0; i < lpPacket.countHeaderFields(); ++i) {
+      Object field = lpPacket.getHeaderField(i);
+      if (field instanceof FragmentInfo)
+        return (FragmentInfo)field;
+    }
+
+    return null;
+  }
+
+  private long sequence_ = -1;
+  private long fragIndex_ = 0;
+  private long fragCount_ = 1;
+}
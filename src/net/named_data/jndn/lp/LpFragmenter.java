@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.lp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.tlv.Tlv;
+import net.named_data.jndn.encoding.tlv.TlvEncoder;
+import net.named_data.jndn.util.Common;
+
+/**
+ * An LpFragmenter splits a network-layer packet which is larger than the MTU
+ * into NDNLPv2 fragments, where each fragment is an LpPacket with the
+ * Sequence, FragIndex and FragCount header fields. The Sequence of each
+ * fragment is one more than the previous, so that LpReassembler can find the
+ * sequence of the first fragment. This is an internal class which the
+ * application normally would not use.
+ * http://redmine.named-data.net/projects/nfd/wiki/NDNLPv2
+ */
+public class LpFragmenter {
+  /**
+   * Create an LpFragmenter for the MTU, with a random initial sequence number.
+   * @param mtu The maximum size in bytes of an encoded fragment. This must be
+   * at least MIN_MTU.
+   */
+  public LpFragmenter(int mtu)
+  {
+    if (mtu < MIN_MTU)
+      throw new IllegalArgumentException
+        ("LpFragmenter: The MTU must be at least " + MIN_MTU);
+    mtu_ = mtu;
+    // The Sequence is an unsigned 64-bit number which wraps to 0.
+    nextSequence_ = Common.getRandom().nextLong();
+  }
+
+  /**
+   * Get the MTU given to the constructor.
+   * @return The MTU.
+   */
+  public final int
+  getMtu() { return mtu_; }
+
+  /**
+   * Split the packet into fragments which are each at most getMtu() bytes. If
+   * the packet is an LpPacket, its header fields are put in the first
+   * fragment.
+   * @param packet The encoded packet, which may be an LpPacket. This reads
+   * from position() to limit(), but does not change the position.
+   * @return A list of the encoded fragments. If the packet is not larger than
+   * getMtu(), this returns a list with only the packet (not a copy).
+   * @throws EncodingException If the packet is an LpPacket with invalid
+   * encoding, or its header fields do not fit in one fragment.
+   */
+  public final ArrayList<ByteBuffer>
+  fragment(ByteBuffer packet) throws EncodingException
+  {
+    ArrayList<ByteBuffer> fragments = new ArrayList<ByteBuffer>();
+    if (packet.remaining() <= mtu_) {
+      fragments.add(packet);
+      return fragments;
+    }
+
+    ByteBuffer otherHeaderFields;
+    ByteBuffer payload;
+    if (packet.get(packet.position()) == Tlv.LpPacket_LpPacket) {
+      ByteBuffer[] fields = LpReassembler.decodeLpPacket
+        (packet, null, null);
+      otherHeaderFields = fields[0];
+      payload = fields[1];
+    }
+    else {
+      otherHeaderFields = ByteBuffer.allocate(0);
+      payload = packet.duplicate();
+    }
+
+    int firstCapacity = mtu_ - MAX_FRAGMENT_OVERHEAD - otherHeaderFields.remaining();
+    int capacity = mtu_ - MAX_FRAGMENT_OVERHEAD;
+    if (firstCapacity <= 0)
+      throw new EncodingException
+        ("LpFragmenter: The LpPacket header fields do not fit in the MTU");
+
+    int fragCount = 1 +
+      (payload.remaining() - firstCapacity + capacity - 1) / capacity;
+    long firstSequence;
+    synchronized (this) {
+      firstSequence = nextSequence_;
+      nextSequence_ += fragCount;
+    }
+
+    int offset = payload.position();
+    for (int fragIndex = 0; fragIndex < fragCount; ++fragIndex) {
+      int fragmentSize = Math.min
+        (fragIndex == 0 ? firstCapacity : capacity, payload.limit() - offset);
+      ByteBuffer fragmentValue = payload.duplicate();
+      fragmentValue.limit(offset + fragmentSize);
+      fragmentValue.position(offset);
+      offset += fragmentSize;
+
+      fragments.add(encodeFragment
+        (firstSequence + fragIndex, fragIndex, fragCount,
+         fragIndex == 0 ? otherHeaderFields : null, fragmentValue));
+    }
+
+    return fragments;
+  }
+
+  /**
+   * Encode an LpPacket with the fragmentation header fields.
+   * @param sequence The Sequence.
+   * @param fragIndex The FragIndex.
+   * @param fragCount The FragCount.
+   * @param otherHeaderFields The encoding of other header fields, or null for
+   * none.
+   * @param fragmentValue The value of the Fragment field.
+   * @return The encoded LpPacket.
+   */
+  private static ByteBuffer
+  encodeFragment
+    (long sequence, long fragIndex, long fragCount,
+     ByteBuffer otherHeaderFields, ByteBuffer fragmentValue)
+  {
+    TlvEncoder encoder = new TlvEncoder
+      (fragmentValue.remaining() + MAX_FRAGMENT_OVERHEAD +
+       (otherHeaderFields == null ? 0 : otherHeaderFields.remaining()));
+    int saveLength = encoder.getLength();
+
+    // Encode backwards.
+    encoder.writeBlobTlv(Tlv.LpPacket_Fragment, fragmentValue);
+    encoder.writeBuffer(otherHeaderFields);
+    encoder.writeNonNegativeIntegerTlv(Tlv.LpPacket_FragCount, fragCount);
+    encoder.writeNonNegativeIntegerTlv(Tlv.LpPacket_FragIndex, fragIndex);
+    // NDNLPv2 encodes the Sequence as a fixed-width 8-byte integer.
+    ByteBuffer sequenceValue = ByteBuffer.allocate(8);
+    sequenceValue.putLong(sequence);
+    sequenceValue.flip();
+    encoder.writeBlobTlv(Tlv.LpPacket_Sequence, sequenceValue);
+
+    encoder.writeTypeAndLength
+      (Tlv.LpPacket_LpPacket, encoder.getLength() - saveLength);
+
+    return encoder.getOutput();
+  }
+
+  /**
+   * The minimum MTU for the constructor.
+   */
+  public static final int MIN_MTU = 64;
+
+  // The maximum size of the LpPacket and Fragment type and length (for a
+  // length up to 65535), Sequence, FragIndex and FragCount fields.
+  private static final int MAX_FRAGMENT_OVERHEAD = 4 + 4 + 10 + 10 + 10;
+
+  private final int mtu_;
+  private long nextSequence_;
+}
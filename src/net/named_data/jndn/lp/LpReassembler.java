@@ -0,0 +1,401 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.lp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.tlv.Tlv;
+import net.named_data.jndn.encoding.tlv.TlvDecoder;
+import net.named_data.jndn.encoding.tlv.TlvEncoder;
+import net.named_data.jndn.util.Common;
+
+/**
+ * An LpReassembler collects the NDNLPv2 fragments made by LpFragmenter (or
+ * another NDNLPv2 implementation) and returns the network-layer packet when
+ * all of its fragments are received. To bound the memory when fragments are
+ * lost, a partly received packet is dropped if its other fragments are not
+ * received within the reassembly timeout, and the oldest partly received
+ * packets are dropped when the buffered fragments would exceed the maximum
+ * number of bytes. This is an internal class which the application normally
+ * would not use.
+ * http://redmine.named-data.net/projects/nfd/wiki/NDNLPv2
+ */
+public class LpReassembler {
+  /**
+   * Create an LpReassembler with the given limits.
+   * @param reassemblyTimeoutMilliseconds The time after receiving the first
+   * fragment of a packet when the packet is dropped if it is not complete.
+   * @param maxBufferedBytes The maximum number of bytes of fragments to buffer
+   * for all partly received packets.
+   */
+  public LpReassembler
+    (double reassemblyTimeoutMilliseconds, int maxBufferedBytes)
+  {
+    reassemblyTimeoutMilliseconds_ = reassemblyTimeoutMilliseconds;
+    maxBufferedBytes_ = maxBufferedBytes;
+  }
+
+  /**
+   * Create an LpReassembler with DEFAULT_REASSEMBLY_TIMEOUT_MILLISECONDS and
+   * DEFAULT_MAX_BUFFERED_BYTES.
+   */
+  public LpReassembler()
+  {
+    this(DEFAULT_REASSEMBLY_TIMEOUT_MILLISECONDS, DEFAULT_MAX_BUFFERED_BYTES);
+  }
+
+  /**
+   * Process a received packet. If it is an LpPacket which is a fragment, then
+   * save a copy of it until all the fragments of its network-layer packet are
+   * received. This also drops partly received packets which have timed out.
+   * @param sender An object which identifies the sender such as its
+   * SocketAddress, so that fragments from different senders are not combined.
+   * This must have equals and hashCode.
+   * @param packet The received packet. This reads from position() to
+   * limit(), but does not change the position.
+   * @return If the packet is not a fragment, return packet. If this is the
+   * last fragment of a packet, return a new buffer with the network-layer
+   * packet, which is an LpPacket if the first fragment has header fields other
+   * than for fragmentation. Otherwise return null.
+   * @throws EncodingException For invalid encoding of the LpPacket.
+   */
+  public final ByteBuffer
+  receive(Object sender, ByteBuffer packet) throws EncodingException
+  {
+    double now = Common.getNowMilliseconds() + nowOffsetMilliseconds_;
+    removeTimedOut(now);
+
+    if (packet.remaining() == 0 ||
+        packet.get(packet.position()) != Tlv.LpPacket_LpPacket)
+      return packet;
+
+    long[] fragmentation = new long[3];
+    boolean[] hasSequence = new boolean[1];
+    ByteBuffer[] fields = decodeLpPacket(packet, fragmentation, hasSequence);
+    // The Sequence is an unsigned 64-bit number which may have the top bit
+    // set. The subtraction below wraps the same as the unsigned value.
+    long sequence = fragmentation[0];
+    long fragIndex = fragmentation[1];
+    long fragCount = fragmentation[2];
+    if (fragCount <= 1)
+      return packet;
+
+    if (!hasSequence[0] || fragIndex < 0 || fragIndex >= fragCount ||
+        fields[1].remaining() > maxBufferedBytes_) {
+      logger_.log(Level.FINE, "LpReassembler: Dropping an invalid fragment");
+      return null;
+    }
+
+    PartialPacketKey key = new PartialPacketKey(sender, sequence - fragIndex);
+    PartialPacket partialPacket = partialPackets_.get(key);
+    if (partialPacket == null) {
+      if (fragCount > MAX_FRAG_COUNT) {
+        logger_.log(Level.FINE, "LpReassembler: Dropping an invalid fragment");
+        return null;
+      }
+
+      partialPacket = new PartialPacket
+        ((int)fragCount, now + reassemblyTimeoutMilliseconds_);
+      partialPackets_.put(key, partialPacket);
+    }
+    else if (partialPacket.fragments_.length != fragCount) {
+      // The FragCount doesn't match the other fragments.
+      logger_.log(Level.FINE, "LpReassembler: Dropping an invalid fragment");
+      remove(key);
+      return null;
+    }
+
+    int index = (int)fragIndex;
+    if (partialPacket.fragments_[index] != null)
+      // A duplicate fragment.
+      return null;
+
+    // Make room for the fragment.
+    int fragmentSize = fields[1].remaining() +
+      (index == 0 ? fields[0].remaining() : 0);
+    Iterator<PartialPacketKey> oldest = partialPackets_.keySet().iterator();
+    while (bufferedBytes_ + fragmentSize > maxBufferedBytes_ &&
+           oldest.hasNext()) {
+      PartialPacketKey oldestKey = oldest.next();
+      if (oldestKey.equals(key))
+        continue;
+      logger_.log(Level.FINE,
+        "LpReassembler: Dropping a partly received packet to free memory");
+      bufferedBytes_ -= partialPackets_.get(oldestKey).nBytes_;
+      oldest.remove();
+    }
+    if (bufferedBytes_ + fragmentSize > maxBufferedBytes_) {
+      // The other fragments of this packet already use the memory.
+      remove(key);
+      return null;
+    }
+
+    // Copy the fragment since the packet buffer may be reused.
+    partialPacket.fragments_[index] = copy(fields[1]);
+    if (index == 0)
+      partialPacket.otherHeaderFields_ = copy(fields[0]);
+    partialPacket.nBytes_ += fragmentSize;
+    bufferedBytes_ += fragmentSize;
+    ++partialPacket.nReceived_;
+    if (partialPacket.nReceived_ < partialPacket.fragments_.length)
+      return null;
+
+    remove(key);
+    return partialPacket.reassemble();
+  }
+
+  /**
+   * Get the number of partly received packets.
+   * @return The number of partly received packets.
+   */
+  public final int
+  size() { return partialPackets_.size(); }
+
+  /**
+   * Get the number of bytes of buffered fragments.
+   * @return The number of bytes.
+   */
+  public final int
+  getBufferedBytes() { return bufferedBytes_; }
+
+  /**
+   * Set the offset for when receive gets the current time, which should only
+   * be used for testing.
+   * @param nowOffsetMilliseconds The offset in milliseconds.
+   */
+  public final void
+  setNowOffsetMilliseconds_(double nowOffsetMilliseconds)
+  {
+    nowOffsetMilliseconds_ = nowOffsetMilliseconds;
+  }
+
+  /**
+   * Decode the encoded LpPacket and split it into the header fields other than
+   * for fragmentation and the Fragment.
+   * @param input The encoded LpPacket. This reads from position() to limit(),
+   * but does not change the position.
+   * @param fragmentation If not null, set fragmentation[0] to the Sequence (or
+   * 0 if omitted), fragmentation[1] to the FragIndex (or 0 if omitted) and
+   * fragmentation[2] to the FragCount (or 1 if omitted). The Sequence is an
+   * unsigned 64-bit number, so it is negative if the top bit is set.
+   * @param hasSequence If not null, set hasSequence[0] to true if the Sequence
+   * field is present, otherwise false.
+   * @return An array where the first element is a new buffer with the encoding
+   * of the header fields other than Sequence, FragIndex and FragCount, and the
+   * second element is a slice of input with the value of the Fragment field
+   * (empty if omitted).
+   * @throws EncodingException For invalid encoding.
+   */
+  static ByteBuffer[]
+  decodeLpPacket
+    (ByteBuffer input, long[] fragmentation, boolean[] hasSequence)
+    throws EncodingException
+  {
+    long sequence = 0;
+    boolean gotSequence = false;
+    long fragIndex = 0;
+    long fragCount = 1;
+    ByteBuffer fragment = ByteBuffer.allocate(0);
+
+    TlvDecoder decoder = new TlvDecoder(input);
+    int endOffset = decoder.readNestedTlvsStart(Tlv.LpPacket_LpPacket);
+    ArrayList<ByteBuffer> otherFields = new ArrayList<ByteBuffer>();
+    while (decoder.getOffset() < endOffset) {
+      int fieldOffset = decoder.getOffset();
+      int fieldType = decoder.readVarNumber();
+      int fieldLength = decoder.readVarNumber();
+      int fieldEndOffset = decoder.getOffset() + fieldLength;
+      if (fieldEndOffset > endOffset)
+        throw new EncodingException("TLV length exceeds the buffer length");
+
+      if (fieldType == Tlv.LpPacket_Fragment) {
+        fragment = decoder.getSlice(decoder.getOffset(), fieldEndOffset);
+        decoder.seek(fieldEndOffset);
+        // The fragment is supposed to be the last field.
+        break;
+      }
+      else if (fieldType == Tlv.LpPacket_Sequence) {
+        sequence = decoder.readNonNegativeInteger(fieldLength);
+        gotSequence = true;
+      }
+      else if (fieldType == Tlv.LpPacket_FragIndex)
+        fragIndex = decoder.readNonNegativeInteger(fieldLength);
+      else if (fieldType == Tlv.LpPacket_FragCount)
+        fragCount = decoder.readNonNegativeInteger(fieldLength);
+      else {
+        otherFields.add(decoder.getSlice(fieldOffset, fieldEndOffset));
+        decoder.seek(fieldEndOffset);
+      }
+    }
+
+    if (fragmentation != null) {
+      fragmentation[0] = sequence;
+      fragmentation[1] = fragIndex;
+      fragmentation[2] = fragCount;
+    }
+    if (hasSequence != null)
+      hasSequence[0] = gotSequence;
+
+    int otherLength = 0;
+    for (ByteBuffer field : otherFields)
+      otherLength += field.remaining();
+    ByteBuffer other = ByteBuffer.allocate(otherLength);
+    for (ByteBuffer field : otherFields)
+      other.put(field);
+    other.flip();
+
+    return new ByteBuffer[] { other, fragment };
+  }
+
+  private static ByteBuffer
+  copy(ByteBuffer buffer)
+  {
+    ByteBuffer result = ByteBuffer.allocate(buffer.remaining());
+    result.put(buffer.duplicate());
+    result.flip();
+    return result;
+  }
+
+  private void
+  remove(PartialPacketKey key)
+  {
+    PartialPacket partialPacket = partialPackets_.remove(key);
+    if (partialPacket != null)
+      bufferedBytes_ -= partialPacket.nBytes_;
+  }
+
+  /**
+   * Remove the partly received packets whose reassembly timeout is before now.
+   * Since partialPackets_ is in the order of the first received fragment, we
+   * only need to check the packets at the front.
+   * @param now The current time in milliseconds.
+   */
+  private void
+  removeTimedOut(double now)
+  {
+    Iterator<PartialPacket> i = partialPackets_.values().iterator();
+    while (i.hasNext()) {
+      PartialPacket partialPacket = i.next();
+      if (partialPacket.timeoutTime_ > now)
+        break;
+
+      logger_.log(Level.FINE,
+        "LpReassembler: Dropping a partly received packet which timed out");
+      bufferedBytes_ -= partialPacket.nBytes_;
+      i.remove();
+    }
+  }
+
+  /**
+   * A PartialPacketKey identifies a partly received packet by the sender and
+   * the Sequence of its first fragment.
+   */
+  private static class PartialPacketKey {
+    public PartialPacketKey(Object sender, long firstSequence)
+    {
+      sender_ = sender;
+      firstSequence_ = firstSequence;
+    }
+
+    public boolean
+    equals(Object other)
+    {
+      if (!(other instanceof PartialPacketKey))
+        return false;
+      PartialPacketKey otherKey = (PartialPacketKey)other;
+      return firstSequence_ == otherKey.firstSequence_ &&
+        (sender_ == null ? otherKey.sender_ == null :
+         sender_.equals(otherKey.sender_));
+    }
+
+    public int
+    hashCode()
+    {
+      return 31 * (sender_ == null ? 0 : sender_.hashCode()) +
+        (int)(firstSequence_ ^ (firstSequence_ >>> 32));
+    }
+
+    private final Object sender_;
+    private final long firstSequence_;
+  }
+
+  /**
+   * A PartialPacket holds the received fragments of a packet.
+   */
+  private static class PartialPacket {
+    public PartialPacket(int fragCount, double timeoutTime)
+    {
+      fragments_ = new ByteBuffer[fragCount];
+      timeoutTime_ = timeoutTime;
+    }
+
+    /**
+     * Combine the fragments and the other header fields of the first fragment.
+     * @return The network-layer packet.
+     */
+    public ByteBuffer
+    reassemble()
+    {
+      int payloadLength = 0;
+      for (ByteBuffer fragment : fragments_)
+        payloadLength += fragment.remaining();
+      ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+      for (ByteBuffer fragment : fragments_)
+        payload.put(fragment);
+      payload.flip();
+
+      if (otherHeaderFields_.remaining() == 0)
+        return payload;
+
+      TlvEncoder encoder = new TlvEncoder
+        (payloadLength + otherHeaderFields_.remaining() + 16);
+      encoder.writeBlobTlv(Tlv.LpPacket_Fragment, payload);
+      encoder.writeBuffer(otherHeaderFields_);
+      encoder.writeTypeAndLength(Tlv.LpPacket_LpPacket, encoder.getLength());
+      return encoder.getOutput();
+    }
+
+    public final ByteBuffer[] fragments_;
+    public final double timeoutTime_;
+    public ByteBuffer otherHeaderFields_ = ByteBuffer.allocate(0);
+    public int nReceived_ = 0;
+    public int nBytes_ = 0;
+  }
+
+  public static final double DEFAULT_REASSEMBLY_TIMEOUT_MILLISECONDS = 500;
+  public static final int DEFAULT_MAX_BUFFERED_BYTES = 1024 * 1024;
+  // This is the same limit as NFD's LpReassembler.
+  private static final int MAX_FRAG_COUNT = 400;
+
+  // The map is in the order of insertion, which is the order of timeoutTime_.
+  private final LinkedHashMap<PartialPacketKey, PartialPacket> partialPackets_ =
+    new LinkedHashMap<PartialPacketKey, PartialPacket>();
+  private final double reassemblyTimeoutMilliseconds_;
+  private final int maxBufferedBytes_;
+  private int bufferedBytes_ = 0;
+  private double nowOffsetMilliseconds_ = 0;
+  private static final Logger logger_ = Logger.getLogger
+    (LpReassembler.class.getName());
+}
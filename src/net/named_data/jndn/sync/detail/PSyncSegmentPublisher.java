@@ -27,7 +27,7 @@ import net.named_data.jndn.Face;
 import net.named_data.jndn.Interest;
 import net.named_data.jndn.Name;
 import net.named_data.jndn.encoding.EncodingException;
-import net.named_data.jndn.in_memory_storage.InMemoryStorageRetaining;
+import net.named_data.jndn.in_memory_storage.InMemoryStorageFifo;
 import net.named_data.jndn.security.KeyChain;
 import net.named_data.jndn.security.SigningInfo;
 import net.named_data.jndn.security.pib.PibImpl;
@@ -44,15 +44,18 @@ public class PSyncSegmentPublisher {
    * Create a PSyncSegmentPublisher.
    * @param face The application's Face.
    * @param keyChain The KeyChain for signing Data packets.
-   * @param inMemoryStorageLimit The limit for the in-memory storage.
+   * @param inMemoryStorageLimit The limit for the in-memory storage, as a
+   * number of maximum-size packets. The storage capacity is this times
+   * Common.MAX_NDN_PACKET_SIZE bytes, and the oldest segments are evicted
+   * first.
    */
   public PSyncSegmentPublisher
     (Face face, KeyChain keyChain, int inMemoryStorageLimit)
   {
     face_ = face;
     keyChain_ = keyChain;
-    // Until InMemoryStorageFifo implements an eviction policy, use InMemoryStorageRetaining.
-    storage_ = new InMemoryStorageRetaining();
+    storage_ = new InMemoryStorageFifo
+      ((long)inMemoryStorageLimit * Common.MAX_NDN_PACKET_SIZE);
   }
 
   /**
@@ -63,10 +66,7 @@ public class PSyncSegmentPublisher {
    */
   public PSyncSegmentPublisher(Face face, KeyChain keyChain)
   {
-    face_ = face;
-    keyChain_ = keyChain;
-    // Until InMemoryStorageFifo implements an eviction policy, use InMemoryStorageRetaining.
-    storage_ = new InMemoryStorageRetaining();
+    this(face, keyChain, MAX_SEGMENTS_STORED);
   }
 
   /**
@@ -128,9 +128,6 @@ public class PSyncSegmentPublisher {
       if (interestSegment == segmentNo)
         face_.putData(data);
 
-/* Until InMemoryStorageFifo implements an eviction policy, use InMemoryStorageRetaining.
-      storage_.insert(*data, freshnessPeriod);
-*/
       storage_.insert(data);
 
       face_.callLater
@@ -187,8 +184,5 @@ public class PSyncSegmentPublisher {
 
   private final Face face_;
   private final KeyChain keyChain_;
-/* Until InMemoryStorageFifo implements an eviction policy, use InMemoryStorageRetaining.
-  private final InMemoryStorageFifo storage_ = new InMemoryStorageFifo();
-*/
-  private final InMemoryStorageRetaining storage_;
+  private final InMemoryStorageFifo storage_;
 }
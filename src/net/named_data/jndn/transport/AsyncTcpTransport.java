@@ -31,6 +31,8 @@ import java.nio.channels.CompletionHandler;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.named_data.jndn.encoding.ElementListener;
@@ -70,7 +72,26 @@ import net.named_data.jndn.util.Common;
 public class AsyncTcpTransport extends Transport
 {
   public AsyncTcpTransport(ScheduledExecutorService threadPool) {
+    this(threadPool, Common.MAX_NDN_PACKET_SIZE);
+  }
+
+  /**
+   * Create an AsyncTcpTransport with the given receive buffer size. A larger
+   * buffer lets one read from the socket return many packets, which are
+   * delivered to the ElementListener together if it is an
+   * ElementBatchListener.
+   * @param threadPool The thread pool for the asynchronous channel.
+   * @param receiveBufferSize The size in bytes of the buffer for reading from
+   * the socket.
+   */
+  public AsyncTcpTransport
+    (ScheduledExecutorService threadPool, int receiveBufferSize)
+  {
+    if (receiveBufferSize <= 0)
+      throw new IllegalArgumentException
+        ("AsyncTcpTransport: The receive buffer size must be positive");
     threadPool_ = threadPool;
+    inputBuffer_ = new ReceiveBuffer(receiveBufferSize);
 
     // This is the CompletionHandler for asyncRead().
     readCompletionHandler_ = new CompletionHandler<Integer, Void>() {
@@ -78,8 +99,7 @@ public class AsyncTcpTransport extends Transport
         // Need to catch and log exceptions at this async entry point.
         try {
           if (bytesRead > 0) {
-            inputBuffer_.flip();
-            elementReader_.onReceivedData(inputBuffer_);
+            inputBuffer_.onRead(elementReader_);
           }
 
           // Repeatedly do async read.
@@ -97,24 +117,35 @@ public class AsyncTcpTransport extends Transport
       }
     };
 
-    // This is the CompletionHandler for send().
-    writeCompletionHandler_ = new CompletionHandler<Integer, ByteBuffer>() {
-      public void completed(Integer bytesRead, ByteBuffer data) {
+    // This is the CompletionHandler for writeBuffers().
+    writeCompletionHandler_ = new CompletionHandler<Long, ByteBuffer[]>() {
+      public void completed(Long bytesWritten, ByteBuffer[] buffers) {
         // Need to catch and log exceptions at this async entry point.
         try {
-          if (data.hasRemaining()) {
-            channel_.write(data, data, writeCompletionHandler_);
-          } else {
-            writeLock_.release();
+          int offset = SendQueue.getFirstRemaining(buffers);
+          if (offset < buffers.length)
+            writeBuffers(buffers, offset);
+          else {
+            synchronized (sendQueue_) {
+              sendQueue_.recycle(buffers);
+            }
+            // Write the packets which were queued during the last write.
+            continueWrite();
           }
         } catch (Throwable ex) {
           logger_.log(Level.SEVERE, null, ex);
+          clearSendQueue();
         }
       }
 
-      public void failed(Throwable ex, ByteBuffer data) {
+      public void failed(Throwable ex, ByteBuffer[] buffers) {
         logger_.log(Level.SEVERE, "Failed to write to transport", ex);
-        writeLock_.release();
+        synchronized (sendQueue_) {
+          sendQueue_.recycle(buffers);
+        }
+        // The rest of a partly written packet would break the stream, so drop
+        // the queued packets.
+        clearSendQueue();
         if(connectionInfo_.shouldAttemptReconnection() && acquireReconnectLock()) {
           scheduleReconnect();
         }
@@ -122,6 +153,31 @@ public class AsyncTcpTransport extends Transport
     };
   }
 
+  /**
+   * An AsyncTcpTransport.SendQueueListener is notified when the number of
+   * bytes in the send queue goes above the high-water mark, and when it goes
+   * back down to half of the high-water mark. The application can use this
+   * to stop sending while the connection is backed up.
+   */
+  public interface SendQueueListener {
+    /**
+     * This is called when the send queue size goes above the high-water mark.
+     * This is called on the thread which called send.
+     * @param transport This transport.
+     */
+    void
+    onHighWaterMark(AsyncTcpTransport transport);
+
+    /**
+     * This is called when the send queue size goes back down to half of the
+     * high-water mark after onHighWaterMark was called. This is usually called
+     * on a thread of the thread pool.
+     * @param transport This transport.
+     */
+    void
+    onDrained(AsyncTcpTransport transport);
+  }
+
   /**
    * AsyncTcpTransport.ConnectionInfo extends Transport.ConnectionInfo to hold
    * the host and port info for the TCP connection. The reconnection logic is
@@ -189,6 +245,23 @@ public class AsyncTcpTransport extends Transport
     private final boolean attemptReconnection_;
   }
 
+  /**
+   * Enable or disable zero-copy receive. If enabled, each read from the socket
+   * goes into a part of the receive buffer which is not reused, so that the
+   * received packets are decoded without copying and their fields point into
+   * the receive buffer. This saves a copy of each packet, but a packet which
+   * the application keeps also keeps its part of the receive buffer in memory.
+   * Zero-copy receive is disabled by default. You should call this before
+   * connect.
+   * @param zeroCopyReceiveEnabled If true, enable zero-copy receive, otherwise
+   * disable it.
+   */
+  public final void
+  setZeroCopyReceiveEnabled(boolean zeroCopyReceiveEnabled)
+  {
+    inputBuffer_.setZeroCopyReceiveEnabled(zeroCopyReceiveEnabled);
+  }
+
   /**
    * Determine whether this transport connecting according to connectionInfo is
    * to a node on the current machine; results are cached. According to
@@ -355,14 +428,18 @@ public class AsyncTcpTransport extends Transport
 
   private void
   asyncRead() {
-    inputBuffer_.limit(inputBuffer_.capacity());
-    inputBuffer_.position(0);
     // We only call asyncRead after a previous call, so no need to dispatch.
-    channel_.read(inputBuffer_, null, readCompletionHandler_);
+    channel_.read(inputBuffer_.getReadBuffer(), null, readCompletionHandler_);
   }
 
   /**
-   * Send data to the host.
+   * Send data to the host. This copies the data to the direct chunk buffers of
+   * the send queue and returns without waiting for the write, so it never
+   * blocks on the socket. (Threads calling send only hold the lock on the send
+   * queue while copying.) Packets which are queued while a write is in progress
+   * are written together with one gathering write when it finishes. If this makes the send queue size go above the
+   * high-water mark, the packet is still queued but this calls
+   * onHighWaterMark of the SendQueueListener (see setSendQueueListener).
    * @param data The buffer of data to send.  This reads from position() to
    * limit(), but does not change the position.
    * @throws IOException For I/O error.
@@ -377,35 +454,192 @@ public class AsyncTcpTransport extends Transport
       throw new IOException("Cannot send because the socket is not open.  Use connect.");
     }
 
-    // This does not copy the bytes, but only duplicates the position which is
-    // updated by write(). We assume that the sender won't change the bytes of
-    // the buffer during send, so that we can avoid a costly copy operation.
-    data = data.duplicate();
+    long sendQueueSize;
+    synchronized (sendQueue_) {
+      sendQueue_.put(data);
+      // Update the size while locked so that it is never less than the bytes
+      // which the writer takes.
+      sendQueueSize = sendQueueSize_.addAndGet(data.remaining());
+    }
+    if (sendQueueSize > sendHighWaterMark_ &&
+        isAboveHighWaterMark_.compareAndSet(false, true)) {
+      SendQueueListener listener = sendQueueListener_;
+      if (listener != null) {
+        try {
+          listener.onHighWaterMark(this);
+        } catch (Throwable ex) {
+          logger_.log(Level.SEVERE, "Error in onHighWaterMark", ex);
+        }
+      }
+    }
 
-    // The completion handler will call write again if needed, or will notify
-    // to release the wait when finished writing.
     try {
-      sendDataSequentially(data);
-    } catch (InterruptedException e) {
-      throw new IOException(e);
+      startWrite();
+    } catch (RuntimeException ex) {
+      clearSendQueue();
+      throw new IOException(ex);
     }
   }
 
   /**
-   * Send data buffers one-by-one; this is necessary because async IO writes
-   * cannot overlap without a WritePendingException (see
-   * https://docs.oracle.com/javase/7/docs/api/java/nio/channels/AsynchronousSocketChannel.html#write(java.nio.ByteBuffer))
-   * @param data the buffer to send
-   * @throws InterruptedException if an external agent interrupts the thread; usually this means that someone is trying
-   * to close the
-   * @throws IOException if the channel write fails
+   * Override to return this thread's direct send buffer, since send copies the
+   * data to the send queue.
+   * @param capacity The capacity needed for the encoded packet.
+   * @return A buffer with position() 0 and limit() capacity.
    */
-  private void sendDataSequentially(ByteBuffer data) throws InterruptedException, IOException {
-    if (!writeLock_.tryAcquire(DEFAULT_LOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
-      throw new IOException("Failed to acquire lock on channel to write buffer");
+  public ByteBuffer
+  getSendBuffer(int capacity) {
+    return ThreadLocalSendBuffer.get(capacity);
+  }
+
+  /**
+   * Get the number of bytes which send has queued and which are not yet taken
+   * by a write.
+   * @return The number of queued bytes.
+   */
+  public long
+  getSendQueueSize() {
+    return sendQueueSize_.get();
+  }
+
+  /**
+   * Set the send queue size above which send reports backpressure. The
+   * default is DEFAULT_SEND_HIGH_WATER_MARK.
+   * @param sendHighWaterMark The high-water mark in bytes.
+   */
+  public final void
+  setSendHighWaterMark(long sendHighWaterMark) {
+    sendHighWaterMark_ = sendHighWaterMark;
+  }
+
+  /**
+   * Get the send queue size above which send reports backpressure.
+   * @return The high-water mark in bytes.
+   */
+  public final long
+  getSendHighWaterMark() {
+    return sendHighWaterMark_;
+  }
+
+  /**
+   * Check if the send queue size went above the high-water mark and has not
+   * yet gone back down to half of the high-water mark. While this is true,
+   * the application should stop sending.
+   * @return True if the send queue is backed up.
+   */
+  public final boolean
+  getIsSendQueueAboveHighWaterMark() {
+    return isAboveHighWaterMark_.get();
+  }
+
+  /**
+   * Set the listener which is notified when the send queue goes above the
+   * high-water mark and when it drains.
+   * @param sendQueueListener The SendQueueListener, or null for none.
+   */
+  public final void
+  setSendQueueListener(SendQueueListener sendQueueListener) {
+    sendQueueListener_ = sendQueueListener;
+  }
+
+  /**
+   * If no write is in progress, start writing the send queue. Any number of
+   * threads may call this.
+   */
+  private void
+  startWrite() {
+    if (isWriting_.compareAndSet(false, true))
+      continueWrite();
+  }
+
+  /**
+   * While this thread owns the write, write the next buffers from the send
+   * queue. If the queue is empty, give up the write and check again for a
+   * packet which was queued in the meantime.
+   */
+  private void
+  continueWrite() {
+    ByteBuffer[] buffers = pollSendQueue();
+    if (buffers != null) {
+      writeBuffers(buffers, 0);
+      return;
+    }
+
+    isWriting_.set(false);
+    // A send may have queued a packet after the poll but before its call to
+    // startWrite saw that isWriting_ was true.
+    if (sendQueueSize_.get() > 0)
+      startWrite();
+  }
+
+  /**
+   * Take all the chunks of the send queue for writing.
+   * @return The chunks, or null if the send queue is empty.
+   */
+  private ByteBuffer[]
+  pollSendQueue() {
+    ByteBuffer[] chunks;
+    long nBytes;
+    synchronized (sendQueue_) {
+      nBytes = sendQueue_.size();
+      if (nBytes == 0)
+        return null;
+      chunks = sendQueue_.takeChunks();
     }
 
-    channel_.write(data, data, writeCompletionHandler_);
+    onSendQueueRemoved(nBytes);
+    return chunks;
+  }
+
+  /**
+   * Start a gathering write of the buffers. The write completion handler
+   * writes the remaining bytes, recycles the buffers and then writes the
+   * packets which were queued in the meantime.
+   * @param buffers The chunks from the send queue.
+   * @param offset The index of the first buffer with bytes to write.
+   */
+  private void
+  writeBuffers(ByteBuffer[] buffers, int offset) {
+    channel_.write
+      (buffers, offset, buffers.length - offset, 0L, TimeUnit.MILLISECONDS,
+       buffers, writeCompletionHandler_);
+  }
+
+  /**
+   * Drop the queued packets after a write error and give up the write.
+   */
+  private void
+  clearSendQueue() {
+    long nBytes;
+    synchronized (sendQueue_) {
+      nBytes = sendQueue_.size();
+      sendQueue_.clear();
+    }
+
+    onSendQueueRemoved(nBytes);
+    isWriting_.set(false);
+  }
+
+  /**
+   * Update the send queue size after removing packets, and call onDrained of
+   * the SendQueueListener if the size goes down to half of the high-water
+   * mark.
+   * @param nBytes The number of bytes removed from the send queue.
+   */
+  private void
+  onSendQueueRemoved(long nBytes) {
+    long sendQueueSize = sendQueueSize_.addAndGet(-nBytes);
+    if (sendQueueSize <= sendHighWaterMark_ / 2 &&
+        isAboveHighWaterMark_.compareAndSet(true, false)) {
+      SendQueueListener listener = sendQueueListener_;
+      if (listener != null) {
+        try {
+          listener.onDrained(this);
+        } catch (Throwable ex) {
+          logger_.log(Level.SEVERE, "Error in onDrained", ex);
+        }
+      }
+    }
   }
 
   /**
@@ -426,18 +660,27 @@ public class AsyncTcpTransport extends Transport
 
   private AsynchronousSocketChannel channel_;
   private final CompletionHandler<Integer, Void> readCompletionHandler_;
-  private final CompletionHandler<Integer, ByteBuffer> writeCompletionHandler_;
+  private final CompletionHandler<Long, ByteBuffer[]> writeCompletionHandler_;
   private final ScheduledExecutorService threadPool_;
-  private ByteBuffer inputBuffer_ = ByteBuffer.allocate(Common.MAX_NDN_PACKET_SIZE);
+  private final ReceiveBuffer inputBuffer_;
   private ElementReader elementReader_;
   private ConnectionInfo connectionInfo_;
   private boolean isLocal_;
   private final Object isLocalLock_ = new Object();
-  private final Semaphore writeLock_ = new Semaphore(1);
+  // The send queue has many producers (threads calling send) and one consumer
+  // (the thread which owns the write). Access to it is synchronized on it.
+  private final SendQueue sendQueue_ = new SendQueue(SEND_CHUNK_SIZE);
+  private final AtomicLong sendQueueSize_ = new AtomicLong();
+  private final AtomicBoolean isWriting_ = new AtomicBoolean();
+  private final AtomicBoolean isAboveHighWaterMark_ = new AtomicBoolean();
+  private volatile long sendHighWaterMark_ = DEFAULT_SEND_HIGH_WATER_MARK;
+  private volatile SendQueueListener sendQueueListener_ = null;
   private static final Logger logger_ = Logger.getLogger
       (AsyncTcpTransport.class.getName());
   public static final int DEFAULT_LOCK_TIMEOUT_MS = 10000;
   public static final int DEFAULT_RECONNECT_TRY_DELAY_MS = 5000;
+  public static final long DEFAULT_SEND_HIGH_WATER_MARK = 4 * 1024 * 1024;
+  private static final int SEND_CHUNK_SIZE = 65536;
   private AsynchronousChannelGroup channelGroup_;
   private ElementListener elementListener_;
   private Runnable onConnected_;
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.ElementReader;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.util.Common;
+
+/**
+ * AsyncUnixTransport extends Transport for async communication with the local
+ * forwarder through a Unix-domain socket. AsynchronousSocketChannel does not
+ * support Unix-domain sockets, so this starts a daemon thread owned by the
+ * transport which does blocking reads from the socket and calls the
+ * ElementListener. The read thread does not use the thread pool, so even a
+ * pool with one thread can run onConnected and the Face callbacks. send does a
+ * blocking write, which only waits when the socket's kernel buffer is full.
+ * This requires Java 16 or later (see UnixTransport.isSupported).
+ */
+public class AsyncUnixTransport extends Transport {
+  /**
+   * Create an AsyncUnixTransport which uses the thread pool for onConnected.
+   * @param threadPool The thread pool for onConnected.
+   */
+  public AsyncUnixTransport(ScheduledExecutorService threadPool)
+  {
+    threadPool_ = threadPool;
+  }
+
+  /**
+   * Override to return true since a Unix-domain socket is always to a node on
+   * the current machine.
+   * @param connectionInfo This is ignored.
+   * @return True.
+   */
+  public boolean
+  isLocal(Transport.ConnectionInfo connectionInfo)
+  {
+    return true;
+  }
+
+  /**
+   * Override to return true since connect needs to use the onConnected callback.
+   * @return True.
+   */
+  public boolean
+  isAsync() { return true; }
+
+  /**
+   * Connect according to the info in ConnectionInfo, start the read thread,
+   * and use elementListener.
+   * @param connectionInfo A UnixTransport.ConnectionInfo.
+   * @param elementListener The ElementListener must remain valid during the
+   * life of this object.
+   * @param onConnected If not null, this calls onConnected.run() on the thread
+   * pool when the connection is established.
+   * @throws IOException For I/O error, or if Unix-domain sockets are not
+   * supported.
+   */
+  public void
+  connect
+    (Transport.ConnectionInfo connectionInfo, ElementListener elementListener,
+     final Runnable onConnected)
+    throws IOException
+  {
+    close();
+
+    final SocketChannel channel = UnixTransport.openUnixChannel
+      (((UnixTransport.ConnectionInfo)connectionInfo).getFilePath());
+    final ElementReader elementReader = new ElementReader(elementListener);
+    channel_ = channel;
+
+    Thread readThread = new Thread(new Runnable() {
+      public void run() { readLoop(channel, elementReader); }
+    }, "AsyncUnixTransport read");
+    readThread.setDaemon(true);
+    readThread.start();
+
+    if (onConnected != null) {
+      threadPool_.submit(new Runnable() {
+        public void run() {
+          // Need to catch and log exceptions at this async entry point.
+          try {
+            onConnected.run();
+          } catch (Throwable ex) {
+            logger_.log(Level.SEVERE, "Error in onConnected", ex);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Send data to the host.
+   * @param data The buffer of data to send.  This reads from position() to
+   * limit(), but does not change the position.
+   * @throws IOException For I/O error.
+   */
+  public void
+  send(ByteBuffer data) throws IOException
+  {
+    SocketChannel channel = channel_;
+    if (channel == null)
+      throw new IOException
+        ("Cannot send because the socket is not open.  Use connect.");
+
+    // Write the whole packet before another thread writes.
+    synchronized (writeLock_) {
+      ByteBuffer toWrite = data.duplicate();
+      while (toWrite.hasRemaining())
+        channel.write(toWrite);
+    }
+  }
+
+  /**
+   * Override to return this thread's direct send buffer, since send is
+   * finished with the buffer when it returns.
+   * @param capacity The capacity needed for the encoded packet.
+   * @return A buffer with position() 0 and limit() capacity.
+   */
+  public ByteBuffer
+  getSendBuffer(int capacity)
+  {
+    return ThreadLocalSendBuffer.get(capacity);
+  }
+
+  /**
+   * Do nothing since the read thread checks for incoming data.
+   */
+  public void
+  processEvents() throws IOException, EncodingException
+  {
+  }
+
+  /**
+   * Check if the transport is connected.
+   * @return True if connected.
+   */
+  public boolean
+  getIsConnected()
+  {
+    SocketChannel channel = channel_;
+    return channel != null && channel.isConnected();
+  }
+
+  /**
+   * Close the connection, which also ends the read thread. If not connected,
+   * this does nothing.
+   * @throws IOException For I/O error.
+   */
+  public void
+  close() throws IOException
+  {
+    SocketChannel channel = channel_;
+    channel_ = null;
+    if (channel != null)
+      channel.close();
+  }
+
+  /**
+   * Repeatedly do a blocking read from the channel and give the elements to
+   * the elementReader until the channel is closed.
+   * @param channel The channel from connect.
+   * @param elementReader The ElementReader from connect.
+   */
+  private void
+  readLoop(SocketChannel channel, ElementReader elementReader)
+  {
+    ReceiveBuffer inputBuffer = new ReceiveBuffer(Common.MAX_NDN_PACKET_SIZE);
+    try {
+      while (true) {
+        int bytesRead = channel.read(inputBuffer.getReadBuffer());
+        if (bytesRead < 0)
+          break;
+        if (bytesRead > 0) {
+          // Need to catch and log exceptions at this async entry point.
+          try {
+            inputBuffer.onRead(elementReader);
+          } catch (Throwable ex) {
+            logger_.log(Level.SEVERE, null, ex);
+          }
+        }
+      }
+    } catch (AsynchronousCloseException ex) {
+      // close() was called.
+    } catch (IOException ex) {
+      logger_.log(Level.SEVERE, "Failed to read from transport", ex);
+    }
+
+    try {
+      channel.close();
+    } catch (IOException ex) {
+    }
+  }
+
+  private volatile SocketChannel channel_ = null;
+  private final ScheduledExecutorService threadPool_;
+  private final Object writeLock_ = new Object();
+  private static final Logger logger_ = Logger.getLogger
+    (AsyncUnixTransport.class.getName());
+}
@@ -0,0 +1,533 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.transport;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.ControlParameters;
+import net.named_data.jndn.ControlResponse;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.NetworkNack;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.TlvWireFormat;
+import net.named_data.jndn.encoding.tlv.Tlv;
+import net.named_data.jndn.encoding.tlv.TlvEncoder;
+import net.named_data.jndn.lp.LpPacket;
+import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.Common;
+
+/**
+ * An InProcessForwarder is a minimal NDN forwarder for the Faces in the same
+ * JVM which connect to it with a LoopbackTransport, so that tests and
+ * benchmarks can run without NFD. It has:
+ * <ul>
+ * <li>A FIB which forwards an Interest to all the faces with a route for the
+ * longest matching prefix, except the incoming face. A route is added by a
+ * Face's registerPrefix (it answers /localhost/nfd/rib/register and
+ * unregister commands without checking the signature) or by addRoute. An
+ * Interest with no route gets a network Nack with reason NO_ROUTE.</li>
+ * <li>A PIT which aggregates an Interest with the same name and selectors as
+ * a pending Interest from another face, and sends the Data back to each face
+ * which expressed it.</li>
+ * <li>An optional content store which answers an Interest with a Data packet
+ * which it forwarded before.</li>
+ * </ul>
+ * The forwarder processes a packet on the thread which sends it, while
+ * holding the lock on this object, and queues the packets for each face in its
+ * LoopbackTransport.
+ */
+public class InProcessForwarder {
+  /**
+   * Create an InProcessForwarder with no content store.
+   */
+  public InProcessForwarder()
+  {
+    this(0);
+  }
+
+  /**
+   * Create an InProcessForwarder with a content store of the given capacity.
+   * @param contentStoreCapacity The maximum number of Data packets in the
+   * content store, removing the oldest when full. If 0, don't use a content
+   * store.
+   */
+  public InProcessForwarder(int contentStoreCapacity)
+  {
+    contentStoreCapacity_ = contentStoreCapacity;
+  }
+
+  /**
+   * Add a route to the FIB so that an Interest which matches the prefix is
+   * forwarded to the face.
+   * @param prefix The route prefix. This copies the Name.
+   * @param faceId The face ID, for example from LoopbackTransport.getFaceId().
+   */
+  public final synchronized void
+  addRoute(Name prefix, long faceId)
+  {
+    ArrayList<Long> nextHops = fib_.get(prefix);
+    if (nextHops == null) {
+      nextHops = new ArrayList<Long>(1);
+      fib_.put(new Name(prefix), nextHops);
+    }
+    if (!nextHops.contains(faceId))
+      nextHops.add(faceId);
+  }
+
+  /**
+   * Remove the route for the prefix to the face. If there is no such route,
+   * do nothing.
+   * @param prefix The route prefix.
+   * @param faceId The face ID.
+   */
+  public final synchronized void
+  removeRoute(Name prefix, long faceId)
+  {
+    ArrayList<Long> nextHops = fib_.get(prefix);
+    if (nextHops == null)
+      return;
+    nextHops.remove(faceId);
+    if (nextHops.isEmpty())
+      fib_.remove(prefix);
+  }
+
+  /**
+   * Get the number of connected faces.
+   * @return The number of faces.
+   */
+  public final synchronized int
+  getFaceCount() { return faces_.size(); }
+
+  /**
+   * Get the number of PIT entries, including expired entries which are not
+   * removed yet.
+   * @return The number of PIT entries.
+   */
+  public final synchronized int
+  getPitSize()
+  {
+    int size = 0;
+    for (ArrayList<PitEntry> entries : pit_.values())
+      size += entries.size();
+    return size;
+  }
+
+  /**
+   * Get the number of Data packets in the content store.
+   * @return The number of Data packets.
+   */
+  public final synchronized int
+  getContentStoreSize() { return contentStore_.size(); }
+
+  /**
+   * Add the transport as a new face. This is called by LoopbackTransport.
+   * @param transport The LoopbackTransport.
+   * @return The new face ID.
+   */
+  final synchronized long
+  addFace(LoopbackTransport transport)
+  {
+    long faceId = ++lastFaceId_;
+    faces_.put(faceId, transport);
+    return faceId;
+  }
+
+  /**
+   * Remove the face and its routes. This is called by LoopbackTransport.
+   * @param faceId The face ID from addFace.
+   */
+  final synchronized void
+  removeFace(long faceId)
+  {
+    faces_.remove(faceId);
+    for (Iterator<ArrayList<Long>> i = fib_.values().iterator(); i.hasNext();) {
+      ArrayList<Long> nextHops = i.next();
+      nextHops.remove(faceId);
+      if (nextHops.isEmpty())
+        i.remove();
+    }
+  }
+
+  /**
+   * Process the packet which the face sent. This is called by
+   * LoopbackTransport.send. This logs and drops a packet which can't be
+   * decoded.
+   * @param faceId The face ID of the sender.
+   * @param packet The encoded packet. This copies the packet and does not
+   * change its position.
+   */
+  final synchronized void
+  receive(long faceId, ByteBuffer packet)
+  {
+    if (!faces_.containsKey(faceId))
+      return;
+
+    // The sender may reuse its buffer, so copy once. The copy is shared by
+    // the receiving faces.
+    ByteBuffer encoding = ByteBuffer.allocate(packet.remaining());
+    encoding.put(packet.duplicate());
+    encoding.flip();
+
+    try {
+      if (encoding.get(0) == Tlv.LpPacket_LpPacket) {
+        LpPacket lpPacket = new LpPacket();
+        TlvWireFormat.get().decodeLpPacket(lpPacket, encoding, true);
+        if (NetworkNack.getFirstHeader(lpPacket) != null)
+          // We don't forward a Nack from an application.
+          return;
+        encoding = lpPacket.getFragmentWireEncoding().buf();
+        if (encoding.remaining() == 0)
+          return;
+      }
+
+      if (encoding.get(0) == Tlv.Interest) {
+        Interest interest = new Interest();
+        interest.wireDecode(encoding, TlvWireFormat.get());
+        processInterest(faceId, interest, encoding);
+      }
+      else if (encoding.get(0) == Tlv.Data) {
+        Data data = new Data();
+        data.wireDecode(encoding, TlvWireFormat.get());
+        processData(faceId, data, encoding);
+      }
+    } catch (EncodingException ex) {
+      logger_.log(Level.INFO, "InProcessForwarder: Dropping a packet which can't be decoded", ex);
+    }
+  }
+
+  /**
+   * A PitEntry has a pending Interest and the faces which expressed it.
+   */
+  private static class PitEntry {
+    public PitEntry(Interest interest, double expireTime)
+    {
+      interest_ = interest;
+      expireTime_ = expireTime;
+    }
+
+    public final Interest interest_;
+    public double expireTime_;
+    public final ArrayList<Long> inFaceIds_ = new ArrayList<Long>(1);
+  }
+
+  /**
+   * A ContentStoreEntry has a Data packet and its encoding.
+   */
+  private static class ContentStoreEntry {
+    public ContentStoreEntry(Data data, ByteBuffer encoding, double staleTime)
+    {
+      data_ = data;
+      encoding_ = encoding;
+      staleTime_ = staleTime;
+    }
+
+    public final Data data_;
+    public final ByteBuffer encoding_;
+    public final double staleTime_;
+  }
+
+  private void
+  processInterest(long inFaceId, Interest interest, ByteBuffer encoding)
+  {
+    Name name = interest.getName();
+    if (localhostRibPrefix_.match(name) || localhopRibPrefix_.match(name)) {
+      processRibCommand(inFaceId, interest);
+      return;
+    }
+
+    double now = Common.getNowMilliseconds();
+    removeExpiredPitEntries(now);
+
+    ContentStoreEntry cached = findInContentStore(interest, now);
+    if (cached != null) {
+      send(inFaceId, cached.encoding_);
+      return;
+    }
+
+    double lifetime = interest.getInterestLifetimeMilliseconds();
+    if (lifetime < 0)
+      lifetime = DEFAULT_INTEREST_LIFETIME_MILLISECONDS;
+    ArrayList<PitEntry> entries = pit_.get(name);
+    if (entries != null) {
+      for (PitEntry entry : entries) {
+        if (entry.expireTime_ > now &&
+            haveSameSelectors(entry.interest_, interest)) {
+          // Aggregate with the pending Interest.
+          if (!entry.inFaceIds_.contains(inFaceId))
+            entry.inFaceIds_.add(inFaceId);
+          entry.expireTime_ = Math.max(entry.expireTime_, now + lifetime);
+          return;
+        }
+      }
+    }
+
+    ArrayList<Long> nextHops = findNextHops(name, inFaceId);
+    if (nextHops.isEmpty()) {
+      send(inFaceId, encodeNoRouteNack(encoding));
+      return;
+    }
+
+    PitEntry entry = new PitEntry(interest, now + lifetime);
+    entry.inFaceIds_.add(inFaceId);
+    if (entries == null) {
+      entries = new ArrayList<PitEntry>(1);
+      pit_.put(name, entries);
+    }
+    entries.add(entry);
+
+    for (long faceId : nextHops)
+      send(faceId, encoding);
+  }
+
+  private void
+  processData(long inFaceId, Data data, ByteBuffer encoding)
+  {
+    // Find the PIT entries for each prefix of the Data name.
+    ArrayList<Long> outFaceIds = new ArrayList<Long>();
+    Name dataName = data.getName();
+    for (int i = dataName.size(); i >= 0; --i) {
+      Name prefix = dataName.getPrefix(i);
+      ArrayList<PitEntry> entries = pit_.get(prefix);
+      if (entries == null)
+        continue;
+
+      for (Iterator<PitEntry> j = entries.iterator(); j.hasNext();) {
+        PitEntry entry = j.next();
+        if (entry.interest_.matchesData(data)) {
+          for (long faceId : entry.inFaceIds_) {
+            if (!outFaceIds.contains(faceId))
+              outFaceIds.add(faceId);
+          }
+          j.remove();
+        }
+      }
+      if (entries.isEmpty())
+        pit_.remove(prefix);
+    }
+
+    if (outFaceIds.isEmpty())
+      // Drop unsolicited Data.
+      return;
+
+    addToContentStore(data, encoding);
+    for (long faceId : outFaceIds) {
+      if (faceId != inFaceId)
+        send(faceId, encoding);
+    }
+  }
+
+  /**
+   * Answer a /localhost/nfd/rib/register or unregister command Interest with
+   * a ControlResponse. This does not check the command signature.
+   */
+  private void
+  processRibCommand(long inFaceId, Interest interest)
+  {
+    Name name = interest.getName();
+    ControlResponse response = new ControlResponse();
+    ControlParameters parameters = new ControlParameters();
+    String verb = name.size() > 3 ? name.get(3).toEscapedString() : "";
+    try {
+      if (name.size() <= 4)
+        throw new EncodingException("Missing ControlParameters");
+      parameters.wireDecode(name.get(4).getValue(), TlvWireFormat.get());
+      if (parameters.getFaceId() <= 0)
+        parameters.setFaceId((int)inFaceId);
+
+      if (verb.equals("register"))
+        addRoute(parameters.getName(), parameters.getFaceId());
+      else if (verb.equals("unregister"))
+        removeRoute(parameters.getName(), parameters.getFaceId());
+      else
+        throw new EncodingException("Unsupported command " + verb);
+
+      response.setStatusCode(200);
+      response.setStatusText("OK");
+      response.setBodyAsControlParameters(parameters);
+    } catch (EncodingException ex) {
+      response.setStatusCode(400);
+      response.setStatusText(ex.getMessage());
+    }
+
+    Data data = new Data(name);
+    data.setContent(response.wireEncode(TlvWireFormat.get()));
+    send(inFaceId, data.wireEncode(TlvWireFormat.get()).buf());
+  }
+
+  /**
+   * Find the FIB entry with the longest prefix of the name and return its
+   * next hops other than inFaceId.
+   */
+  private ArrayList<Long>
+  findNextHops(Name name, long inFaceId)
+  {
+    ArrayList<Long> result = new ArrayList<Long>();
+    for (int i = name.size(); i >= 0; --i) {
+      ArrayList<Long> nextHops = fib_.get(name.getPrefix(i));
+      if (nextHops == null)
+        continue;
+
+      for (long faceId : nextHops) {
+        if (faceId != inFaceId)
+          result.add(faceId);
+      }
+      if (!result.isEmpty())
+        break;
+    }
+
+    return result;
+  }
+
+  private ContentStoreEntry
+  findInContentStore(Interest interest, double now)
+  {
+    if (contentStoreCapacity_ <= 0)
+      return null;
+
+    Name name = interest.getName();
+    // The Data names which have the Interest name as a prefix are sorted after
+    // it.
+    for (Map.Entry<Name, ContentStoreEntry> entry :
+         contentStore_.tailMap(name, true).entrySet()) {
+      if (!name.match(entry.getKey()))
+        break;
+
+      ContentStoreEntry cached = entry.getValue();
+      if (interest.getMustBeFresh() && now >= cached.staleTime_)
+        continue;
+      if (interest.matchesData(cached.data_))
+        return cached;
+      if (!interest.getCanBePrefix())
+        break;
+    }
+
+    return null;
+  }
+
+  private void
+  addToContentStore(Data data, ByteBuffer encoding)
+  {
+    if (contentStoreCapacity_ <= 0)
+      return;
+
+    double freshnessPeriod = data.getMetaInfo().getFreshnessPeriod();
+    double staleTime = freshnessPeriod >= 0 ?
+      Common.getNowMilliseconds() + freshnessPeriod : Common.getNowMilliseconds();
+    if (contentStore_.put
+        (data.getName(), new ContentStoreEntry(data, encoding, staleTime)) == null)
+      contentStoreOrder_.add(data.getName());
+
+    while (contentStore_.size() > contentStoreCapacity_)
+      contentStore_.remove(contentStoreOrder_.poll());
+  }
+
+  private void
+  removeExpiredPitEntries(double now)
+  {
+    if (now < nextPitCleanupTime_)
+      return;
+    nextPitCleanupTime_ = now + PIT_CLEANUP_INTERVAL_MILLISECONDS;
+
+    for (Iterator<ArrayList<PitEntry>> i = pit_.values().iterator();
+         i.hasNext();) {
+      ArrayList<PitEntry> entries = i.next();
+      for (Iterator<PitEntry> j = entries.iterator(); j.hasNext();) {
+        if (j.next().expireTime_ <= now)
+          j.remove();
+      }
+      if (entries.isEmpty())
+        i.remove();
+    }
+  }
+
+  /**
+   * Queue the packet for the face, if it is still connected.
+   */
+  private void
+  send(long faceId, ByteBuffer encoding)
+  {
+    LoopbackTransport transport = faces_.get(faceId);
+    if (transport != null)
+      transport.deliver(encoding.asReadOnlyBuffer());
+  }
+
+  private static boolean
+  haveSameSelectors(Interest interest1, Interest interest2)
+  {
+    return interest1.getCanBePrefix() == interest2.getCanBePrefix() &&
+      interest1.getMustBeFresh() == interest2.getMustBeFresh() &&
+      interest1.getApplicationParameters().isNull() &&
+      interest2.getApplicationParameters().isNull();
+  }
+
+  /**
+   * Encode an LpPacket with a network Nack with reason NO_ROUTE for the
+   * Interest.
+   */
+  private static ByteBuffer
+  encodeNoRouteNack(ByteBuffer interestEncoding)
+  {
+    TlvEncoder encoder = new TlvEncoder(interestEncoding.remaining() + 16);
+    int saveLength = encoder.getLength();
+
+    // Encode backwards.
+    encoder.writeBlobTlv(Tlv.LpPacket_Fragment, interestEncoding);
+
+    int nackSaveLength = encoder.getLength();
+    encoder.writeNonNegativeIntegerTlv
+      (Tlv.LpPacket_NackReason, NetworkNack.Reason.NO_ROUTE.getNumericType());
+    encoder.writeTypeAndLength
+      (Tlv.LpPacket_Nack, encoder.getLength() - nackSaveLength);
+
+    encoder.writeTypeAndLength
+      (Tlv.LpPacket_LpPacket, encoder.getLength() - saveLength);
+
+    return new Blob(encoder.getOutput(), false).buf();
+  }
+
+  private static final double DEFAULT_INTEREST_LIFETIME_MILLISECONDS = 4000.0;
+  private static final double PIT_CLEANUP_INTERVAL_MILLISECONDS = 1000.0;
+  private static final Name localhostRibPrefix_ = new Name("/localhost/nfd/rib");
+  private static final Name localhopRibPrefix_ = new Name("/localhop/nfd/rib");
+
+  private final int contentStoreCapacity_;
+  private final HashMap<Long, LoopbackTransport> faces_ =
+    new HashMap<Long, LoopbackTransport>();
+  private final HashMap<Name, ArrayList<Long>> fib_ =
+    new HashMap<Name, ArrayList<Long>>();
+  private final HashMap<Name, ArrayList<PitEntry>> pit_ =
+    new HashMap<Name, ArrayList<PitEntry>>();
+  private final TreeMap<Name, ContentStoreEntry> contentStore_ =
+    new TreeMap<Name, ContentStoreEntry>();
+  private final ArrayDeque<Name> contentStoreOrder_ = new ArrayDeque<Name>();
+  private long lastFaceId_ = 0;
+  private double nextPitCleanupTime_ = 0;
+  private static final Logger logger_ = Logger.getLogger
+    (InProcessForwarder.class.getName());
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.EncodingException;
+
+/**
+ * A LoopbackTransport extends Transport to connect a Face to an
+ * InProcessForwarder in the same JVM. send passes the packet to the forwarder,
+ * which queues each packet for a face in its LoopbackTransport, and
+ * processEvents gives the queued packets to the Face. This way many Faces can
+ * exchange packets at memory speed without a running NFD, for tests and
+ * benchmarks. send and the delivery from the forwarder can be called on any
+ * thread.
+ */
+public class LoopbackTransport extends Transport {
+  /**
+   * A LoopbackTransport.ConnectionInfo extends Transport.ConnectionInfo to
+   * hold the InProcessForwarder to connect to.
+   */
+  public static class ConnectionInfo extends Transport.ConnectionInfo {
+    /**
+     * Create a ConnectionInfo with the given forwarder.
+     * @param forwarder The InProcessForwarder.
+     */
+    public ConnectionInfo(InProcessForwarder forwarder)
+    {
+      forwarder_ = forwarder;
+    }
+
+    /**
+     * Get the forwarder given to the constructor.
+     * @return The InProcessForwarder.
+     */
+    public final InProcessForwarder
+    getForwarder() { return forwarder_; }
+
+    private final InProcessForwarder forwarder_;
+  }
+
+  /**
+   * Override to return true since the forwarder is in the same process.
+   * @param connectionInfo This is ignored.
+   * @return True.
+   */
+  public boolean
+  isLocal(Transport.ConnectionInfo connectionInfo) { return true; }
+
+  /**
+   * Override to return false since connect does not need to use the
+   * onConnected callback.
+   * @return False.
+   */
+  public boolean
+  isAsync() { return false; }
+
+  /**
+   * Add a face to the forwarder in connectionInfo for this transport.
+   * @param connectionInfo A LoopbackTransport.ConnectionInfo.
+   * @param elementListener The ElementListener must remain valid during the
+   * life of this object.
+   * @param onConnected If not null, this calls onConnected.run() when the
+   * face is added.
+   */
+  public void
+  connect
+    (Transport.ConnectionInfo connectionInfo, ElementListener elementListener,
+     Runnable onConnected)
+    throws IOException
+  {
+    close();
+
+    elementListener_ = elementListener;
+    forwarder_ = ((ConnectionInfo)connectionInfo).getForwarder();
+    faceId_ = forwarder_.addFace(this);
+
+    if (onConnected != null)
+      onConnected.run();
+  }
+
+  /**
+   * Give the packet to the forwarder, which processes it on this thread.
+   * @param data The buffer of data to send. This reads from position() to
+   * limit(), but does not change the position.
+   * @throws IOException If not connected.
+   */
+  public void
+  send(ByteBuffer data) throws IOException
+  {
+    InProcessForwarder forwarder = forwarder_;
+    if (forwarder == null)
+      throw new IOException
+        ("Cannot send because the transport is not connected.  Use connect.");
+
+    forwarder.receive(faceId_, data);
+  }
+
+  /**
+   * Give each packet which the forwarder queued for this face to the
+   * ElementListener.
+   * @throws EncodingException For invalid encoding, after processing the
+   * other packets.
+   */
+  public void
+  processEvents() throws IOException, EncodingException
+  {
+    // Only process the packets which are already queued, in case a callback
+    // causes more packets for this face.
+    int nPackets = nQueued_.get();
+    EncodingException error = null;
+    for (int i = 0; i < nPackets; ++i) {
+      ByteBuffer packet = queue_.poll();
+      if (packet == null)
+        break;
+      nQueued_.decrementAndGet();
+
+      try {
+        elementListener_.onReceivedElement(packet);
+      } catch (EncodingException ex) {
+        if (error == null)
+          error = ex;
+      }
+    }
+
+    if (error != null)
+      throw error;
+  }
+
+  /**
+   * Check if the transport is connected.
+   * @return True if connected.
+   */
+  public boolean
+  getIsConnected() { return forwarder_ != null; }
+
+  /**
+   * Remove the face from the forwarder and drop the queued packets. If not
+   * connected, this does nothing.
+   */
+  public void
+  close()
+  {
+    InProcessForwarder forwarder = forwarder_;
+    forwarder_ = null;
+    if (forwarder != null)
+      forwarder.removeFace(faceId_);
+    ByteBuffer packet;
+    while ((packet = queue_.poll()) != null)
+      nQueued_.decrementAndGet();
+  }
+
+  /**
+   * Get the face ID which the forwarder gave to this transport.
+   * @return The face ID, or 0 if not connected.
+   */
+  public final long
+  getFaceId() { return forwarder_ != null ? faceId_ : 0; }
+
+  /**
+   * Queue the packet from the forwarder for the next processEvents. This is
+   * called by InProcessForwarder.
+   * @param packet The packet, which is not changed after this call.
+   */
+  final void
+  deliver(ByteBuffer packet)
+  {
+    queue_.add(packet);
+    nQueued_.incrementAndGet();
+  }
+
+  private volatile InProcessForwarder forwarder_ = null;
+  private long faceId_ = 0;
+  private ElementListener elementListener_ = null;
+  private final ConcurrentLinkedQueue<ByteBuffer> queue_ =
+    new ConcurrentLinkedQueue<ByteBuffer>();
+  private final AtomicInteger nQueued_ = new AtomicInteger();
+}
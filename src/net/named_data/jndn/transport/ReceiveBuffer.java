@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.transport;
+
+import java.nio.ByteBuffer;
+import net.named_data.jndn.encoding.ElementReader;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.util.Blob;
+
+/**
+ * A ReceiveBuffer holds the buffer which a transport reads into and passes the
+ * bytes which were read to an ElementReader. Normally, each read reuses the
+ * whole buffer. If zero-copy receive is enabled, each read goes into the unused
+ * part of the buffer after the previous read, and the bytes which were read are
+ * given to the ElementReader as a Blob which is never modified again, so that
+ * decoded packets can point into the buffer instead of copying. When the unused
+ * part is too small, this allocates a new buffer and leaves the old one to the
+ * packets which still point into it.
+ */
+class ReceiveBuffer {
+  /**
+   * Create a ReceiveBuffer with the given size.
+   * @param size The size in bytes of the buffer.
+   */
+  public ReceiveBuffer(int size)
+  {
+    buffer_ = ByteBuffer.allocate(size);
+    // Start a new buffer when less than a quarter is left.
+    minReadSize_ = Math.max(1, size / 4);
+  }
+
+  /**
+   * Enable or disable zero-copy receive as described in the class comment.
+   * @param zeroCopyReceiveEnabled True to enable zero-copy receive.
+   */
+  public final void
+  setZeroCopyReceiveEnabled(boolean zeroCopyReceiveEnabled)
+  {
+    if (zeroCopyReceiveEnabled && !zeroCopyReceiveEnabled_)
+      // The buffer may have been shared before, so don't write into it.
+      readStart_ = buffer_.capacity();
+    zeroCopyReceiveEnabled_ = zeroCopyReceiveEnabled;
+  }
+
+  /**
+   * Prepare the buffer for the next read.
+   * @return The buffer to read into from position() to limit().
+   */
+  public final ByteBuffer
+  getReadBuffer()
+  {
+    if (!zeroCopyReceiveEnabled_)
+      readStart_ = 0;
+    else if (buffer_.capacity() - readStart_ < minReadSize_) {
+      // Leave the old buffer to the packets which use it.
+      buffer_ = ByteBuffer.allocate(buffer_.capacity());
+      readStart_ = 0;
+    }
+
+    buffer_.limit(buffer_.capacity());
+    buffer_.position(readStart_);
+    return buffer_;
+  }
+
+  /**
+   * Pass the bytes from the last read into the buffer from getReadBuffer() to
+   * the elementReader.
+   * @param elementReader The ElementReader for the received data.
+   * @throws EncodingException For invalid encoding.
+   */
+  public final void
+  onRead(ElementReader elementReader) throws EncodingException
+  {
+    if (zeroCopyReceiveEnabled_) {
+      ByteBuffer data = buffer_.duplicate();
+      data.flip();
+      data.position(readStart_);
+      // We never write these bytes again, so the Blob can share them.
+      readStart_ = buffer_.position();
+      elementReader.onReceivedData(new Blob(data, false));
+    }
+    else {
+      buffer_.flip();
+      elementReader.onReceivedData(buffer_);
+    }
+  }
+
+  private ByteBuffer buffer_;
+  private final int minReadSize_;
+  private int readStart_ = 0;
+  private boolean zeroCopyReceiveEnabled_ = false;
+}
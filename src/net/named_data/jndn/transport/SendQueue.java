@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.transport;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * A SendQueue holds the bytes of packets to send as a list of direct chunk
+ * buffers, so that a transport can write many packets with one gathering write.
+ * put copies the packet, so the caller can reuse its buffer. This is not
+ * thread-safe, so the transport must synchronize.
+ */
+class SendQueue {
+  /**
+   * Create an empty SendQueue.
+   * @param chunkSize The size in bytes of each chunk buffer.
+   */
+  public SendQueue(int chunkSize)
+  {
+    chunkSize_ = chunkSize;
+  }
+
+  /**
+   * Copy the bytes of data to the end of the queue.
+   * @param data The buffer with the bytes to send. This reads from position()
+   * to limit(), but does not change the position.
+   */
+  public final void
+  put(ByteBuffer data)
+  {
+    ByteBuffer source = data.duplicate();
+    while (source.hasRemaining()) {
+      if (tail_ == null || !tail_.hasRemaining()) {
+        tail_ = freeChunks_.isEmpty() ?
+          ByteBuffer.allocateDirect(chunkSize_) :
+          freeChunks_.remove(freeChunks_.size() - 1);
+        chunks_.add(tail_);
+      }
+
+      if (source.remaining() <= tail_.remaining())
+        tail_.put(source);
+      else {
+        ByteBuffer part = source.duplicate();
+        part.limit(part.position() + tail_.remaining());
+        source.position(part.limit());
+        tail_.put(part);
+      }
+    }
+
+    size_ += data.remaining();
+  }
+
+  /**
+   * Get the number of bytes in the queue.
+   * @return The number of bytes.
+   */
+  public final long
+  size() { return size_; }
+
+  /**
+   * Remove all the chunks from the queue so that the transport can write them.
+   * When the write is finished, call recycle(chunks).
+   * @return The chunks with position() and limit() set for writing, or an empty
+   * array if the queue is empty.
+   */
+  public final ByteBuffer[]
+  takeChunks()
+  {
+    ByteBuffer[] chunks = chunks_.toArray(new ByteBuffer[chunks_.size()]);
+    for (int i = 0; i < chunks.length; ++i)
+      chunks[i].flip();
+
+    chunks_.clear();
+    tail_ = null;
+    size_ = 0;
+    return chunks;
+  }
+
+  /**
+   * Clear the queue, for example if the connection is closed.
+   */
+  public final void
+  clear()
+  {
+    recycle(takeChunks());
+  }
+
+  /**
+   * Keep the chunks from takeChunks for use by put. This keeps at most a few
+   * free chunks so that a burst doesn't keep a lot of memory.
+   * @param chunks The chunks from takeChunks.
+   */
+  public final void
+  recycle(ByteBuffer[] chunks)
+  {
+    for (int i = 0; i < chunks.length && freeChunks_.size() < MAX_FREE_CHUNKS;
+         ++i) {
+      chunks[i].clear();
+      freeChunks_.add(chunks[i]);
+    }
+  }
+
+  /**
+   * Get the index of the first chunk which has remaining bytes to write.
+   * @param chunks The chunks from takeChunks.
+   * @return The index, or chunks.length if all the bytes are written.
+   */
+  public static int
+  getFirstRemaining(ByteBuffer[] chunks)
+  {
+    int i = 0;
+    while (i < chunks.length && !chunks[i].hasRemaining())
+      ++i;
+    return i;
+  }
+
+  private final int chunkSize_;
+  private final ArrayList<ByteBuffer> chunks_ = new ArrayList<ByteBuffer>();
+  private final ArrayList<ByteBuffer> freeChunks_ = new ArrayList<ByteBuffer>();
+  private ByteBuffer tail_ = null;
+  private long size_ = 0;
+  private static final int MAX_FREE_CHUNKS = 4;
+}
@@ -19,6 +19,7 @@
 
 package net.named_data.jndn.transport;
 
+import java.nio.channels.SelectableChannel;
 import java.nio.channels.SocketChannel;
 import java.net.InetSocketAddress;
 import java.io.IOException;
@@ -80,6 +81,69 @@ public class TcpTransport extends Transport {
     private final int port_;
   }
 
+  /**
+   * Create a TcpTransport with a receive buffer of Common.MAX_NDN_PACKET_SIZE.
+   */
+  public TcpTransport()
+  {
+    this(Common.MAX_NDN_PACKET_SIZE);
+  }
+
+  /**
+   * Create a TcpTransport with the given receive buffer size. A larger buffer
+   * lets one read from the socket return many packets, which are delivered to
+   * the ElementListener together if it is an ElementBatchListener.
+   * @param receiveBufferSize The size in bytes of the buffer for reading from
+   * the socket. This is not limited by the maximum packet size since the
+   * ElementReader reassembles packets which span reads.
+   */
+  public TcpTransport(int receiveBufferSize)
+  {
+    if (receiveBufferSize <= 0)
+      throw new IllegalArgumentException
+        ("TcpTransport: The receive buffer size must be positive");
+    inputBuffer_ = new ReceiveBuffer(receiveBufferSize);
+  }
+
+  /**
+   * Enable or disable zero-copy receive. If enabled, each read from the socket
+   * goes into a part of the receive buffer which is not reused, so that the
+   * received packets are decoded without copying and their fields point into
+   * the receive buffer. This saves a copy of each packet, but a packet which
+   * the application keeps also keeps its part of the receive buffer in memory.
+   * Zero-copy receive is disabled by default.
+   * @param zeroCopyReceiveEnabled If true, enable zero-copy receive, otherwise
+   * disable it.
+   */
+  public final void
+  setZeroCopyReceiveEnabled(boolean zeroCopyReceiveEnabled)
+  {
+    inputBuffer_.setZeroCopyReceiveEnabled(zeroCopyReceiveEnabled);
+  }
+
+  /**
+   * Set up coalescing of sent packets. If enabled, send copies the packet into
+   * a send queue instead of writing it to the socket. The queue is written with
+   * one gathering write when it has at least flushThreshold bytes, when send
+   * finds that the first queued packet has waited maxFlushDelayMilliseconds,
+   * or when processEvents or flush is called. (The application must call
+   * processEvents regularly to bound the delay when it is not sending.) This
+   * saves a system call per packet for an application which sends many small
+   * packets. Coalescing is disabled by default.
+   * @param flushThreshold The number of queued bytes which causes a write, or
+   * 0 to disable coalescing so that send writes each packet immediately.
+   * @param maxFlushDelayMilliseconds The maximum time that send leaves a packet
+   * in the queue.
+   */
+  public final void
+  setSendCoalescing(int flushThreshold, double maxFlushDelayMilliseconds)
+  {
+    if (flushThreshold > 0 && sendQueue_ == null)
+      sendQueue_ = new SendQueue(Math.max(flushThreshold, SEND_CHUNK_SIZE));
+    flushThreshold_ = flushThreshold;
+    maxFlushDelayMilliseconds_ = maxFlushDelayMilliseconds;
+  }
+
   /**
    * Determine whether this transport connecting according to connectionInfo is
    * to a node on the current machine; results are cached. According to
@@ -129,9 +193,7 @@ public class TcpTransport extends Transport {
   {
     close();
 
-    channel_ = SocketChannel.open
-      (new InetSocketAddress(((ConnectionInfo)connectionInfo).getHost(),
-       ((ConnectionInfo)connectionInfo).getPort()));
+    channel_ = openChannel(connectionInfo);
     channel_.configureBlocking(false);
 
     elementReader_ = new ElementReader(elementListener);
@@ -140,6 +202,22 @@ public class TcpTransport extends Transport {
       onConnected.run();
   }
 
+  /**
+   * Open a connected SocketChannel according to the info in connectionInfo. A
+   * subclass such as UnixTransport can override to connect to a different type
+   * of socket.
+   * @param connectionInfo A TcpTransport.ConnectionInfo.
+   * @return The connected SocketChannel.
+   * @throws IOException For I/O error.
+   */
+  SocketChannel
+  openChannel(Transport.ConnectionInfo connectionInfo) throws IOException
+  {
+    return SocketChannel.open
+      (new InetSocketAddress(((ConnectionInfo)connectionInfo).getHost(),
+       ((ConnectionInfo)connectionInfo).getPort()));
+  }
+
   /**
    * Send data to the host
    * @param data The buffer of data to send.  This reads from position() to
@@ -153,6 +231,22 @@ public class TcpTransport extends Transport {
       throw new IOException
         ("Cannot send because the socket is not open.  Use connect.");
 
+    if (flushThreshold_ > 0) {
+      sendQueue_.put(data);
+      double now = Common.getNowMilliseconds();
+      if (sendQueue_.size() == data.remaining())
+        // This is the first packet in the queue.
+        firstQueuedTime_ = now;
+
+      if (sendQueue_.size() >= flushThreshold_ ||
+          now - firstQueuedTime_ >= maxFlushDelayMilliseconds_)
+        flush();
+      return;
+    }
+
+    // Write previously queued packets first.
+    flush();
+
     // Save and restore the position.
     int savePosition = data.position();
     try {
@@ -164,6 +258,63 @@ public class TcpTransport extends Transport {
     }
   }
 
+  /**
+   * Get the number of bytes which send has queued for coalescing.
+   * @return The number of queued bytes.
+   */
+  public long
+  getSendQueueSize()
+  {
+    return sendQueue_ == null ? 0 : sendQueue_.size();
+  }
+
+  /**
+   * Write the packets which send has queued for coalescing, using one
+   * gathering write.
+   * @throws IOException For I/O error.
+   */
+  public void
+  flush() throws IOException
+  {
+    if (sendQueue_ == null || sendQueue_.size() == 0)
+      return;
+    if (channel_ == null)
+      throw new IOException
+        ("Cannot send because the socket is not open.  Use connect.");
+
+    ByteBuffer[] chunks = sendQueue_.takeChunks();
+    try {
+      int offset;
+      while ((offset = SendQueue.getFirstRemaining(chunks)) < chunks.length)
+        channel_.write(chunks, offset, chunks.length - offset);
+    }
+    finally {
+      sendQueue_.recycle(chunks);
+    }
+  }
+
+  /**
+   * Override to return this thread's direct send buffer, since send is
+   * finished with the buffer when it returns.
+   * @param capacity The capacity needed for the encoded packet.
+   * @return A buffer with position() 0 and limit() capacity.
+   */
+  public ByteBuffer
+  getSendBuffer(int capacity)
+  {
+    return ThreadLocalSendBuffer.get(capacity);
+  }
+
+  /**
+   * Get the SocketChannel which processEvents reads.
+   * @return The channel, or null if not connected.
+   */
+  public SelectableChannel
+  getSelectableChannel()
+  {
+    return channel_;
+  }
+
   /**
    * Process any data to receive.  For each element received, call
    * elementListener.onReceivedElement.
@@ -181,15 +332,21 @@ public class TcpTransport extends Transport {
     if (!getIsConnected())
       return;
 
+    // This bounds the delay of packets queued for coalescing.
+    flush();
+
     while (true) {
-      inputBuffer_.limit(inputBuffer_.capacity());
-      inputBuffer_.position(0);
-      int bytesRead = channel_.read(inputBuffer_);
-      if (bytesRead <= 0)
+      int bytesRead = channel_.read(inputBuffer_.getReadBuffer());
+      if (bytesRead < 0) {
+        // The remote host closed the connection. Close the channel so that it
+        // is not selected as readable again.
+        channel_.close();
+        return;
+      }
+      if (bytesRead == 0)
         return;
 
-      inputBuffer_.flip();
-      elementReader_.onReceivedData(inputBuffer_);
+      inputBuffer_.onRead(elementReader_);
     }
   }
 
@@ -214,9 +371,16 @@ public class TcpTransport extends Transport {
   close() throws IOException
   {
     if (channel_ != null) {
-      if (channel_.isConnected())
-        channel_.close();
-      channel_ = null;
+      try {
+        if (channel_.isConnected())
+          flush();
+      } finally {
+        if (sendQueue_ != null)
+          sendQueue_.clear();
+        if (channel_.isConnected())
+          channel_.close();
+        channel_ = null;
+      }
     }
   }
 
@@ -240,7 +404,12 @@ public class TcpTransport extends Transport {
   }
 
   SocketChannel channel_;
-  ByteBuffer inputBuffer_ = ByteBuffer.allocate(Common.MAX_NDN_PACKET_SIZE);
+  final ReceiveBuffer inputBuffer_;
+  private SendQueue sendQueue_ = null;
+  private int flushThreshold_ = 0;
+  private double maxFlushDelayMilliseconds_ = 0;
+  private double firstQueuedTime_ = 0;
+  private static final int SEND_CHUNK_SIZE = 65536;
   // TODO: This belongs in the socket listener.
   private ElementReader elementReader_;
   private ConnectionInfo connectionInfo_;
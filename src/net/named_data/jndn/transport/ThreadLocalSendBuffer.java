@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.transport;
+
+import java.nio.ByteBuffer;
+import net.named_data.jndn.util.Common;
+
+/**
+ * ThreadLocalSendBuffer has a static method to get a direct buffer for each
+ * thread, for use by Transport.getSendBuffer in a transport whose send is
+ * finished with the buffer when it returns. A socket channel writes a direct
+ * buffer without first copying it into a temporary direct buffer.
+ */
+class ThreadLocalSendBuffer {
+  /**
+   * Get this thread's send buffer, allocating a larger one if needed.
+   * @param capacity The needed capacity.
+   * @return The buffer with position() 0 and limit() capacity.
+   */
+  public static ByteBuffer
+  get(int capacity)
+  {
+    ByteBuffer buffer = buffer_.get();
+    if (buffer == null || buffer.capacity() < capacity) {
+      buffer = ByteBuffer.allocateDirect
+        (Math.max(capacity, Common.MAX_NDN_PACKET_SIZE));
+      buffer_.set(buffer);
+    }
+
+    buffer.clear();
+    buffer.limit(capacity);
+    return buffer;
+  }
+
+  private static final ThreadLocal<ByteBuffer> buffer_ =
+    new ThreadLocal<ByteBuffer>();
+}
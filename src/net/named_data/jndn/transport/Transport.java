@@ -21,6 +21,7 @@ package net.named_data.jndn.transport;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
 import net.named_data.jndn.encoding.ElementListener;
 import net.named_data.jndn.encoding.EncodingException;
 import net.named_data.jndn.util.Common;
@@ -87,6 +88,57 @@ public abstract class Transport {
     throw new UnsupportedOperationException("send is not implemented");
   }
 
+  /**
+   * Get a reusable buffer to put an encoded packet into before calling send, so
+   * that the packet is not encoded into a new buffer. This is only possible if
+   * send is finished with the buffer when it returns. The buffer is only valid
+   * until the next call to getSendBuffer in the same thread.
+   * @param capacity The capacity needed for the encoded packet.
+   * @return A buffer with position() 0 and limit() capacity, or null if this
+   * transport doesn't have a reusable buffer. This base class returns null.
+   */
+  public ByteBuffer
+  getSendBuffer(int capacity)
+  {
+    return null;
+  }
+
+  /**
+   * Get the number of bytes which send has queued but not yet written to the
+   * socket. An application which sends a lot of packets can check this to slow
+   * down when the network doesn't keep up.
+   * @return The number of queued bytes. This base class returns 0.
+   */
+  public long
+  getSendQueueSize()
+  {
+    return 0;
+  }
+
+  /**
+   * Write any bytes which send has queued. This base class does nothing.
+   * @throws IOException For I/O error.
+   */
+  public void
+  flush() throws IOException
+  {
+  }
+
+  /**
+   * Get the non-blocking channel which processEvents reads, so that an event
+   * loop such as FaceEventLoop can register it with a Selector and call
+   * processEvents only when there is data to receive. This base class returns
+   * null, which means that the transport does not have such a channel (for
+   * example, because it reads asynchronously).
+   * @return The channel, or null if not connected or not supported. A
+   * reconnect may change the channel.
+   */
+  public SelectableChannel
+  getSelectableChannel()
+  {
+    return null;
+  }
+
   /**
    * Process any data to receive.  For each element received, call
    * elementListener.onReceivedElement.
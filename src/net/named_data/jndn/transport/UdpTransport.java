@@ -21,11 +21,16 @@ package net.named_data.jndn.transport;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.util.ArrayList;
 import net.named_data.jndn.encoding.ElementListener;
 import net.named_data.jndn.encoding.ElementReader;
 import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.lp.LpFragmenter;
+import net.named_data.jndn.lp.LpReassembler;
 import net.named_data.jndn.util.Common;
 
 /**
@@ -79,6 +84,21 @@ public class UdpTransport extends Transport {
     private final int port_;
   }
 
+  /**
+   * Set the MTU for NDNLPv2 fragmentation. If the MTU is set, then send splits
+   * a packet which is larger than the MTU into NDNLPv2 fragments which are
+   * sent as separate datagrams, so that a large Data packet is not sent with IP
+   * fragmentation. (processEvents always reassembles received fragments.)
+   * Fragmentation is disabled by default.
+   * @param mtu The maximum datagram size in bytes, for example 1452 for an
+   * Ethernet link with IPv6 and UDP headers, or 0 to disable fragmentation.
+   */
+  public final void
+  setMtu(int mtu)
+  {
+    fragmenter_ = (mtu > 0 ? new LpFragmenter(mtu) : null);
+  }
+
   /**
    * Determine whether this transport connecting according to connectionInfo is
    * to a node on the current machine. According to
@@ -121,6 +141,7 @@ public class UdpTransport extends Transport {
       (((ConnectionInfo)connectionInfo).getHost(),
        ((ConnectionInfo)connectionInfo).getPort()));
     channel_.configureBlocking(false);
+    remoteAddress_ = channel_.getRemoteAddress();
 
     elementReader_ = new ElementReader(elementListener);
 
@@ -141,6 +162,23 @@ public class UdpTransport extends Transport {
       throw new IOException
         ("Cannot send because the socket is not open.  Use connect.");
 
+    LpFragmenter fragmenter = fragmenter_;
+    if (fragmenter != null && data.remaining() > fragmenter.getMtu()) {
+      ArrayList<ByteBuffer> fragments;
+      try {
+        fragments = fragmenter.fragment(data);
+      } catch (EncodingException ex) {
+        throw new IOException(ex);
+      }
+
+      // Each fragment is a new buffer, so we don't need to restore positions.
+      for (ByteBuffer fragment : fragments) {
+        while(fragment.hasRemaining())
+          channel_.write(fragment);
+      }
+      return;
+    }
+
     // Save and restore the position.
     int savePosition = data.position();
     try {
@@ -152,6 +190,28 @@ public class UdpTransport extends Transport {
     }
   }
 
+  /**
+   * Override to return this thread's direct send buffer, since send is
+   * finished with the buffer when it returns.
+   * @param capacity The capacity needed for the encoded packet.
+   * @return A buffer with position() 0 and limit() capacity.
+   */
+  public ByteBuffer
+  getSendBuffer(int capacity)
+  {
+    return ThreadLocalSendBuffer.get(capacity);
+  }
+
+  /**
+   * Get the DatagramChannel which processEvents reads.
+   * @return The channel, or null if not connected.
+   */
+  public SelectableChannel
+  getSelectableChannel()
+  {
+    return channel_;
+  }
+
   /**
    * Process any data to receive.  For each element received, call
    * elementListener.onReceivedElement.
@@ -177,7 +237,10 @@ public class UdpTransport extends Transport {
         return;
 
       inputBuffer_.flip();
-      elementReader_.onReceivedData(inputBuffer_);
+      // Each datagram may be an NDNLPv2 fragment.
+      ByteBuffer packet = reassembler_.receive(remoteAddress_, inputBuffer_);
+      if (packet != null)
+        elementReader_.onReceivedData(packet);
     }
   }
 
@@ -212,4 +275,7 @@ public class UdpTransport extends Transport {
   ByteBuffer inputBuffer_ = ByteBuffer.allocate(Common.MAX_NDN_PACKET_SIZE);
   // TODO: This belongs in the socket listener.
   private ElementReader elementReader_;
+  private SocketAddress remoteAddress_ = null;
+  private volatile LpFragmenter fragmenter_ = null;
+  private final LpReassembler reassembler_ = new LpReassembler();
 }
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.transport;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A UnixTransport extends TcpTransport to connect to the local forwarder
+ * through a Unix-domain socket such as /run/nfd.sock, which avoids the
+ * overhead of a TCP loopback connection. Unix-domain SocketChannel support was
+ * added in Java 16, and this library is compiled for older versions, so this
+ * uses reflection to open the socket. Use isSupported() to check if the
+ * runtime supports it. See AsyncUnixTransport for the async version.
+ */
+public class UnixTransport extends TcpTransport {
+  /**
+   * A UnixTransport.ConnectionInfo extends Transport.ConnectionInfo to hold
+   * the socket file path for the Unix-domain socket connection.
+   */
+  public static class ConnectionInfo extends Transport.ConnectionInfo {
+    /**
+     * Create a ConnectionInfo with the given socket file path.
+     * @param filePath The file path of the Unix-domain socket, for example
+     * "/run/nfd.sock".
+     */
+    public ConnectionInfo(String filePath)
+    {
+      filePath_ = filePath;
+    }
+
+    /**
+     * Get the file path given to the constructor.
+     * @return The file path.
+     */
+    public final String
+    getFilePath() { return filePath_; }
+
+    private final String filePath_;
+  }
+
+  /**
+   * Create a UnixTransport with a receive buffer of Common.MAX_NDN_PACKET_SIZE.
+   */
+  public UnixTransport()
+  {
+    super();
+  }
+
+  /**
+   * Create a UnixTransport with the given receive buffer size.
+   * @param receiveBufferSize The size in bytes of the buffer for reading from
+   * the socket.
+   */
+  public UnixTransport(int receiveBufferSize)
+  {
+    super(receiveBufferSize);
+  }
+
+  /**
+   * Check if the Java runtime supports Unix-domain SocketChannels, which
+   * requires Java 16 or later.
+   * @return True if supported.
+   */
+  public static boolean
+  isSupported() { return UnixSocketMethods.isSupported_; }
+
+  /**
+   * Override to return true since a Unix-domain socket is always to a node on
+   * the current machine.
+   * @param connectionInfo This is ignored.
+   * @return True.
+   */
+  public boolean
+  isLocal(Transport.ConnectionInfo connectionInfo)
+  {
+    return true;
+  }
+
+  /**
+   * Open a SocketChannel connected to the Unix-domain socket in
+   * connectionInfo.
+   * @param connectionInfo A UnixTransport.ConnectionInfo.
+   * @return The connected SocketChannel.
+   * @throws IOException For I/O error, or if Unix-domain sockets are not
+   * supported.
+   */
+  SocketChannel
+  openChannel(Transport.ConnectionInfo connectionInfo) throws IOException
+  {
+    return openUnixChannel(((ConnectionInfo)connectionInfo).getFilePath());
+  }
+
+  /**
+   * Open a blocking SocketChannel connected to the Unix-domain socket.
+   * @param filePath The file path of the Unix-domain socket.
+   * @return The connected SocketChannel.
+   * @throws IOException For I/O error, or if Unix-domain sockets are not
+   * supported.
+   */
+  static SocketChannel
+  openUnixChannel(String filePath) throws IOException
+  {
+    if (!UnixSocketMethods.isSupported_)
+      throw new IOException
+        ("UnixTransport: Unix-domain sockets require Java 16 or later");
+
+    SocketChannel channel;
+    SocketAddress address;
+    try {
+      channel = (SocketChannel)UnixSocketMethods.openSocketChannel_.invoke
+        (null, UnixSocketMethods.unixFamily_);
+      address = (SocketAddress)UnixSocketMethods.newAddress_.invoke
+        (null, filePath);
+    } catch (IllegalAccessException ex) {
+      throw new IOException(ex);
+    } catch (InvocationTargetException ex) {
+      if (ex.getCause() instanceof IOException)
+        throw (IOException)ex.getCause();
+      throw new IOException(ex.getCause());
+    }
+
+    try {
+      channel.connect(address);
+    } catch (IOException ex) {
+      channel.close();
+      throw ex;
+    }
+
+    return channel;
+  }
+
+  /**
+   * UnixSocketMethods holds the reflected methods for Unix-domain sockets,
+   * which are looked up once when first used.
+   */
+  private static class UnixSocketMethods {
+    static final boolean isSupported_;
+    static final ProtocolFamily unixFamily_;
+    static final Method openSocketChannel_;
+    static final Method newAddress_;
+
+    static {
+      ProtocolFamily unixFamily = null;
+      Method openSocketChannel = null;
+      Method newAddress = null;
+      try {
+        unixFamily = StandardProtocolFamily.valueOf("UNIX");
+        openSocketChannel = SocketChannel.class.getMethod
+          ("open", ProtocolFamily.class);
+        newAddress = Class.forName("java.net.UnixDomainSocketAddress")
+          .getMethod("of", String.class);
+      } catch (IllegalArgumentException ex) {
+        // There is no StandardProtocolFamily.UNIX.
+      } catch (NoSuchMethodException ex) {
+      } catch (ClassNotFoundException ex) {
+      }
+
+      isSupported_ = (newAddress != null);
+      unixFamily_ = unixFamily;
+      openSocketChannel_ = openSocketChannel;
+      newAddress_ = newAddress;
+    }
+  }
+}
@@ -33,9 +33,24 @@ public class DynamicByteBuffer {
   public
   DynamicByteBuffer(int initialCapacity)
   {
+    isDirect_ = false;
     buffer_ = ByteBuffer.allocate(initialCapacity);
   }
 
+  /**
+   * Create a new DynamicByteBuffer with an initial capacity, where the buffer
+   * and the buffers allocated to expand it are direct or heap buffers.
+   * @param initialCapacity The initial capacity of buffer().
+   * @param isDirect If true, use ByteBuffer.allocateDirect, otherwise use
+   * ByteBuffer.allocate.
+   */
+  public
+  DynamicByteBuffer(int initialCapacity, boolean isDirect)
+  {
+    isDirect_ = isDirect;
+    buffer_ = allocate(initialCapacity);
+  }
+
   /**
    * Ensure that buffer().capacity() is greater than or equal to capacity.  If
    * it is, just set the limit to the capacity.
@@ -60,7 +75,7 @@ public class DynamicByteBuffer {
       // The needed capacity is much greater, so use it.
       newCapacity = capacity;
 
-    ByteBuffer newBuffer = ByteBuffer.allocate(newCapacity);
+    ByteBuffer newBuffer = allocate(newCapacity);
     // Save the position so we can reset before calling put.
     int savePosition = buffer_.position();
     buffer_.flip();
@@ -165,7 +180,7 @@ public class DynamicByteBuffer {
       // The needed capacity is much greater, so use it.
       newCapacity = capacity;
 
-    ByteBuffer newBuffer = ByteBuffer.allocate(newCapacity);
+    ByteBuffer newBuffer = allocate(newCapacity);
     // Save the remaining so we can restore the position later.
     int saveRemaining = buffer_.remaining();
     newBuffer.position(newBuffer.capacity() - saveRemaining);
@@ -254,5 +269,13 @@ public class DynamicByteBuffer {
   public final int
   remaining() { return buffer_.remaining(); }
 
+  private ByteBuffer
+  allocate(int capacity)
+  {
+    return isDirect_ ?
+      ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+
   private ByteBuffer buffer_;
+  private final boolean isDirect_;
 }
@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A LatencyHistogram counts recorded values in buckets with a bounded relative
+ * error, in the style of an HDR histogram, so that it can report percentiles
+ * without keeping each value. Values below 32 have their own bucket. Above
+ * that, each power of two is split into 16 buckets, so a percentile is within
+ * about 6% of the recorded value. Recording is thread safe and does not lock.
+ */
+public class LatencyHistogram {
+  /**
+   * Record the value.
+   * @param value The value, for example a latency in nanoseconds. A negative
+   * value is recorded as 0.
+   */
+  public final void
+  record(long value)
+  {
+    if (value < 0)
+      value = 0;
+
+    counts_.incrementAndGet(getBucketIndex(value));
+    count_.incrementAndGet();
+    sum_.addAndGet(value);
+    while (true) {
+      long max = max_.get();
+      if (value <= max || max_.compareAndSet(max, value))
+        break;
+    }
+  }
+
+  /**
+   * Get the number of recorded values.
+   * @return The count.
+   */
+  public final long
+  getCount() { return count_.get(); }
+
+  /**
+   * Get the maximum recorded value.
+   * @return The maximum, or 0 if there are no recorded values.
+   */
+  public final long
+  getMax() { return max_.get(); }
+
+  /**
+   * Get the mean of the recorded values.
+   * @return The mean, or 0 if there are no recorded values.
+   */
+  public final double
+  getMean()
+  {
+    long count = count_.get();
+    return count == 0 ? 0 : (double)sum_.get() / count;
+  }
+
+  /**
+   * Get the value at the percentile of the recorded values, which is the
+   * highest value in the bucket which has the percentile, but not more than
+   * getMax().
+   * @param percentile The percentile from 0 to 100, for example 99.
+   * @return The value, or 0 if there are no recorded values.
+   */
+  public final long
+  getValueAtPercentile(double percentile)
+  {
+    long total = 0;
+    for (int i = 0; i < N_BUCKETS; ++i)
+      total += counts_.get(i);
+    if (total == 0)
+      return 0;
+
+    long target = (long)Math.ceil(Math.min(percentile, 100.0) / 100.0 * total);
+    if (target < 1)
+      target = 1;
+    long seen = 0;
+    for (int i = 0; i < N_BUCKETS; ++i) {
+      seen += counts_.get(i);
+      if (seen >= target)
+        return Math.min(getBucketHighestValue(i), max_.get());
+    }
+
+    return max_.get();
+  }
+
+  /**
+   * Clear the recorded values. If another thread records at the same time,
+   * its value may be partly cleared.
+   */
+  public final void
+  reset()
+  {
+    for (int i = 0; i < N_BUCKETS; ++i)
+      counts_.set(i, 0);
+    count_.set(0);
+    sum_.set(0);
+    max_.set(0);
+  }
+
+  private static int
+  getBucketIndex(long value)
+  {
+    if (value < 2 * N_SUB_BUCKETS)
+      return (int)value;
+
+    // shift is at least 1. value >>> shift has SUB_BUCKET_BITS + 1 bits.
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return shift * N_SUB_BUCKETS + (int)(value >>> shift);
+  }
+
+  private static long
+  getBucketHighestValue(int index)
+  {
+    if (index < 2 * N_SUB_BUCKETS)
+      return index;
+
+    int shift = index / N_SUB_BUCKETS - 1;
+    long top = index - shift * N_SUB_BUCKETS;
+    return ((top + 1) << shift) - 1;
+  }
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int N_SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // The highest shift is 62 - SUB_BUCKET_BITS.
+  private static final int N_BUCKETS = (64 - SUB_BUCKET_BITS) * N_SUB_BUCKETS;
+
+  private final AtomicLongArray counts_ = new AtomicLongArray(N_BUCKETS);
+  private final AtomicLong count_ = new AtomicLong();
+  private final AtomicLong sum_ = new AtomicLong();
+  private final AtomicLong max_ = new AtomicLong();
+}
@@ -21,7 +21,11 @@ package net.named_data.jndn.util;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.named_data.jndn.Data;
@@ -40,6 +44,9 @@ import net.named_data.jndn.security.SecurityException;
  * A MemoryContentCache holds a set of Data packets and answers an Interest to
  * return the correct Data packet. The cache is periodically cleaned up to
  * remove each stale Data packet based on its FreshnessPeriod (if it has one).
+ * The Data packets are indexed by name in canonical order, so that finding the
+ * Data packet for an Interest (including the leftmost or rightmost child) takes
+ * O(log n) time instead of a scan of the whole cache.
  * @note This class is an experimental feature.  See the API docs for more detail at
  * http://named-data.net/doc/ndn-ccl-api/memory-content-cache.html .
  */
@@ -525,7 +532,8 @@ public class MemoryContentCache implements OnInterestCallback {
    * answer interests. If data.getMetaInfo().getFreshnessPeriod() is not
    * negative, set the staleness time to now plus the maximum of
    * data.getMetaInfo().getFreshnessPeriod() and minimumCacheLifetime, which is
-   * checked during cleanup to remove stale content.
+   * checked during cleanup to remove stale content. If the cache already has a
+   * Data packet with the same name, this replaces it.
    * This also checks if cleanupIntervalMilliseconds
    * milliseconds have passed and removes stale content from the cache. After
    * removing stale content, remove timed-out pending interests from
@@ -541,26 +549,17 @@ public class MemoryContentCache implements OnInterestCallback {
     double nowMilliseconds = Common.getNowMilliseconds();
     doCleanup(nowMilliseconds);
 
+    Content content;
     if (data.getMetaInfo().getFreshnessPeriod() >= 0.0) {
-      // The content will go stale, so use staleTimeCache_.
-      StaleTimeContent content = new StaleTimeContent
+      // The content will go stale, so also add it to the removal queue.
+      StaleTimeContent staleTimeContent = new StaleTimeContent
         (data, nowMilliseconds, minimumCacheLifetime_);
-      // Insert into staleTimeCache, sorted on content.cacheRemovalTimeMilliseconds_.
-      // Search from the back since we expect it to go there.
-      int i = staleTimeCache_.size() - 1;
-      while (i >= 0) {
-        if (staleTimeCache_.get(i).getCacheRemovalTimeMilliseconds() <=
-            content.getCacheRemovalTimeMilliseconds())
-          break;
-        --i;
-      }
-      // Element i is the greatest less than or equal to
-      // content.cacheRemovalTimeMilliseconds_, so insert after it.
-      staleTimeCache_.add(i + 1, content);
+      staleTimeQueue_.add(staleTimeContent);
+      content = staleTimeContent;
     }
     else
-      // The data does not go stale, so use noStaleTimeCache_.
-      noStaleTimeCache_.add(new Content(data));
+      content = new Content(data);
+    cache_.put(content.getName(), content);
 
     // Remove timed-out interests and check if the data packet matches any
     // pending interest.
@@ -651,74 +650,12 @@ public class MemoryContentCache implements OnInterestCallback {
     double nowMilliseconds = Common.getNowMilliseconds();
     doCleanup(nowMilliseconds);
 
-    Name.Component selectedComponent = null;
-    Blob selectedEncoding = null;
-    // We need to iterate over both arrays.
-    int totalSize = staleTimeCache_.size() + noStaleTimeCache_.size();
-    for (int i = 0; i < totalSize; ++i) {
-      Content content;
-      boolean isFresh = true;
-      if (i < staleTimeCache_.size()) {
-        StaleTimeContent staleTimeContent = staleTimeCache_.get(i);
-        content = staleTimeContent;
-        isFresh = staleTimeContent.isFresh(nowMilliseconds);
-      }
-      else
-        // We have iterated over the first array. Get from the second.
-        content = noStaleTimeCache_.get(i - staleTimeCache_.size());
-
-      if (interest.matchesName(content.getName()) &&
-          !(interest.getMustBeFresh() && !isFresh)) {
-        if (interest.getChildSelector() < 0) {
-          // No child selector, so send the first match that we have found.
-          logger_.log(Level.INFO, "MemoryContentCache:         Reply Data {0}",
-            content.getName());
-          try {
-            face.send(content.getDataEncoding());
-          } catch (IOException ex) {
-            logger_.log(Level.SEVERE, null, ex);
-          }
-          return;
-        }
-        else {
-          // Update selectedEncoding based on the child selector.
-          Name.Component component;
-          if (content.getName().size() > interest.getName().size())
-            component = content.getName().get(interest.getName().size());
-          else
-            component = emptyComponent_;
-
-          boolean gotBetterMatch = false;
-          if (selectedEncoding == null)
-            // Save the first match.
-            gotBetterMatch = true;
-          else {
-            if (interest.getChildSelector() == 0) {
-              // Leftmost child.
-              if (component.compare(selectedComponent) < 0)
-                gotBetterMatch = true;
-            }
-            else {
-              // Rightmost child.
-              if (component.compare(selectedComponent) > 0)
-                gotBetterMatch = true;
-            }
-          }
-
-          if (gotBetterMatch) {
-            selectedComponent = component;
-            selectedEncoding = content.getDataEncoding();
-          }
-        }
-      }
-    }
-
-    if (selectedEncoding != null) {
-      // We found the leftmost or rightmost child.
+    Content content = findContent(interest, nowMilliseconds);
+    if (content != null) {
+      logger_.log(Level.INFO, "MemoryContentCache:         Reply Data {0}",
+        content.getName());
       try {
-        logger_.log(Level.INFO, "MemoryContentCache: Reply Data to Interest {0}",
-          interest.toUri());
-        face.send(selectedEncoding);
+        face.send(content.getDataEncoding());
       } catch (IOException ex) {
         logger_.log(Level.SEVERE, null, ex);
       }
@@ -752,10 +689,20 @@ public class MemoryContentCache implements OnInterestCallback {
     public Content(Data data)
     {
       // wireEncode returns the cached encoding if available.
-      name_ = data.getName();
+      name_ = new Name(data.getName());
       dataEncoding_ = data.wireEncode();
     }
 
+    /**
+     * Check if the content is still fresh. This base class does not have a
+     * FreshnessPeriod, so it is always fresh.
+     * @param nowMilliseconds The current time in milliseconds from
+     * Common.getNowMilliseconds().
+     * @return True.
+     */
+    public boolean
+    isFresh(double nowMilliseconds) { return true; }
+
     public final Name
     getName() { return name_; }
 
@@ -812,7 +759,7 @@ public class MemoryContentCache implements OnInterestCallback {
      * Common.getNowMilliseconds().
      * @return True if the content is still fresh, otherwise false.
      */
-    public final boolean
+    public boolean
     isFresh(double nowMilliseconds)
     {
       return freshnessExpiryTimeMilliseconds_ > nowMilliseconds;
@@ -888,12 +835,46 @@ public class MemoryContentCache implements OnInterestCallback {
       * or -1 for no timeout. */
   }
 
+  /**
+   * Find the content in cache_ which matches the interest. If the interest has
+   * a ChildSelector, find the leftmost or rightmost child. Otherwise, find the
+   * first match in canonical order.
+   * @param interest The Interest to match.
+   * @param nowMilliseconds The current time in milliseconds from
+   * Common.getNowMilliseconds().
+   * @return The matching content, or null if not found.
+   */
+  private Content
+  findContent(Interest interest, double nowMilliseconds)
+  {
+    // The names with the interest name as a prefix are the range from the
+    // name up to its successor in canonical order.
+    Name prefix = interest.getName();
+    NavigableMap<Name, Content> range;
+    if (prefix.size() == 0)
+      range = cache_;
+    else
+      range = cache_.subMap(prefix, true, prefix.getSuccessor(), false);
+
+    // In canonical order, the children are sorted by the component after the
+    // prefix, so the rightmost child is found by searching from the end.
+    if (interest.getChildSelector() == 1)
+      range = range.descendingMap();
+
+    for (Content content : range.values()) {
+      if (interest.matchesName(content.getName()) &&
+          !(interest.getMustBeFresh() && !content.isFresh(nowMilliseconds)))
+        return content;
+    }
+
+    return null;
+  }
+
   /**
    * Check if now is greater than nextCleanupTime_ and, if so, remove stale
-   * content from staleTimeCache_ and reset nextCleanupTime_ based on
-   * cleanupIntervalMilliseconds_. Since add(Data) does a sorted insert into
-   * staleTimeCache_, the check for stale data is quick and does not require
-   * searching the entire staleTimeCache_.
+   * content from the cache and reset nextCleanupTime_ based on
+   * cleanupIntervalMilliseconds_. staleTimeQueue_ is a heap ordered on the
+   * removal time, so this only looks at the content to remove.
    * @param nowMilliseconds The current time in milliseconds from
    * Common.getNowMilliseconds().
    */
@@ -901,11 +882,13 @@ public class MemoryContentCache implements OnInterestCallback {
   doCleanup(double nowMilliseconds)
   {
     if (nowMilliseconds >= nextCleanupTime_) {
-      // staleTimeCache_ is sorted on cacheRemovalTimeMilliseconds_, so we only need to
-      // erase the stale entries at the front, then quit.
-      while (staleTimeCache_.size() > 0 &&
-             staleTimeCache_.get(0).isPastRemovalTime(nowMilliseconds))
-        staleTimeCache_.remove(0);
+      while (staleTimeQueue_.size() > 0 &&
+             staleTimeQueue_.peek().isPastRemovalTime(nowMilliseconds)) {
+        StaleTimeContent content = staleTimeQueue_.poll();
+        // Don't remove newer content which replaced it with the same name.
+        if (cache_.get(content.getName()) == content)
+          cache_.remove(content.getName());
+      }
 
       nextCleanupTime_ = nowMilliseconds + cleanupIntervalMilliseconds_;
     }
@@ -921,10 +904,15 @@ public class MemoryContentCache implements OnInterestCallback {
   // Use ArrayList without generics so it works with older Java compilers.
   private final ArrayList<Long> interestFilterIdList_ = new ArrayList<Long>();
   private final ArrayList<Long> registeredPrefixIdList_ = new ArrayList<Long>();
-  private final ArrayList<Content> noStaleTimeCache_ = new ArrayList<Content>();
-  private final ArrayList<StaleTimeContent> staleTimeCache_ =
-    new ArrayList<StaleTimeContent>();
-  private final Name.Component emptyComponent_ = new Name.Component();
+  private final TreeMap<Name, Content> cache_ = new TreeMap<Name, Content>();
+  private final PriorityQueue<StaleTimeContent> staleTimeQueue_ =
+    new PriorityQueue<StaleTimeContent>(11, new Comparator<StaleTimeContent>() {
+      public int compare(StaleTimeContent content1, StaleTimeContent content2) {
+        return Double.compare
+          (content1.getCacheRemovalTimeMilliseconds(),
+           content2.getCacheRemovalTimeMilliseconds());
+      }
+    });
   private final ArrayList<PendingInterest> pendingInterestTable_ =
     new ArrayList<PendingInterest>();
   private OnInterestCallback storePendingInterestCallback_;
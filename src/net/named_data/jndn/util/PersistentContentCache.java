@@ -0,0 +1,807 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnInterestCallback;
+import net.named_data.jndn.OnRegisterFailed;
+import net.named_data.jndn.OnRegisterSuccess;
+import net.named_data.jndn.RegistrationOptions;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.TlvWireFormat;
+import net.named_data.jndn.encoding.tlv.Tlv;
+import net.named_data.jndn.security.SecurityException;
+
+/**
+ * A PersistentContentCache is like MemoryContentCache, but keeps the Data
+ * packets in an append-only log of segment files in a directory, so that the
+ * cache survives a restart of the producer. Each segment file is memory-mapped
+ * to append records and to send a Data packet directly from the mapping. The
+ * name index is in memory and is rebuilt by scanning the segments when the
+ * cache is opened.
+ * <p>
+ * Each record has a checksum so that a record which was partly written when
+ * the process crashed is detected and discarded on recovery. A removal by
+ * prefix is logged as a tombstone record. compact() copies the live records
+ * of mostly-dead segments to the end of the log and deletes the segment files,
+ * and startBackgroundCompaction calls it periodically on a thread pool. The
+ * methods of this class are synchronized so that compaction can run on another
+ * thread.
+ */
+public class PersistentContentCache implements OnInterestCallback {
+  /**
+   * Open the PersistentContentCache in the directory, recovering the Data
+   * packets from the segment files if they exist.
+   * @param face The Face to use to call registerPrefix and setInterestFilter,
+   * and which will call this object's OnInterest callback.
+   * @param directory The directory for the segment files. This creates it if
+   * it doesn't exist.
+   * @param segmentSize The size in bytes of each segment file. A Data packet
+   * encoding must fit in one segment.
+   * @throws IOException For error creating or reading the segment files.
+   */
+  public PersistentContentCache(Face face, File directory, int segmentSize)
+    throws IOException
+  {
+    face_ = face;
+    directory_ = directory;
+    segmentSize_ = segmentSize;
+
+    if (!directory.isDirectory() && !directory.mkdirs())
+      throw new IOException
+        ("PersistentContentCache: Cannot create directory " + directory);
+    recover();
+  }
+
+  /**
+   * Open the PersistentContentCache in the directory with segment files of
+   * DEFAULT_SEGMENT_SIZE bytes, recovering the Data packets from the segment
+   * files if they exist.
+   * @param face The Face to use to call registerPrefix and setInterestFilter,
+   * and which will call this object's OnInterest callback.
+   * @param directory The directory for the segment files. This creates it if
+   * it doesn't exist.
+   * @throws IOException For error creating or reading the segment files.
+   */
+  public PersistentContentCache(Face face, File directory) throws IOException
+  {
+    this(face, directory, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Call registerPrefix on the Face given to the constructor so that this
+   * PersistentContentCache will answer interests whose name has the prefix.
+   * See MemoryContentCache.registerPrefix.
+   * @param prefix The Name for the prefix to register. This copies the Name.
+   * @param onRegisterFailed If register prefix fails for any reason, this
+   * calls onRegisterFailed.onRegisterFailed(prefix).
+   * @param onRegisterSuccess If not null, this calls
+   * onRegisterSuccess.onRegisterSuccess(prefix, registeredPrefixId) when this
+   * receives a success message from the forwarder.
+   * @param onDataNotFound If not null and a data packet for an interest is not
+   * found in the cache, this forwards the interest by calling
+   * onDataNotFound.onInterest(prefix, interest, face, interestFilterId, filter).
+   * @throws IOException For I/O error in sending the registration request.
+   * @throws SecurityException If signing a command interest for NFD and cannot
+   * find the private key for the certificateName.
+   */
+  public final void
+  registerPrefix
+    (Name prefix, OnRegisterFailed onRegisterFailed,
+     OnRegisterSuccess onRegisterSuccess, OnInterestCallback onDataNotFound)
+    throws IOException, SecurityException
+  {
+    if (onDataNotFound != null)
+      onDataNotFoundForPrefix_.put(prefix.toUri(), onDataNotFound);
+    long registeredPrefixId = face_.registerPrefix
+      (prefix, this, onRegisterFailed, onRegisterSuccess,
+       new RegistrationOptions());
+    registeredPrefixIdList_.add(registeredPrefixId);
+  }
+
+  /**
+   * Call registerPrefix on the Face given to the constructor so that this
+   * PersistentContentCache will answer interests whose name has the prefix.
+   * Do not call a callback if a data packet is not found in the cache.
+   * @param prefix The Name for the prefix to register. This copies the Name.
+   * @param onRegisterFailed If register prefix fails for any reason, this
+   * calls onRegisterFailed.onRegisterFailed(prefix).
+   * @throws IOException For I/O error in sending the registration request.
+   * @throws SecurityException If signing a command interest for NFD and cannot
+   * find the private key for the certificateName.
+   */
+  public final void
+  registerPrefix(Name prefix, OnRegisterFailed onRegisterFailed)
+    throws IOException, SecurityException
+  {
+    registerPrefix(prefix, onRegisterFailed, null, null);
+  }
+
+  /**
+   * Call setInterestFilter on the Face given to the constructor so that this
+   * PersistentContentCache will answer interests whose name has the prefix.
+   * @param prefix The Name prefix used to match the name of an incoming
+   * Interest. This copies the Name.
+   * @param onDataNotFound If not null and a data packet for an interest is not
+   * found in the cache, this forwards the interest by calling
+   * onDataNotFound.onInterest(prefix, interest, face, interestFilterId, filter).
+   */
+  public final void
+  setInterestFilter(Name prefix, OnInterestCallback onDataNotFound)
+  {
+    if (onDataNotFound != null)
+      onDataNotFoundForPrefix_.put(prefix.toUri(), onDataNotFound);
+    long interestFilterId = face_.setInterestFilter(prefix, this);
+    interestFilterIdList_.add(interestFilterId);
+  }
+
+  /**
+   * Call setInterestFilter on the Face given to the constructor so that this
+   * PersistentContentCache will answer interests whose name has the prefix.
+   * Do not call a callback if a data packet is not found in the cache.
+   * @param prefix The Name prefix used to match the name of an incoming
+   * Interest. This copies the Name.
+   */
+  public final void
+  setInterestFilter(Name prefix)
+  {
+    setInterestFilter(prefix, null);
+  }
+
+  /**
+   * Call Face.unsetInterestFilter and Face.removeRegisteredPrefix for all the
+   * prefixes given to the setInterestFilter and registerPrefix method on this
+   * PersistentContentCache object so that it will not receive interests any
+   * more. This does not close the segment files.
+   */
+  public final void
+  unregisterAll()
+  {
+    for (long interestFilterId : interestFilterIdList_)
+      face_.unsetInterestFilter(interestFilterId);
+    interestFilterIdList_.clear();
+
+    for (long registeredPrefixId : registeredPrefixIdList_)
+      face_.removeRegisteredPrefix(registeredPrefixId);
+    registeredPrefixIdList_.clear();
+
+    onDataNotFoundForPrefix_.clear();
+  }
+
+  /**
+   * Append the Data packet to the log so that it is available to use to answer
+   * interests. If the cache already has a Data packet with the same name, this
+   * replaces it. The record is written to the memory-mapped segment, which
+   * the operating system writes to disk even if this process crashes. To
+   * also survive a crash of the operating system, call flush().
+   * @param data The Data packet to add. This copies the encoding.
+   * @throws IOException For error creating a new segment file.
+   * @throws IllegalArgumentException If the encoding doesn't fit in a
+   * segment.
+   */
+  public final synchronized void
+  add(Data data) throws IOException
+  {
+    checkOpen();
+    double nowMilliseconds = Common.getNowMilliseconds();
+    Record record = append
+      (data.wireEncode(TlvWireFormat.get()).buf(), nextSequenceNo_++,
+       nowMilliseconds);
+    record.name_ = new Name(data.getName());
+    double freshnessPeriod = data.getMetaInfo().getFreshnessPeriod();
+    if (freshnessPeriod >= 0)
+      record.staleTimeMilliseconds_ = nowMilliseconds + freshnessPeriod;
+    addToIndex(record);
+  }
+
+  /**
+   * Remove the Data packets whose name has the prefix, and append a tombstone
+   * record to the log so that they are not recovered.
+   * @param prefix The prefix Name of the Data packets to remove.
+   * @throws IOException For error creating a new segment file.
+   */
+  public final synchronized void
+  remove(Name prefix) throws IOException
+  {
+    checkOpen();
+    Record record = append
+      (prefix.wireEncode(TlvWireFormat.get()).buf(), nextSequenceNo_++,
+       Common.getNowMilliseconds());
+    record.name_ = new Name(prefix);
+    record.isTombstone_ = true;
+    applyTombstone(record);
+  }
+
+  /**
+   * Find the Data packet which matches the interest, as in
+   * MemoryContentCache. If the interest has a ChildSelector, find the leftmost
+   * or rightmost child.
+   * @param interest The Interest to match.
+   * @return A read-only slice of the memory-mapped segment with the Data
+   * packet encoding, or null if not found.
+   */
+  public final synchronized ByteBuffer
+  find(Interest interest)
+  {
+    if (isClosed_)
+      return null;
+
+    Name prefix = interest.getName();
+    NavigableMap<Name, Record> range;
+    if (prefix.size() == 0)
+      range = index_;
+    else
+      range = index_.subMap(prefix, true, prefix.getSuccessor(), false);
+    if (interest.getChildSelector() == 1)
+      range = range.descendingMap();
+
+    double nowMilliseconds = Common.getNowMilliseconds();
+    for (Record record : range.values()) {
+      if (interest.matchesName(record.name_) &&
+          !(interest.getMustBeFresh() &&
+            nowMilliseconds >= record.staleTimeMilliseconds_))
+        return record.getPayload();
+    }
+
+    return null;
+  }
+
+  public final void
+  onInterest
+    (Name prefix, Interest interest, Face face, long interestFilterId,
+     InterestFilter filter)
+  {
+    ByteBuffer encoding = find(interest);
+    if (encoding != null) {
+      logger_.log(Level.FINE, "PersistentContentCache: Reply Data to Interest {0}",
+        interest.toUri());
+      try {
+        face.send(encoding);
+      } catch (IOException ex) {
+        logger_.log(Level.SEVERE, null, ex);
+      }
+    }
+    else {
+      OnInterestCallback onDataNotFound =
+        onDataNotFoundForPrefix_.get(prefix.toUri());
+      if (onDataNotFound != null) {
+        try {
+          onDataNotFound.onInterest
+            (prefix, interest, face, interestFilterId, filter);
+        } catch (Throwable ex) {
+          logger_.log(Level.SEVERE, "Error in onDataNotFound", ex);
+        }
+      }
+    }
+  }
+
+  /**
+   * Copy the live records of each segment (other than the one being appended)
+   * whose live records are at most half of its size to the end of the log,
+   * then delete the segment file.
+   * @return The number of segment files which were deleted.
+   * @throws IOException For error writing the segment files.
+   */
+  public final synchronized int
+  compact() throws IOException
+  {
+    checkOpen();
+    int nCompacted = 0;
+    // Copy the list since this changes segments_.
+    for (Segment segment : new ArrayList<Segment>(segments_)) {
+      if (segment == active_ || segment.liveBytes_ * 2 > segment.usedBytes_)
+        continue;
+
+      // A tombstone can only be dropped from the oldest segment, since a
+      // removed Data packet which it hides can only be in that or an older
+      // segment.
+      boolean isOldest = (segment == segments_.get(0));
+      for (Record record : segment.records_) {
+        if (record.isErased_ || (record.isTombstone_ && isOldest))
+          continue;
+        copyRecord(record);
+      }
+
+      // Make sure the copies are on disk before deleting the originals.
+      active_.buffer_.force();
+      segments_.remove(segment);
+      segment.close();
+      if (!segment.file_.delete())
+        logger_.log(Level.WARNING, "PersistentContentCache: Cannot delete {0}",
+          segment.file_);
+      ++nCompacted;
+    }
+
+    return nCompacted;
+  }
+
+  /**
+   * Call compact() periodically on the thread pool until close() is called.
+   * @param threadPool The thread pool for running compact.
+   * @param intervalMilliseconds The delay between calls to compact.
+   */
+  public final synchronized void
+  startBackgroundCompaction
+    (ScheduledExecutorService threadPool, long intervalMilliseconds)
+  {
+    if (compactionFuture_ != null)
+      compactionFuture_.cancel(false);
+
+    compactionFuture_ = threadPool.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        // Need to catch and log exceptions at this async entry point.
+        try {
+          compact();
+        } catch (Throwable ex) {
+          logger_.log(Level.SEVERE, "Error in compact", ex);
+        }
+      }
+    }, intervalMilliseconds, intervalMilliseconds, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Force the segment being appended to be written to disk.
+   */
+  public final synchronized void
+  flush()
+  {
+    if (!isClosed_)
+      active_.buffer_.force();
+  }
+
+  /**
+   * Stop background compaction, flush, and close the segment files. After
+   * this, find returns null and add throws an exception.
+   * @throws IOException For error closing the files.
+   */
+  public final synchronized void
+  close() throws IOException
+  {
+    if (isClosed_)
+      return;
+
+    if (compactionFuture_ != null) {
+      compactionFuture_.cancel(false);
+      compactionFuture_ = null;
+    }
+    flush();
+    for (Segment segment : segments_)
+      segment.close();
+    isClosed_ = true;
+  }
+
+  /**
+   * Get the number of Data packets in the cache.
+   * @return The number of Data packets.
+   */
+  public final synchronized int
+  size() { return index_.size(); }
+
+  /**
+   * Get the number of segment files.
+   * @return The number of segment files.
+   */
+  public final synchronized int
+  getSegmentCount() { return segments_.size(); }
+
+  /**
+   * A Segment has the memory-mapped segment file and its records.
+   */
+  private static class Segment {
+    public Segment(File file, long id, int minimumSize) throws IOException
+    {
+      file_ = file;
+      id_ = id;
+      randomAccessFile_ = new RandomAccessFile(file, "rw");
+      FileChannel channel = randomAccessFile_.getChannel();
+      // This extends the file to the mapped size if needed.
+      buffer_ = channel.map
+        (FileChannel.MapMode.READ_WRITE, 0,
+         Math.max(channel.size(), minimumSize));
+    }
+
+    public final void
+    close() throws IOException { randomAccessFile_.close(); }
+
+    public final File file_;
+    public final long id_;
+    public final RandomAccessFile randomAccessFile_;
+    public final MappedByteBuffer buffer_;
+    public int usedBytes_ = 0;
+    // The size of the Data records which are not erased.
+    public int liveBytes_ = 0;
+    public final ArrayList<Record> records_ = new ArrayList<Record>();
+  }
+
+  /**
+   * A Record has the location of a Data or tombstone record in a segment.
+   */
+  private static class Record {
+    public Record(Segment segment, int offset, int size, long sequenceNo)
+    {
+      segment_ = segment;
+      offset_ = offset;
+      size_ = size;
+      sequenceNo_ = sequenceNo;
+    }
+
+    /**
+     * Get a read-only slice of the payload (the Data or Name encoding).
+     */
+    public final ByteBuffer
+    getPayload()
+    {
+      ByteBuffer result = segment_.buffer_.asReadOnlyBuffer();
+      result.limit(offset_ + size_);
+      result.position(offset_ + HEADER_SIZE);
+      return result;
+    }
+
+    public Segment segment_;
+    public int offset_;
+    public final int size_;
+    public final long sequenceNo_;
+    // The Data name, or the prefix of a tombstone.
+    public Name name_;
+    public boolean isTombstone_ = false;
+    public double staleTimeMilliseconds_ = Double.MAX_VALUE;
+    public boolean isErased_ = false;
+  }
+
+  /**
+   * Read the segment files, discard a partly written record at the end, and
+   * rebuild the index.
+   */
+  private void
+  recover() throws IOException
+  {
+    ArrayList<Long> ids = new ArrayList<Long>();
+    File[] files = directory_.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        String fileName = file.getName();
+        if (fileName.startsWith(SEGMENT_PREFIX) &&
+            fileName.endsWith(SEGMENT_SUFFIX)) {
+          try {
+            ids.add(Long.parseLong(fileName.substring
+              (SEGMENT_PREFIX.length(),
+               fileName.length() - SEGMENT_SUFFIX.length())));
+          } catch (NumberFormatException ex) {
+            // Not a segment file.
+          }
+        }
+      }
+    }
+    Collections.sort(ids);
+
+    ArrayList<Record> tombstones = new ArrayList<Record>();
+    for (int i = 0; i < ids.size(); ++i) {
+      Segment segment = new Segment
+        (getSegmentFile(ids.get(i)), ids.get(i), segmentSize_);
+      segments_.add(segment);
+      boolean isLast = (i == ids.size() - 1);
+      scanSegment(segment, isLast);
+
+      for (Record record : segment.records_) {
+        nextSequenceNo_ = Math.max(nextSequenceNo_, record.sequenceNo_ + 1);
+        if (record.isTombstone_)
+          tombstones.add(record);
+        else {
+          Record existing = index_.get(record.name_);
+          if (existing != null && existing.sequenceNo_ > record.sequenceNo_)
+            // A newer record replaced it.
+            record.isErased_ = true;
+          else
+            addToIndex(record);
+        }
+      }
+    }
+
+    // Apply the tombstones in order, after all the Data records are indexed,
+    // since compaction can move a Data record after a newer tombstone.
+    Collections.sort(tombstones, new Comparator<Record>() {
+      public int compare(Record record1, Record record2) {
+        return Long.valueOf(record1.sequenceNo_).compareTo(record2.sequenceNo_);
+      }
+    });
+    for (Record tombstone : tombstones)
+      applyTombstone(tombstone);
+
+    if (segments_.size() == 0)
+      newActiveSegment(0);
+    else
+      active_ = segments_.get(segments_.size() - 1);
+  }
+
+  /**
+   * Read the records of the segment until the end or a record which is not
+   * valid, and set segment.usedBytes_.
+   * @param segment The segment to scan.
+   * @param isLast True if this is the last segment, where an invalid record is
+   * expected after a crash and is overwritten with zeros.
+   */
+  private void
+  scanSegment(Segment segment, boolean isLast) throws IOException
+  {
+    ByteBuffer buffer = segment.buffer_;
+    int offset = 0;
+    boolean isValid = true;
+    while (offset + HEADER_SIZE <= buffer.limit()) {
+      int payloadLength = buffer.getInt(offset);
+      if (payloadLength == 0)
+        // The end of the records.
+        break;
+      int size = HEADER_SIZE + payloadLength;
+      if (payloadLength < 0 || size > buffer.limit() - offset ||
+          buffer.getInt(offset + 4) != computeChecksum(buffer, offset, size)) {
+        isValid = false;
+        break;
+      }
+
+      Record record = new Record
+        (segment, offset, size, buffer.getLong(offset + 8));
+      ByteBuffer payload = record.getPayload();
+      try {
+        if (payload.get(payload.position()) == Tlv.Data) {
+          Data data = new Data();
+          data.wireDecode(payload, TlvWireFormat.get());
+          record.name_ = data.getName();
+          double freshnessPeriod = data.getMetaInfo().getFreshnessPeriod();
+          if (freshnessPeriod >= 0)
+            record.staleTimeMilliseconds_ =
+              buffer.getLong(offset + 16) + freshnessPeriod;
+        }
+        else {
+          record.name_ = new Name();
+          record.name_.wireDecode(payload, TlvWireFormat.get());
+          record.isTombstone_ = true;
+        }
+      } catch (EncodingException ex) {
+        isValid = false;
+        break;
+      }
+
+      segment.records_.add(record);
+      offset += size;
+    }
+
+    segment.usedBytes_ = offset;
+    if (!isValid) {
+      logger_.log(Level.WARNING,
+        "PersistentContentCache: Discarding invalid records at offset {0} of {1}",
+        new Object[] { offset, segment.file_ });
+      if (isLast) {
+        // Clear the rest so that new records are not followed by old bytes.
+        ByteBuffer rest = buffer.duplicate();
+        rest.position(offset);
+        while (rest.hasRemaining())
+          rest.put(zeros_, 0, Math.min(rest.remaining(), zeros_.length));
+        segment.buffer_.force();
+      }
+    }
+  }
+
+  /**
+   * Append a record with the payload to the active segment, creating a new
+   * segment if needed. This does not update the index.
+   * @return The new Record, which is added to active_.records_.
+   */
+  private Record
+  append(ByteBuffer payload, long sequenceNo, double nowMilliseconds)
+    throws IOException
+  {
+    int size = HEADER_SIZE + payload.remaining();
+    ensureRoom(size);
+
+    int offset = active_.usedBytes_;
+    ByteBuffer buffer = active_.buffer_.duplicate();
+    buffer.position(offset + 8);
+    buffer.putLong(sequenceNo);
+    buffer.putLong((long)nowMilliseconds);
+    buffer.put(payload.duplicate());
+    writeHeader(offset, size);
+
+    Record record = new Record(active_, offset, size, sequenceNo);
+    active_.usedBytes_ += size;
+    active_.records_.add(record);
+    return record;
+  }
+
+  /**
+   * Copy the record to the active segment, and update its location.
+   */
+  private void
+  copyRecord(Record record) throws IOException
+  {
+    ensureRoom(record.size_);
+
+    ByteBuffer source = record.segment_.buffer_.duplicate();
+    source.limit(record.offset_ + record.size_);
+    // Copy everything after the length, which is written last.
+    source.position(record.offset_ + 4);
+    int offset = active_.usedBytes_;
+    ByteBuffer buffer = active_.buffer_.duplicate();
+    buffer.position(offset + 4);
+    buffer.put(source);
+    active_.buffer_.putInt(offset, record.size_ - HEADER_SIZE);
+
+    if (!record.isTombstone_) {
+      record.segment_.liveBytes_ -= record.size_;
+      active_.liveBytes_ += record.size_;
+    }
+    record.segment_ = active_;
+    record.offset_ = offset;
+    active_.usedBytes_ += record.size_;
+    active_.records_.add(record);
+  }
+
+  /**
+   * Write the checksum and then the payload length of the record whose other
+   * fields are written, so that a partly written record has a zero length or
+   * a bad checksum.
+   */
+  private void
+  writeHeader(int offset, int size)
+  {
+    active_.buffer_.putInt
+      (offset + 4, computeChecksum(active_.buffer_, offset, size));
+    active_.buffer_.putInt(offset, size - HEADER_SIZE);
+  }
+
+  private void
+  ensureRoom(int size) throws IOException
+  {
+    if (size > segmentSize_)
+      throw new IllegalArgumentException
+        ("PersistentContentCache: The record is larger than the segment size");
+    if (active_.buffer_.limit() - active_.usedBytes_ >= size)
+      return;
+
+    active_.buffer_.force();
+    newActiveSegment(active_.id_ + 1);
+  }
+
+  private void
+  newActiveSegment(long id) throws IOException
+  {
+    active_ = new Segment(getSegmentFile(id), id, segmentSize_);
+    segments_.add(active_);
+  }
+
+  /**
+   * Add the Data record to the index, erasing a record with the same name.
+   */
+  private void
+  addToIndex(Record record)
+  {
+    Record existing = index_.put(record.name_, record);
+    if (existing != null)
+      erase(existing);
+    record.segment_.liveBytes_ += record.size_;
+  }
+
+  /**
+   * Erase the Data records in the index under the tombstone's prefix which
+   * are older than the tombstone.
+   */
+  private void
+  applyTombstone(Record tombstone)
+  {
+    Name prefix = tombstone.name_;
+    NavigableMap<Name, Record> range;
+    if (prefix.size() == 0)
+      range = index_;
+    else
+      range = index_.subMap(prefix, true, prefix.getSuccessor(), false);
+
+    for (Record record : new ArrayList<Record>(range.values())) {
+      if (record.sequenceNo_ < tombstone.sequenceNo_) {
+        index_.remove(record.name_);
+        erase(record);
+      }
+    }
+  }
+
+  private static void
+  erase(Record record)
+  {
+    record.isErased_ = true;
+    record.segment_.liveBytes_ -= record.size_;
+  }
+
+  /**
+   * Compute the CRC32 of the record after the length and checksum fields.
+   */
+  private int
+  computeChecksum(ByteBuffer buffer, int offset, int size)
+  {
+    CRC32 crc = new CRC32();
+    ByteBuffer source = buffer.duplicate();
+    source.limit(offset + size);
+    source.position(offset + 8);
+    while (source.hasRemaining()) {
+      int length = Math.min(source.remaining(), checksumBuffer_.length);
+      source.get(checksumBuffer_, 0, length);
+      crc.update(checksumBuffer_, 0, length);
+    }
+    return (int)crc.getValue();
+  }
+
+  private File
+  getSegmentFile(long id)
+  {
+    return new File(directory_, SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+  }
+
+  private void
+  checkOpen() throws IOException
+  {
+    if (isClosed_)
+      throw new IOException("PersistentContentCache: The cache is closed");
+  }
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+  // The header is the payload length, the CRC32 of the rest of the record,
+  // the sequence number and the time added in milliseconds.
+  private static final int HEADER_SIZE = 24;
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final byte[] zeros_ = new byte[4096];
+
+  private final Face face_;
+  private final File directory_;
+  private final int segmentSize_;
+  // The segments in order of id. The last one is active_.
+  private final ArrayList<Segment> segments_ = new ArrayList<Segment>();
+  private Segment active_;
+  private final TreeMap<Name, Record> index_ = new TreeMap<Name, Record>();
+  private long nextSequenceNo_ = 0;
+  private final byte[] checksumBuffer_ = new byte[4096];
+  private boolean isClosed_ = false;
+  private ScheduledFuture<?> compactionFuture_ = null;
+  private final HashMap<String, OnInterestCallback> onDataNotFoundForPrefix_ =
+    new HashMap<String, OnInterestCallback>();
+  private final ArrayList<Long> interestFilterIdList_ = new ArrayList<Long>();
+  private final ArrayList<Long> registeredPrefixIdList_ = new ArrayList<Long>();
+  private static final Logger logger_ = Logger.getLogger
+    (PersistentContentCache.class.getName());
+}
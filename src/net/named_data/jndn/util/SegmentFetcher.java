@@ -23,7 +23,9 @@
 package net.named_data.jndn.util;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
@@ -75,6 +77,14 @@ import net.named_data.jndn.security.v2.*;
  * 4. Call the OnComplete callback with a blob that concatenates the content
  *    from all the segmented objects.
  *
+ * To fetch a large object without holding all of it in memory, use fetchStream
+ * instead. It calls an OnSegment callback with the content of each segment in
+ * order as soon as the segments before it are received, and then releases the
+ * segment. It only requests segments up to Options.maxReorderSegments ahead of
+ * the next segment to deliver, so that the reorder buffer is bounded. Use
+ * writeTo to make an OnSegment which writes to a WritableByteChannel or
+ * OutputStream.
+ *
  * If an error occurs during the fetching process, the OnError callback is called
  * with a proper error code.  The following errors are possible:
  *
@@ -83,7 +93,8 @@ import net.named_data.jndn.security.v2.*;
  *   as the last component of the name (not counting the implicit digest)
  * - `SEGMENT_VERIFICATION_FAILED`: if any retrieved segment fails
  *   the user-provided VerifySegment callback or KeyChain verifyData.
- * - `IO_ERROR`: for I/O errors when sending an Interest.
+ * - `IO_ERROR`: for I/O errors when sending an Interest, or an exception
+ *   thrown by OnSegment in streaming mode.
  * - 'NACK_ERROR': unknown/unhandled NACK received.
  *
  * In order to validate individual segments, a KeyChain needs to be supplied.
@@ -151,6 +162,11 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
         /** options for RTT estimator
          */
         public RttEstimator.Options rttOptions = new RttEstimator.Options();
+        /** for fetchStream, the maximum number of segments after the next
+         * segment to deliver which can be requested, which bounds the number
+         * of received segments waiting for an earlier segment
+         */
+        public int maxReorderSegments = 1024;
 
     }
 
@@ -195,6 +211,25 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
         boolean verifySegment(Data data);
     }
 
+    public interface OnSegment {
+        /**
+         * Process the content of the next segment in order.
+         * @param content The segment content.
+         * @param segmentNum The segment number.
+         * @throws IOException For error writing the content. This or any other
+         * exception aborts fetching with ErrorCode.IO_ERROR.
+         */
+        void onSegment(Blob content, long segmentNum) throws IOException;
+    }
+
+    public interface OnStreamComplete {
+        /**
+         * This is called after the last segment is given to OnSegment.
+         * @param totalSize The total number of content bytes.
+         */
+        void onStreamComplete(long totalSize);
+    }
+
     public interface OnError {
         void onError(SegmentFetcher.ErrorCode errorCode, String message);
     }
@@ -340,6 +375,125 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
                 .run();
     }
 
+    /**
+     * Initiate segment fetching in streaming mode, using the Validator. Instead
+     * of concatenating the content, call onSegment with each segment in order
+     * as soon as it and the segments before it are received. For more details,
+     * see the documentation for the class and fetch.
+     * @param face This calls face.expressInterest to fetch more segments.
+     * @param baseInterest Interest for the initial segment of requested data.
+     * @param options A set of options to control the sending and receiving of packets
+     * in the AIMD pipelining, including maxReorderSegments.
+     * @param validator The Validator, the fetcher will use to validate data.
+     * @param onSegment Call onSegment.onSegment(content, segmentNum) for each
+     * segment in order. If it throws an exception then abort fetching and call
+     * onError.onError with ErrorCode.IO_ERROR.
+     * @param onComplete After the last segment, call
+     * onComplete.onStreamComplete(totalSize).
+     * NOTE: The library will log any exceptions thrown by this callback, but for
+     * better error handling the callback should catch and properly handle any
+     * exceptions.
+     * @param onError Call onError.onError(errorCode, message) for timeout or an
+     * error processing segments.
+     */
+    public static void fetchStream
+    (Face face, Interest baseInterest, Options options, Validator validator,
+     SegmentFetcher.OnSegment onSegment, SegmentFetcher.OnStreamComplete onComplete,
+     SegmentFetcher.OnError onError) {
+        new SegmentFetcher(face, baseInterest, null, options, validator,
+                DontVerifySegment, null, onSegment, onComplete, onError)
+                .run();
+    }
+
+    /**
+     * Initiate segment fetching in streaming mode, using the KeyChain to
+     * validate. See fetchStream with a Validator.
+     * @param face This calls face.expressInterest to fetch more segments.
+     * @param baseInterest Interest for the initial segment of requested data.
+     * @param options A set of options to control the sending and receiving of packets
+     * in the AIMD pipelining, including maxReorderSegments.
+     * @param validatorKeyChain If not null, call validatorKeyChain.verifyData(data)
+     * for each segment.
+     * @param onSegment Call onSegment.onSegment(content, segmentNum) for each
+     * segment in order.
+     * @param onComplete After the last segment, call
+     * onComplete.onStreamComplete(totalSize).
+     * @param onError Call onError.onError(errorCode, message) for timeout or an
+     * error processing segments.
+     */
+    public static void fetchStream
+    (Face face, Interest baseInterest, Options options, KeyChain validatorKeyChain,
+     SegmentFetcher.OnSegment onSegment, SegmentFetcher.OnStreamComplete onComplete,
+     SegmentFetcher.OnError onError) {
+        new SegmentFetcher(face, baseInterest, validatorKeyChain, options, null,
+                DontVerifySegment, null, onSegment, onComplete, onError)
+                .run();
+    }
+
+    /**
+     * Initiate segment fetching in streaming mode, using the VerifySegment
+     * callback. See fetchStream with a Validator.
+     * @param face This calls face.expressInterest to fetch more segments.
+     * @param baseInterest Interest for the initial segment of requested data.
+     * @param options A set of options to control the sending and receiving of packets
+     * in the AIMD pipelining, including maxReorderSegments.
+     * @param verifySegment Call verifySegment.verifySegment(data) for each
+     * segment. If data validation is not required, use DontVerifySegment.
+     * @param onSegment Call onSegment.onSegment(content, segmentNum) for each
+     * segment in order.
+     * @param onComplete After the last segment, call
+     * onComplete.onStreamComplete(totalSize).
+     * @param onError Call onError.onError(errorCode, message) for timeout or an
+     * error processing segments.
+     */
+    public static void fetchStream
+    (Face face, Interest baseInterest, Options options,
+     SegmentFetcher.VerifySegment verifySegment, SegmentFetcher.OnSegment onSegment,
+     SegmentFetcher.OnStreamComplete onComplete, SegmentFetcher.OnError onError) {
+        new SegmentFetcher(face, baseInterest, null, options, null,
+                verifySegment, null, onSegment, onComplete, onError)
+                .run();
+    }
+
+    /**
+     * Make an OnSegment for fetchStream which writes each segment to the
+     * channel.
+     * @param channel The channel to write to. This does not close it.
+     * @return A new OnSegment.
+     */
+    public static SegmentFetcher.OnSegment writeTo(final WritableByteChannel channel) {
+        return new SegmentFetcher.OnSegment() {
+            public void onSegment(Blob content, long segmentNum) throws IOException {
+                ByteBuffer buffer = content.buf();
+                if (buffer == null)
+                    return;
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+        };
+    }
+
+    /**
+     * Make an OnSegment for fetchStream which writes each segment to the
+     * output stream.
+     * @param output The stream to write to. This does not close it.
+     * @return A new OnSegment.
+     */
+    public static SegmentFetcher.OnSegment writeTo(final OutputStream output) {
+        return new SegmentFetcher.OnSegment() {
+            public void onSegment(Blob content, long segmentNum) throws IOException {
+                ByteBuffer buffer = content.buf();
+                if (buffer == null)
+                    return;
+                if (buffer.hasArray())
+                    output.write(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                            buffer.remaining());
+                else
+                    output.write(content.getImmutableArray());
+            }
+        };
+    }
+
     /**
      * Create a new SegmentFetcher to use the Face. See the static fetch method
      * for details. If validatorKeyChain is not null, use it and ignore
@@ -360,6 +514,24 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
     private SegmentFetcher
     (Face face, Interest baseInterest, KeyChain validatorKeyChain, Options options, Validator validator,
      SegmentFetcher.VerifySegment verifySegment, SegmentFetcher.OnComplete onComplete,
+     SegmentFetcher.OnError onError) {
+        this(face, baseInterest, validatorKeyChain, options, validator, verifySegment,
+                onComplete, null, null, onError);
+    }
+
+    /**
+     * Create a new SegmentFetcher as above, which is in streaming mode if
+     * onSegment is not null.
+     *
+     * @param onSegment         If not null, call onSegment.onSegment(content, segmentNum)
+     *                          for each segment in order instead of calling onComplete.
+     * @param onStreamComplete  If onSegment is not null, call
+     *                          onStreamComplete.onStreamComplete(totalSize) after the last segment.
+     */
+    private SegmentFetcher
+    (Face face, Interest baseInterest, KeyChain validatorKeyChain, Options options, Validator validator,
+     SegmentFetcher.VerifySegment verifySegment, SegmentFetcher.OnComplete onComplete,
+     SegmentFetcher.OnSegment onSegment, SegmentFetcher.OnStreamComplete onStreamComplete,
      SegmentFetcher.OnError onError) {
         this.options_ = options;
         face_ = face;
@@ -367,6 +539,8 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
         validatorKeyChain_ = validatorKeyChain;
         verifySegment_ = verifySegment;
         onComplete_ = onComplete;
+        onSegment_ = onSegment;
+        onStreamComplete_ = onStreamComplete;
         onError_ = onError;
 
         rttEstimator_ = new RttEstimator(options_.rttOptions);
@@ -421,7 +595,12 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
                 retxQueue_.remove();
                 segmentsToRequest.put(key, true);
             } else if (nSegments_ == -1 || nextSegmentNum_ < nSegments_) {
-                if (receivedSegments_.containsKey(nextSegmentNum_)) {
+                if (onSegment_ != null &&
+                        nextSegmentNum_ - nextSegmentToDeliver_ >= options_.maxReorderSegments) {
+                    // Wait for the head-of-line segment so that the reorder buffer is bounded.
+                    break;
+                }
+                if (hasReceivedSegment(nextSegmentNum_)) {
                     // Don't request a segment a second time if received in response to first "discovery" Interest
                     nextSegmentNum_++;
                     continue;
@@ -489,10 +668,10 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
     private boolean checkAllSegmentsReceived() {
         boolean haveReceivedAllSegments = false;
 
-        if (nSegments_ != -1 && receivedSegments_.size() >= nSegments_) {
+        if (nSegments_ != -1 && nReceivedSegments_ >= nSegments_) {
             haveReceivedAllSegments = true;
             // Verify that all segments in window have been received. If not, send Interests for missing segments.
-            for (long i = 0; i < nSegments_; i++) {
+            for (long i = nextSegmentToDeliver_; i < nSegments_; i++) {
                 if (!receivedSegments_.containsKey(i)) {
                     retxQueue_.offer(i);
                     return false;
@@ -503,6 +682,18 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
     }
 
     private void finalizeFetch() {
+        if (onSegment_ != null) {
+            // All the segments were already given to onSegment.
+            stop();
+            clean();
+            try {
+                onStreamComplete_.onStreamComplete(nDeliveredBytes_);
+            } catch (Throwable ex) {
+                logger_.log(Level.SEVERE, "Error in onStreamComplete", ex);
+            }
+            return;
+        }
+
         // We are finished.
         // Get the total size and concatenate to get content.
         int totalSize = 0;
@@ -551,8 +742,8 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
 
         // The first received Interest could have any segment ID
         final long pendingSegmentIt;
-        if (receivedSegments_.size() > 0) {
-            if (receivedSegments_.containsKey(segmentNum) || !pendingSegments_.containsKey(segmentNum))
+        if (nReceivedSegments_ > 0) {
+            if (hasReceivedSegment(segmentNum) || !pendingSegments_.containsKey(segmentNum))
                 return;
             pendingSegmentIt = segmentNum;
         } else {
@@ -646,8 +837,9 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
 
             // Copy data in segment to temporary buffer
             receivedSegments_.put(segmentNum, data.getContent());
+            ++nReceivedSegments_;
 
-            if (receivedSegments_.size() == 1) {
+            if (nReceivedSegments_ == 1) {
                 versionedDataName_ = data.getName();
                 if (segmentNum == 0) {
                     // We received the first segment in response, so we can increment the next segment number
@@ -675,6 +867,9 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
                 highData_ = segmentNum;
             }
 
+            if (onSegment_ != null && !deliverSegmentsInOrder())
+                return;
+
             if (data.getCongestionMark() > 0 && !options_.ignoreCongMarks) {
                 windowDecrease();
             } else {
@@ -685,6 +880,37 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
 
     }
 
+    /**
+     * In streaming mode, give the received segments starting from
+     * nextSegmentToDeliver_ to onSegment_ and release them.
+     * @return False if onSegment_ threw an exception and fetching is stopped.
+     */
+    private boolean deliverSegmentsInOrder() {
+        Blob content;
+        while ((content = receivedSegments_.remove(nextSegmentToDeliver_)) != null) {
+            try {
+                onSegment_.onSegment(content, nextSegmentToDeliver_);
+            } catch (Throwable ex) {
+                // The sink may not have written the segment, so don't continue
+                // with a gap in the output.
+                stop();
+                clean();
+                try {
+                    onError_.onError
+                            (ErrorCode.IO_ERROR, "Error in onSegment " + ex);
+                } catch (Throwable exception) {
+                    logger_.log(Level.SEVERE, "Error in onError", exception);
+                }
+                return false;
+            }
+
+            nDeliveredBytes_ += content.size();
+            ++nextSegmentToDeliver_;
+        }
+
+        return true;
+    }
+
     private void windowIncrease() {
         if (options_.useConstantCwnd || cwnd_ == options_.maxWindowSize) {
             return;
@@ -787,7 +1013,7 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
                 if (!checkMaxTimeout()) return;
 
                 rttEstimator_.backoffRto();
-                if (receivedSegments_.size() == 0) {
+                if (nReceivedSegments_ == 0) {
                     // Resend first Interest (until maximum receive timeout exceeded)
                     fetchFirstSegment(true);
                 } else {
@@ -809,7 +1035,7 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
             nSegmentsInFlight_--;
         } else return false;
 
-        if (receivedSegments_.size() != 0) {
+        if (nReceivedSegments_ != 0) {
             retxQueue_.offer(segmentNumber);
         }
 
@@ -823,7 +1049,7 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
             return;
 
         rttEstimator_.backoffRto();
-        if (receivedSegments_.size() == 0) {
+        if (nReceivedSegments_ == 0) {
             // Resend first Interest (until maximum receive timeout exceeded)
             fetchFirstSegment(true);
         } else {
@@ -894,6 +1120,14 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
         receivedSegments_.clear(); // remove the received segments
     }
 
+    /**
+     * Check if the segment was received, including a segment which was already
+     * given to onSegment in streaming mode.
+     */
+    private boolean hasReceivedSegment(long segmentNum) {
+        return segmentNum < nextSegmentToDeliver_ || receivedSegments_.containsKey(segmentNum);
+    }
+
     /**
      * Check if the last component in the name is a segment number.
      *
@@ -918,7 +1152,11 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
     private int nSegmentsInFlight_ = 0;
     private long nSegments_ = -1;
     private Map<Long, PendingSegment> pendingSegments_ = new HashMap();
+    // In streaming mode, this only has the segments which are not delivered yet.
     private Map<Long, Blob> receivedSegments_ = new HashMap();
+    private long nReceivedSegments_ = 0;
+    private long nextSegmentToDeliver_ = 0;
+    private long nDeliveredBytes_ = 0;
     private Queue<Long> retxQueue_ = new LinkedList<>();
     private long nextSegmentNum_ = 0;
     private long timeLastSegmentReceived_ = 0;
@@ -929,6 +1167,8 @@ public class SegmentFetcher implements OnData, OnDataValidationFailed, OnTimeout
     private final KeyChain validatorKeyChain_;
     private final SegmentFetcher.VerifySegment verifySegment_;
     private final SegmentFetcher.OnComplete onComplete_;
+    private final SegmentFetcher.OnSegment onSegment_;
+    private final SegmentFetcher.OnStreamComplete onStreamComplete_;
     private final SegmentFetcher.OnError onError_;
     private static final Logger logger_ = Logger.getLogger(SegmentFetcher.class.getName());
 }
\ No newline at end of file
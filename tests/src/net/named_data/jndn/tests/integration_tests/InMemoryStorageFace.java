@@ -122,11 +122,11 @@ public class InMemoryStorageFace extends Face {
   public void
   receive(Interest interest)
   {
-    ArrayList matchedFilters = new ArrayList();
+    ArrayList<InterestFilterTable.Entry> matchedFilters =
+      new ArrayList<InterestFilterTable.Entry>();
     interestFilterTable_.getMatchedFilters(interest, matchedFilters);
     for (int i = 0; i < matchedFilters.size(); ++i) {
-      InterestFilterTable.Entry entry =
-        (InterestFilterTable.Entry)matchedFilters.get(i);
+      InterestFilterTable.Entry entry = matchedFilters.get(i);
       entry.getOnInterest().onInterest
        (entry.getFilter().getPrefix(), interest, entry.getFace(),
         entry.getInterestFilterId(), entry.getFilter());
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.transport.Transport;
+import net.named_data.jndn.util.Blob;
+
+/**
+ * A ReplyTransport is a fake Transport for unit tests which answers each sent
+ * Interest under the reply prefix with a Data packet of the same name and the
+ * content "reply". The reply is received by replyTransport_ (normally this) on
+ * its next processEvents. A test can also add an encoded packet to replies_ to
+ * be received on the next processEvents.
+ */
+public class ReplyTransport extends Transport {
+  /**
+   * Create a ReplyTransport which answers the Interests under replyPrefix.
+   * @param replyPrefix The prefix of the Interest names to answer. If this is
+   * the empty Name, answer all Interests.
+   */
+  public ReplyTransport(Name replyPrefix)
+  {
+    replyPrefix_ = new Name(replyPrefix);
+  }
+
+  /**
+   * Create a ReplyTransport which answers all Interests.
+   */
+  public ReplyTransport()
+  {
+    this(new Name());
+  }
+
+  public boolean
+  isLocal(Transport.ConnectionInfo connectionInfo) { return true; }
+
+  public boolean
+  isAsync() { return false; }
+
+  public void
+  connect
+    (Transport.ConnectionInfo connectionInfo, ElementListener elementListener,
+     Runnable onConnected)
+  {
+    elementListener_ = elementListener;
+    isConnected_ = true;
+    if (onConnected != null)
+      onConnected.run();
+  }
+
+  public void
+  send(ByteBuffer data) throws IOException
+  {
+    if (!isConnected_)
+      throw new IOException("Not connected");
+
+    ++nSent_;
+    Interest interest = new Interest();
+    try {
+      interest.wireDecode(data);
+    } catch (EncodingException ex) {
+      throw new IOException(ex);
+    }
+
+    if (replyPrefix_.match(interest.getName()))
+      replyTransport_.replies_.add(new Data(interest.getName())
+        .setContent(new Blob("reply")).wireEncode().buf());
+  }
+
+  public void
+  processEvents() throws IOException, EncodingException
+  {
+    ArrayList<ByteBuffer> replies = new ArrayList<ByteBuffer>(replies_);
+    replies_.clear();
+    for (ByteBuffer reply : replies)
+      elementListener_.onReceivedElement(reply);
+  }
+
+  public boolean
+  getIsConnected() { return isConnected_; }
+
+  public ReplyTransport replyTransport_ = this;
+  public boolean isConnected_ = false;
+  public int nSent_ = 0;
+  public final ArrayList<ByteBuffer> replies_ = new ArrayList<ByteBuffer>();
+  private final Name replyPrefix_;
+  private ElementListener elementListener_;
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.ElementReader;
+import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.Common;
+
+/**
+ * A StandInForwarder is used by unit tests in place of NFD for a transport
+ * which needs a socket. It accepts one connection and answers each Interest
+ * with a Data packet of the same name and the content "content", except for
+ * names under /no-answer. A name under /answer-second is only answered when
+ * its second Interest is received. Call run() on a new thread.
+ */
+public class StandInForwarder implements Runnable {
+  /**
+   * Create a StandInForwarder which listens for a TCP connection on a free
+   * port of 127.0.0.1. Use getPort() to get the port.
+   */
+  public StandInForwarder() throws Exception
+  {
+    serverChannel_ = ServerSocketChannel.open();
+    serverChannel_.bind(new InetSocketAddress("127.0.0.1", 0));
+  }
+
+  /**
+   * Create a StandInForwarder which listens for a connection on the
+   * Unix-domain socket. This requires UnixTransport.isSupported().
+   * @param filePath The file path of the Unix-domain socket.
+   */
+  public StandInForwarder(String filePath) throws Exception
+  {
+    // Use reflection since this is compiled for Java versions before 16.
+    ProtocolFamily unixFamily = StandardProtocolFamily.valueOf("UNIX");
+    SocketAddress address = (SocketAddress)Class.forName
+      ("java.net.UnixDomainSocketAddress").getMethod("of", String.class)
+      .invoke(null, filePath);
+    serverChannel_ = (ServerSocketChannel)ServerSocketChannel.class.getMethod
+      ("open", ProtocolFamily.class).invoke(null, unixFamily);
+    serverChannel_.bind(address);
+  }
+
+  public void
+  run()
+  {
+    try {
+      final SocketChannel channel = serverChannel_.accept();
+      final HashSet<Name> received = new HashSet<Name>();
+      ElementReader reader = new ElementReader(new ElementListener() {
+        public void onReceivedElement(ByteBuffer element) {
+          try {
+            Interest interest = new Interest();
+            interest.wireDecode(element);
+            if (new Name("/no-answer").match(interest.getName()))
+              return;
+            if (new Name("/answer-second").match(interest.getName()) &&
+                received.add(interest.getName()))
+              return;
+            ByteBuffer encoding = new Data(interest.getName())
+              .setContent(new Blob("content")).wireEncode().buf();
+            while (encoding.hasRemaining())
+              channel.write(encoding);
+          } catch (Exception ex) {
+            throw new Error(ex);
+          }
+        }
+      });
+
+      ByteBuffer buffer = ByteBuffer.allocate(Common.MAX_NDN_PACKET_SIZE);
+      while (true) {
+        buffer.clear();
+        if (channel.read(buffer) < 0)
+          break;
+        buffer.flip();
+        reader.onReceivedData(buffer);
+      }
+      channel.close();
+    } catch (Exception ex) {
+      // The test closed the server.
+    }
+  }
+
+  /**
+   * Get the TCP port of a StandInForwarder made with the default constructor.
+   * @return The port.
+   */
+  public int
+  getPort() throws Exception
+  {
+    return ((InetSocketAddress)serverChannel_.getLocalAddress()).getPort();
+  }
+
+  public void
+  close() throws Exception { serverChannel_.close(); }
+
+  private final ServerSocketChannel serverChannel_;
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.transport.AsyncTcpTransport;
+import net.named_data.jndn.util.Common;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestAsyncTcpTransport {
+  @Before
+  public void
+  setUp() throws Exception
+  {
+    threadPool_ = Executors.newScheduledThreadPool(4);
+    serverChannel_ = ServerSocketChannel.open();
+    serverChannel_.bind(new InetSocketAddress("127.0.0.1", 0));
+    int port = ((InetSocketAddress)serverChannel_.getLocalAddress()).getPort();
+
+    transport_ = new AsyncTcpTransport(threadPool_);
+    final CountDownLatch connected = new CountDownLatch(1);
+    transport_.connect
+      (new AsyncTcpTransport.ConnectionInfo("127.0.0.1", port),
+       new ElementListener() {
+         public void onReceivedElement(ByteBuffer element) {}
+       },
+       new Runnable() {
+         public void run() { connected.countDown(); }
+       });
+    peer_ = serverChannel_.accept();
+    peer_.configureBlocking(false);
+    assertTrue(connected.await(5, TimeUnit.SECONDS));
+  }
+
+  @After
+  public void
+  tearDown() throws Exception
+  {
+    peer_.close();
+    serverChannel_.close();
+    threadPool_.shutdownNow();
+  }
+
+  /**
+   * Read from the peer until it has received nBytes or the timeout.
+   * @return The received bytes.
+   */
+  private byte[]
+  receive(int nBytes, int timeoutMilliseconds) throws Exception
+  {
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+    ByteBuffer buffer = ByteBuffer.allocate(65536);
+    double startTime = Common.getNowMilliseconds();
+    while (received.size() < nBytes &&
+           Common.getNowMilliseconds() - startTime < timeoutMilliseconds) {
+      buffer.clear();
+      int nRead = peer_.read(buffer);
+      if (nRead < 0)
+        break;
+      if (nRead == 0) {
+        Thread.sleep(2);
+        continue;
+      }
+      received.write(buffer.array(), 0, nRead);
+    }
+
+    return received.toByteArray();
+  }
+
+  /**
+   * Make a packet of PACKET_SIZE bytes with the sender number in the first
+   * byte and the sequence number in the next four bytes.
+   */
+  private static ByteBuffer
+  makePacket(int sender, int sequenceNo)
+  {
+    return fillPacket(ByteBuffer.allocateDirect(PACKET_SIZE), sender, sequenceNo);
+  }
+
+  private static ByteBuffer
+  fillPacket(ByteBuffer packet, int sender, int sequenceNo)
+  {
+    packet.clear();
+    packet.put((byte)sender);
+    packet.putInt(sequenceNo);
+    while (packet.hasRemaining())
+      packet.put((byte)sender);
+    packet.flip();
+    return packet;
+  }
+
+  @Test
+  public void
+  testConcurrentSenders() throws Exception
+  {
+    final int nSenders = 8;
+    final int nPackets = 2000;
+    final AtomicInteger nErrors = new AtomicInteger();
+    Thread[] senders = new Thread[nSenders];
+    for (int i = 0; i < nSenders; ++i) {
+      final int sender = i;
+      senders[i] = new Thread(new Runnable() {
+        public void run() {
+          // Reuse one buffer like the thread's send buffer, since send copies.
+          ByteBuffer packet = ByteBuffer.allocateDirect(PACKET_SIZE);
+          for (int sequenceNo = 0; sequenceNo < nPackets; ++sequenceNo) {
+            try {
+              transport_.send(fillPacket(packet, sender, sequenceNo));
+            } catch (Exception ex) {
+              nErrors.incrementAndGet();
+            }
+          }
+        }
+      });
+      senders[i].start();
+    }
+
+    int nBytes = nSenders * nPackets * PACKET_SIZE;
+    ByteBuffer received = ByteBuffer.wrap(receive(nBytes, 30000));
+    for (int i = 0; i < nSenders; ++i)
+      senders[i].join();
+    assertEquals(0, nErrors.get());
+    assertEquals(nBytes, received.remaining());
+
+    // Each packet is whole, and each sender's packets are in order.
+    int[] nextSequenceNo = new int[nSenders];
+    while (received.hasRemaining()) {
+      int sender = received.get();
+      assertEquals(nextSequenceNo[sender], received.getInt());
+      ++nextSequenceNo[sender];
+      for (int i = 5; i < PACKET_SIZE; ++i)
+        assertEquals(sender, received.get());
+    }
+    for (int i = 0; i < nSenders; ++i)
+      assertEquals(nPackets, nextSequenceNo[i]);
+
+    assertEquals(0, transport_.getSendQueueSize());
+  }
+
+  @Test
+  public void
+  testLargePacket() throws Exception
+  {
+    // The packet is larger than a chunk of the send queue.
+    int size = 150000;
+    ByteBuffer packet = ByteBuffer.allocateDirect(size);
+    for (int i = 0; i < size; ++i)
+      packet.put((byte)i);
+    packet.flip();
+    transport_.send(packet);
+    assertEquals(0, packet.position());
+
+    byte[] received = receive(size, 5000);
+    assertEquals(size, received.length);
+    for (int i = 0; i < size; ++i)
+      assertEquals((byte)i, received[i]);
+  }
+
+  @Test
+  public void
+  testHighWaterMark() throws Exception
+  {
+    final AtomicInteger nHighWaterMark = new AtomicInteger();
+    final CountDownLatch drained = new CountDownLatch(1);
+    transport_.setSendHighWaterMark(PACKET_SIZE / 2);
+    transport_.setSendQueueListener(new AsyncTcpTransport.SendQueueListener() {
+      public void onHighWaterMark(AsyncTcpTransport transport) {
+        nHighWaterMark.incrementAndGet();
+      }
+
+      public void onDrained(AsyncTcpTransport transport) {
+        drained.countDown();
+      }
+    });
+
+    // The packet is queued even though it is above the high-water mark, and
+    // onHighWaterMark is called on this thread.
+    transport_.send(makePacket(0, 0));
+    assertEquals(1, nHighWaterMark.get());
+
+    // The write takes the queue, so it drains.
+    assertTrue(drained.await(5, TimeUnit.SECONDS));
+    assertFalse(transport_.getIsSendQueueAboveHighWaterMark());
+    assertEquals(PACKET_SIZE, receive(PACKET_SIZE, 5000).length);
+
+    transport_.send(makePacket(0, 1));
+    assertEquals(2, nHighWaterMark.get());
+    assertEquals(PACKET_SIZE, receive(PACKET_SIZE, 5000).length);
+  }
+
+  private static final int PACKET_SIZE = 100;
+  private ScheduledExecutorService threadPool_;
+  private ServerSocketChannel serverChannel_;
+  private SocketChannel peer_;
+  private AsyncTcpTransport transport_;
+}
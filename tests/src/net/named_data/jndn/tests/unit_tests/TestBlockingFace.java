@@ -0,0 +1,241 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.named_data.jndn.BlockingFace;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBlockingFace {
+  @Before
+  public void
+  setUp() throws Exception
+  {
+    forwarder_ = new StandInForwarder();
+    new Thread(forwarder_).start();
+    face_ = new BlockingFace("127.0.0.1", forwarder_.getPort());
+  }
+
+  @After
+  public void
+  tearDown() throws Exception
+  {
+    face_.shutdown();
+    forwarder_.close();
+  }
+
+  /**
+   * Start count threads which each fetch a different name and count the
+   * fetched Data whose name matches.
+   */
+  private int
+  fetchConcurrently(int count, Method startVirtualThread) throws Exception
+  {
+    final AtomicInteger nFetched = new AtomicInteger(0);
+    final CountDownLatch latch = new CountDownLatch(count);
+    for (int i = 0; i < count; ++i) {
+      final Name name = new Name("/test/blocking").appendSequenceNumber(i);
+      Runnable runnable = new Runnable() {
+        public void run() {
+          try {
+            Data data = face_.fetch(new Interest(name));
+            if (data.getName().equals(name))
+              nFetched.incrementAndGet();
+          } catch (Exception ex) {
+          } finally {
+            latch.countDown();
+          }
+        }
+      };
+
+      if (startVirtualThread != null)
+        startVirtualThread.invoke(null, runnable);
+      else
+        new Thread(runnable).start();
+    }
+
+    assertTrue(latch.await(30, TimeUnit.SECONDS));
+    return nFetched.get();
+  }
+
+  @Test
+  public void
+  testFetch() throws Exception
+  {
+    Data data = face_.fetch(new Interest(new Name("/test/one")));
+    assertTrue(data.getName().equals(new Name("/test/one")));
+    assertEquals("content", data.getContent().toString());
+
+    assertEquals(200, fetchConcurrently(200, null));
+  }
+
+  @Test
+  public void
+  testTimeout() throws Exception
+  {
+    Interest interest = new Interest(new Name("/no-answer/test"));
+    interest.setInterestLifetimeMilliseconds(100);
+    try {
+      face_.fetch(interest);
+      fail("fetch did not throw a FetchException");
+    } catch (BlockingFace.FetchException ex) {
+      assertTrue(ex.isTimedOut());
+    }
+  }
+
+  @Test
+  public void
+  testShutdown() throws Exception
+  {
+    final Interest interest = new Interest(new Name("/no-answer/shutdown"));
+    final Exception[] error = new Exception[1];
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          face_.fetch(interest);
+        } catch (Exception ex) {
+          error[0] = ex;
+        }
+      }
+    });
+    thread.start();
+    Thread.sleep(100);
+
+    face_.shutdown();
+    thread.join(5000);
+    assertTrue(!thread.isAlive());
+    assertTrue(error[0] != null);
+    assertTrue(!(error[0] instanceof BlockingFace.FetchException));
+  }
+
+  @Test
+  public void
+  testFetchDuringShutdown() throws Exception
+  {
+    // Threads keep calling fetch while the face shuts down. Each fetch must
+    // return or throw, whether it is queued before or after the shutdown.
+    int nThreads = 20;
+    Thread[] threads = new Thread[nThreads];
+    for (int i = 0; i < nThreads; ++i) {
+      final Interest interest = new Interest(new Name("/test/shutdown" + i));
+      threads[i] = new Thread(new Runnable() {
+        public void run() {
+          while (true) {
+            try {
+              face_.fetch(interest);
+            } catch (BlockingFace.FetchException ex) {
+            } catch (IOException ex) {
+              // The face is shut down.
+              return;
+            } catch (InterruptedException ex) {
+              return;
+            }
+          }
+        }
+      });
+      threads[i].start();
+    }
+    Thread.sleep(100);
+
+    face_.shutdown();
+    for (int i = 0; i < nThreads; ++i) {
+      threads[i].join(5000);
+      assertTrue(!threads[i].isAlive());
+    }
+  }
+
+  @Test
+  public void
+  testInterruptWhenDone() throws Exception
+  {
+    // Express an Interest for the same name before the fetch. The forwarder
+    // answers when it gets the fetch Interest. The newest pending Interest
+    // gets the Data first, so this OnData interrupts the fetching thread after
+    // its request is done.
+    final Thread fetchThread = Thread.currentThread();
+    final Name name = new Name("/answer-second/interrupt");
+    final CountDownLatch expressed = new CountDownLatch(1);
+    final AtomicInteger nInterrupts = new AtomicInteger();
+    face_.post(new Runnable() {
+      public void run() {
+        try {
+          face_.expressInterest(name, new OnData() {
+            public void onData(Interest interest, Data data) {
+              fetchThread.interrupt();
+              nInterrupts.incrementAndGet();
+            }
+          });
+        } catch (IOException ex) {
+          throw new Error(ex);
+        }
+        expressed.countDown();
+      }
+    });
+    assertTrue(expressed.await(5, TimeUnit.SECONDS));
+
+    // fetch may see the interrupt before or after its request is done. If it
+    // returns the Data, it must keep the interrupt status.
+    boolean gotData;
+    try {
+      face_.fetch(new Interest(name));
+      gotData = true;
+    } catch (InterruptedException ex) {
+      gotData = false;
+    }
+    // Don't use await, which would throw if the interrupt status is set.
+    while (nInterrupts.get() == 0)
+      Thread.yield();
+    if (gotData)
+      assertTrue(Thread.interrupted());
+  }
+
+  @Test
+  public void
+  testVirtualThreads() throws Exception
+  {
+    // Use reflection since this is compiled for Java versions before 21.
+    Method startVirtualThread = null;
+    try {
+      startVirtualThread = Thread.class.getMethod
+        ("startVirtualThread", Runnable.class);
+    } catch (NoSuchMethodException ex) {
+    }
+    Assume.assumeTrue(startVirtualThread != null);
+
+    assertEquals(10000, fetchConcurrently(10000, startVirtualThread));
+  }
+
+  private StandInForwarder forwarder_;
+  private BlockingFace face_;
+}
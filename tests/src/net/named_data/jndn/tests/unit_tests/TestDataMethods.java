@@ -20,9 +20,12 @@
 
 package net.named_data.jndn.tests.unit_tests;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.named_data.jndn.ContentType;
@@ -45,8 +48,10 @@ import net.named_data.jndn.security.identity.MemoryPrivateKeyStorage;
 import net.named_data.jndn.security.policy.SelfVerifyPolicyManager;
 import net.named_data.jndn.util.Blob;
 import net.named_data.jndn.util.Common;
+import net.named_data.jndn.util.SignedBlob;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
@@ -539,6 +544,122 @@ public class TestDataMethods {
                  initialDump.toArray(), dumpData(reDecodedData).toArray());
   }
 
+  @Test
+  public void
+  testLazyDecode() throws EncodingException
+  {
+    Data data = new Data();
+    data.wireDecodeLazy(new Blob(codedData, false), TlvWireFormat.get());
+    SignedBlob encoding = data.getDefaultWireEncoding();
+    assertEquals(new Blob(codedData, false), encoding);
+
+    // Decoding the MetaInfo and Signature on demand should not change the
+    // cached encoding.
+    assertArrayEquals("Lazy decoded data does not match original dump",
+                      initialDump.toArray(), dumpData(data).toArray());
+    assertSame(encoding, data.getDefaultWireEncoding());
+
+    // A full decode after a lazy decode replaces the lazy fields.
+    data.wireDecodeLazy(new Blob(codedData, false), TlvWireFormat.get());
+    data.wireDecode(codedData);
+    assertArrayEquals("Re-decoded data does not match original dump",
+                      initialDump.toArray(), dumpData(data).toArray());
+  }
+
+  @Test
+  public void
+  testLazyDecodeConcurrent() throws Exception
+  {
+    Data expected = new Data();
+    expected.wireDecode(codedData);
+    final double expectedFreshness = expected.getMetaInfo().getFreshnessPeriod();
+    final Name.Component expectedFinalBlockId =
+      expected.getMetaInfo().getFinalBlockId();
+    final Blob expectedSignature = expected.getSignature().getSignature();
+
+    final int nThreads = 8;
+    for (int iteration = 0; iteration < 200; ++iteration) {
+      final Data data = new Data();
+      data.wireDecodeLazy(new Blob(codedData, false), TlvWireFormat.get());
+
+      final CountDownLatch start = new CountDownLatch(1);
+      final AtomicInteger nErrors = new AtomicInteger();
+      Thread[] threads = new Thread[nThreads];
+      for (int i = 0; i < nThreads; ++i) {
+        // Half the threads get the MetaInfo first, half the Signature.
+        final boolean metaInfoFirst = i % 2 == 0;
+        threads[i] = new Thread(new Runnable() {
+          public void run() {
+            try {
+              start.await();
+              if (metaInfoFirst) {
+                checkMetaInfo();
+                checkSignature();
+              }
+              else {
+                checkSignature();
+                checkMetaInfo();
+              }
+            } catch (Throwable ex) {
+              nErrors.incrementAndGet();
+            }
+          }
+
+          private void
+          checkMetaInfo()
+          {
+            if (data.getMetaInfo().getFreshnessPeriod() != expectedFreshness ||
+                !data.getMetaInfo().getFinalBlockId().equals
+                  (expectedFinalBlockId))
+              nErrors.incrementAndGet();
+          }
+
+          private void
+          checkSignature()
+          {
+            if (!data.getSignature().getSignature().equals(expectedSignature))
+              nErrors.incrementAndGet();
+          }
+        });
+        threads[i].start();
+      }
+
+      start.countDown();
+      for (int i = 0; i < nThreads; ++i)
+        threads[i].join();
+      assertEquals("Concurrent lazy decode gave a wrong MetaInfo or Signature",
+                   0, nErrors.get());
+    }
+  }
+
+  @Test
+  public void
+  testEncodeInto()
+  {
+    Data data = new Data(freshData);
+    // Set the content again to clear the cached encoding.
+    data.setContent(data.getContent());
+    Blob encoding = TlvWireFormat.get().encodeData(data);
+
+    ByteBuffer output = ByteBuffer.allocateDirect(encoding.size() + 10);
+    output.position(10);
+    TlvWireFormat.get().encodeDataInto(data, output);
+    assertEquals(encoding.size() + 10, output.position());
+    output.position(10);
+    assertEquals(encoding, new Blob(output, true));
+
+    // Too small.
+    output.clear();
+    output.limit(encoding.size() - 1);
+    try {
+      TlvWireFormat.get().encodeDataInto(data, output);
+      fail("encodeDataInto did not throw an exception for a small buffer");
+    } catch (BufferOverflowException ex) {}
+
+    // Check that the pooled encoder was released after the exception.
+    assertEquals(encoding, TlvWireFormat.get().encodeData(data));
+  }
+
   @Test
   public void
   testEmptySignature()
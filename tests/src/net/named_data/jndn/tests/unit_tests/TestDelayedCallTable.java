@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.util.ArrayList;
+import net.named_data.jndn.impl.DelayedCallTable;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestDelayedCallTable {
+  private static class RecordCall implements Runnable {
+    public RecordCall(ArrayList<Integer> calls, int id)
+    {
+      calls_ = calls;
+      id_ = id;
+    }
+
+    public void
+    run() { calls_.add(id_); }
+
+    private final ArrayList<Integer> calls_;
+    private final int id_;
+  }
+
+  @Test
+  public void
+  testCallOrder()
+  {
+    DelayedCallTable table = new DelayedCallTable();
+    ArrayList<Integer> calls = new ArrayList<Integer>();
+
+    table.callLater(3000, new RecordCall(calls, 3));
+    table.callLater(1000, new RecordCall(calls, 1));
+    table.callLater(2000, new RecordCall(calls, 2));
+    table.callLater(5000, new RecordCall(calls, 5));
+    assertEquals(4, table.size());
+
+    table.callTimedOut();
+    assertEquals(0, calls.size());
+
+    table.setNowOffsetMilliseconds_(4000);
+    table.callTimedOut();
+    assertEquals(3, calls.size());
+    assertEquals(1, (int)calls.get(0));
+    assertEquals(2, (int)calls.get(1));
+    assertEquals(3, (int)calls.get(2));
+    assertEquals(1, table.size());
+  }
+
+  @Test
+  public void
+  testCancel()
+  {
+    DelayedCallTable table = new DelayedCallTable();
+    ArrayList<Integer> calls = new ArrayList<Integer>();
+
+    DelayedCallTable.Entry entry1 = table.callLater(1000, new RecordCall(calls, 1));
+    DelayedCallTable.Entry entry2 = table.callLater(2000, new RecordCall(calls, 2));
+    assertTrue(entry1.cancel());
+    assertFalse(entry1.cancel());
+    assertEquals(1, table.size());
+
+    table.setNowOffsetMilliseconds_(3000);
+    table.callTimedOut();
+    assertEquals(1, calls.size());
+    assertEquals(2, (int)calls.get(0));
+    // Cancelling after the call does nothing.
+    assertFalse(entry2.cancel());
+    assertEquals(0, table.size());
+  }
+
+  @Test
+  public void
+  testNextCallTime()
+  {
+    DelayedCallTable table = new DelayedCallTable();
+    ArrayList<Integer> calls = new ArrayList<Integer>();
+    assertEquals(-1, table.getNextCallTime(), 0);
+
+    DelayedCallTable.Entry entry1 = table.callLater(1000, new RecordCall(calls, 1));
+    DelayedCallTable.Entry entry2 = table.callLater(2000, new RecordCall(calls, 2));
+    assertEquals(entry1.getCallTime(), table.getNextCallTime(), 0);
+
+    // A cancelled entry is skipped.
+    entry1.cancel();
+    assertEquals(entry2.getCallTime(), table.getNextCallTime(), 0);
+
+    // The next call time is in the same clock as callTimedOut.
+    table.setNowOffsetMilliseconds_(1500);
+    assertEquals(entry2.getCallTime() - 1500, table.getNextCallTime(), 0);
+  }
+
+  @Test
+  public void
+  testPurgeCancelled()
+  {
+    DelayedCallTable table = new DelayedCallTable();
+    ArrayList<Integer> calls = new ArrayList<Integer>();
+
+    int nEntries = 10000;
+    ArrayList<DelayedCallTable.Entry> entries =
+      new ArrayList<DelayedCallTable.Entry>();
+    for (int i = 0; i < nEntries; ++i)
+      entries.add(table.callLater(1000 + i, new RecordCall(calls, i)));
+
+    // Cancel all but the last entry, which makes the table purge.
+    for (int i = 0; i < nEntries - 1; ++i)
+      entries.get(i).cancel();
+    assertEquals(1, table.size());
+
+    table.setNowOffsetMilliseconds_(1000 + nEntries);
+    table.callTimedOut();
+    assertEquals(1, calls.size());
+    assertEquals(nEntries - 1, (int)calls.get(0));
+  }
+}
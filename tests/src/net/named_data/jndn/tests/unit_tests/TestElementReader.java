@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.ElementBatchListener;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.ElementReader;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.SharedElementListener;
+import net.named_data.jndn.util.Blob;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestElementReader {
+  @Before
+  public void
+  setUp()
+  {
+    ByteBuffer encoding1 = new Data(new Name("/a")).wireEncode().buf();
+    ByteBuffer encoding2 = new Data(new Name("/b/c")).wireEncode().buf();
+    ByteBuffer encoding3 = new Data(new Name("/d")).wireEncode().buf();
+    element1_ = new Blob(encoding1, true);
+    element2_ = new Blob(encoding2, true);
+    element3_ = new Blob(encoding3, true);
+
+    input_ = ByteBuffer.allocate
+      (encoding1.remaining() + encoding2.remaining() + encoding3.remaining());
+    input_.put(encoding1.duplicate());
+    input_.put(encoding2.duplicate());
+    input_.put(encoding3.duplicate());
+    input_.flip();
+  }
+
+  private static ByteBuffer
+  slice(ByteBuffer buffer, int start, int end)
+  {
+    ByteBuffer result = buffer.duplicate();
+    result.limit(end);
+    result.position(start);
+    return result;
+  }
+
+  @Test
+  public void
+  testSingleElements() throws EncodingException
+  {
+    final ArrayList<Blob> elements = new ArrayList<Blob>();
+    ElementReader reader = new ElementReader(new ElementListener() {
+      public void onReceivedElement(ByteBuffer element) {
+        elements.add(new Blob(element, true));
+      }
+    });
+
+    reader.onReceivedData(input_);
+    assertEquals(3, elements.size());
+    assertEquals(element1_, elements.get(0));
+    assertEquals(element2_, elements.get(1));
+    assertEquals(element3_, elements.get(2));
+  }
+
+  @Test
+  public void
+  testBatch() throws EncodingException
+  {
+    final ArrayList<ArrayList<Blob>> batches = new ArrayList<ArrayList<Blob>>();
+    ElementReader reader = new ElementReader(new ElementBatchListener() {
+      public void onReceivedElement(ByteBuffer element) {
+        throw new Error("onReceivedElement should not be called");
+      }
+
+      public void onReceivedElements(List<ByteBuffer> elements) {
+        ArrayList<Blob> batch = new ArrayList<Blob>();
+        for (int i = 0; i < elements.size(); ++i)
+          batch.add(new Blob(elements.get(i), true));
+        batches.add(batch);
+      }
+    });
+
+    // All the elements in one read make one batch.
+    reader.onReceivedData(input_);
+    assertEquals(1, batches.size());
+    assertEquals(3, batches.get(0).size());
+    assertEquals(element1_, batches.get(0).get(0));
+    assertEquals(element2_, batches.get(0).get(1));
+    assertEquals(element3_, batches.get(0).get(2));
+
+    // Split the second element across reads.
+    batches.clear();
+    int split = element1_.size() + 2;
+    reader.onReceivedData(slice(input_, 0, split));
+    assertEquals(1, batches.size());
+    assertEquals(1, batches.get(0).size());
+    assertEquals(element1_, batches.get(0).get(0));
+
+    reader.onReceivedData(slice(input_, split, input_.limit()));
+    assertEquals(2, batches.size());
+    assertEquals(2, batches.get(1).size());
+    assertEquals(element2_, batches.get(1).get(0));
+    assertEquals(element3_, batches.get(1).get(1));
+  }
+
+  @Test
+  public void
+  testSharedElements() throws EncodingException
+  {
+    final ArrayList<Blob> elements = new ArrayList<Blob>();
+    ElementReader reader = new ElementReader(new SharedElementListener() {
+      public void onReceivedElement(ByteBuffer element) {
+        throw new Error("onReceivedElement should not be called");
+      }
+
+      public void onReceivedSharedElements(List<Blob> sharedElements) {
+        // Keep the Blobs without copying.
+        elements.addAll(sharedElements);
+      }
+    });
+
+    // Split the second element across reads.
+    int split = element1_.size() + 2;
+    ByteBuffer input = ByteBuffer.allocate(input_.limit());
+    input.put(input_.duplicate());
+    reader.onReceivedData(new Blob(slice(input, 0, split), false));
+    reader.onReceivedData(new Blob(slice(input, split, input.limit()), false));
+    assertEquals(3, elements.size());
+    assertEquals(element1_, elements.get(0));
+    assertEquals(element2_, elements.get(1));
+    assertEquals(element3_, elements.get(2));
+
+    // Clear the input. The first and third elements point into it, but the
+    // second element was reassembled from two reads and was copied.
+    input.clear();
+    input.put(new byte[input.capacity()]);
+    assertEquals(0, elements.get(0).buf().get(0));
+    assertEquals(element2_, elements.get(1));
+    assertEquals(0, elements.get(2).buf().get(0));
+  }
+
+  private Blob element1_;
+  private Blob element2_;
+  private Blob element3_;
+  private ByteBuffer input_;
+}
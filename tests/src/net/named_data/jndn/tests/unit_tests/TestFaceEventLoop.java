@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.FaceEventLoop;
+import net.named_data.jndn.util.Common;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestFaceEventLoop {
+  @Test
+  public void
+  testDelayedCalls() throws IOException
+  {
+    // The faces are not connected, so the event loop waits for the delayed
+    // calls.
+    Face face1 = new Face("localhost");
+    Face face2 = new Face("localhost");
+    final ArrayList<Integer> calls = new ArrayList<Integer>();
+    face1.callLater(100, new Runnable() {
+      public void run() { calls.add(1); }
+    });
+    face2.callLater(50, new Runnable() {
+      public void run() { calls.add(2); }
+    });
+    assertTrue(face2.getNextDelayedCallTime() < face1.getNextDelayedCallTime());
+
+    FaceEventLoop eventLoop = new FaceEventLoop();
+    try {
+      eventLoop.addFace(face1);
+      eventLoop.addFace(face2);
+      eventLoop.addFace(face2);
+
+      double startTime = Common.getNowMilliseconds();
+      while (calls.size() < 2 && Common.getNowMilliseconds() - startTime < 5000)
+        eventLoop.runOnce(10000);
+
+      assertEquals(2, eventLoop.size());
+      assertEquals(2, calls.size());
+      assertEquals(2, (int)calls.get(0));
+      assertEquals(1, (int)calls.get(1));
+      // The event loop waits for the delayed calls instead of maxWait.
+      assertTrue(Common.getNowMilliseconds() - startTime < 5000);
+      assertEquals(-1, face1.getNextDelayedCallTime(), 0);
+
+      // A posted Runnable wakes up the event loop.
+      eventLoop.post(new Runnable() {
+        public void run() { calls.add(3); }
+      });
+      eventLoop.runOnce(10000);
+      assertEquals(3, calls.size());
+
+      eventLoop.removeFace(face1);
+      eventLoop.runOnce(0);
+      assertEquals(1, eventLoop.size());
+    } finally {
+      eventLoop.close();
+    }
+  }
+}
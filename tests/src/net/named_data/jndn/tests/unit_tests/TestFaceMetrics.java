@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.FaceMetrics;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.transport.Transport;
+import net.named_data.jndn.util.LatencyHistogram;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFaceMetrics {
+  private static final OnData dummyOnData = new OnData() {
+    public void onData(Interest interest, Data data) {}
+  };
+
+  @Before
+  public void
+  setUp()
+  {
+    transport_ = new ReplyTransport(new Name("/data"));
+    face_ = new Face(transport_, new Transport.ConnectionInfo());
+  }
+
+  @Test
+  public void
+  testDisabled() throws Exception
+  {
+    assertNull(face_.getMetrics());
+    face_.expressInterest(new Name("/data/a"), dummyOnData);
+    face_.processEvents();
+    assertNull(face_.getMetrics());
+  }
+
+  @Test
+  public void
+  testCounters() throws Exception
+  {
+    face_.setMetricsEnabled(true);
+    FaceMetrics metrics = face_.getMetrics();
+
+    for (int i = 0; i < 5; ++i)
+      face_.expressInterest
+        (new Name("/data").appendSegment(i), dummyOnData);
+    Interest noReply = new Interest(new Name("/no-reply"));
+    // Use a lifetime which doesn't expire before the first processEvents.
+    noReply.setInterestLifetimeMilliseconds(200);
+    face_.expressInterest(noReply, dummyOnData);
+    assertEquals(6, metrics.getInterestsSent());
+    assertEquals(6, metrics.getPendingInterestCount());
+    assertTrue(metrics.getBytesSent() > 0);
+
+    // Receive the replies and an unsolicited Data packet.
+    transport_.replies_.add(new Data(new Name("/other")).wireEncode().buf());
+    face_.processEvents();
+    assertEquals(6, metrics.getDataReceived());
+    assertEquals(1, metrics.getUnsolicitedDataReceived());
+    assertEquals(5, metrics.getSatisfiedInterests());
+    assertEquals(1, metrics.getPendingInterestCount());
+    assertTrue(metrics.getBytesReceived() > 0);
+    assertTrue(metrics.getSatisfactionLatencyMaxMilliseconds() >= 0);
+
+    Thread.sleep(300);
+    face_.processEvents();
+    assertEquals(1, metrics.getTimedOutInterests());
+    assertEquals(0, metrics.getPendingInterestCount());
+
+    // An element which is not a valid packet.
+    transport_.replies_.add
+      (ByteBuffer.wrap(new byte[] { 6, 3, (byte)0xff, 1, 2 }));
+    try {
+      face_.processEvents();
+      fail("processEvents did not throw an EncodingException");
+    } catch (EncodingException ex) {
+    }
+    assertEquals(1, metrics.getDecodeErrors());
+
+    metrics.reset();
+    assertEquals(0, metrics.getInterestsSent());
+    assertEquals(0, metrics.getSatisfiedInterests());
+  }
+
+  @Test
+  public void
+  testMBean() throws Exception
+  {
+    face_.setMetricsEnabled(true);
+    FaceMetrics metrics = face_.getMetrics();
+    String objectName = "net.named_data.jndn:type=Face,name=TestFaceMetrics";
+    metrics.registerMBean(objectName);
+    try {
+      face_.expressInterest(new Name("/data/a"), dummyOnData);
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      assertEquals(1L, server.getAttribute
+        (new ObjectName(objectName), "InterestsSent"));
+    } finally {
+      metrics.unregisterMBean();
+    }
+  }
+
+  @Test
+  public void
+  testLatencyHistogram()
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getValueAtPercentile(50));
+
+    for (long value = 1; value <= 1000; ++value)
+      histogram.record(value * 1000);
+    assertEquals(1000, histogram.getCount());
+    assertEquals(1000000, histogram.getMax());
+    assertEquals(500500, histogram.getMean(), 0.001);
+
+    // The buckets have a relative error of 1/16.
+    long p50 = histogram.getValueAtPercentile(50);
+    assertTrue(p50 >= 500000 && p50 <= 500000 * 17 / 16);
+    long p99 = histogram.getValueAtPercentile(99);
+    assertTrue(p99 >= 990000 && p99 <= 1000000);
+    assertEquals(1000000, histogram.getValueAtPercentile(100));
+
+    // Small values are exact.
+    histogram.reset();
+    histogram.record(3);
+    assertEquals(3, histogram.getValueAtPercentile(50));
+  }
+
+  private ReplyTransport transport_;
+  private Face face_;
+}
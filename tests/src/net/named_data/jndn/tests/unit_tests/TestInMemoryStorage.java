@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.nio.ByteBuffer;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.in_memory_storage.InMemoryStorage;
+import net.named_data.jndn.in_memory_storage.InMemoryStorageFifo;
+import net.named_data.jndn.in_memory_storage.InMemoryStorageLfu;
+import net.named_data.jndn.in_memory_storage.InMemoryStorageLru;
+import net.named_data.jndn.util.Blob;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestInMemoryStorage {
+  private static Data
+  makeData(String uri)
+  {
+    Data data = new Data(new Name(uri));
+    data.setContent(new Blob(ByteBuffer.allocate(100), false));
+    return data;
+  }
+
+  private static boolean
+  contains(InMemoryStorage storage, String uri)
+  {
+    Interest interest = new Interest(new Name(uri));
+    interest.setCanBePrefix(false);
+    return storage.find(interest) != null;
+  }
+
+  /**
+   * Make a storage of the class with room for three of the Data packets from
+   * makeData.
+   */
+  private static InMemoryStorage
+  makeStorage(Class storageClass) throws Exception
+  {
+    long size = makeData("/a").wireEncode().size();
+    return (InMemoryStorage)storageClass.getConstructor(long.class).newInstance
+      (3 * size + size / 2);
+  }
+
+  @Test
+  public void
+  testFind() throws Exception
+  {
+    InMemoryStorage storage = new InMemoryStorageFifo(100000);
+    storage.insert(makeData("/test/b/1"));
+    storage.insert(makeData("/test/a"));
+    Data fresh = makeData("/test/c");
+    fresh.getMetaInfo().setFreshnessPeriod(100000);
+    storage.insert(fresh);
+    Data stale = makeData("/test/d");
+    stale.getMetaInfo().setFreshnessPeriod(0);
+    storage.insert(stale);
+    // Inserting the same Data again replaces it.
+    storage.insert(makeData("/test/a"));
+    assertEquals(4, storage.size());
+
+    assertTrue(contains(storage, "/test/a"));
+    assertFalse(contains(storage, "/test/b"));
+    Interest prefixInterest = new Interest(new Name("/test/b"));
+    prefixInterest.setCanBePrefix(true);
+    assertEquals
+      (new Name("/test/b/1"), storage.find(prefixInterest).getName());
+
+    Interest freshInterest = new Interest(new Name("/test/c"));
+    freshInterest.setMustBeFresh(true);
+    assertNotNull(storage.find(freshInterest));
+    Interest staleInterest = new Interest(new Name("/test/d"));
+    staleInterest.setMustBeFresh(true);
+    assertNull(storage.find(staleInterest));
+
+    assertEquals(3, storage.getHitCount());
+    assertEquals(2, storage.getMissCount());
+
+    storage.remove(new Name("/test/b"));
+    assertEquals(3, storage.size());
+    storage.remove(new Name("/"));
+    assertEquals(0, storage.size());
+    assertEquals(0, storage.getTotalBytes());
+  }
+
+  @Test
+  public void
+  testCapacity() throws Exception
+  {
+    InMemoryStorage storage = makeStorage(InMemoryStorageFifo.class);
+    for (int i = 0; i < 10; ++i)
+      storage.insert(makeData("/test/" + i));
+    assertEquals(3, storage.size());
+    assertEquals(7, storage.getEvictionCount());
+    assertTrue(storage.getTotalBytes() <= storage.getCapacityBytes());
+
+    Data large = new Data(new Name("/large"));
+    large.setContent(new Blob(ByteBuffer.allocate(1000), false));
+    assertFalse(storage.insert(large));
+    assertEquals(3, storage.size());
+  }
+
+  @Test
+  public void
+  testFifo() throws Exception
+  {
+    InMemoryStorage storage = makeStorage(InMemoryStorageFifo.class);
+    storage.insert(makeData("/a"));
+    storage.insert(makeData("/b"));
+    storage.insert(makeData("/c"));
+    contains(storage, "/a");
+    storage.insert(makeData("/d"));
+
+    assertFalse("FIFO should evict the first inserted",
+      contains(storage, "/a"));
+    assertTrue(contains(storage, "/b"));
+  }
+
+  @Test
+  public void
+  testLru() throws Exception
+  {
+    InMemoryStorage storage = makeStorage(InMemoryStorageLru.class);
+    storage.insert(makeData("/a"));
+    storage.insert(makeData("/b"));
+    storage.insert(makeData("/c"));
+    contains(storage, "/a");
+    storage.insert(makeData("/d"));
+
+    assertTrue(contains(storage, "/a"));
+    assertFalse("LRU should evict the least recently used",
+      contains(storage, "/b"));
+  }
+
+  @Test
+  public void
+  testLfu() throws Exception
+  {
+    InMemoryStorage storage = makeStorage(InMemoryStorageLfu.class);
+    storage.insert(makeData("/a"));
+    storage.insert(makeData("/b"));
+    storage.insert(makeData("/c"));
+    contains(storage, "/a");
+    contains(storage, "/a");
+    contains(storage, "/b");
+    contains(storage, "/c");
+    contains(storage, "/c");
+    storage.insert(makeData("/d"));
+
+    assertFalse("LFU should evict the least frequently used",
+      contains(storage, "/b"));
+    assertTrue(contains(storage, "/a"));
+    assertTrue(contains(storage, "/c"));
+
+    // Removing the entry with the minimum count must not break eviction.
+    storage.remove(new Name("/d"));
+    storage.insert(makeData("/e"));
+    storage.insert(makeData("/f"));
+    assertEquals(3, storage.size());
+    assertTrue(contains(storage, "/f"));
+  }
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.util.ArrayList;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.NetworkNack;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnInterestCallback;
+import net.named_data.jndn.OnNetworkNack;
+import net.named_data.jndn.OnRegisterFailed;
+import net.named_data.jndn.OnRegisterSuccess;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.security.KeyChain;
+import net.named_data.jndn.transport.InProcessForwarder;
+import net.named_data.jndn.transport.LoopbackTransport;
+import net.named_data.jndn.util.Blob;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestInProcessForwarder {
+  /**
+   * A Counter records the callbacks for an expressed Interest.
+   */
+  private static class Counter implements OnData, OnTimeout, OnNetworkNack {
+    public void
+    onData(Interest interest, Data data)
+    {
+      ++nData_;
+      lastData_ = data;
+    }
+
+    public void
+    onTimeout(Interest interest) { ++nTimeouts_; }
+
+    public void
+    onNetworkNack(Interest interest, NetworkNack networkNack)
+    {
+      ++nNacks_;
+      lastNack_ = networkNack;
+    }
+
+    public int nData_ = 0;
+    public int nTimeouts_ = 0;
+    public int nNacks_ = 0;
+    public Data lastData_ = null;
+    public NetworkNack lastNack_ = null;
+  }
+
+  /**
+   * A Producer answers each Interest with a Data packet of the same name.
+   */
+  private static class Producer implements OnInterestCallback {
+    public void
+    onInterest
+      (Name prefix, Interest interest, Face face, long interestFilterId,
+       InterestFilter filter)
+    {
+      ++nInterests_;
+      Data data = new Data(interest.getName());
+      data.setContent(new Blob("produced"));
+      data.getMetaInfo().setFreshnessPeriod(10000);
+      try {
+        face.putData(data);
+      } catch (Exception ex) {
+        throw new Error(ex);
+      }
+    }
+
+    public int nInterests_ = 0;
+  }
+
+  @Before
+  public void
+  setUp()
+  {
+    forwarder_ = new InProcessForwarder(10);
+  }
+
+  private Face
+  newFace()
+  {
+    return new Face
+      (new LoopbackTransport(), new LoopbackTransport.ConnectionInfo(forwarder_));
+  }
+
+  private void
+  processEvents(ArrayList<Face> faces) throws Exception
+  {
+    // Each hop is delivered on the next processEvents, so run a few rounds.
+    for (int i = 0; i < 5; ++i) {
+      for (Face face : faces)
+        face.processEvents();
+    }
+  }
+
+  @Test
+  public void
+  testRegisterAndForward() throws Exception
+  {
+    KeyChain keyChain = new KeyChain("pib-memory:", "tpm-memory:");
+    keyChain.createIdentityV2(new Name("/test/identity"));
+
+    Face producerFace = newFace();
+    producerFace.setCommandSigningInfo
+      (keyChain, keyChain.getDefaultCertificateName());
+    Producer producer = new Producer();
+    final int[] nRegisterSuccess = new int[] { 0 };
+    producerFace.registerPrefix
+      (new Name("/test/prefix"), producer,
+       new OnRegisterFailed() {
+         public void onRegisterFailed(Name prefix) {}
+       },
+       new OnRegisterSuccess() {
+         public void onRegisterSuccess(Name prefix, long registeredPrefixId) {
+           ++nRegisterSuccess[0];
+         }
+       });
+
+    ArrayList<Face> faces = new ArrayList<Face>();
+    faces.add(producerFace);
+    processEvents(faces);
+    assertEquals(1, nRegisterSuccess[0]);
+
+    // Express the same Interest from two consumers.
+    Face consumer1 = newFace();
+    Face consumer2 = newFace();
+    faces.add(consumer1);
+    faces.add(consumer2);
+    Counter counter1 = new Counter();
+    Counter counter2 = new Counter();
+    Interest interest = new Interest(new Name("/test/prefix/a"));
+    interest.setMustBeFresh(true);
+    consumer1.expressInterest(interest, counter1, counter1, counter1);
+    consumer2.expressInterest(interest, counter2, counter2, counter2);
+    processEvents(faces);
+
+    assertEquals("Expected the forwarder to aggregate the Interest",
+      1, producer.nInterests_);
+    assertEquals(1, counter1.nData_);
+    assertEquals(1, counter2.nData_);
+    assertEquals("produced", counter2.lastData_.getContent().toString());
+    assertEquals(0, forwarder_.getPitSize());
+
+    // Expect the content store to answer the next Interest.
+    Counter counter3 = new Counter();
+    consumer1.expressInterest(interest, counter3, counter3, counter3);
+    processEvents(faces);
+    assertEquals(1, counter3.nData_);
+    assertEquals(1, producer.nInterests_);
+    assertEquals(1, forwarder_.getContentStoreSize());
+
+    // Expect a prefix match to be forwarded by longest prefix.
+    Counter counter4 = new Counter();
+    consumer2.expressInterest
+      (new Interest(new Name("/test/prefix/b/c")), counter4, counter4, counter4);
+    processEvents(faces);
+    assertEquals(1, counter4.nData_);
+    assertEquals(2, producer.nInterests_);
+  }
+
+  @Test
+  public void
+  testNoRoute() throws Exception
+  {
+    Face consumer = newFace();
+    Counter counter = new Counter();
+    consumer.expressInterest
+      (new Interest(new Name("/test/no-route")), counter, counter, counter);
+    consumer.processEvents();
+
+    assertEquals(1, counter.nNacks_);
+    assertEquals(NetworkNack.Reason.NO_ROUTE, counter.lastNack_.getReason());
+    assertEquals(0, forwarder_.getPitSize());
+  }
+
+  @Test
+  public void
+  testAddRoute() throws Exception
+  {
+    Face producerFace = newFace();
+    Producer producer = new Producer();
+    producerFace.setInterestFilter(new Name("/test"), producer);
+    // Connect the producer by expressing an Interest which has no route.
+    Counter connectCounter = new Counter();
+    producerFace.expressInterest
+      (new Interest(new Name("/connect")), connectCounter, connectCounter,
+       connectCounter);
+    LoopbackTransport producerTransport =
+      (LoopbackTransport)producerFace.getTransport();
+    forwarder_.addRoute(new Name("/test"), producerTransport.getFaceId());
+
+    Face consumer = newFace();
+    Counter counter = new Counter();
+    consumer.expressInterest
+      (new Interest(new Name("/test/x")), counter, counter, counter);
+    ArrayList<Face> faces = new ArrayList<Face>();
+    faces.add(producerFace);
+    faces.add(consumer);
+    processEvents(faces);
+    assertEquals(1, counter.nData_);
+    assertEquals(2, forwarder_.getFaceCount());
+
+    // Expect removing the face to remove its route.
+    producerTransport.close();
+    assertEquals(1, forwarder_.getFaceCount());
+    Counter counter2 = new Counter();
+    consumer.expressInterest
+      (new Interest(new Name("/test/y")), counter2, counter2, counter2);
+    consumer.processEvents();
+    assertEquals(1, counter2.nNacks_);
+  }
+
+  private InProcessForwarder forwarder_;
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.util.ArrayList;
+import net.named_data.jndn.ComponentType;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.impl.InterestFilterTable;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class TestInterestFilterTable {
+  private static ArrayList<Long>
+  getMatchedIds(InterestFilterTable table, String uri)
+  {
+    return getMatchedIds(table, new Name(uri));
+  }
+
+  private static ArrayList<Long>
+  getMatchedIds(InterestFilterTable table, Name name)
+  {
+    ArrayList<InterestFilterTable.Entry> matchedFilters =
+      new ArrayList<InterestFilterTable.Entry>();
+    table.getMatchedFilters(new Interest(name), matchedFilters);
+
+    ArrayList<Long> result = new ArrayList<Long>();
+    for (int i = 0; i < matchedFilters.size(); ++i)
+      result.add(matchedFilters.get(i).getInterestFilterId());
+    return result;
+  }
+
+  @Test
+  public void
+  testMatchOrder()
+  {
+    InterestFilterTable table = new InterestFilterTable();
+    table.setInterestFilter(1, new InterestFilter("/a/b"), null, null);
+    table.setInterestFilter(2, new InterestFilter("/"), null, null);
+    table.setInterestFilter(3, new InterestFilter("/a/c"), null, null);
+    table.setInterestFilter(4, new InterestFilter("/a"), null, null);
+    table.setInterestFilter(5, new InterestFilter("/a/b/c/d"), null, null);
+
+    // Expect the callback order to be the order the filters were added.
+    ArrayList<Long> matched = getMatchedIds(table, "/a/b/c");
+    assertEquals(3, matched.size());
+    assertEquals(1L, (long)matched.get(0));
+    assertEquals(2L, (long)matched.get(1));
+    assertEquals(4L, (long)matched.get(2));
+
+    assertEquals(1, getMatchedIds(table, "/x").size());
+  }
+
+  @Test
+  public void
+  testRegexFilter()
+  {
+    InterestFilterTable table = new InterestFilterTable();
+    table.setInterestFilter
+      (1, new InterestFilter("/hello", "<world><>+"), null, null);
+    table.setInterestFilter(2, new InterestFilter("/hello"), null, null);
+
+    assertEquals(2, getMatchedIds(table, "/hello/world/!").size());
+    ArrayList<Long> matched = getMatchedIds(table, "/hello/world");
+    assertEquals(1, matched.size());
+    assertEquals(2L, (long)matched.get(0));
+  }
+
+  @Test
+  public void
+  testUnset()
+  {
+    InterestFilterTable table = new InterestFilterTable();
+    table.setInterestFilter(1, new InterestFilter("/a/b"), null, null);
+    table.setInterestFilter(2, new InterestFilter("/a/b"), null, null);
+
+    table.unsetInterestFilter(1);
+    ArrayList<Long> matched = getMatchedIds(table, "/a/b");
+    assertEquals(1, matched.size());
+    assertEquals(2L, (long)matched.get(0));
+
+    table.unsetInterestFilter(2);
+    assertEquals(0, getMatchedIds(table, "/a/b").size());
+    // Unsetting an unknown ID does nothing.
+    table.unsetInterestFilter(2);
+  }
+
+  @Test
+  public void
+  testComponentType()
+  {
+    byte[] value = new byte[] { 0 };
+    Name genericPrefix = new Name("/a").append(value);
+    Name otherCodePrefix = new Name("/a").append
+      (value, ComponentType.OTHER_CODE, 0x20);
+
+    InterestFilterTable table = new InterestFilterTable();
+    table.setInterestFilter
+      (1, new InterestFilter(genericPrefix), null, null);
+    table.setInterestFilter
+      (2, new InterestFilter(otherCodePrefix), null, null);
+
+    // Each filter only matches a component with the same type and value.
+    ArrayList<Long> matched = getMatchedIds
+      (table, new Name(genericPrefix).append("b"));
+    assertEquals(1, matched.size());
+    assertEquals(1L, (long)matched.get(0));
+
+    matched = getMatchedIds(table, new Name(otherCodePrefix).append("b"));
+    assertEquals(1, matched.size());
+    assertEquals(2L, (long)matched.get(0));
+
+    // The same value with a different other type code does not match.
+    assertEquals(0, getMatchedIds
+      (table, new Name("/a").append(value, ComponentType.OTHER_CODE, 0x21))
+      .size());
+  }
+}
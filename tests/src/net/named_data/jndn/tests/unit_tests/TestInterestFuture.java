@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFuture;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.transport.Transport;
+import net.named_data.jndn.util.Common;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestInterestFuture {
+  @Before
+  public void
+  setUp()
+  {
+    transport_ = new ReplyTransport(new Name("/data"));
+    face_ = new Face(transport_, new Transport.ConnectionInfo());
+  }
+
+  private void
+  processEventsUntilDone(List<InterestFuture> futures) throws Exception
+  {
+    double startTime = Common.getNowMilliseconds();
+    while (Common.getNowMilliseconds() - startTime < 5000) {
+      face_.processEvents();
+      boolean allDone = true;
+      for (InterestFuture future : futures)
+        allDone = allDone && future.isDone();
+      if (allDone)
+        return;
+      Thread.sleep(5);
+    }
+  }
+
+  @Test
+  public void
+  testExpress() throws Exception
+  {
+    Interest interest = new Interest(new Name("/data/a"));
+    InterestFuture future = face_.express(interest);
+    assertFalse(future.isDone());
+
+    final ArrayList<InterestFuture> completed = new ArrayList<InterestFuture>();
+    InterestFuture.Listener listener = new InterestFuture.Listener() {
+      public void onComplete(InterestFuture completedFuture) {
+        completed.add(completedFuture);
+      }
+    };
+    future.addListener(listener);
+
+    face_.processEvents();
+    assertTrue(future.isDone());
+    assertEquals(1, completed.size());
+    assertTrue(future.get().getName().equals(new Name("/data/a")));
+    assertEquals("reply", future.getData().getContent().toString());
+
+    // A listener added after the future is done is called immediately.
+    future.addListener(listener);
+    assertEquals(2, completed.size());
+  }
+
+  @Test
+  public void
+  testExpressAll() throws Exception
+  {
+    ArrayList<Interest> interests = new ArrayList<Interest>();
+    interests.add(new Interest(new Name("/data/a")));
+    interests.add(new Interest(new Name("/none/b")).setInterestLifetimeMilliseconds(50));
+    interests.add(new Interest(new Name("/data/c")));
+    interests.add(new Interest(new Name("/none/d")).setInterestLifetimeMilliseconds(50));
+
+    List<InterestFuture> futures = face_.expressAll(interests);
+    assertEquals(4, futures.size());
+    assertEquals(4, transport_.nSent_);
+
+    processEventsUntilDone(futures);
+    assertTrue(futures.get(0).getData().getName().equals(new Name("/data/a")));
+    assertTrue(futures.get(2).getData().getName().equals(new Name("/data/c")));
+    assertTrue(futures.get(1).isTimedOut());
+    assertTrue(futures.get(3).isTimedOut());
+    assertNull(futures.get(1).getData());
+    try {
+      futures.get(1).get();
+      fail("get() did not throw for a timeout");
+    } catch (ExecutionException ex) {
+    }
+  }
+
+  @Test
+  public void
+  testCancel() throws Exception
+  {
+    InterestFuture future = face_.express(new Interest(new Name("/data/a")));
+    assertTrue(future.cancel(false));
+    assertFalse(future.cancel(false));
+    assertTrue(future.isCancelled());
+
+    // The Data is ignored since the pending interest was removed.
+    face_.processEvents();
+    assertNull(future.getData());
+  }
+
+  @Test
+  public void
+  testInterestAggregation() throws Exception
+  {
+    face_.setInterestAggregationEnabled(true);
+    ArrayList<InterestFuture> futures = new ArrayList<InterestFuture>();
+    for (int i = 0; i < 3; ++i) {
+      Interest interest = new Interest(new Name("/data/hot"));
+      // The sent Interest must outlive the aggregated Interests.
+      interest.setInterestLifetimeMilliseconds(i == 0 ? 10000 : 4000);
+      futures.add(face_.express(interest));
+    }
+    futures.add(face_.express(new Interest(new Name("/data/other"))));
+    // The aggregated Interests are sent once.
+    assertEquals(2, transport_.nSent_);
+
+    processEventsUntilDone(futures);
+    for (InterestFuture future : futures)
+      assertEquals("reply", future.getData().getContent().toString());
+
+    // The sent Interest is satisfied, so the next one is sent.
+    face_.express(new Interest(new Name("/data/hot")));
+    assertEquals(3, transport_.nSent_);
+  }
+
+  private ReplyTransport transport_;
+  private Face face_;
+}
@@ -0,0 +1,232 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.TlvWireFormat;
+import net.named_data.jndn.encoding.tlv.Tlv;
+import net.named_data.jndn.encoding.tlv.TlvEncoder;
+import net.named_data.jndn.lp.FragmentInfo;
+import net.named_data.jndn.lp.IncomingFaceId;
+import net.named_data.jndn.lp.LpFragmenter;
+import net.named_data.jndn.lp.LpPacket;
+import net.named_data.jndn.lp.LpReassembler;
+import net.named_data.jndn.util.Blob;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLpFragmentation {
+  @Before
+  public void
+  setUp()
+  {
+    ByteBuffer content = ByteBuffer.allocate(8000);
+    for (int i = 0; i < content.capacity(); ++i)
+      content.put((byte)i);
+    content.flip();
+    encoding_ = new Data(new Name("/test/large")).setContent(new Blob(content, false))
+      .wireEncode().buf();
+  }
+
+  @Test
+  public void
+  testFragmentAndReassemble() throws EncodingException
+  {
+    LpFragmenter fragmenter = new LpFragmenter(1400);
+    ArrayList<ByteBuffer> fragments = fragmenter.fragment(encoding_);
+    assertEquals(6, fragments.size());
+
+    for (int i = 0; i < fragments.size(); ++i) {
+      ByteBuffer fragment = fragments.get(i);
+      assertTrue(fragment.remaining() <= 1400);
+
+      LpPacket lpPacket = new LpPacket();
+      TlvWireFormat.get().decodeLpPacket(lpPacket, fragment);
+      FragmentInfo fragmentInfo = FragmentInfo.getFirstHeader(lpPacket);
+      assertNotNull(fragmentInfo);
+      assertEquals(i, fragmentInfo.getFragIndex());
+      assertEquals(fragments.size(), fragmentInfo.getFragCount());
+    }
+
+    // Reassemble in a different order.
+    Collections.reverse(fragments);
+    LpReassembler reassembler = new LpReassembler();
+    ByteBuffer result = null;
+    for (int i = 0; i < fragments.size(); ++i) {
+      result = reassembler.receive("sender", fragments.get(i));
+      if (i < fragments.size() - 1)
+        assertNull(result);
+    }
+
+    assertEquals(new Blob(encoding_, false), new Blob(result, false));
+    assertEquals(0, reassembler.size());
+    assertEquals(0, reassembler.getBufferedBytes());
+
+    // A small packet is not fragmented.
+    ByteBuffer small = new Data(new Name("/test/small")).wireEncode().buf();
+    assertEquals(1, fragmenter.fragment(small).size());
+    assertTrue(reassembler.receive("sender", small) == small);
+  }
+
+  @Test
+  public void
+  testHeaderFields() throws EncodingException
+  {
+    // Make an LpPacket with an IncomingFaceId and the large Data.
+    TlvEncoder encoder = new TlvEncoder(256);
+    encoder.writeBlobTlv(Tlv.LpPacket_Fragment, encoding_);
+    encoder.writeNonNegativeIntegerTlv(Tlv.LpPacket_IncomingFaceId, 7);
+    encoder.writeTypeAndLength(Tlv.LpPacket_LpPacket, encoder.getLength());
+    ByteBuffer lpPacketEncoding = encoder.getOutput();
+
+    ArrayList<ByteBuffer> fragments = new LpFragmenter(1400).fragment
+      (lpPacketEncoding);
+    LpReassembler reassembler = new LpReassembler();
+    ByteBuffer result = null;
+    for (ByteBuffer fragment : fragments)
+      result = reassembler.receive("sender", fragment);
+
+    LpPacket lpPacket = new LpPacket();
+    TlvWireFormat.get().decodeLpPacket(lpPacket, result);
+    assertEquals(7, IncomingFaceId.getFirstHeader(lpPacket).getFaceId());
+    assertNull(FragmentInfo.getFirstHeader(lpPacket));
+    assertEquals(new Blob(encoding_, false), lpPacket.getFragmentWireEncoding());
+  }
+
+  @Test
+  public void
+  testDropPartialPackets() throws EncodingException
+  {
+    LpFragmenter fragmenter = new LpFragmenter(1400);
+    ArrayList<ByteBuffer> fragments1 = fragmenter.fragment(encoding_);
+    ArrayList<ByteBuffer> fragments2 = fragmenter.fragment(encoding_);
+
+    // Lose the last fragment, which times out.
+    LpReassembler reassembler = new LpReassembler(500, 100000);
+    for (int i = 0; i < fragments1.size() - 1; ++i)
+      assertNull(reassembler.receive("sender", fragments1.get(i)));
+    assertEquals(1, reassembler.size());
+    assertTrue(reassembler.getBufferedBytes() > 0);
+
+    reassembler.setNowOffsetMilliseconds_(1000);
+    assertNull(reassembler.receive("sender", fragments2.get(0)));
+    assertEquals(1, reassembler.size());
+    // The late fragment starts a new partial packet which can't complete.
+    assertNull(reassembler.receive
+      ("sender", fragments1.get(fragments1.size() - 1)));
+
+    // Fragments from different senders are not combined.
+    LpReassembler reassembler2 = new LpReassembler();
+    for (int i = 0; i < fragments1.size(); ++i)
+      assertNull(reassembler2.receive(i % 2 == 0 ? "a" : "b", fragments1.get(i)));
+
+    // The memory limit drops the oldest partial packet.
+    LpReassembler reassembler3 = new LpReassembler(500, 10000);
+    for (int i = 0; i < fragments1.size() - 1; ++i)
+      reassembler3.receive("sender", fragments1.get(i));
+    for (int i = 0; i < fragments2.size(); ++i) {
+      ByteBuffer result = reassembler3.receive("sender", fragments2.get(i));
+      if (i == fragments2.size() - 1)
+        assertEquals(new Blob(encoding_, false), new Blob(result, false));
+    }
+    assertEquals(0, reassembler3.size());
+    assertEquals(0, reassembler3.getBufferedBytes());
+  }
+
+  @Test
+  public void
+  testUnsignedSequence() throws EncodingException
+  {
+    // The Sequence is unsigned, so these have the top bit set. The second
+    // group wraps to 0.
+    long[] firstSequences = new long[] {
+      0xfffffffffffffff0L, 0xfffffffffffffffeL };
+    for (long firstSequence : firstSequences) {
+      ArrayList<ByteBuffer> fragments = makeFragments(firstSequence, 3);
+
+      // Reassemble in a different order.
+      Collections.reverse(fragments);
+      LpReassembler reassembler = new LpReassembler();
+      ByteBuffer result = null;
+      for (int i = 0; i < fragments.size(); ++i) {
+        result = reassembler.receive("sender", fragments.get(i));
+        if (i < fragments.size() - 1)
+          assertNull(result);
+      }
+
+      assertEquals(new Blob(encoding_, false), new Blob(result, false));
+      assertEquals(0, reassembler.size());
+    }
+
+    // A fragment without a Sequence is dropped.
+    TlvEncoder encoder = new TlvEncoder(256);
+    encoder.writeBlobTlv(Tlv.LpPacket_Fragment, encoding_);
+    encoder.writeNonNegativeIntegerTlv(Tlv.LpPacket_FragCount, 2);
+    encoder.writeNonNegativeIntegerTlv(Tlv.LpPacket_FragIndex, 0);
+    encoder.writeTypeAndLength(Tlv.LpPacket_LpPacket, encoder.getLength());
+    LpReassembler reassembler = new LpReassembler();
+    assertNull(reassembler.receive("sender", encoder.getOutput()));
+    assertEquals(0, reassembler.size());
+  }
+
+  /**
+   * Split encoding_ into fragments with consecutive 8-byte Sequence values.
+   * @param firstSequence The Sequence of the first fragment.
+   * @param fragCount The number of fragments.
+   * @return The list of encoded fragments.
+   */
+  private ArrayList<ByteBuffer>
+  makeFragments(long firstSequence, int fragCount)
+  {
+    ArrayList<ByteBuffer> fragments = new ArrayList<ByteBuffer>();
+    int fragmentSize = (encoding_.remaining() + fragCount - 1) / fragCount;
+    for (int fragIndex = 0; fragIndex < fragCount; ++fragIndex) {
+      ByteBuffer value = encoding_.duplicate();
+      value.position(fragIndex * fragmentSize);
+      value.limit(Math.min
+        (value.position() + fragmentSize, encoding_.limit()));
+
+      ByteBuffer sequence = ByteBuffer.allocate(8);
+      sequence.putLong(firstSequence + fragIndex);
+      sequence.flip();
+
+      TlvEncoder encoder = new TlvEncoder(value.remaining() + 64);
+      encoder.writeBlobTlv(Tlv.LpPacket_Fragment, value);
+      encoder.writeNonNegativeIntegerTlv(Tlv.LpPacket_FragCount, fragCount);
+      encoder.writeNonNegativeIntegerTlv(Tlv.LpPacket_FragIndex, fragIndex);
+      encoder.writeBlobTlv(Tlv.LpPacket_Sequence, sequence);
+      encoder.writeTypeAndLength(Tlv.LpPacket_LpPacket, encoder.getLength());
+      fragments.add(encoder.getOutput());
+    }
+
+    return fragments;
+  }
+
+  private ByteBuffer encoding_;
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnInterestCallback;
+import net.named_data.jndn.transport.InProcessForwarder;
+import net.named_data.jndn.transport.LoopbackTransport;
+import net.named_data.jndn.util.MemoryContentCache;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMemoryContentCache {
+  @Before
+  public void
+  setUp() throws Exception
+  {
+    // The cache answers through a forwarder with no content store, so each
+    // answer comes from the cache.
+    forwarder_ = new InProcessForwarder();
+    producerFace_ = new Face
+      (new LoopbackTransport(), new LoopbackTransport.ConnectionInfo(forwarder_));
+    consumerFace_ = new Face
+      (new LoopbackTransport(), new LoopbackTransport.ConnectionInfo(forwarder_));
+    cache_ = new MemoryContentCache(producerFace_, 0);
+    nNotFound_ = 0;
+    cache_.setInterestFilter(new Name("/test"), new OnInterestCallback() {
+      public void onInterest
+        (Name prefix, Interest interest, Face face, long interestFilterId,
+         InterestFilter filter) {
+        ++nNotFound_;
+      }
+    });
+
+    // Connect the producer face so that it has a face ID for the route.
+    producerFace_.expressInterest(new Name("/connect"), dummyOnData);
+    forwarder_.addRoute
+      (new Name("/test"),
+       ((LoopbackTransport)producerFace_.getTransport()).getFaceId());
+  }
+
+  /**
+   * Express the Interest from the consumer face and return the name of the
+   * Data which the cache answers with.
+   * @param interest The Interest to express.
+   * @return The Data name, or null if the cache did not answer.
+   */
+  private Name
+  answer(Interest interest) throws Exception
+  {
+    final Data[] received = new Data[1];
+    consumerFace_.expressInterest(interest, new OnData() {
+      public void onData(Interest interest, Data data) {
+        received[0] = data;
+      }
+    });
+    // Each hop is delivered on the next processEvents.
+    for (int i = 0; i < 3; ++i) {
+      producerFace_.processEvents();
+      consumerFace_.processEvents();
+    }
+
+    return received[0] == null ? null : received[0].getName();
+  }
+
+  private static Data
+  makeData(String uri, double freshnessPeriod)
+  {
+    Data data = new Data(new Name(uri));
+    data.getMetaInfo().setFreshnessPeriod(freshnessPeriod);
+    return data;
+  }
+
+  @Test
+  public void
+  testLookup() throws Exception
+  {
+    cache_.add(makeData("/test/b/1", -1));
+    cache_.add(makeData("/test/a", -1));
+    cache_.add(makeData("/test/c", -1));
+    cache_.add(makeData("/test/b/2", -1));
+    cache_.add(makeData("/other", -1));
+
+    assertEquals(new Name("/test/a"), answer(new Interest(new Name("/test/a"))));
+    assertEquals
+      (new Name("/test/b/1"), answer(new Interest(new Name("/test/b"))));
+    assertNull(answer(new Interest(new Name("/test/d"))));
+    assertNull(answer(new Interest(new Name("/test/b/3"))));
+
+    Interest leftmost = new Interest(new Name("/test"));
+    leftmost.setChildSelector(0);
+    assertEquals(new Name("/test/a"), answer(leftmost));
+
+    Interest rightmost = new Interest(new Name("/test"));
+    rightmost.setChildSelector(1);
+    assertEquals(new Name("/test/c"), answer(rightmost));
+
+    Interest rightmostB = new Interest(new Name("/test/b"));
+    rightmostB.setChildSelector(1);
+    assertEquals(new Name("/test/b/2"), answer(rightmostB));
+  }
+
+  @Test
+  public void
+  testMustBeFresh() throws Exception
+  {
+    cache_.setMinimumCacheLifetime(100000);
+    cache_.add(makeData("/test/stale", 0));
+    cache_.add(makeData("/test/fresh", 100000));
+
+    Interest interest = new Interest(new Name("/test/stale"));
+    assertEquals(new Name("/test/stale"), answer(interest));
+    interest.setMustBeFresh(true);
+    assertNull(answer(interest));
+
+    Interest freshInterest = new Interest(new Name("/test"));
+    freshInterest.setMustBeFresh(true);
+    assertEquals(new Name("/test/fresh"), answer(freshInterest));
+  }
+
+  @Test
+  public void
+  testCleanup() throws Exception
+  {
+    cache_.add(makeData("/test/short", 10));
+    cache_.add(makeData("/test/long", 100000));
+    cache_.add(makeData("/test/forever", -1));
+    Thread.sleep(30);
+
+    assertNull(answer(new Interest(new Name("/test/short"))));
+    assertEquals(1, nNotFound_);
+    assertEquals
+      (new Name("/test/long"), answer(new Interest(new Name("/test/long"))));
+    assertEquals
+      (new Name("/test/forever"), answer(new Interest(new Name("/test/forever"))));
+
+    // Replacing content with the same name keeps it after the old one expires.
+    cache_.add(makeData("/test/replaced", 10));
+    cache_.add(makeData("/test/replaced", 100000));
+    Thread.sleep(30);
+    assertEquals
+      (new Name("/test/replaced"),
+       answer(new Interest(new Name("/test/replaced"))));
+  }
+
+  private static final OnData dummyOnData = new OnData() {
+    public void onData(Interest interest, Data data) {}
+  };
+
+  private InProcessForwarder forwarder_;
+  private Face producerFace_;
+  private Face consumerFace_;
+  private MemoryContentCache cache_;
+  private int nNotFound_;
+}
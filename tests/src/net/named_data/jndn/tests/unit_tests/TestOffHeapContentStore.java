@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.in_memory_storage.OffHeapContentStore;
+import net.named_data.jndn.util.Blob;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestOffHeapContentStore {
+  private static Data
+  makeData(String uri, int contentSize)
+  {
+    Data data = new Data(new Name(uri));
+    ByteBuffer content = ByteBuffer.allocate(contentSize);
+    for (int i = 0; i < contentSize; ++i)
+      content.put(i, (byte)(uri.hashCode() + i));
+    data.setContent(new Blob(content, false));
+    return data;
+  }
+
+  private static Data
+  find(OffHeapContentStore store, String uri, boolean canBePrefix)
+    throws Exception
+  {
+    Interest interest = new Interest(new Name(uri));
+    interest.setCanBePrefix(canBePrefix);
+    ByteBuffer encoding = store.find(interest);
+    if (encoding == null)
+      return null;
+
+    assertTrue(encoding.isReadOnly());
+    Data data = new Data();
+    data.wireDecode(encoding);
+    return data;
+  }
+
+  @Test
+  public void
+  testFind() throws Exception
+  {
+    OffHeapContentStore store = new OffHeapContentStore(10000, 4);
+    Data dataA = makeData("/test/a", 100);
+    store.insert(dataA);
+    store.insert(makeData("/test/b/1", 100));
+    Data stale = makeData("/test/c", 100);
+    stale.getMetaInfo().setFreshnessPeriod(0);
+    store.insert(stale);
+    // Inserting the same Data again replaces it.
+    store.insert(makeData("/test/a", 100));
+    assertEquals(3, store.size());
+
+    assertTrue(find(store, "/test/a", false).getContent().equals
+      (dataA.getContent()));
+    assertNull(find(store, "/test/b", false));
+    assertEquals(new Name("/test/b/1"), find(store, "/test/b", true).getName());
+
+    Interest freshInterest = new Interest(new Name("/test/c"));
+    freshInterest.setMustBeFresh(true);
+    assertNull(store.find(freshInterest));
+    assertNotNull(find(store, "/test/c", false));
+
+    assertEquals(3, store.getHitCount());
+    assertEquals(2, store.getMissCount());
+
+    store.remove(new Name("/test"));
+    assertEquals(0, store.size());
+    assertEquals(0, store.getTotalBytes());
+
+    assertFalse(store.insert(makeData("/large", 20000)));
+  }
+
+  @Test
+  public void
+  testCompaction() throws Exception
+  {
+    OffHeapContentStore store = new OffHeapContentStore(4000, 3);
+    Random random = new Random(1);
+    HashMap<String, Data> expected = new HashMap<String, Data>();
+
+    for (int i = 0; i < 500; ++i) {
+      String uri = "/test/" + i;
+      Data data = makeData(uri, 100 + random.nextInt(400));
+      assertTrue(store.insert(data));
+      expected.put(uri, data);
+
+      // Remove some entries to leave holes to compact.
+      if (random.nextInt(3) == 0) {
+        String removeUri = "/test/" + random.nextInt(i + 1);
+        store.remove(new Name(removeUri));
+        expected.remove(removeUri);
+      }
+      assertTrue(store.getTotalBytes() <= store.getCapacityBytes());
+    }
+
+    assertTrue(store.getCompactionCount() > 0);
+    assertTrue(store.getEvictionCount() > 0);
+
+    // Check that each remaining entry still has the correct encoding.
+    int nFound = 0;
+    for (Map.Entry<String, Data> entry : expected.entrySet()) {
+      Data found = find(store, entry.getKey(), false);
+      if (found == null)
+        // It was evicted.
+        continue;
+
+      ++nFound;
+      assertTrue(found.getContent().equals(entry.getValue().getContent()));
+    }
+    assertEquals(store.size(), nFound);
+  }
+}
@@ -0,0 +1,467 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.NetworkNack;
+import net.named_data.jndn.OnNetworkNack;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.impl.PendingInterestTable;
+import net.named_data.jndn.util.Blob;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPendingInterestTable {
+  @Before
+  public void
+  setUp()
+  {
+    pit_ = new PendingInterestTable();
+    nextId_ = 0;
+  }
+
+  private PendingInterestTable.Entry
+  add(Interest interest)
+  {
+    return pit_.add(++nextId_, interest, null, null, null);
+  }
+
+  @Test
+  public void
+  testPrefixMatch()
+  {
+    PendingInterestTable.Entry root = add(new Interest(new Name()));
+    PendingInterestTable.Entry prefix = add(new Interest(new Name("/a")));
+    PendingInterestTable.Entry exact = add(new Interest(new Name("/a/b")));
+    PendingInterestTable.Entry other = add(new Interest(new Name("/a/c")));
+    PendingInterestTable.Entry longer = add(new Interest(new Name("/a/b/c")));
+    assertEquals(5, pit_.size());
+
+    ArrayList<PendingInterestTable.Entry> entries =
+      new ArrayList<PendingInterestTable.Entry>();
+    pit_.extractEntriesForExpressedInterest(new Data(new Name("/a/b")), entries);
+
+    // Expect the same order as a scan of all entries, newest first.
+    assertEquals(3, entries.size());
+    assertSame(exact, entries.get(0));
+    assertSame(prefix, entries.get(1));
+    assertSame(root, entries.get(2));
+    assertTrue(exact.getIsRemoved());
+    assertFalse(other.getIsRemoved());
+    assertFalse(longer.getIsRemoved());
+    assertEquals(2, pit_.size());
+
+    // The matched entries are gone.
+    entries.clear();
+    pit_.extractEntriesForExpressedInterest(new Data(new Name("/a/b")), entries);
+    assertEquals(0, entries.size());
+  }
+
+  @Test
+  public void
+  testSelectors()
+  {
+    Interest interest = new Interest(new Name("/a"));
+    interest.setMaxSuffixComponents(2);
+    PendingInterestTable.Entry entry = add(interest);
+
+    ArrayList<PendingInterestTable.Entry> entries =
+      new ArrayList<PendingInterestTable.Entry>();
+    // The candidate is found by prefix but fails MaxSuffixComponents.
+    pit_.extractEntriesForExpressedInterest
+      (new Data(new Name("/a/b/c")), entries);
+    assertEquals(0, entries.size());
+    assertFalse(entry.getIsRemoved());
+
+    pit_.extractEntriesForExpressedInterest(new Data(new Name("/a/b")), entries);
+    assertEquals(1, entries.size());
+    assertSame(entry, entries.get(0));
+  }
+
+  @Test
+  public void
+  testImplicitDigest() throws EncodingException
+  {
+    Data data = new Data(new Name("/a/b"));
+    data.setContent(new Blob("content"));
+    Name fullName = data.getFullName();
+
+    PendingInterestTable.Entry entry = add(new Interest(fullName));
+    Name wrongDigestName = new Name("/a/b");
+    wrongDigestName.appendImplicitSha256Digest(new byte[32]);
+    PendingInterestTable.Entry wrongDigest = add(new Interest(wrongDigestName));
+
+    ArrayList<PendingInterestTable.Entry> entries =
+      new ArrayList<PendingInterestTable.Entry>();
+    pit_.extractEntriesForExpressedInterest(data, entries);
+    assertEquals(1, entries.size());
+    assertSame(entry, entries.get(0));
+    assertFalse(wrongDigest.getIsRemoved());
+  }
+
+  @Test
+  public void
+  testRemove()
+  {
+    PendingInterestTable.Entry entry1 = add(new Interest(new Name("/a/b")));
+    PendingInterestTable.Entry entry2 = add(new Interest(new Name("/a/b")));
+
+    assertTrue(pit_.removeEntry(entry1));
+    assertTrue(entry1.getIsRemoved());
+    assertFalse(pit_.removeEntry(entry1));
+
+    pit_.removePendingInterest(entry2.getPendingInterestId());
+    assertTrue(entry2.getIsRemoved());
+    assertFalse(pit_.removeEntry(entry2));
+    assertEquals(0, pit_.size());
+  }
+
+  @Test
+  public void
+  testRemoveBeforeAdd()
+  {
+    // removePendingInterest can be called before the add reaches the table.
+    long removedId = ++nextId_;
+    pit_.removePendingInterest(removedId);
+    assertNull(pit_.add(removedId, new Interest(new Name("/a")), null, null, null));
+    assertEquals(0, pit_.size());
+
+    // The add consumed the remove request, so the ID can be added again.
+    PendingInterestTable.Entry entry = pit_.add
+      (removedId, new Interest(new Name("/a")), null, null, null);
+    assertTrue(entry != null);
+    assertEquals(1, pit_.size());
+
+    // Other IDs are not affected.
+    PendingInterestTable.Entry other = add(new Interest(new Name("/a")));
+    assertTrue(other != null);
+    assertEquals(2, pit_.size());
+  }
+
+  @Test
+  public void
+  testNack()
+  {
+    Interest interest = new Interest(new Name("/a/b"));
+    interest.setNonce(new Blob(new byte[] { 1, 2, 3, 4 }));
+    PendingInterestTable.Entry entry = pit_.add
+      (++nextId_, interest, null, null, new DummyOnNetworkNack());
+    Interest otherNonce = new Interest(interest);
+    otherNonce.setNonce(new Blob(new byte[] { 5, 6, 7, 8 }));
+    pit_.add(++nextId_, otherNonce, null, null, new DummyOnNetworkNack());
+
+    ArrayList<PendingInterestTable.Entry> entries =
+      new ArrayList<PendingInterestTable.Entry>();
+    pit_.extractEntriesForNackInterest(new Interest(interest), entries);
+    assertEquals(1, entries.size());
+    assertSame(entry, entries.get(0));
+    assertEquals(1, pit_.size());
+  }
+
+  @Test
+  public void
+  testNackSameNonceStripe()
+  {
+    // These nonces have the same hash code so they are in the same stripe.
+    Blob[] nonces = new Blob[] {
+      new Blob(new byte[] { 62, 0, 0, 0 }),
+      new Blob(new byte[] { 31, 1, 0, 0 }),
+      new Blob(new byte[] {  0, 2, 0, 0 })
+    };
+    for (int i = 1; i < nonces.length; ++i)
+      assertEquals(nonces[0].hashCode(), nonces[i].hashCode());
+
+    Interest[] interests = new Interest[nonces.length];
+    PendingInterestTable.Entry[] entries =
+      new PendingInterestTable.Entry[nonces.length];
+    for (int i = 0; i < nonces.length; ++i) {
+      interests[i] = new Interest(new Name("/a/b"));
+      interests[i].setNonce(nonces[i]);
+      entries[i] = pit_.add
+        (++nextId_, interests[i], null, null, new DummyOnNetworkNack());
+    }
+
+    // A Nack only extracts the entry with the matching nonce.
+    ArrayList<PendingInterestTable.Entry> extracted =
+      new ArrayList<PendingInterestTable.Entry>();
+    pit_.extractEntriesForNackInterest(new Interest(interests[1]), extracted);
+    assertEquals(1, extracted.size());
+    assertSame(entries[1], extracted.get(0));
+    assertEquals(2, pit_.size());
+
+    // Removing by ID leaves the other entry in the stripe matchable.
+    pit_.removePendingInterest(entries[0].getPendingInterestId());
+    assertTrue(entries[0].getIsRemoved());
+    extracted.clear();
+    pit_.extractEntriesForNackInterest(new Interest(interests[0]), extracted);
+    assertEquals(0, extracted.size());
+
+    pit_.extractEntriesForNackInterest(new Interest(interests[2]), extracted);
+    assertEquals(1, extracted.size());
+    assertSame(entries[2], extracted.get(0));
+    assertEquals(0, pit_.size());
+  }
+
+  @Test
+  public void
+  testAggregate()
+  {
+    Interest interest = new Interest(new Name("/a/b"));
+    interest.setMustBeFresh(true);
+    interest.setInterestLifetimeMilliseconds(10000);
+    interest.setNonce(new Blob(new byte[] { 1, 2, 3, 4 }));
+    PendingInterestTable.Entry sent = pit_.add
+      (++nextId_, interest, null, null, new DummyOnNetworkNack());
+    assertFalse(pit_.aggregate(sent));
+
+    Interest sameInterest = new Interest(interest);
+    sameInterest.setInterestLifetimeMilliseconds(4000);
+    sameInterest.setNonce(new Blob(new byte[] { 5, 6, 7, 8 }));
+    PendingInterestTable.Entry aggregated = pit_.add
+      (++nextId_, sameInterest, null, null, new DummyOnNetworkNack());
+    assertTrue(pit_.aggregate(aggregated));
+
+    // Different selectors are sent separately.
+    Interest notFresh = new Interest(interest);
+    notFresh.setMustBeFresh(false);
+    PendingInterestTable.Entry other = pit_.add
+      (++nextId_, notFresh, null, null, new DummyOnNetworkNack());
+    assertFalse(pit_.aggregate(other));
+
+    // A Nack for the sent Interest is also for the aggregated entry.
+    ArrayList<PendingInterestTable.Entry> entries =
+      new ArrayList<PendingInterestTable.Entry>();
+    pit_.extractEntriesForNackInterest(new Interest(interest), entries);
+    assertEquals(2, entries.size());
+    assertSame(sent, entries.get(0));
+    assertSame(aggregated, entries.get(1));
+    assertEquals(1, pit_.size());
+
+    // With the sent entry gone, the next Interest is sent.
+    PendingInterestTable.Entry next = pit_.add
+      (++nextId_, new Interest(interest), null, null, null);
+    assertFalse(pit_.aggregate(next));
+    Interest shorterLifetime = new Interest(interest);
+    shorterLifetime.setInterestLifetimeMilliseconds(4000);
+    PendingInterestTable.Entry nextAggregated = pit_.add
+      (++nextId_, shorterLifetime, null, null, null);
+    assertTrue(pit_.aggregate(nextAggregated));
+
+    // A Data packet satisfies the aggregated entries.
+    entries.clear();
+    pit_.extractEntriesForExpressedInterest(new Data(new Name("/a/b")), entries);
+    assertEquals(3, entries.size());
+    assertEquals(0, pit_.size());
+  }
+
+  @Test
+  public void
+  testAggregateLifetime()
+  {
+    Interest interest = new Interest(new Name("/a/b"));
+    interest.setInterestLifetimeMilliseconds(100);
+    PendingInterestTable.Entry shortSent = add(interest);
+    assertFalse(pit_.aggregate(shortSent));
+
+    // The forwarder drops the sent Interest before this lifetime ends.
+    Interest longer = new Interest(interest);
+    longer.setInterestLifetimeMilliseconds(10000);
+    PendingInterestTable.Entry longSent = add(longer);
+    assertFalse(pit_.aggregate(longSent));
+
+    Interest shorter = new Interest(interest);
+    shorter.setInterestLifetimeMilliseconds(1000);
+    PendingInterestTable.Entry aggregated = add(shorter);
+    assertTrue(pit_.aggregate(aggregated));
+
+    // Only the sent Interest which outlives it is promoted for it.
+    ArrayList<PendingInterestTable.Entry> entriesToSend =
+      new ArrayList<PendingInterestTable.Entry>();
+    assertTrue(pit_.removeEntry(shortSent, entriesToSend));
+    assertEquals(0, entriesToSend.size());
+    assertTrue(pit_.removeEntry(longSent, entriesToSend));
+    assertEquals(1, entriesToSend.size());
+    assertSame(aggregated, entriesToSend.get(0));
+  }
+
+  @Test
+  public void
+  testPromoteAggregated()
+  {
+    Interest interest = new Interest(new Name("/a/b"));
+    interest.setInterestLifetimeMilliseconds(10000);
+    PendingInterestTable.Entry sent = add(interest);
+    assertFalse(pit_.aggregate(sent));
+
+    Interest interest1 = new Interest(interest);
+    interest1.setInterestLifetimeMilliseconds(4000);
+    interest1.setNonce(new Blob(new byte[] { 1, 2, 3, 4 }));
+    PendingInterestTable.Entry aggregated1 = pit_.add
+      (++nextId_, interest1, null, null, new DummyOnNetworkNack());
+    assertTrue(pit_.aggregate(aggregated1));
+    Interest interest2 = new Interest(interest);
+    interest2.setInterestLifetimeMilliseconds(8000);
+    interest2.setNonce(new Blob(new byte[] { 5, 6, 7, 8 }));
+    PendingInterestTable.Entry aggregated2 = pit_.add
+      (++nextId_, interest2, null, null, new DummyOnNetworkNack());
+    assertTrue(pit_.aggregate(aggregated2));
+
+    // When the sent entry times out, the entry whose lifetime ends last is
+    // sent in its place and the other entry is aggregated with it.
+    ArrayList<PendingInterestTable.Entry> entriesToSend =
+      new ArrayList<PendingInterestTable.Entry>();
+    assertTrue(pit_.removeEntry(sent, entriesToSend));
+    assertEquals(1, entriesToSend.size());
+    assertSame(aggregated2, entriesToSend.get(0));
+    assertEquals(2, pit_.size());
+
+    ArrayList<PendingInterestTable.Entry> entries =
+      new ArrayList<PendingInterestTable.Entry>();
+    pit_.extractEntriesForNackInterest(new Interest(interest2), entries);
+    assertEquals(2, entries.size());
+    assertSame(aggregated2, entries.get(0));
+    assertSame(aggregated1, entries.get(1));
+    assertEquals(0, pit_.size());
+
+    // Removing the sent entry by ID also promotes an aggregated entry.
+    PendingInterestTable.Entry sent2 = add(new Interest(interest));
+    assertFalse(pit_.aggregate(sent2));
+    PendingInterestTable.Entry aggregated3 = add(new Interest(interest1));
+    assertTrue(pit_.aggregate(aggregated3));
+    entriesToSend.clear();
+    pit_.removePendingInterest(sent2.getPendingInterestId(), entriesToSend);
+    assertEquals(1, entriesToSend.size());
+    assertSame(aggregated3, entriesToSend.get(0));
+
+    // A new entry is aggregated with the promoted entry.
+    Interest shorter = new Interest(interest);
+    shorter.setInterestLifetimeMilliseconds(1000);
+    PendingInterestTable.Entry aggregated4 = add(shorter);
+    assertTrue(pit_.aggregate(aggregated4));
+
+    // Removing an aggregated entry doesn't promote anything.
+    entriesToSend.clear();
+    assertTrue(pit_.removeEntry(aggregated4, entriesToSend));
+    assertEquals(0, entriesToSend.size());
+  }
+
+  @Test
+  public void
+  testNackAggregatedWithoutCallback()
+  {
+    Interest interest = new Interest(new Name("/a/b"));
+    interest.setInterestLifetimeMilliseconds(10000);
+    interest.setNonce(new Blob(new byte[] { 1, 2, 3, 4 }));
+    // The sent entry has no OnNetworkNack.
+    PendingInterestTable.Entry sent = add(interest);
+    assertFalse(pit_.aggregate(sent));
+
+    Interest sameInterest = new Interest(interest);
+    sameInterest.setInterestLifetimeMilliseconds(4000);
+    sameInterest.setNonce(new Blob(new byte[] { 5, 6, 7, 8 }));
+    PendingInterestTable.Entry aggregated = pit_.add
+      (++nextId_, sameInterest, null, null, new DummyOnNetworkNack());
+    assertTrue(pit_.aggregate(aggregated));
+
+    ArrayList<PendingInterestTable.Entry> entries =
+      new ArrayList<PendingInterestTable.Entry>();
+    pit_.extractEntriesForNackInterest(new Interest(interest), entries);
+    assertEquals(1, entries.size());
+    assertSame(aggregated, entries.get(0));
+    // The sent entry is left to time out.
+    assertFalse(sent.getIsRemoved());
+    assertEquals(1, pit_.size());
+  }
+
+  @Test
+  public void
+  testConcurrentAddAndExtract() throws InterruptedException
+  {
+    final int nThreads = 8;
+    final int nInterests = 5000;
+    final AtomicInteger nExtracted = new AtomicInteger();
+    final AtomicInteger nRemoved = new AtomicInteger();
+    final AtomicInteger nFailures = new AtomicInteger();
+
+    // Each thread adds Interests under a shared prefix, then matches half of
+    // them with Data and removes the other half by ID, while the other threads
+    // do the same on the same trie nodes.
+    Thread[] threads = new Thread[nThreads];
+    for (int t = 0; t < nThreads; ++t) {
+      final int threadNo = t;
+      threads[t] = new Thread(new Runnable() {
+        public void run() {
+          for (int i = 0; i < nInterests; ++i) {
+            Name name = new Name("/test").appendSegment(i % 10)
+              .append("t" + threadNo).appendSegment(i);
+            long pendingInterestId = (long)threadNo * nInterests + i + 1;
+            PendingInterestTable.Entry entry = pit_.add
+              (pendingInterestId, new Interest(name), null, null, null);
+            if (entry == null) {
+              nFailures.incrementAndGet();
+              continue;
+            }
+
+            if (i % 2 == 0) {
+              ArrayList<PendingInterestTable.Entry> entries =
+                new ArrayList<PendingInterestTable.Entry>();
+              pit_.extractEntriesForExpressedInterest(new Data(name), entries);
+              if (entries.size() != 1 || entries.get(0) != entry)
+                nFailures.incrementAndGet();
+              nExtracted.addAndGet(entries.size());
+            }
+            else {
+              pit_.removePendingInterest(pendingInterestId);
+              if (entry.getIsRemoved())
+                nRemoved.incrementAndGet();
+            }
+          }
+        }
+      });
+    }
+
+    for (int t = 0; t < nThreads; ++t)
+      threads[t].start();
+    for (int t = 0; t < nThreads; ++t)
+      threads[t].join();
+
+    assertEquals(0, nFailures.get());
+    assertEquals(nThreads * nInterests / 2, nExtracted.get());
+    assertEquals(nThreads * nInterests / 2, nRemoved.get());
+    assertEquals(0, pit_.size());
+  }
+
+  private static class DummyOnNetworkNack implements OnNetworkNack {
+    public void
+    onNetworkNack(Interest interest, NetworkNack networkNack) {}
+  }
+
+  private PendingInterestTable pit_;
+  private long nextId_;
+}
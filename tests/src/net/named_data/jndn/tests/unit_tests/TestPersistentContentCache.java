@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.transport.InProcessForwarder;
+import net.named_data.jndn.transport.LoopbackTransport;
+import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.PersistentContentCache;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPersistentContentCache {
+  @Before
+  public void
+  setUp() throws Exception
+  {
+    directory_ = File.createTempFile("jndn-test", ".cache");
+    directory_.delete();
+    face_ = new Face
+      (new LoopbackTransport(),
+       new LoopbackTransport.ConnectionInfo(new InProcessForwarder()));
+  }
+
+  @After
+  public void
+  tearDown() throws Exception
+  {
+    if (cache_ != null)
+      cache_.close();
+
+    File[] files = directory_.listFiles();
+    if (files != null) {
+      for (File file : files)
+        file.delete();
+    }
+    directory_.delete();
+  }
+
+  private void
+  reopen(int segmentSize) throws IOException
+  {
+    if (cache_ != null)
+      cache_.close();
+    cache_ = new PersistentContentCache(face_, directory_, segmentSize);
+  }
+
+  private String
+  findContent(String uri) throws Exception
+  {
+    ByteBuffer encoding = cache_.find(new Interest(new Name(uri)));
+    if (encoding == null)
+      return null;
+
+    Data data = new Data();
+    data.wireDecode(encoding);
+    return data.getContent().toString();
+  }
+
+  private static Data
+  makeData(String uri, String content)
+  {
+    return new Data(new Name(uri)).setContent(new Blob(content));
+  }
+
+  @Test
+  public void
+  testRecovery() throws Exception
+  {
+    reopen(PersistentContentCache.DEFAULT_SEGMENT_SIZE);
+    cache_.add(makeData("/test/a", "a1"));
+    cache_.add(makeData("/test/b", "b1"));
+    cache_.add(makeData("/test/a", "a2"));
+    cache_.add(makeData("/test/c/1", "c1"));
+    cache_.add(makeData("/test/c/2", "c2"));
+    cache_.remove(new Name("/test/c"));
+    cache_.add(makeData("/test/c/3", "c3"));
+
+    reopen(PersistentContentCache.DEFAULT_SEGMENT_SIZE);
+    assertEquals(3, cache_.size());
+    assertEquals("a2", findContent("/test/a"));
+    assertEquals("b1", findContent("/test/b"));
+    assertNull(findContent("/test/c/1"));
+    assertEquals("c3", findContent("/test/c/3"));
+  }
+
+  @Test
+  public void
+  testPartialRecord() throws Exception
+  {
+    reopen(4096);
+    cache_.add(makeData("/test/a", "a1"));
+    cache_.add(makeData("/test/b", "partly-written"));
+    cache_.close();
+    cache_ = null;
+
+    // Corrupt the last byte of the last record, as if the write was torn.
+    File segmentFile = directory_.listFiles()[0];
+    RandomAccessFile file = new RandomAccessFile(segmentFile, "rw");
+    long position = 0;
+    for (long i = 0; i < file.length(); ++i) {
+      file.seek(i);
+      if (file.read() == 'w' && file.read() == 'r' && file.read() == 'i')
+        position = i;
+    }
+    file.seek(position);
+    file.write('X');
+    file.close();
+
+    reopen(4096);
+    assertEquals("a1", findContent("/test/a"));
+    assertNull(findContent("/test/b"));
+
+    // Expect the new record to overwrite the discarded one.
+    cache_.add(makeData("/test/c", "c1"));
+    reopen(4096);
+    assertEquals(2, cache_.size());
+    assertEquals("c1", findContent("/test/c"));
+  }
+
+  @Test
+  public void
+  testCompaction() throws Exception
+  {
+    int segmentSize = 1024;
+    reopen(segmentSize);
+    for (int i = 0; i < 100; ++i)
+      cache_.add(makeData("/test/" + (i % 5), "value" + i));
+    cache_.add(makeData("/test/removed/a", "removed"));
+    cache_.remove(new Name("/test/removed"));
+    int segmentCountBefore = cache_.getSegmentCount();
+    assertTrue(segmentCountBefore > 5);
+
+    assertTrue(cache_.compact() > 0);
+    assertTrue(cache_.getSegmentCount() < segmentCountBefore);
+    for (int i = 0; i < 5; ++i)
+      assertEquals("value" + (95 + i), findContent("/test/" + i));
+
+    reopen(segmentSize);
+    assertEquals(5, cache_.size());
+    for (int i = 0; i < 5; ++i)
+      assertEquals("value" + (95 + i), findContent("/test/" + i));
+    assertNull(findContent("/test/removed/a"));
+  }
+
+  private File directory_;
+  private Face face_;
+  private PersistentContentCache cache_ = null;
+}
@@ -1,13 +1,19 @@
 package net.named_data.jndn.tests.unit_tests;
 
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
 import net.named_data.jndn.*;
+import net.named_data.jndn.encoding.EncodingException;
 import net.named_data.jndn.security.v2.ValidationPolicyAcceptAll;
 import net.named_data.jndn.security.v2.Validator;
 import net.named_data.jndn.util.Blob;
 import net.named_data.jndn.util.SegmentFetcher;
+import net.named_data.jndn.util.SegmentFetcher.ErrorCode;
 import src.net.named_data.jndn.tests.integration_tests.ValidatorFixture;
 import static org.junit.Assert.*;
 import org.junit.Before;
@@ -102,4 +108,140 @@ public class TestSegmentFetcher {
 
         SegmentFetcher.fetch(face_, baseInterest, new Validator(new ValidationPolicyAcceptAll()), onComplete, onError);
     }
-}
\ No newline at end of file
+
+    /**
+     * Set processInterest_ to queue each Interest with its OnData so that the
+     * test can reply in any order.
+     */
+    private ArrayList<Object[]> queueInterests() {
+        final ArrayList<Object[]> pending = new ArrayList<>();
+        face_.processInterest_ = new ValidatorFixture.TestFace.ProcessInterest() {
+            public void processInterest
+                    (Interest interest, OnData onData, OnTimeout onTimeout,
+                     OnNetworkNack onNetworkNack) {
+                pending.add(new Object[] { interest, onData });
+            }
+        };
+        return pending;
+    }
+
+    private static Data makeSegment(Name prefix, int segmentNum, int nSegments) {
+        Data data = new Data(new Name(prefix).appendSegment(segmentNum));
+        data.getMetaInfo().setFinalBlockId(Name.Component.fromSegment(nSegments - 1));
+        byte[] content = new byte[100];
+        Arrays.fill(content, (byte)segmentNum);
+        data.setContent(new Blob(content, false));
+        return data;
+    }
+
+    @Test
+    public void fetchStreamOutOfOrder() throws EncodingException {
+        final Name prefix = new Name("/test/stream");
+        final int nSegments = 40;
+        final ArrayList<Object[]> pending = queueInterests();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final SegmentFetcher.OnSegment writeTo =
+                SegmentFetcher.writeTo(Channels.newChannel(output));
+        final ArrayList<Long> deliveredSegments = new ArrayList<>();
+        final long[] totalSize = { -1 };
+
+        SegmentFetcher.Options options = new SegmentFetcher.Options();
+        options.maxReorderSegments = 4;
+        SegmentFetcher.fetchStream
+                (face_, new Interest(prefix), options, SegmentFetcher.DontVerifySegment,
+                 new SegmentFetcher.OnSegment() {
+                     public void onSegment(Blob content, long segmentNum) throws IOException {
+                         // Check the order below since the fetcher catches exceptions here.
+                         deliveredSegments.add(segmentNum);
+                         writeTo.onSegment(content, segmentNum);
+                     }
+                 },
+                 new SegmentFetcher.OnStreamComplete() {
+                     public void onStreamComplete(long size) {
+                         totalSize[0] = size;
+                     }
+                 },
+                 new SegmentFetcher.OnError() {
+                     public void onError(ErrorCode errorCode, String message) {
+                         fail("onError: " + message);
+                     }
+                 });
+
+        // Always reply to the newest Interest first so that segments arrive in reverse.
+        for (int i = 0; i < 1000 && !pending.isEmpty(); ++i) {
+            Object[] entry = pending.remove(pending.size() - 1);
+            Interest interest = (Interest)entry[0];
+            long segmentNum = interest.getName().size() > prefix.size() ?
+                    interest.getName().get(-1).toSegment() : 0;
+            assertTrue("The request is past the reorder window",
+                    segmentNum < deliveredSegments.size() + options.maxReorderSegments);
+            ((OnData)entry[1]).onData
+                    (interest, makeSegment(prefix, (int)segmentNum, nSegments));
+        }
+
+        assertEquals(nSegments, deliveredSegments.size());
+        for (int i = 0; i < nSegments; ++i)
+            assertEquals(i, (long)deliveredSegments.get(i));
+        assertEquals(100 * nSegments, totalSize[0]);
+        byte[] bytes = output.toByteArray();
+        assertEquals(100 * nSegments, bytes.length);
+        for (int i = 0; i < bytes.length; ++i)
+            assertEquals(i / 100, bytes[i]);
+    }
+
+    @Test
+    public void fetchStreamWriteError() throws EncodingException {
+        checkStreamError(new IOException("Disk full"));
+        // Any exception from OnSegment stops fetching, so the output has no gap.
+        checkStreamError(new IllegalStateException("Sink closed"));
+    }
+
+    private void checkStreamError(final Exception segmentError) throws EncodingException {
+        final Name prefix = new Name("/test/stream");
+        final ArrayList<Object[]> pending = queueInterests();
+        final ErrorCode[] error = { null };
+        final boolean[] isComplete = { false };
+
+        SegmentFetcher.fetchStream
+                (face_, new Interest(prefix), new SegmentFetcher.Options(),
+                 SegmentFetcher.DontVerifySegment,
+                 new SegmentFetcher.OnSegment() {
+                     public void onSegment(Blob content, long segmentNum) throws IOException {
+                         if (segmentNum == 1) {
+                             if (segmentError instanceof IOException)
+                                 throw (IOException)segmentError;
+                             throw (RuntimeException)segmentError;
+                         }
+                     }
+                 },
+                 new SegmentFetcher.OnStreamComplete() {
+                     public void onStreamComplete(long size) {
+                         isComplete[0] = true;
+                     }
+                 },
+                 new SegmentFetcher.OnError() {
+                     public void onError(ErrorCode errorCode, String message) {
+                         error[0] = errorCode;
+                     }
+                 });
+
+        // Reply in order until the error.
+        for (int i = 0; i < 100 && !pending.isEmpty() && error[0] == null; ++i) {
+            Object[] entry = pending.remove(0);
+            Interest interest = (Interest)entry[0];
+            long segmentNum = interest.getName().size() > prefix.size() ?
+                    interest.getName().get(-1).toSegment() : 0;
+            ((OnData)entry[1]).onData(interest, makeSegment(prefix, (int)segmentNum, 5));
+        }
+
+        assertEquals(ErrorCode.IO_ERROR, error[0]);
+        assertFalse(isComplete[0]);
+        // Replying to the remaining Interests doesn't deliver or complete.
+        for (Object[] entry : pending) {
+            Interest interest = (Interest)entry[0];
+            ((OnData)entry[1]).onData
+                    (interest, makeSegment(prefix, (int)interest.getName().get(-1).toSegment(), 5));
+        }
+        assertFalse(isComplete[0]);
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFuture;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.StripedFace;
+import net.named_data.jndn.transport.Transport;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStripedFace {
+  @Before
+  public void
+  setUp()
+  {
+    transports_ = new ReplyTransport[3];
+    Transport.ConnectionInfo[] connectionInfos =
+      new Transport.ConnectionInfo[transports_.length];
+    for (int i = 0; i < transports_.length; ++i) {
+      transports_[i] = new ReplyTransport();
+      connectionInfos[i] = new Transport.ConnectionInfo();
+    }
+    face_ = new StripedFace(transports_, connectionInfos);
+  }
+
+  private ArrayList<InterestFuture>
+  expressMany(String prefix, int count) throws IOException
+  {
+    ArrayList<InterestFuture> futures = new ArrayList<InterestFuture>();
+    for (int i = 0; i < count; ++i)
+      futures.add(face_.express
+        (new Interest(new Name(prefix).appendSegment(i))));
+    return futures;
+  }
+
+  @Test
+  public void
+  testStripes() throws Exception
+  {
+    // All replies are received on the first stripe, to check that the pending
+    // interest table is shared.
+    for (int i = 1; i < transports_.length; ++i)
+      transports_[i].replyTransport_ = transports_[0];
+
+    ArrayList<InterestFuture> futures = expressMany("/test/striped", 60);
+    ArrayList<Interest> interests = new ArrayList<Interest>();
+    for (int i = 0; i < 30; ++i)
+      interests.add(new Interest(new Name("/test/all").appendSegment(i)));
+    futures.addAll(face_.expressAll(interests));
+
+    int nSent = 0;
+    for (int i = 0; i < transports_.length; ++i) {
+      // Expect the names to be spread over the stripes.
+      assertTrue(transports_[i].nSent_ > 0);
+      nSent += transports_[i].nSent_;
+    }
+    assertEquals(90, nSent);
+
+    face_.processEvents();
+    for (InterestFuture future : futures) {
+      assertTrue(future.isDone());
+      assertEquals("reply", future.getData().getContent().toString());
+    }
+  }
+
+  @Test
+  public void
+  testFailedStripe() throws Exception
+  {
+    expressMany("/test/before", 30);
+    face_.processEvents();
+    assertTrue(transports_[1].nSent_ > 0);
+
+    // Disconnect the second stripe.
+    transports_[1].isConnected_ = false;
+    int nSentBefore = transports_[1].nSent_;
+    ArrayList<InterestFuture> futures = expressMany("/test/after", 30);
+    assertTrue(face_.isStripeFailed(1));
+    assertFalse(face_.isStripeFailed(0));
+    assertEquals(nSentBefore, transports_[1].nSent_);
+
+    face_.processEvents();
+    for (InterestFuture future : futures)
+      assertTrue(future.getData() != null);
+  }
+
+  private ReplyTransport[] transports_;
+  private StripedFace face_;
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.util.Common;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestTcpTransport {
+  @Before
+  public void
+  setUp() throws Exception
+  {
+    serverChannel_ = ServerSocketChannel.open();
+    serverChannel_.bind(new InetSocketAddress("127.0.0.1", 0));
+    int port = ((InetSocketAddress)serverChannel_.getLocalAddress()).getPort();
+
+    transport_ = new TcpTransport();
+    transport_.connect
+      (new TcpTransport.ConnectionInfo("127.0.0.1", port),
+       new ElementListener() {
+         public void onReceivedElement(ByteBuffer element) {}
+       }, null);
+    peer_ = serverChannel_.accept();
+    peer_.configureBlocking(false);
+    received_ = new ByteArrayOutputStream();
+    nSent_ = 0;
+  }
+
+  @After
+  public void
+  tearDown() throws Exception
+  {
+    transport_.close();
+    peer_.close();
+    serverChannel_.close();
+  }
+
+  /**
+   * Send a packet of size bytes, where each byte is the low byte of its
+   * offset in the stream of all sent bytes.
+   */
+  private void
+  send(int size) throws Exception
+  {
+    ByteBuffer packet = ByteBuffer.allocateDirect(size);
+    for (int i = 0; i < size; ++i)
+      packet.put((byte)(nSent_ + i));
+    packet.flip();
+
+    transport_.send(packet);
+    // send must not change the position.
+    assertEquals(0, packet.position());
+    nSent_ += size;
+  }
+
+  /**
+   * Read from the peer until it has received nBytes in total or the
+   * timeout, then check the bytes.
+   * @return The number of received bytes.
+   */
+  private int
+  receive(int nBytes, int timeoutMilliseconds) throws Exception
+  {
+    ByteBuffer buffer = ByteBuffer.allocate(65536);
+    double startTime = Common.getNowMilliseconds();
+    while (received_.size() < nBytes &&
+           Common.getNowMilliseconds() - startTime < timeoutMilliseconds) {
+      buffer.clear();
+      int nRead = peer_.read(buffer);
+      if (nRead < 0)
+        break;
+      if (nRead == 0) {
+        Thread.sleep(2);
+        continue;
+      }
+      received_.write(buffer.array(), 0, nRead);
+    }
+
+    byte[] bytes = received_.toByteArray();
+    byte[] expected = new byte[bytes.length];
+    for (int i = 0; i < expected.length; ++i)
+      expected[i] = (byte)i;
+    assertArrayEquals(expected, bytes);
+    return bytes.length;
+  }
+
+  @Test
+  public void
+  testNoCoalescing() throws Exception
+  {
+    send(100);
+    assertEquals(0, transport_.getSendQueueSize());
+    assertEquals(100, receive(100, 5000));
+  }
+
+  @Test
+  public void
+  testFlushThreshold() throws Exception
+  {
+    transport_.setSendCoalescing(1000, 60000);
+    for (int i = 0; i < 9; ++i)
+      send(100);
+    assertEquals(900, transport_.getSendQueueSize());
+    assertEquals(0, receive(1, 50));
+
+    // Reaching the threshold writes the queue.
+    send(100);
+    assertEquals(0, transport_.getSendQueueSize());
+    assertEquals(1000, receive(1000, 5000));
+  }
+
+  @Test
+  public void
+  testFlushDelay() throws Exception
+  {
+    transport_.setSendCoalescing(100000, 20);
+    send(100);
+    assertEquals(100, transport_.getSendQueueSize());
+    Thread.sleep(40);
+
+    // The first queued packet has waited longer than the delay.
+    send(100);
+    assertEquals(0, transport_.getSendQueueSize());
+    assertEquals(200, receive(200, 5000));
+  }
+
+  @Test
+  public void
+  testChunkSplitting() throws Exception
+  {
+    // The chunk size is the flush threshold when it is larger than 64 KB.
+    transport_.setSendCoalescing(70000, 60000);
+    send(60000);
+    assertEquals(60000, transport_.getSendQueueSize());
+    // This packet spans the end of the first chunk.
+    send(20000);
+    assertEquals(0, transport_.getSendQueueSize());
+    // This packet is larger than a chunk.
+    send(150000);
+    assertEquals(0, transport_.getSendQueueSize());
+    assertEquals(230000, receive(230000, 5000));
+  }
+
+  @Test
+  public void
+  testFlushOnProcessEventsAndClose() throws Exception
+  {
+    transport_.setSendCoalescing(100000, 60000);
+    send(100);
+    transport_.processEvents();
+    assertEquals(0, transport_.getSendQueueSize());
+    assertEquals(100, receive(100, 5000));
+
+    send(50);
+    assertEquals(50, transport_.getSendQueueSize());
+    transport_.close();
+    assertEquals(0, transport_.getSendQueueSize());
+    assertEquals(150, receive(150, 5000));
+  }
+
+  private ServerSocketChannel serverChannel_;
+  private SocketChannel peer_;
+  private TcpTransport transport_;
+  private ByteArrayOutputStream received_;
+  private int nSent_;
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2019 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.ThreadPoolFace;
+import net.named_data.jndn.transport.AsyncUnixTransport;
+import net.named_data.jndn.transport.UnixTransport;
+import net.named_data.jndn.util.Common;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestUnixTransport {
+  @Before
+  public void
+  setUp() throws Exception
+  {
+    Assume.assumeTrue(UnixTransport.isSupported());
+
+    socketFile_ = File.createTempFile("jndn-test", ".sock");
+    socketFile_.delete();
+    forwarder_ = new StandInForwarder(socketFile_.getAbsolutePath());
+    new Thread(forwarder_).start();
+  }
+
+  @After
+  public void
+  tearDown() throws Exception
+  {
+    if (forwarder_ != null)
+      forwarder_.close();
+    if (socketFile_ != null)
+      socketFile_.delete();
+  }
+
+  @Test
+  public void
+  testExpressInterest() throws Exception
+  {
+    UnixTransport transport = new UnixTransport();
+    Face face = new Face
+      (transport, new UnixTransport.ConnectionInfo(socketFile_.getAbsolutePath()));
+    assertTrue(face.isLocal());
+
+    final ArrayList<Data> dataList = new ArrayList<Data>();
+    face.expressInterest(new Name("/test/unix"), new OnData() {
+      public void onData(Interest interest, Data data) {
+        dataList.add(data);
+      }
+    });
+
+    double startTime = Common.getNowMilliseconds();
+    while (dataList.size() == 0 &&
+           Common.getNowMilliseconds() - startTime < 5000) {
+      face.processEvents();
+      Thread.sleep(5);
+    }
+
+    assertEquals(1, dataList.size());
+    assertTrue(dataList.get(0).getName().equals(new Name("/test/unix")));
+    assertEquals("content", dataList.get(0).getContent().toString());
+    face.shutdown();
+  }
+
+  @Test
+  public void
+  testAsyncExpressInterest() throws Exception
+  {
+    ScheduledExecutorService threadPool = Executors.newScheduledThreadPool(2);
+    try {
+      Face face = new Face
+        (new AsyncUnixTransport(threadPool),
+         new UnixTransport.ConnectionInfo(socketFile_.getAbsolutePath()));
+
+      final ArrayList<Data> dataList = new ArrayList<Data>();
+      final CountDownLatch latch = new CountDownLatch(1);
+      face.expressInterest(new Name("/test/async-unix"), new OnData() {
+        public void onData(Interest interest, Data data) {
+          dataList.add(data);
+          latch.countDown();
+        }
+      });
+
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      assertTrue(dataList.get(0).getName().equals(new Name("/test/async-unix")));
+      face.shutdown();
+    } finally {
+      threadPool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void
+  testAsyncSingleThreadPool() throws Exception
+  {
+    // The read thread is not in the pool, so one pool thread is enough for
+    // onConnected and the ThreadPoolFace callbacks.
+    ScheduledExecutorService threadPool = Executors.newScheduledThreadPool(1);
+    try {
+      Face face = new ThreadPoolFace
+        (threadPool, new AsyncUnixTransport(threadPool),
+         new UnixTransport.ConnectionInfo(socketFile_.getAbsolutePath()));
+
+      final CountDownLatch latch = new CountDownLatch(2);
+      OnData onData = new OnData() {
+        public void onData(Interest interest, Data data) {
+          latch.countDown();
+        }
+      };
+      face.expressInterest(new Name("/test/single-thread/1"), onData);
+      face.expressInterest(new Name("/test/single-thread/2"), onData);
+
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      face.shutdown();
+    } finally {
+      threadPool.shutdownNow();
+    }
+  }
+
+  private File socketFile_;
+  private StandInForwarder forwarder_;
+}